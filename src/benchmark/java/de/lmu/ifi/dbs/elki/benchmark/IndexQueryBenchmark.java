@@ -0,0 +1,328 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.lsh.InMemoryLSHIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.vafile.PartialVAFile;
+import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * JMH micro benchmark for kNN and range queries on the different index
+ * structures, on generated uniform data.
+ * 
+ * The data set size, dimensionality, query size and index are JMH parameters,
+ * and can be overridden on the command line, e.g.
+ * <code>-p index=rstar,kdtree -p n=100000 -p d=8</code>. Throughput and the
+ * latency distribution (percentiles of the sample mode) are reported for each
+ * combination; the {@link #main} method in addition enables the GC profiler,
+ * which reports the allocation per query ({@code gc.alloc.rate.norm}).
+ * 
+ * The range query radius is chosen as the average k-distance of the query
+ * points, so that range queries return about k results and are comparable to
+ * the kNN queries.
+ * 
+ * Build and run with the <code>benchmark</code> Maven profile:
+ * <code>mvn -P benchmark compile exec:exec</code>. This starts a separate
+ * java process, as the JVM forked by JMH needs the full class path. To pass
+ * JMH options, use
+ * <code>-Dexec.args="-classpath %classpath de.lmu.ifi.dbs.elki.benchmark.IndexQueryBenchmark ..."</code>
+ * 
+ * @author Erich Schubert
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IndexQueryBenchmark {
+  /**
+   * Index to benchmark.
+   */
+  @Param({ "linear", "rstar", "mtree", "kdtree", "vafile", "pvafile", "lsh" })
+  public String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000" })
+  public int n;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32" })
+  public int d;
+
+  /**
+   * Query size.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Random seed for data generation.
+   */
+  @Param({ "0" })
+  public long seed;
+
+  /**
+   * Number of distinct query points to cycle through.
+   */
+  private static final int NUM_QUERIES = 1000;
+
+  /**
+   * Number of partitions per dimension for the VA files.
+   */
+  private static final int VA_PARTITIONS = 16;
+
+  /**
+   * Number of LSH hash tables.
+   */
+  private static final int LSH_TABLES = 10;
+
+  /**
+   * Number of projections per LSH hash function.
+   */
+  private static final int LSH_PROJECTIONS = 3;
+
+  /**
+   * The kNN query.
+   */
+  private KNNQuery<NumberVector<?>, DoubleDistance> knnq;
+
+  /**
+   * The range query.
+   */
+  private RangeQuery<NumberVector<?>, DoubleDistance> rangeq;
+
+  /**
+   * Range query radius.
+   */
+  private DoubleDistance radius;
+
+  /**
+   * Query points (objects of the database).
+   */
+  private ArrayModifiableDBIDs queries;
+
+  /**
+   * Query iterator, cycling through the queries.
+   */
+  private DBIDArrayIter qiter;
+
+  /**
+   * Generate the data, build the index and the queries.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rnd = new Random(seed);
+    double[][] data = new double[n][d];
+    for(int i = 0; i < n; i++) {
+      for(int j = 0; j < d; j++) {
+        data[i][j] = rnd.nextDouble();
+      }
+    }
+    List<IndexFactory<?, ?>> factories = new ArrayList<>();
+    IndexFactory<?, ?> factory = makeIndexFactory();
+    if(factory != null) {
+      factories.add(factory);
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), factories);
+    db.initialize();
+    Relation<NumberVector<?>> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector<?>, DoubleDistance> distq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    if(factory != null) {
+      // Fail, rather than silently benchmarking a linear scan.
+      knnq = db.getKNNQuery(distq, k, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+      rangeq = db.getRangeQuery(distq, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+      if(knnq == null || rangeq == null) {
+        throw new AbortException("Index " + index + " did not provide the kNN and range queries.");
+      }
+    }
+    else {
+      knnq = QueryUtil.getLinearScanKNNQuery(distq);
+      rangeq = QueryUtil.getLinearScanRangeQuery(distq);
+    }
+
+    DBIDs sample = DBIDUtil.randomSample(rel.getDBIDs(), Math.min(NUM_QUERIES, n), seed);
+    queries = DBIDUtil.newArray(sample);
+    // Average exact k-distance, as radius for the range queries.
+    KNNQuery<NumberVector<?>, DoubleDistance> exact = QueryUtil.getLinearScanKNNQuery(distq);
+    double sum = 0.;
+    for(DBIDIter iter = queries.iter(); iter.valid(); iter.advance()) {
+      sum += exact.getKNNForDBID(iter, k).getKNNDistance().doubleValue();
+    }
+    radius = new DoubleDistance(sum / queries.size());
+    qiter = queries.iter();
+  }
+
+  /**
+   * Build the index factory for the current parameters.
+   * 
+   * @return Index factory, {@code null} for linear scan.
+   */
+  private IndexFactory<?, ?> makeIndexFactory() {
+    ListParameterization params = new ListParameterization();
+    Class<?> cls;
+    switch(index){
+    case "linear":
+      return null;
+    case "rstar":
+      cls = RStarTreeFactory.class;
+      break;
+    case "mtree":
+      cls = MTreeFactory.class;
+      break;
+    case "kdtree":
+      cls = MinimalisticMemoryKDTree.Factory.class;
+      break;
+    case "vafile":
+      params.addParameter(VAFile.Factory.PARTITIONS_ID, VA_PARTITIONS);
+      cls = VAFile.Factory.class;
+      break;
+    case "pvafile":
+      params.addParameter(PartialVAFile.Factory.PARTITIONS_ID, VA_PARTITIONS);
+      cls = PartialVAFile.Factory.class;
+      break;
+    case "lsh":
+      params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, LSH_TABLES);
+      params.addParameter(AbstractHashFunctionFamily.Parameterizer.NUMPROJ_ID, LSH_PROJECTIONS);
+      // Bin width in the order of the neighbor distances in [0;1]^d
+      params.addParameter(AbstractHashFunctionFamily.Parameterizer.WIDTH_ID, Math.sqrt(d) * .25);
+      params.addParameter(AbstractHashFunctionFamily.Parameterizer.RANDOM_ID, seed);
+      cls = InMemoryLSHIndex.class;
+      break;
+    default:
+      throw new AbortException("Unknown index: " + index);
+    }
+    IndexFactory<?, ?> factory = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    params.failOnErrors();
+    return factory;
+  }
+
+  /**
+   * Advance to the next query point.
+   * 
+   * @return Iterator positioned at the next query
+   */
+  private DBIDArrayIter nextQuery() {
+    qiter.advance();
+    if(!qiter.valid()) {
+      qiter.seek(0);
+    }
+    return qiter;
+  }
+
+  /**
+   * Benchmark a single kNN query.
+   * 
+   * @return kNN result
+   */
+  @Benchmark
+  public KNNList<DoubleDistance> knn() {
+    return knnq.getKNNForDBID(nextQuery(), k);
+  }
+
+  /**
+   * Benchmark a single range query.
+   * 
+   * @return Range query result
+   */
+  @Benchmark
+  public DistanceDBIDList<DoubleDistance> range() {
+    return rangeq.getRangeForDBID(nextQuery(), radius);
+  }
+
+  /**
+   * Run the benchmarks, with allocation profiling enabled.
+   * 
+   * @param args JMH command line parameters
+   * @throws RunnerException on errors
+   * @throws CommandLineOptionException on invalid parameters
+   */
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    Options opts = new OptionsBuilder().parent(cmd) //
+    .include(IndexQueryBenchmark.class.getSimpleName()) //
+    .addProfiler(GCProfiler.class) //
+    .build();
+    new Runner(opts).run();
+  }
+}
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.algorithm;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -55,14 +56,18 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.persistent.OnDiskKNNListStore;
 import de.lmu.ifi.dbs.elki.result.ResultUtil;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
@@ -74,6 +79,13 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * leaf, it is essentially quadratic in the number of leaves, which may not be
  * appropriate for large trees.
  * 
+ * When a spill directory is given, the join is performed out-of-core for
+ * double distances: leaf pages are processed in batches, in the order of the
+ * tree. For each batch, the leaf page pairs are processed by increasing MBR
+ * distance, and the finished kNN lists are then written sequentially to an
+ * {@link OnDiskKNNListStore}. Only the kNN heaps of a single batch are kept
+ * in memory.
+ * 
  * @author Elke Achtert
  * @author Erich Schubert
  * 
@@ -96,11 +108,33 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
    */
   public static final OptionID K_ID = new OptionID("knnjoin.k", "Specifies the k-nearest neighbors to be assigned.");
 
+  /**
+   * Parameter for the directory to write the kNN lists to, enabling the
+   * out-of-core join.
+   */
+  public static final OptionID SPILL_ID = new OptionID("knnjoin.spill", "Directory to write the kNN lists to, for an out-of-core join with double distances. By default, all kNN lists are kept in memory.");
+
+  /**
+   * Parameter for the number of leaf pages processed at once in the
+   * out-of-core join.
+   */
+  public static final OptionID BATCH_ID = new OptionID("knnjoin.batch", "Number of leaf pages whose kNN heaps are kept in memory in the out-of-core join.");
+
   /**
    * The k parameter.
    */
   int k;
 
+  /**
+   * Directory for the out-of-core join, {@code null} to join in memory.
+   */
+  File spill;
+
+  /**
+   * Number of leaf pages per batch in the out-of-core join.
+   */
+  int batch;
+
   /**
    * Constructor.
    * 
@@ -108,8 +142,23 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
    * @param k k parameter
    */
   public KNNJoin(DistanceFunction<? super V, D> distanceFunction, int k) {
+    this(distanceFunction, k, null, 0);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param k k parameter
+   * @param spill Directory for the out-of-core join, {@code null} to join in
+   *        memory
+   * @param batch Number of leaf pages per batch in the out-of-core join
+   */
+  public KNNJoin(DistanceFunction<? super V, D> distanceFunction, int k, File spill, int batch) {
     super(distanceFunction);
     this.k = k;
+    this.spill = spill;
+    this.batch = batch;
   }
 
   /**
@@ -132,6 +181,13 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
     SpatialIndexTree<N, E> index = indexes.iterator().next();
     SpatialPrimitiveDistanceFunction<V, D> distFunction = (SpatialPrimitiveDistanceFunction<V, D>) getDistanceFunction();
     DBIDs ids = relation.getDBIDs();
+    if(spill != null) {
+      if(!DistanceUtil.isDoubleDistanceFunction(distFunction)) {
+        throw new AbortException("The out-of-core kNN join requires a double distance function.");
+      }
+      WritableDataStore<?> store = runOutOfCore(index, (SpatialPrimitiveDoubleDistanceFunction<? super V>) distFunction, ids);
+      return (WritableDataStore<KNNList<D>>) store;
+    }
 
     // data pages
     List<E> ps_candidates = new ArrayList<>(index.getLeaves());
@@ -254,6 +310,100 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
     return knnLists;
   }
 
+  /**
+   * Out-of-core kNN self-join for double distances.
+   * 
+   * @param index Spatial index
+   * @param df Distance function
+   * @param ids Object IDs
+   * @return kNN lists, stored on disk
+   */
+  private OnDiskKNNListStore runOutOfCore(SpatialIndexTree<N, E> index, SpatialPrimitiveDoubleDistanceFunction<? super V> df, DBIDs ids) {
+    final List<E> leaves = new ArrayList<>(index.getLeaves());
+    final int numleaves = leaves.size();
+    final OnDiskKNNListStore store = new OnDiskKNNListStore(spill, ids, k);
+    DoubleLongMinHeap pq = new DoubleLongMinHeap();
+
+    FiniteProgress pageprog = LOG.isVerbose() ? new FiniteProgress("Number of processed data pages", numleaves, LOG) : null;
+    IndefiniteProgress fprogress = LOG.isVerbose() ? new IndefiniteProgress("Full comparisons", LOG) : null;
+    for(int start = 0; start < numleaves; start += batch) {
+      final int end = Math.min(start + batch, numleaves);
+      // Heaps of the current batch, initialized with the page self-join.
+      List<List<DoubleDistanceKNNHeap>> heaps = new ArrayList<>(end - start);
+      for(int i = start; i < end; i++) {
+        N pr = index.getNode(leaves.get(i));
+        List<DoubleDistanceKNNHeap> pr_heaps = new ArrayList<>(pr.getNumEntries());
+        for(int j = 0; j < pr.getNumEntries(); j++) {
+          pr_heaps.add(DBIDUtil.newDoubleDistanceHeap(k));
+        }
+        processDataPagesDouble(df, pr, pr, pr_heaps, null);
+        heaps.add(pr_heaps);
+      }
+      // Schedule the leaf page pairs by MBR distance. Pairs within the batch
+      // are only added once, and update both pages.
+      final double[] stop = new double[end - start];
+      for(int i = start; i < end; i++) {
+        stop[i - start] = computeStopDistanceDouble(heaps.get(i - start));
+      }
+      for(int i = start; i < end; i++) {
+        final E pr_entry = leaves.get(i);
+        for(int j = 0; j < numleaves; j++) {
+          final boolean inbatch = (j >= start && j < end);
+          if(j == i || (inbatch && j < i)) {
+            continue;
+          }
+          final double minDist = df.doubleMinDist(pr_entry, leaves.get(j));
+          if(minDist <= stop[i - start] || (inbatch && minDist <= stop[j - start])) {
+            pq.add(minDist, (((long) i) << 32) | j);
+          }
+        }
+      }
+      while(!pq.isEmpty()) {
+        final double mindist = pq.peekKey();
+        final int i = (int) (pq.peekValue() >>> 32), j = (int) pq.peekValue();
+        pq.poll();
+        final List<DoubleDistanceKNNHeap> pr_heaps = heaps.get(i - start);
+        final List<DoubleDistanceKNNHeap> ps_heaps = (j >= start && j < end) ? heaps.get(j - start) : null;
+        final boolean dor = mindist <= computeStopDistanceDouble(pr_heaps);
+        final boolean dos = ps_heaps != null && mindist <= computeStopDistanceDouble(ps_heaps);
+        if(dor || dos) {
+          N pr = index.getNode(leaves.get(i));
+          N ps = index.getNode(leaves.get(j));
+          if(dor && dos) {
+            processDataPagesDouble(df, pr, ps, pr_heaps, ps_heaps);
+          }
+          else if(dor) {
+            processDataPagesDouble(df, pr, ps, pr_heaps, null);
+          }
+          else /* dos */{
+            processDataPagesDouble(df, ps, pr, ps_heaps, null);
+          }
+          if(fprogress != null) {
+            fprogress.incrementProcessed(LOG);
+          }
+        }
+      }
+      // Spill the finished kNN lists of this batch.
+      for(int i = start; i < end; i++) {
+        N pr = index.getNode(leaves.get(i));
+        List<DoubleDistanceKNNHeap> pr_heaps = heaps.get(i - start);
+        for(int j = 0; j < pr.getNumEntries(); j++) {
+          store.put(((LeafEntry) pr.getEntry(j)).getDBID(), pr_heaps.get(j).toKNNList());
+        }
+        if(pageprog != null) {
+          pageprog.incrementProcessed(LOG);
+        }
+      }
+    }
+    if(fprogress != null) {
+      fprogress.setCompleted(LOG);
+    }
+    if(pageprog != null) {
+      pageprog.ensureCompleted(LOG);
+    }
+    return store;
+  }
+
   /**
    * Initialize the heaps.
    * 
@@ -356,6 +506,20 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
     return pr_knn_distance;
   }
 
+  /**
+   * Compute the maximum stop distance, for double distances.
+   * 
+   * @param heaps Heaps list
+   * @return the maximum k-nearest neighbor distance of the heaps
+   */
+  private static double computeStopDistanceDouble(List<DoubleDistanceKNNHeap> heaps) {
+    double max = Double.NEGATIVE_INFINITY;
+    for(DoubleDistanceKNNHeap heap : heaps) {
+      max = Math.max(max, heap.doubleKNNDistance());
+    }
+    return heaps.isEmpty() ? Double.POSITIVE_INFINITY : max;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -422,6 +586,16 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
      */
     protected int k;
 
+    /**
+     * Directory for the out-of-core join.
+     */
+    protected File spill = null;
+
+    /**
+     * Number of leaf pages per batch.
+     */
+    protected int batch = 100;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -430,11 +604,25 @@ public class KNNJoin<V extends NumberVector<?>, D extends Distance<D>, N extends
       if(config.grab(kP)) {
         k = kP.getValue();
       }
+      FileParameter spillP = new FileParameter(SPILL_ID, FileParameter.FileType.OUTPUT_FILE, true);
+      if(config.grab(spillP)) {
+        spill = spillP.getValue();
+        // Temporary files are created in this directory.
+        if(!spill.isDirectory()) {
+          config.reportError(new WrongParameterValueException(spillP, spill.getPath(), "The spill location must be an existing directory."));
+          spill = null;
+        }
+      }
+      IntParameter batchP = new IntParameter(BATCH_ID, 100);
+      batchP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchP)) {
+        batch = batchP.getValue();
+      }
     }
 
     @Override
     protected KNNJoin<V, D, N, E> makeInstance() {
-      return new KNNJoin<>(distanceFunction, k);
+      return new KNNJoin<>(distanceFunction, k, spill, batch);
     }
   }
 }
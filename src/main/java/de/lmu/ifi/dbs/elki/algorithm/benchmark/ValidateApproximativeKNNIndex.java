@@ -188,7 +188,7 @@ public class ValidateApproximativeKNNIndex<O, D extends Distance<D>> extends Abs
           mv.put(knns.size() * k / (double) trueknns.size());
 
           // Put recall:
-          mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / trueknns.size());
+          mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / (double) trueknns.size());
 
           if(knns.size() >= k) {
             D kdist = knns.getKNNDistance();
@@ -276,7 +276,7 @@ public class ValidateApproximativeKNNIndex<O, D extends Distance<D>> extends Abs
         mv.put(knns.size() * k / (double) trueknns.size());
 
         // Put recall:
-        mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / trueknns.size());
+        mvrec.put(DBIDUtil.intersectionSize(knns, trueknns) / (double) trueknns.size());
 
         if(knns.size() >= k) {
           D kdist = knns.getKNNDistance();
@@ -0,0 +1,283 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.result.optics.ClusterOrderResult;
+import de.lmu.ifi.dbs.elki.result.optics.DoubleDistanceClusterOrderResult;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.IndexedDoubleMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * OPTICS for double-valued distances, using primitive data structures.
+ * 
+ * This produces the same cluster order as {@link OPTICS}, but:
+ * <ul>
+ * <li>the seed list is an {@link IndexedDoubleMinHeap} over array offsets,
+ * instead of a heap of entry objects;</li>
+ * <li>the core distance is computed with a kNN query, and the epsilon range
+ * query is only performed for core points (when the kNN query is
+ * index-accelerated);</li>
+ * <li>the cluster order is stored in a compact
+ * {@link DoubleDistanceClusterOrderResult} using primitive arrays. Entry
+ * objects, e.g. for {@link OPTICSXi}, are only created on access.</li>
+ * </ul>
+ * 
+ * Reference:
+ * <p>
+ * M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander: OPTICS: Ordering
+ * Points to Identify the Clustering Structure. <br>
+ * In: Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99).
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses IndexedDoubleMinHeap
+ * @apiviz.has DoubleDistanceClusterOrderResult
+ * 
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering")
+@Description("OPTICS for double distances, using primitive heaps, kNN-based core distances and a compact cluster order.")
+@Reference(authors = "M. Ankerst, M. Breunig, H.-P. Kriegel, and J. Sander", title = "OPTICS: Ordering Points to Identify the Clustering Structure", booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", url = "http://dx.doi.org/10.1145/304181.304187")
+public class DoubleDistanceOPTICS<O> extends AbstractDistanceBasedAlgorithm<O, DoubleDistance, ClusterOrderResult<DoubleDistance>> implements OPTICSTypeAlgorithm<DoubleDistance> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(DoubleDistanceOPTICS.class);
+
+  /**
+   * Maximum radius of the neighborhood.
+   */
+  private double epsilon;
+
+  /**
+   * Minimum number of points for a core object.
+   */
+  private int minpts;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public DoubleDistanceOPTICS(DistanceFunction<? super O, DoubleDistance> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction);
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  /**
+   * Run OPTICS on the database.
+   * 
+   * @param database Database
+   * @param relation Relation
+   * @return Result
+   */
+  public ClusterOrderResult<DoubleDistance> run(Database database, Relation<O> relation) {
+    final DoubleDistance depsilon = new DoubleDistance(epsilon);
+    DistanceQuery<O, DoubleDistance> dq = database.getDistanceQuery(relation, getDistanceFunction());
+    KNNQuery<O, DoubleDistance> knnq = database.getKNNQuery(dq, minpts);
+    RangeQuery<O, DoubleDistance> rq = database.getRangeQuery(dq, depsilon);
+    // Without an index, a kNN query costs as much as the range query.
+    final boolean useknn = !(knnq instanceof LinearScanQuery);
+
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", size, LOG) : null;
+    DoubleDistanceClusterOrderResult clusterOrder = new DoubleDistanceClusterOrderResult("OPTICS Clusterorder", "optics-clusterorder", ids);
+
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for (DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    // Heap elements are reversed offsets (size - 1 - offset): on ties, OPTICS
+    // prefers the larger object ID.
+    final double[] reach = new double[size];
+    final int[] pred = new int[size];
+    final boolean[] processed = new boolean[size];
+    IndexedDoubleMinHeap heap = new IndexedDoubleMinHeap(reach);
+
+    DBIDArrayIter cur = ids.iter(), pit = ids.iter();
+    for (int start = 0; start < size; start++) {
+      if (processed[start]) {
+        continue;
+      }
+      reach[size - 1 - start] = Double.POSITIVE_INFINITY;
+      pred[size - 1 - start] = -1;
+      heap.add(size - 1 - start);
+      while (!heap.isEmpty()) {
+        final int e = heap.poll();
+        final int off = size - 1 - e;
+        processed[off] = true;
+        cur.seek(off);
+        if (pred[e] >= 0) {
+          pit.seek(pred[e]);
+          clusterOrder.add(cur, pit, reach[e]);
+        } else {
+          clusterOrder.add(cur, null, reach[e]);
+        }
+
+        // Core distance, Infinity for non-core points.
+        double coredist = Double.POSITIVE_INFINITY;
+        DistanceDBIDList<DoubleDistance> neighbors = null;
+        if (useknn) {
+          KNNList<DoubleDistance> knn = knnq.getKNNForDBID(cur, minpts);
+          if (knn.size() >= minpts) {
+            final double kdist = (knn instanceof DoubleDistanceKNNList) ? ((DoubleDistanceKNNList) knn).doubleKNNDistance() : knn.getKNNDistance().doubleValue();
+            if (kdist <= epsilon) {
+              coredist = kdist;
+              neighbors = rq.getRangeForDBID(cur, depsilon);
+            }
+          }
+        } else {
+          neighbors = rq.getRangeForDBID(cur, depsilon);
+          if (neighbors.size() >= minpts) {
+            coredist = neighbors.get(minpts - 1).getDistance().doubleValue();
+          }
+        }
+        if (coredist < Double.POSITIVE_INFINITY) {
+          for (DistanceDBIDListIter<DoubleDistance> neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+            final int noff = offsets.intValue(neighbor);
+            if (noff < 0 || processed[noff]) {
+              continue;
+            }
+            final double dist = (neighbor instanceof DoubleDistanceDBIDListIter) ? ((DoubleDistanceDBIDListIter) neighbor).doubleDistance() : neighbor.getDistance().doubleValue();
+            final double r = Math.max(dist, coredist);
+            final int ne = size - 1 - noff;
+            if (!heap.contains(ne)) {
+              reach[ne] = r;
+              pred[ne] = off;
+              heap.add(ne);
+            } else if (r < reach[ne]) {
+              reach[ne] = r;
+              pred[ne] = off;
+              heap.update(ne);
+            }
+          }
+        }
+        if (progress != null) {
+          progress.incrementProcessed(LOG);
+        }
+      }
+    }
+    offsets.destroy();
+    if (progress != null) {
+      progress.ensureCompleted(LOG);
+    }
+    return clusterOrder;
+  }
+
+  @Override
+  public int getMinPts() {
+    return minpts;
+  }
+
+  @Override
+  public DoubleDistance getDistanceFactory() {
+    return DoubleDistance.FACTORY;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O, DoubleDistance> {
+    /**
+     * Maximum radius of the neighborhood.
+     */
+    protected double epsilon = Double.POSITIVE_INFINITY;
+
+    /**
+     * Minimum number of points for a core object.
+     */
+    protected int minpts = 0;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter epsilonP = new DoubleParameter(OPTICS.EPSILON_ID);
+      epsilonP.setOptional(true);
+      epsilonP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+      if (config.grab(epsilonP)) {
+        epsilon = epsilonP.doubleValue();
+      }
+
+      IntParameter minptsP = new IntParameter(OPTICS.MINPTS_ID);
+      minptsP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if (config.grab(minptsP)) {
+        minpts = minptsP.intValue();
+      }
+    }
+
+    @Override
+    protected DoubleDistanceOPTICS<O> makeInstance() {
+      return new DoubleDistanceOPTICS<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
@@ -0,0 +1,852 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.RandomlyGeneratedInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.EMModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Matrix;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Multi-threaded EM clustering with Gaussian mixture models.
+ * 
+ * The data set is copied into a primitive array, and split into one
+ * contiguous chunk per thread. In the E-step, every worker computes the
+ * cluster probabilities of its objects, along with the partial weight and
+ * coordinate sums of its chunk; in the M-step, it accumulates the weighted
+ * scatter around the new means. The partial sums are merged in chunk order.
+ * 
+ * Densities are evaluated in log space, using the Cholesky decomposition of
+ * each covariance matrix, without allocating temporary objects per point.
+ * For high-dimensional data, the covariance matrices can be restricted to be
+ * diagonal, which reduces the cost per point and cluster from O(d^2) to O(d).
+ * 
+ * Unlike {@link EM}, the mixture weights are re-estimated in every iteration.
+ * 
+ * Reference:
+ * <p>
+ * A. P. Dempster, N. M. Laird, D. B. Rubin:<br />
+ * Maximum Likelihood from Incomplete Data via the EM algorithm.<br>
+ * In Journal of the Royal Statistical Society, Series B, 39(1), 1977, pp. 1-31
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has EMModel
+ * 
+ * @param <V> Vector type
+ */
+@Title("Parallel EM-Clustering")
+@Description("Fits k Gaussian mixtures by expectation maximization, using multiple threads and Cholesky-based densities.")
+@Reference(authors = "A. P. Dempster, N. M. Laird, D. B. Rubin", title = "Maximum Likelihood from Incomplete Data via the EM algorithm", booktitle = "Journal of the Royal Statistical Society, Series B, 39(1), 1977, pp. 1-31", url = "http://www.jstor.org/stable/2984875")
+public class ParallelEM<V extends NumberVector<?>> extends AbstractAlgorithm<Clustering<EMModel<V>>> implements ClusteringAlgorithm<Clustering<EMModel<V>>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Small value added to the diagonal of the covariance matrices, to avoid
+   * singularity.
+   */
+  private static final double SINGULARITY_CHEAT = 1E-9;
+
+  /**
+   * Cluster probabilities below this threshold are too small to affect the
+   * model, and are skipped when accumulating the statistics.
+   */
+  private static final double MIN_PROBABILITY = 1E-15;
+
+  /**
+   * Number of clusters.
+   */
+  private int k;
+
+  /**
+   * Delta parameter.
+   */
+  private double delta;
+
+  /**
+   * Class to choose the initial means.
+   */
+  private KMeansInitialization<V> initializer;
+
+  /**
+   * Maximum number of iterations to allow.
+   */
+  private int maxiter;
+
+  /**
+   * Use diagonal covariance matrices only.
+   */
+  private boolean diagonal;
+
+  /**
+   * Number of threads to use.
+   */
+  private int threads;
+
+  /**
+   * Retain soft assignments.
+   */
+  private boolean soft;
+
+  /**
+   * Constructor.
+   * 
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param initializer Class to choose the initial means
+   * @param maxiter Maximum number of iterations, negative for no limit
+   * @param diagonal Use diagonal covariance matrices only
+   * @param threads Number of threads, 0 for automatic
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, KMeansInitialization<V> initializer, int maxiter, boolean diagonal, int threads, boolean soft) {
+    super();
+    this.k = k;
+    this.delta = delta;
+    this.initializer = initializer;
+    this.maxiter = maxiter;
+    this.diagonal = diagonal;
+    this.threads = threads;
+    this.soft = soft;
+  }
+
+  /**
+   * Performs the EM clustering algorithm on the given database.
+   * 
+   * @param database Database
+   * @param relation Relation
+   * @return Result
+   */
+  public Clustering<EMModel<V>> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    final int dim = RelationUtil.dimensionality(relation);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final Mixture mix = new Mixture(size, dim);
+    {
+      int off = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), off += dim) {
+        V vec = relation.get(it);
+        for(int j = 0; j < dim; j++) {
+          mix.data[off + j] = vec.doubleValue(j);
+        }
+      }
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("initializing " + k + " models");
+    }
+    final List<V> initialMeans = initializer.chooseInitialMeans(database, relation, k, EuclideanDistanceFunction.STATIC);
+    assert (initialMeans.size() == k);
+    for(int i = 0; i < k; i++) {
+      NumberVector<?> mean = initialMeans.get(i);
+      for(int j = 0; j < dim; j++) {
+        mix.means[i * dim + j] = mean.doubleValue(j);
+      }
+      mix.identity(i);
+      mix.weights[i] = 1. / k;
+      mix.updateNorm(i);
+    }
+
+    final int nthreads = Math.min(ParallelExecutor.getThreads(threads), size);
+    List<Worker> workers = new ArrayList<>(nthreads);
+    for(int t = 0, beg = 0; t < nthreads; t++) {
+      final int end = (int) ((size * (long) (t + 1)) / nthreads);
+      workers.add(new Worker(mix, beg, end));
+      beg = end;
+    }
+
+    try (ParallelExecutor executor = new ParallelExecutor(nthreads)) {
+      double emNew = expectationStep(mix, workers, executor);
+      if(LOG.isVerbose()) {
+        LOG.verbose("iteration " + 0 + " - expectation value: " + emNew);
+      }
+      for(int it = 1; it <= maxiter || maxiter < 0; it++) {
+        final double emOld = emNew;
+        maximizationStep(mix, workers, executor);
+        emNew = expectationStep(mix, workers, executor);
+        if(LOG.isVerbose()) {
+          LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+        }
+        if(Math.abs(emOld - emNew) <= delta) {
+          break;
+        }
+      }
+    }
+
+    if(LOG.isVerbose()) {
+      LOG.verbose("assigning clusters");
+    }
+    List<ArrayModifiableDBIDs> hardClusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      hardClusters.add(DBIDUtil.newArray());
+    }
+    WritableDataStore<double[]> probClusterIGivenX = soft ? DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class) : null;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int off = it.getOffset() * k;
+      int maxIndex = 0;
+      for(int i = 1; i < k; i++) {
+        if(mix.resp[off + i] > mix.resp[off + maxIndex]) {
+          maxIndex = i;
+        }
+      }
+      hardClusters.get(maxIndex).add(it);
+      if(probClusterIGivenX != null) {
+        probClusterIGivenX.put(it, Arrays.copyOfRange(mix.resp, off, off + k));
+      }
+    }
+    final NumberVector.Factory<V, ?> factory = RelationUtil.getNumberVectorFactory(relation);
+    Clustering<EMModel<V>> result = new Clustering<>("EM Clustering", "em-clustering");
+    for(int i = 0; i < k; i++) {
+      V mean = factory.newNumberVector(Arrays.copyOfRange(mix.means, i * dim, (i + 1) * dim));
+      result.addToplevelCluster(new Cluster<>(hardClusters.get(i), new EMModel<>(mean, mix.covarianceMatrix(i))));
+    }
+    if(probClusterIGivenX != null) {
+      result.addChildResult(new MaterializedRelation<>("cluster assignments", "em-soft-score", EM.SOFT_TYPE, probClusterIGivenX, ids));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the cluster probabilities of all objects.
+   * 
+   * @param mix Mixture model
+   * @param workers Workers
+   * @param executor Executor to run the workers
+   * @return Average log likelihood
+   */
+  private double expectationStep(Mixture mix, List<Worker> workers, ParallelExecutor executor) {
+    for(Worker w : workers) {
+      w.maximize = false;
+    }
+    double loglik = 0.;
+    for(Double l : executor.execute(workers)) {
+      loglik += l.doubleValue();
+    }
+    // Merge partial sums in chunk order.
+    Arrays.fill(mix.wsum, 0.);
+    Arrays.fill(mix.sums, 0.);
+    for(Worker w : workers) {
+      for(int i = 0; i < k; i++) {
+        mix.wsum[i] += w.wsum[i];
+      }
+      for(int j = 0; j < mix.sums.length; j++) {
+        mix.sums[j] += w.sums[j];
+      }
+    }
+    return loglik / mix.size;
+  }
+
+  /**
+   * Compute the new means, covariance matrices and weights.
+   * 
+   * @param mix Mixture model
+   * @param workers Workers
+   * @param executor Executor to run the workers
+   */
+  private void maximizationStep(Mixture mix, List<Worker> workers, ParallelExecutor executor) {
+    final int dim = mix.dim;
+    for(int i = 0; i < k; i++) {
+      if(mix.wsum[i] > 0.) {
+        for(int j = i * dim, e = j + dim; j < e; j++) {
+          mix.means[j] = mix.sums[j] / mix.wsum[i];
+        }
+      }
+    }
+    for(Worker w : workers) {
+      w.maximize = true;
+    }
+    executor.execute(workers);
+    Arrays.fill(mix.cov, 0.);
+    for(Worker w : workers) {
+      for(int j = 0; j < mix.cov.length; j++) {
+        mix.cov[j] += w.scatter[j];
+      }
+    }
+    for(int i = 0; i < k; i++) {
+      mix.weights[i] = mix.wsum[i] / mix.size;
+      if(mix.wsum[i] > 0.) {
+        mix.finishCovariance(i);
+      }
+      else {
+        mix.identity(i);
+      }
+      mix.updateNorm(i);
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameters of the mixture model, and the data, in primitive arrays.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Mixture {
+    /**
+     * Number of objects, and dimensionality.
+     */
+    final int size, dim;
+
+    /**
+     * Data, row by row.
+     */
+    final double[] data;
+
+    /**
+     * Cluster probabilities, {@code k} per object.
+     */
+    final double[] resp;
+
+    /**
+     * Cluster means, row by row.
+     */
+    final double[] means;
+
+    /**
+     * Covariance matrices: the lower triangle, or only the diagonal.
+     */
+    final double[] cov;
+
+    /**
+     * Cholesky factors of the covariance matrices (lower triangle, row by
+     * row, with inverted diagonal), or the inverse variances in diagonal mode.
+     */
+    final double[] chol;
+
+    /**
+     * Mixture weights.
+     */
+    final double[] weights;
+
+    /**
+     * Total weight of each cluster in the last E-step.
+     */
+    final double[] wsum;
+
+    /**
+     * Weighted coordinate sums of each cluster in the last E-step.
+     */
+    final double[] sums;
+
+    /**
+     * Logarithm of the weight and the normalization factor of each cluster.
+     */
+    final double[] lognorm;
+
+    /**
+     * Size of a single covariance matrix.
+     */
+    final int csize;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     * @param dim Dimensionality
+     */
+    Mixture(int size, int dim) {
+      this.size = size;
+      this.dim = dim;
+      this.csize = diagonal ? dim : (dim * (dim + 1)) >>> 1;
+      this.data = new double[size * dim];
+      this.resp = new double[size * k];
+      this.means = new double[k * dim];
+      this.cov = new double[k * csize];
+      this.chol = new double[k * csize];
+      this.weights = new double[k];
+      this.wsum = new double[k];
+      this.sums = new double[k * dim];
+      this.lognorm = new double[k];
+    }
+
+    /**
+     * Reset a cluster to the identity covariance matrix.
+     * 
+     * @param i Cluster
+     */
+    void identity(int i) {
+      Arrays.fill(cov, i * csize, (i + 1) * csize, 0.);
+      for(int j = 0; j < dim; j++) {
+        cov[i * csize + diag(j)] = 1.;
+      }
+      System.arraycopy(cov, i * csize, chol, i * csize, csize);
+    }
+
+    /**
+     * Position of a diagonal element.
+     * 
+     * @param j Dimension
+     * @return Position within a single matrix
+     */
+    int diag(int j) {
+      return diagonal ? j : ((j * (j + 3)) >>> 1);
+    }
+
+    /**
+     * Turn the accumulated scatter into a covariance matrix, and decompose it.
+     * 
+     * @param i Cluster
+     */
+    void finishCovariance(int i) {
+      final int base = i * csize;
+      final double f = 1. / wsum[i];
+      for(int j = base; j < base + csize; j++) {
+        cov[j] *= f;
+      }
+      for(int j = 0; j < dim; j++) {
+        cov[base + diag(j)] += SINGULARITY_CHEAT;
+      }
+      if(diagonal) {
+        for(int j = 0; j < dim; j++) {
+          chol[base + j] = 1. / cov[base + j];
+        }
+        return;
+      }
+      // Retry with increasing regularization, if not positive definite.
+      for(double reg = 0.; reg < 1.; reg = (reg > 0.) ? reg * 100. : SINGULARITY_CHEAT * 10.) {
+        if(cholesky(base, reg)) {
+          return;
+        }
+      }
+      LOG.warning("Covariance matrix is not positive definite - degenerated.");
+      identity(i);
+    }
+
+    /**
+     * Cholesky decomposition of a covariance matrix, into {@link #chol}.
+     * 
+     * The diagonal is stored inverted, to avoid divisions.
+     * 
+     * @param base Matrix offset
+     * @param reg Additional regularization of the diagonal
+     * @return {@code false} when the matrix is not positive definite
+     */
+    boolean cholesky(int base, double reg) {
+      for(int r = 0, ri = base; r < dim; r++) {
+        for(int c = 0, ci = base; c <= r; c++, ri++) {
+          double s = cov[ri];
+          for(int m = 0; m < c; m++) {
+            s -= chol[base + (r * (r + 1) >>> 1) + m] * chol[ci + m];
+          }
+          if(c == r) {
+            s += reg;
+            if(!(s > 0.)) {
+              return false;
+            }
+            chol[ri] = 1. / Math.sqrt(s);
+          }
+          else {
+            chol[ri] = s * chol[ci + c];
+          }
+          ci += c + 1;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Update the normalization factor of a cluster.
+     * 
+     * @param i Cluster
+     */
+    void updateNorm(int i) {
+      final int base = i * csize;
+      // Log determinant of the covariance matrix:
+      double logdet = 0.;
+      for(int j = 0; j < dim; j++) {
+        logdet -= diagonal ? Math.log(chol[base + j]) : 2. * Math.log(chol[base + diag(j)]);
+      }
+      lognorm[i] = Math.log(weights[i]) - .5 * (dim * Math.log(MathUtil.TWOPI) + logdet);
+    }
+
+    /**
+     * Get the covariance matrix of a cluster.
+     * 
+     * @param i Cluster
+     * @return Covariance matrix
+     */
+    Matrix covarianceMatrix(int i) {
+      Matrix m = new Matrix(dim, dim);
+      final int base = i * csize;
+      for(int r = 0; r < dim; r++) {
+        if(diagonal) {
+          m.set(r, r, cov[base + r]);
+          continue;
+        }
+        for(int c = 0; c <= r; c++) {
+          final double v = cov[base + (r * (r + 1) >>> 1) + c];
+          m.set(r, c, v);
+          m.set(c, r, v);
+        }
+      }
+      return m;
+    }
+  }
+
+  /**
+   * Worker processing a single chunk of the data set.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Worker implements Callable<Double> {
+    /**
+     * Mixture model.
+     */
+    final Mixture mix;
+
+    /**
+     * Chunk to process.
+     */
+    final int begin, end;
+
+    /**
+     * Perform the M-step instead of the E-step.
+     */
+    boolean maximize = false;
+
+    /**
+     * Partial cluster weights of this chunk.
+     */
+    final double[] wsum;
+
+    /**
+     * Partial coordinate sums of this chunk.
+     */
+    final double[] sums;
+
+    /**
+     * Partial scatter matrices of this chunk.
+     */
+    final double[] scatter;
+
+    /**
+     * Scratch space: log densities and differences.
+     */
+    final double[] logp, diff;
+
+    /**
+     * Constructor.
+     * 
+     * @param mix Mixture model
+     * @param begin First offset to process
+     * @param end Offset to stop at
+     */
+    Worker(Mixture mix, int begin, int end) {
+      this.mix = mix;
+      this.begin = begin;
+      this.end = end;
+      this.wsum = new double[k];
+      this.sums = new double[k * mix.dim];
+      this.scatter = new double[k * mix.csize];
+      this.logp = new double[k];
+      this.diff = new double[mix.dim];
+    }
+
+    @Override
+    public Double call() {
+      if(maximize) {
+        scatter();
+        return Double.valueOf(0.);
+      }
+      return Double.valueOf(expectation());
+    }
+
+    /**
+     * E-step on this chunk.
+     * 
+     * @return Sum of log likelihoods
+     */
+    private double expectation() {
+      final int dim = mix.dim;
+      final double[] data = mix.data, resp = mix.resp;
+      Arrays.fill(wsum, 0.);
+      Arrays.fill(sums, 0.);
+      double loglik = 0.;
+      for(int o = begin; o < end; o++) {
+        final int xoff = o * dim;
+        double max = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < k; i++) {
+          if(!(mix.weights[i] > 0.)) {
+            logp[i] = Double.NEGATIVE_INFINITY;
+            continue;
+          }
+          final double mahal = diagonal ? mahalanobisDiagonal(xoff, i) : mahalanobis(xoff, i);
+          final double l = mix.lognorm[i] - .5 * mahal;
+          logp[i] = l;
+          max = (l > max) ? l : max;
+        }
+        double sum = 0.;
+        for(int i = 0; i < k; i++) {
+          sum += Math.exp(logp[i] - max);
+        }
+        final double lse = max + Math.log(sum);
+        loglik += lse;
+        for(int i = 0, roff = o * k; i < k; i++, roff++) {
+          final double r = Math.exp(logp[i] - lse);
+          resp[roff] = r;
+          if(r >= MIN_PROBABILITY) {
+            wsum[i] += r;
+            for(int j = 0, soff = i * dim; j < dim; j++, soff++) {
+              sums[soff] += r * data[xoff + j];
+            }
+          }
+        }
+      }
+      return loglik;
+    }
+
+    /**
+     * Squared Mahalanobis distance, using the Cholesky factor.
+     * 
+     * @param xoff Object offset in the data array
+     * @param i Cluster
+     * @return Squared Mahalanobis distance
+     */
+    private double mahalanobis(int xoff, int i) {
+      final int dim = mix.dim;
+      final double[] data = mix.data, means = mix.means, chol = mix.chol;
+      final int moff = i * dim;
+      double mahal = 0.;
+      // Forward substitution: solve L y = x - mean.
+      for(int r = 0, ri = i * mix.csize; r < dim; r++) {
+        // Two partial sums, to shorten the dependency chain.
+        double v = data[xoff + r] - means[moff + r], v2 = 0.;
+        int c = 0;
+        for(; c + 1 < r; c += 2, ri += 2) {
+          v -= chol[ri] * diff[c];
+          v2 += chol[ri + 1] * diff[c + 1];
+        }
+        if(c < r) {
+          v -= chol[ri++] * diff[c];
+        }
+        v = (v - v2) * chol[ri++];
+        diff[r] = v;
+        mahal += v * v;
+      }
+      return mahal;
+    }
+
+    /**
+     * Squared Mahalanobis distance, for a diagonal covariance matrix.
+     * 
+     * @param xoff Object offset in the data array
+     * @param i Cluster
+     * @return Squared Mahalanobis distance
+     */
+    private double mahalanobisDiagonal(int xoff, int i) {
+      final int dim = mix.dim;
+      final double[] data = mix.data, means = mix.means, chol = mix.chol;
+      final int moff = i * dim;
+      double mahal = 0.;
+      for(int j = 0; j < dim; j++) {
+        final double d = data[xoff + j] - means[moff + j];
+        mahal += d * d * chol[moff + j];
+      }
+      return mahal;
+    }
+
+    /**
+     * M-step on this chunk: accumulate the scatter around the new means.
+     */
+    private void scatter() {
+      final int dim = mix.dim;
+      final double[] data = mix.data, means = mix.means, resp = mix.resp;
+      Arrays.fill(scatter, 0.);
+      for(int o = begin; o < end; o++) {
+        final int xoff = o * dim;
+        for(int i = 0, roff = o * k; i < k; i++, roff++) {
+          final double r = resp[roff];
+          if(!(r >= MIN_PROBABILITY)) {
+            continue;
+          }
+          final int moff = i * dim;
+          if(diagonal) {
+            for(int a = 0, soff = moff; a < dim; a++, soff++) {
+              final double d = data[xoff + a] - means[moff + a];
+              scatter[soff] += r * d * d;
+            }
+            continue;
+          }
+          for(int a = 0; a < dim; a++) {
+            diff[a] = data[xoff + a] - means[moff + a];
+          }
+          for(int a = 0, soff = i * mix.csize; a < dim; a++) {
+            final double rd = r * diff[a];
+            for(int b = 0; b <= a; b++, soff++) {
+              scatter[soff] += rd * diff[b];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>> extends AbstractParameterizer {
+    /**
+     * Flag to use diagonal covariance matrices only.
+     */
+    public static final OptionID DIAGONAL_ID = new OptionID("em.diagonal", "Use diagonal covariance matrices only, for high-dimensional data.");
+
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("em.threads", "Number of threads to use for the expectation step. 0 uses one thread per available processor.");
+
+    /**
+     * Number of clusters.
+     */
+    protected int k;
+
+    /**
+     * Stopping threshold.
+     */
+    protected double delta;
+
+    /**
+     * Initialization method.
+     */
+    protected KMeansInitialization<V> initializer;
+
+    /**
+     * Maximum number of iterations.
+     */
+    protected int maxiter = -1;
+
+    /**
+     * Use diagonal covariance matrices.
+     */
+    protected boolean diagonal = false;
+
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter kP = new IntParameter(EM.Parameterizer.K_ID);
+      kP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.getValue();
+      }
+
+      ObjectParameter<KMeansInitialization<V>> initialP = new ObjectParameter<>(EM.Parameterizer.INIT_ID, KMeansInitialization.class, RandomlyGeneratedInitialMeans.class);
+      if(config.grab(initialP)) {
+        initializer = initialP.instantiateClass(config);
+      }
+
+      DoubleParameter deltaP = new DoubleParameter(EM.Parameterizer.DELTA_ID, 0.0);
+      deltaP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+      if(config.grab(deltaP)) {
+        delta = deltaP.getValue();
+      }
+
+      IntParameter maxiterP = new IntParameter(KMeans.MAXITER_ID);
+      maxiterP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      maxiterP.setOptional(true);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.getValue();
+      }
+
+      Flag diagonalF = new Flag(DIAGONAL_ID);
+      if(config.grab(diagonalF)) {
+        diagonal = diagonalF.isTrue();
+      }
+
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelEM<V> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, diagonal, threads, false);
+    }
+  }
+}
@@ -208,6 +208,17 @@ public class AffinityPropagationClusteringAlgorithm<O> extends AbstractAlgorithm
     if(prog != null) {
       prog.setCompleted(LOG);
     }
+    return buildClustering(ids, assignment);
+  }
+
+  /**
+   * Build the clustering from the exemplar assignment.
+   * 
+   * @param ids Object IDs
+   * @param assignment Exemplar (offset) of each object
+   * @return Clustering
+   */
+  static Clustering<MedoidModel> buildClustering(ArrayDBIDs ids, int[] assignment) {
     // Cluster map, by lead object
     TIntObjectHashMap<ModifiableDBIDs> map = new TIntObjectHashMap<>();
     DBIDArrayIter i1 = ids.iter();
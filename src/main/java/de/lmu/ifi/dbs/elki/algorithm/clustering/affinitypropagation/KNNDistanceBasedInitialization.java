@@ -0,0 +1,274 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Sparse distance based initialization, which only keeps the similarities of
+ * the k nearest neighbors of each object.
+ * 
+ * The sparsity pattern is symmetrized: an entry is kept if either object is
+ * among the k nearest neighbors of the other. The diagonal is set to the
+ * quantile of the kept similarities. The kNN queries will use an index, if
+ * available.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ * @param <D> Distance type
+ */
+public class KNNDistanceBasedInitialization<O, D extends NumberDistance<D, ?>> implements SparseAffinityPropagationInitialization<O> {
+  /**
+   * Distance function.
+   */
+  DistanceFunction<? super O, D> distance;
+
+  /**
+   * Number of neighbors to keep.
+   */
+  int k;
+
+  /**
+   * Quantile to use.
+   */
+  double quantile;
+
+  /**
+   * Constructor.
+   * 
+   * @param distance Distance function
+   * @param k Number of neighbors to keep
+   * @param quantile Quantile
+   */
+  public KNNDistanceBasedInitialization(DistanceFunction<? super O, D> distance, int k, double quantile) {
+    super();
+    this.distance = distance;
+    this.k = k;
+    this.quantile = quantile;
+  }
+
+  @Override
+  public SparseSimilarityMatrix getSparseSimilarityMatrix(Database db, Relation<O> relation, ArrayDBIDs ids) {
+    final int size = ids.size();
+    DistanceQuery<O, D> dq = db.getDistanceQuery(relation, distance);
+    KNNQuery<O, D> knnq = db.getKNNQuery(dq, k + 1);
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+
+    // Neighbors of each object, including the object itself, sorted by offset.
+    int[][] nbr = new int[size][];
+    double[][] nsim = new double[size][];
+    int[] tmp = new int[k];
+    double[] tmps = new double[k];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      KNNList<D> knn = knnq.getKNNForDBID(it, k + 1);
+      int n = 0;
+      for(DistanceDBIDListIter<D> nit = knn.iter(); nit.valid() && n < k; nit.advance()) {
+        final int j = offsets.intValue(nit);
+        if(j < 0 || j == i) {
+          continue;
+        }
+        // Insertion sort by offset; k is small.
+        int p = n++;
+        for(; p > 0 && tmp[p - 1] > j; p--) {
+          tmp[p] = tmp[p - 1];
+          tmps[p] = tmps[p - 1];
+        }
+        tmp[p] = j;
+        tmps[p] = -nit.getDistance().doubleValue();
+      }
+      // Insert the diagonal entry (its similarity is set later).
+      int p = 0;
+      while(p < n && tmp[p] < i) {
+        p++;
+      }
+      nbr[i] = new int[n + 1];
+      nsim[i] = new double[n + 1];
+      System.arraycopy(tmp, 0, nbr[i], 0, p);
+      System.arraycopy(tmps, 0, nsim[i], 0, p);
+      nbr[i][p] = i;
+      System.arraycopy(tmp, p, nbr[i], p + 1, n - p);
+      System.arraycopy(tmps, p, nsim[i], p + 1, n - p);
+    }
+    offsets.destroy();
+
+    // Count the reverse neighbors that are not also forward neighbors.
+    int[] extra = new int[size + 1];
+    for(int j = 0; j < size; j++) {
+      for(int i : nbr[j]) {
+        if(i != j && Arrays.binarySearch(nbr[i], j) < 0) {
+          extra[i + 1]++;
+        }
+      }
+    }
+    for(int i = 0; i < size; i++) {
+      extra[i + 1] += extra[i];
+    }
+    // Collect them; as j is ascending, each row is sorted.
+    int[] ecol = new int[extra[size]];
+    double[] esim = new double[extra[size]];
+    int[] epos = new int[size];
+    for(int j = 0; j < size; j++) {
+      final int[] nj = nbr[j];
+      for(int q = 0; q < nj.length; q++) {
+        final int i = nj[q];
+        if(i != j && Arrays.binarySearch(nbr[i], j) < 0) {
+          ecol[extra[i] + epos[i]] = j;
+          esim[extra[i] + epos[i]] = nsim[j][q];
+          epos[i]++;
+        }
+      }
+    }
+
+    // Merge into the compressed sparse row format.
+    int[] start = new int[size + 1];
+    for(int i = 0; i < size; i++) {
+      start[i + 1] = start[i] + nbr[i].length + (extra[i + 1] - extra[i]);
+    }
+    int[] column = new int[start[size]];
+    double[] similarity = new double[start[size]];
+    double[] upper = new double[(start[size] - size) >> 1];
+    int u = 0;
+    for(int i = 0; i < size; i++) {
+      final int[] ni = nbr[i];
+      final double[] si = nsim[i];
+      int a = 0, b = extra[i], p = start[i];
+      final int bend = extra[i + 1];
+      while(a < ni.length || b < bend) {
+        if(b >= bend || (a < ni.length && ni[a] < ecol[b])) {
+          column[p] = ni[a];
+          similarity[p] = si[a];
+          a++;
+        }
+        else {
+          column[p] = ecol[b];
+          similarity[p] = esim[b];
+          b++;
+        }
+        if(column[p] > i) {
+          upper[u++] = similarity[p];
+        }
+        p++;
+      }
+      nbr[i] = null;
+      nsim[i] = null;
+    }
+    SparseSimilarityMatrix mat = new SparseSimilarityMatrix(start, column, similarity);
+    // On the diagonal, we place the chosen quantile (default: the median).
+    // With at most one object, there are no similarities to choose from; the
+    // algorithm handles this case itself.
+    mat.setDiagonal(size > 1 ? QuickSelect.quantile(upper, quantile) : 0.);
+    return mat;
+  }
+
+  @Override
+  public TypeInformation getInputTypeRestriction() {
+    return distance.getInputTypeRestriction();
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   * @param <D> Distance type
+   */
+  public static class Parameterizer<O, D extends NumberDistance<D, ?>> extends AbstractParameterizer {
+    /**
+     * Parameter for the number of neighbors.
+     */
+    public static final OptionID K_ID = new OptionID("ap.knn", "Number of nearest neighbors to keep the similarities of.");
+
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O, D> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    int k;
+
+    /**
+     * Quantile to use.
+     */
+    double quantile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<DistanceFunction<? super O, D>> param = new ObjectParameter<>(DistanceBasedInitializationWithMedian.Parameterizer.DISTANCE_ID, DistanceFunction.class, SquaredEuclideanDistanceFunction.class);
+      if(config.grab(param)) {
+        distance = param.instantiateClass(config);
+      }
+
+      IntParameter kP = new IntParameter(K_ID);
+      kP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+
+      DoubleParameter quantileP = new DoubleParameter(AffinityPropagationInitialization.QUANTILE_ID, .5);
+      if(config.grab(quantileP)) {
+        quantile = quantileP.doubleValue();
+      }
+    }
+
+    @Override
+    protected KNNDistanceBasedInitialization<O, D> makeInstance() {
+      return new KNNDistanceBasedInitialization<>(distance, k, quantile);
+    }
+  }
+}
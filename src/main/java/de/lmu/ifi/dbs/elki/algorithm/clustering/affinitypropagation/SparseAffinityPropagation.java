@@ -0,0 +1,411 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.progress.MutableProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Cluster analysis by affinity propagation, on a sparse similarity matrix.
+ * 
+ * Only the similarities, responsibilities and availabilities of the entries
+ * in the sparsity pattern are stored (e.g. of the k nearest neighbors, see
+ * {@link KNNDistanceBasedInitialization}), so memory is linear in the number
+ * of entries instead of quadratic in the number of objects. Responsibilities
+ * are updated in parallel over the rows, availabilities in parallel over the
+ * columns. Every entry is written by exactly one task, so the result does not
+ * depend on the number of threads. With a full sparsity pattern, the result is
+ * the same as with {@link AffinityPropagationClusteringAlgorithm}.
+ * 
+ * Reference:
+ * <p>
+ * Clustering by Passing Messages Between Data Points<br />
+ * B. J. Frey and D. Dueck<br />
+ * Science Vol 315
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf SparseAffinityPropagationInitialization
+ * @apiviz.uses SparseSimilarityMatrix
+ * 
+ * @param <O> object type
+ */
+@Title("Sparse Affinity Propagation: Clustering by Passing Messages Between Data Points")
+@Reference(title = "Clustering by Passing Messages Between Data Points", authors = "B. J. Frey and D. Dueck", booktitle = "Science Vol 315", url = "http://dx.doi.org/10.1126/science.1136800")
+public class SparseAffinityPropagation<O> extends AbstractAlgorithm<Clustering<MedoidModel>> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(SparseAffinityPropagation.class);
+
+  /**
+   * Number of rows per task.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Similarity initialization
+   */
+  SparseAffinityPropagationInitialization<O> initialization;
+
+  /**
+   * Damping factor lambda.
+   */
+  double lambda = 0.5;
+
+  /**
+   * Terminate after 10 iterations with no changes.
+   */
+  int convergence = 10;
+
+  /**
+   * Maximum number of iterations.
+   */
+  int maxiter = 1000;
+
+  /**
+   * Number of threads.
+   */
+  int threads;
+
+  /**
+   * Constructor.
+   * 
+   * @param initialization Similarity initialization
+   * @param lambda Damping factor
+   * @param convergence Termination threshold (Number of stable iterations)
+   * @param maxiter Maximum number of iterations
+   * @param threads Number of threads, 0 for automatic
+   */
+  public SparseAffinityPropagation(SparseAffinityPropagationInitialization<O> initialization, double lambda, int convergence, int maxiter, int threads) {
+    super();
+    this.initialization = initialization;
+    this.lambda = lambda;
+    this.convergence = convergence;
+    this.maxiter = maxiter;
+    this.threads = threads;
+  }
+
+  /**
+   * Perform affinity propagation clustering.
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering result
+   */
+  public Clustering<MedoidModel> run(Database db, Relation<O> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    if(size <= 1) {
+      // Nothing to propagate: a single object is its own exemplar.
+      Clustering<MedoidModel> clustering = new Clustering<>("Affinity Propagation Clustering", "ap-clustering");
+      if(size == 1) {
+        clustering.addToplevelCluster(new Cluster<>(ids, new MedoidModel(ids.get(0))));
+      }
+      return clustering;
+    }
+
+    final int[] assignment = new int[size];
+    final SparseSimilarityMatrix s = initialization.getSparseSimilarityMatrix(db, relation, ids);
+    final double[] r = new double[s.entries()];
+    final double[] a = new double[s.entries()];
+    if(LOG.isVerbose()) {
+      LOG.verbose("Sparse similarity matrix entries: " + s.entries());
+    }
+
+    // Set up the tasks, one per block of rows.
+    List<Callable<Void>> rtasks = new ArrayList<>(), atasks = new ArrayList<>();
+    List<Callable<Integer>> ctasks = new ArrayList<>();
+    for(int begin = 0; begin < size; begin += BLOCKSIZE) {
+      final int from = begin, to = Math.min(begin + BLOCKSIZE, size);
+      rtasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          updateResponsibilities(s, a, r, from, to);
+          return null;
+        }
+      });
+      atasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          updateAvailabilities(s, r, a, from, to);
+          return null;
+        }
+      });
+      ctasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return updateAssignment(s, a, r, assignment, from, to);
+        }
+      });
+    }
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Affinity Propagation Iteration", LOG) : null;
+    MutableProgress aprog = LOG.isVerbose() ? new MutableProgress("Stable assignments", size + 1, LOG) : null;
+
+    int inactive = 0;
+    try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+      for(int iteration = 0; iteration < maxiter && inactive < convergence; iteration++) {
+        executor.execute(rtasks);
+        executor.execute(atasks);
+        int changed = 0;
+        for(Integer c : executor.execute(ctasks)) {
+          changed += c;
+        }
+        inactive = (changed > 0) ? 0 : (inactive + 1);
+        if(prog != null) {
+          prog.incrementProcessed(LOG);
+        }
+        if(aprog != null) {
+          aprog.setProcessed(size - changed, LOG);
+        }
+      }
+    }
+    if(aprog != null) {
+      aprog.setProcessed(aprog.getTotal(), LOG);
+    }
+    if(prog != null) {
+      prog.setCompleted(LOG);
+    }
+    return AffinityPropagationClusteringAlgorithm.buildClustering(ids, assignment);
+  }
+
+  /**
+   * Update the responsibilities of a block of rows.
+   * 
+   * @param s Similarities
+   * @param a Availabilities
+   * @param r Responsibilities (output)
+   * @param from First row
+   * @param to Last row (exclusive)
+   */
+  private void updateResponsibilities(SparseSimilarityMatrix s, double[] a, double[] r, int from, int to) {
+    final double[] sim = s.similarity;
+    for(int i = from; i < to; i++) {
+      final int begin = s.start[i], end = s.start[i + 1];
+      // Find the two largest values
+      double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+      int maxp = -1;
+      for(int p = begin; p < end; p++) {
+        double val = a[p] + sim[p];
+        if(val > max1) {
+          max2 = max1;
+          max1 = val;
+          maxp = p;
+        }
+        else if(val > max2) {
+          max2 = val;
+        }
+      }
+      // With the maximum value known, update r:
+      for(int p = begin; p < end; p++) {
+        double val = sim[p] - ((p != maxp) ? max1 : max2);
+        r[p] = r[p] * lambda + val * (1. - lambda);
+      }
+    }
+  }
+
+  /**
+   * Update the availabilities of a block of columns.
+   * 
+   * As the sparsity pattern is symmetric, the entries of column k are found
+   * via row k and the transposition index.
+   * 
+   * @param s Similarities
+   * @param r Responsibilities
+   * @param a Availabilities (output)
+   * @param from First column
+   * @param to Last column (exclusive)
+   */
+  private void updateAvailabilities(SparseSimilarityMatrix s, double[] r, double[] a, int from, int to) {
+    final int[] column = s.column, transpose = s.transpose;
+    for(int k = from; k < to; k++) {
+      final int begin = s.start[k], end = s.start[k + 1];
+      // Compute sum of max(0, r_ik) for all i.
+      // For r_kk, don't apply the max.
+      double colposum = 0.;
+      for(int p = begin; p < end; p++) {
+        final double rik = r[transpose[p]];
+        if(column[p] == k || rik > 0.) {
+          colposum += rik;
+        }
+      }
+      for(int p = begin; p < end; p++) {
+        final int q = transpose[p], i = column[p];
+        double val = colposum;
+        // Adjust column sum by the one extra term.
+        if(i == k || r[q] > 0.) {
+          val -= r[q];
+        }
+        if(i != k && val > 0.) { // min
+          val = 0.;
+        }
+        a[q] = a[q] * lambda + val * (1 - lambda);
+      }
+    }
+  }
+
+  /**
+   * Update the exemplar assignment of a block of rows.
+   * 
+   * @param s Similarities
+   * @param a Availabilities
+   * @param r Responsibilities
+   * @param assignment Assignment (output)
+   * @param from First row
+   * @param to Last row (exclusive)
+   * @return Number of changed assignments
+   */
+  private static int updateAssignment(SparseSimilarityMatrix s, double[] a, double[] r, int[] assignment, int from, int to) {
+    final int[] column = s.column;
+    int changed = 0;
+    for(int i = from; i < to; i++) {
+      double max = Double.NEGATIVE_INFINITY;
+      int maxj = -1;
+      for(int p = s.start[i], end = s.start[i + 1]; p < end; p++) {
+        double v = a[p] + r[p];
+        if(v > max || (i == column[p] && v >= max)) {
+          max = v;
+          maxj = column[p];
+        }
+      }
+      if(assignment[i] != maxj) {
+        changed += 1;
+        assignment[i] = maxj;
+      }
+    }
+    return changed;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(initialization.getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> object type
+   */
+  public static class Parameterizer<O> extends AbstractParameterizer {
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("ap.threads", "Number of threads to use for the message updates. 0 uses one thread per available processor.");
+
+    /**
+     * Initialization function for the similarity matrix.
+     */
+    SparseAffinityPropagationInitialization<O> initialization;
+
+    /**
+     * Dampening parameter.
+     */
+    double lambda = .5;
+
+    /**
+     * Number of stable iterations for convergence.
+     */
+    int convergence;
+
+    /**
+     * Maximum number of iterations.
+     */
+    int maxiter;
+
+    /**
+     * Number of threads.
+     */
+    int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      final ObjectParameter<SparseAffinityPropagationInitialization<O>> param = new ObjectParameter<>(AffinityPropagationClusteringAlgorithm.Parameterizer.INITIALIZATION_ID, SparseAffinityPropagationInitialization.class, KNNDistanceBasedInitialization.class);
+      if(config.grab(param)) {
+        initialization = param.instantiateClass(config);
+      }
+      final DoubleParameter lambdaP = new DoubleParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.LAMBDA_ID, .5);
+      lambdaP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      lambdaP.addConstraint(CommonConstraints.LESS_THAN_ONE_DOUBLE);
+      if(config.grab(lambdaP)) {
+        lambda = lambdaP.doubleValue();
+      }
+      final IntParameter convergenceP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.CONVERGENCE_ID, 15);
+      convergenceP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(convergenceP)) {
+        convergence = convergenceP.intValue();
+      }
+      final IntParameter maxiterP = new IntParameter(AffinityPropagationClusteringAlgorithm.Parameterizer.MAXITER_ID, 1000);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.intValue();
+      }
+      final IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected SparseAffinityPropagation<O> makeInstance() {
+      return new SparseAffinityPropagation<>(initialization, lambda, convergence, maxiter, threads);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Sparse similarity matrix for affinity propagation, in compressed sparse row
+ * format.
+ * 
+ * The sparsity pattern must be symmetric and include the diagonal, and the
+ * columns of each row must be sorted. Missing entries are treated as a
+ * similarity of negative infinity, i.e. the corresponding object is never
+ * chosen as exemplar. Because the pattern is symmetric, columns can be
+ * traversed using the rows and a precomputed transposition index.
+ * 
+ * @author Erich Schubert
+ */
+public class SparseSimilarityMatrix {
+  /**
+   * Start of each row, with an additional entry for the end.
+   */
+  final int[] start;
+
+  /**
+   * Column of each entry.
+   */
+  final int[] column;
+
+  /**
+   * Similarity of each entry.
+   */
+  final double[] similarity;
+
+  /**
+   * Position of the transposed entry.
+   */
+  final int[] transpose;
+
+  /**
+   * Position of the diagonal entry of each row.
+   */
+  final int[] diagonal;
+
+  /**
+   * Constructor.
+   * 
+   * @param start Start of each row, of length size+1
+   * @param column Column of each entry, sorted within each row
+   * @param similarity Similarity of each entry
+   */
+  public SparseSimilarityMatrix(int[] start, int[] column, double[] similarity) {
+    super();
+    this.start = start;
+    this.column = column;
+    this.similarity = similarity;
+    final int size = start.length - 1;
+    this.transpose = new int[column.length];
+    this.diagonal = new int[size];
+    for(int i = 0; i < size; i++) {
+      diagonal[i] = Arrays.binarySearch(column, start[i], start[i + 1], i);
+      if(diagonal[i] < 0) {
+        throw new AbortException("Sparse similarity matrix does not contain the diagonal entry of row " + i);
+      }
+      for(int p = start[i]; p < start[i + 1]; p++) {
+        final int j = column[p];
+        final int q = Arrays.binarySearch(column, start[j], start[j + 1], i);
+        if(q < 0) {
+          throw new AbortException("Sparsity pattern of the similarity matrix is not symmetric: " + i + "," + j);
+        }
+        transpose[p] = q;
+      }
+    }
+  }
+
+  /**
+   * Get the number of rows.
+   * 
+   * @return Number of rows (and columns)
+   */
+  public int size() {
+    return diagonal.length;
+  }
+
+  /**
+   * Get the number of stored entries, including the diagonal.
+   * 
+   * @return Number of entries
+   */
+  public int entries() {
+    return column.length;
+  }
+
+  /**
+   * Set the diagonal entries ("preferences") to the given value.
+   * 
+   * @param preference Preference value
+   */
+  public void setDiagonal(double preference) {
+    for(int p : diagonal) {
+      similarity[p] = preference;
+    }
+  }
+}
@@ -71,6 +71,9 @@ public interface NeighborPredicate {
     /**
      * Get the neighbors of a reference object for DBSCAN.
      * 
+     * Implementations should allow concurrent calls, as they are used by
+     * {@link ParallelGeneralizedDBSCAN} from multiple threads.
+     * 
      * @param reference Reference object
      * @return Neighborhood
      */
@@ -0,0 +1,501 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.CoreObjectsModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Multi-threaded variant of Generalized DBSCAN.
+ * 
+ * The neighborhoods and the core property of all objects are evaluated
+ * concurrently, in blocks of the data set. Clusters are then formed by
+ * merging neighboring core points with a lock-free union-find structure, and
+ * each border point is assigned to the cluster of its first core neighbor (in
+ * database order). The resulting clusters of core points are identical to
+ * those of {@link GeneralizedDBSCAN}; border points reachable from more than
+ * one cluster may be assigned differently, as in any DBSCAN variant with a
+ * different processing order. The result does not depend on the number of
+ * threads.
+ * 
+ * The neighbor predicate instance must support concurrent calls to
+ * {@link NeighborPredicate.Instance#getNeighbors}; this holds for
+ * {@link EpsilonNeighborPredicate} with the linear scan and tree index range
+ * queries. The neighborhoods of core points are kept (as offsets) until the
+ * clusters have been formed, which needs memory linear in the number of
+ * core-neighbor pairs.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf CorePredicate
+ * @apiviz.composedOf NeighborPredicate
+ */
+@Title("Parallel Generalized DBSCAN")
+@Description("Generalized DBSCAN, evaluating neighborhoods with multiple threads and merging clusters with a concurrent union-find.")
+public class ParallelGeneralizedDBSCAN extends GeneralizedDBSCAN {
+  /**
+   * Get a logger for this algorithm
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGeneralizedDBSCAN.class);
+
+  /**
+   * Number of objects processed per task.
+   */
+  private static final int BLOCK_SIZE = 1024;
+
+  /**
+   * Number of threads to use.
+   */
+  protected int threads;
+
+  /**
+   * Constructor for parameterized algorithm.
+   * 
+   * @param npred Neighbor predicate.
+   * @param corepred Core point predicate.
+   * @param coremodel Keep track of core points.
+   * @param threads Number of threads, 0 for automatic
+   */
+  public ParallelGeneralizedDBSCAN(NeighborPredicate npred, CorePredicate corepred, boolean coremodel, int threads) {
+    super(npred, corepred, coremodel);
+    this.threads = threads;
+  }
+
+  @Override
+  public Clustering<Model> run(Database database) {
+    for (SimpleTypeInformation<?> t : npred.getOutputType()) {
+      if (corepred.acceptsType(t)) {
+        return new ParallelInstance<>(npred.instantiate(database, t), corepred.instantiate(database, t), coremodel, threads).run();
+      }
+    }
+    throw new AbortException("No compatible types found.");
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance for a particular data set.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.composedOf CorePredicate.Instance
+   * @apiviz.composedOf NeighborPredicate.Instance
+   * @apiviz.has UnionFind
+   */
+  public static class ParallelInstance<T> {
+    /**
+     * Marker for border points without a core neighbor.
+     */
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /**
+     * The neighborhood predicate
+     */
+    final NeighborPredicate.Instance<T> npred;
+
+    /**
+     * The core object property
+     */
+    final CorePredicate.Instance<T> corepred;
+
+    /**
+     * Track which objects are "core" objects.
+     */
+    final boolean coremodel;
+
+    /**
+     * Number of threads.
+     */
+    final int threads;
+
+    /**
+     * Object IDs, in processing order.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Map from object to offset in {@link #ids}.
+     */
+    WritableIntegerDataStore offsets;
+
+    /**
+     * Neighbor offsets of core points, {@code null} for non-core points.
+     */
+    int[][] coreneighbors;
+
+    /**
+     * Cluster structure of the core points.
+     */
+    UnionFind uf;
+
+    /**
+     * Lowest offset of a core neighbor, for non-core points.
+     */
+    AtomicIntegerArray border;
+
+    /**
+     * Full Constructor
+     * 
+     * @param npred Neighborhood predicate
+     * @param corepred Core object predicate
+     * @param coremodel Keep track of core points.
+     * @param threads Number of threads, 0 for automatic
+     */
+    public ParallelInstance(NeighborPredicate.Instance<T> npred, CorePredicate.Instance<T> corepred, boolean coremodel, int threads) {
+      super();
+      this.npred = npred;
+      this.corepred = corepred;
+      this.coremodel = coremodel;
+      this.threads = threads;
+    }
+
+    /**
+     * Run the actual GDBSCAN algorithm.
+     * 
+     * @return Clustering result
+     */
+    public Clustering<Model> run() {
+      ids = DBIDUtil.ensureArray(npred.getIDs());
+      final int size = ids.size();
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      for (DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      coreneighbors = new int[size][];
+      uf = new UnionFind(size);
+      border = new AtomicIntegerArray(size);
+      for (int i = 0; i < size; i++) {
+        border.set(i, NONE);
+      }
+
+      // Phase 1: evaluate neighborhood and core predicates.
+      final FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Parallel GDBSCAN neighborhoods", size, LOG) : null;
+      List<Callable<Void>> tasks = new ArrayList<>(size / BLOCK_SIZE + 1);
+      for (int beg = 0; beg < size; beg += BLOCK_SIZE) {
+        tasks.add(new NeighborhoodTask(beg, Math.min(beg + BLOCK_SIZE, size), progress));
+      }
+      ParallelExecutor.run(threads, tasks);
+      if (progress != null) {
+        progress.ensureCompleted(LOG);
+      }
+
+      // Phase 2: merge neighboring core points, and find border points.
+      tasks.clear();
+      for (int beg = 0; beg < size; beg += BLOCK_SIZE) {
+        tasks.add(new MergeTask(beg, Math.min(beg + BLOCK_SIZE, size)));
+      }
+      ParallelExecutor.run(threads, tasks);
+      offsets.destroy();
+
+      // Phase 3: number the clusters by their lowest core point.
+      // The root of each set is its lowest offset, so it is seen first.
+      final int[] clusterid = new int[size];
+      int numclusters = 0;
+      for (int i = 0; i < size; i++) {
+        if (coreneighbors[i] != null) {
+          final int root = uf.find(i);
+          clusterid[i] = (root == i) ? ++numclusters : clusterid[root];
+        }
+      }
+      coreneighbors = null;
+      // Cluster 0 is noise.
+      ArrayList<ArrayModifiableDBIDs> clusterlists = new ArrayList<>(numclusters + 1);
+      ArrayList<ArrayModifiableDBIDs> corelists = coremodel ? new ArrayList<ArrayModifiableDBIDs>(numclusters + 1) : null;
+      for (int i = 0; i <= numclusters; i++) {
+        clusterlists.add(DBIDUtil.newArray());
+        if (corelists != null) {
+          corelists.add(DBIDUtil.newArray());
+        }
+      }
+      for (DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int i = it.getOffset();
+        if (clusterid[i] > 0) {
+          clusterlists.get(clusterid[i]).add(it);
+          if (corelists != null) {
+            corelists.get(clusterid[i]).add(it);
+          }
+          continue;
+        }
+        final int b = border.get(i);
+        clusterlists.get(b != NONE ? clusterid[b] : 0).add(it);
+      }
+
+      Clustering<Model> result = new Clustering<>("GDBSCAN", "gdbscan-clustering");
+      for (int cid = 0; cid < clusterlists.size(); cid++) {
+        boolean isNoise = (cid == 0);
+        Cluster<Model> c;
+        if (corelists != null) {
+          c = new Cluster<Model>(clusterlists.get(cid), isNoise, new CoreObjectsModel(corelists.get(cid)));
+        } else {
+          c = new Cluster<Model>(clusterlists.get(cid), isNoise, ClusterModel.CLUSTER);
+        }
+        result.addToplevelCluster(c);
+      }
+      return result;
+    }
+
+    /**
+     * Evaluate the predicates for a block of objects.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     */
+    private class NeighborhoodTask implements Callable<Void> {
+      /**
+       * Block to process.
+       */
+      final int begin, end;
+
+      /**
+       * Progress logging (thread safe).
+       */
+      final FiniteProgress progress;
+
+      /**
+       * Constructor.
+       * 
+       * @param begin First offset
+       * @param end End offset (exclusive)
+       * @param progress Progress logging
+       */
+      NeighborhoodTask(int begin, int end, FiniteProgress progress) {
+        this.begin = begin;
+        this.end = end;
+        this.progress = progress;
+      }
+
+      @Override
+      public Void call() {
+        ArrayModifiableDBIDs buf = DBIDUtil.newArray();
+        DBIDArrayIter it = ids.iter();
+        for (it.seek(begin); it.valid() && it.getOffset() < end; it.advance()) {
+          final T neighbors = npred.getNeighbors(it);
+          if (corepred.isCorePoint(it, neighbors)) {
+            buf.clear();
+            npred.addDBIDs(buf, neighbors);
+            int[] n = new int[buf.size()];
+            int c = 0;
+            for (DBIDIter nn = buf.iter(); nn.valid(); nn.advance()) {
+              final int o = offsets.intValue(nn);
+              if (o >= 0) {
+                n[c++] = o;
+              }
+            }
+            coreneighbors[it.getOffset()] = (c < n.length) ? Arrays.copyOf(n, c) : n;
+          }
+          if (progress != null) {
+            progress.incrementProcessed(LOG);
+          }
+        }
+        return null;
+      }
+    }
+
+    /**
+     * Merge the core points of a block with their core neighbors, and record
+     * the lowest core neighbor of border points.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     */
+    private class MergeTask implements Callable<Void> {
+      /**
+       * Block to process.
+       */
+      final int begin, end;
+
+      /**
+       * Constructor.
+       * 
+       * @param begin First offset
+       * @param end End offset (exclusive)
+       */
+      MergeTask(int begin, int end) {
+        this.begin = begin;
+        this.end = end;
+      }
+
+      @Override
+      public Void call() {
+        for (int i = begin; i < end; i++) {
+          final int[] n = coreneighbors[i];
+          if (n == null) {
+            continue;
+          }
+          for (int j : n) {
+            if (coreneighbors[j] != null) {
+              uf.union(i, j);
+              continue;
+            }
+            // Border point: keep the lowest core neighbor.
+            for (int cur = border.get(j); i < cur; cur = border.get(j)) {
+              if (border.compareAndSet(j, cur, i)) {
+                break;
+              }
+            }
+          }
+        }
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Lock-free union-find on integer offsets.
+   * 
+   * Roots are always linked below the smaller root, so the representative of
+   * each set is its lowest element. Path halving is performed with
+   * compare-and-set, so concurrent finds and unions are safe.
+   * 
+   * @author Erich Schubert
+   */
+  public static class UnionFind {
+    /**
+     * Parent pointers.
+     */
+    final AtomicIntegerArray parent;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of elements
+     */
+    public UnionFind(int size) {
+      super();
+      parent = new AtomicIntegerArray(size);
+      for (int i = 0; i < size; i++) {
+        parent.set(i, i);
+      }
+    }
+
+    /**
+     * Find the representative of an element.
+     * 
+     * @param i Element
+     * @return Representative, the lowest element of the set
+     */
+    public int find(int i) {
+      for (int p = parent.get(i); p != i; p = parent.get(i)) {
+        final int gp = parent.get(p);
+        if (gp != p) {
+          // Path halving; failure is harmless.
+          parent.compareAndSet(i, p, gp);
+        }
+        i = gp;
+      }
+      return i;
+    }
+
+    /**
+     * Merge the sets of two elements.
+     * 
+     * @param a First element
+     * @param b Second element
+     */
+    public void union(int a, int b) {
+      while (true) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+          return;
+        }
+        // Link the larger root below the smaller root.
+        if (a < b) {
+          final int t = a;
+          a = b;
+          b = t;
+        }
+        if (parent.compareAndSet(a, a, b)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends GeneralizedDBSCAN.Parameterizer {
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("gdbscan.threads", "Number of threads to use for the neighborhood queries. 0 uses one thread per available processor.");
+
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+      if (config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelGeneralizedDBSCAN makeInstance() {
+      return new ParallelGeneralizedDBSCAN(npred, corepred, coremodel, threads);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDistanceDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Abstract base class for agglomerative clustering algorithms working on a
+ * (triangular) distance matrix with Lance-Williams updates.
+ * 
+ * Subclasses record the merges they perform; these are converted into the
+ * same pointer representation as produced by
+ * {@link NaiveAgglomerativeHierarchicalClustering}, where the cluster
+ * representative is always the object with the lowest offset.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.uses TriangularDistanceMatrix
+ * 
+ * @param <O> Object type
+ * @param <D> Distance type
+ */
+public abstract class AbstractAgglomerativeHierarchicalClustering<O, D extends NumberDistance<D, ?>> extends AbstractDistanceBasedAlgorithm<O, D, PointerHierarchyRepresentationResult<DoubleDistance>> implements HierarchicalClusteringAlgorithm<DoubleDistance> {
+  /**
+   * Current linkage method in use.
+   */
+  protected LinkageMethod linkage = WardLinkageMethod.STATIC;
+
+  /**
+   * Storage layout of the distance matrix.
+   */
+  protected TriangularDistanceMatrix.Storage storage;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public AbstractAgglomerativeHierarchicalClustering(DistanceFunction<? super O, D> distanceFunction, LinkageMethod linkage, TriangularDistanceMatrix.Storage storage) {
+    super(distanceFunction);
+    this.linkage = linkage;
+    this.storage = storage;
+  }
+
+  /**
+   * Compute the initial distance matrix.
+   * 
+   * @param dq Distance query
+   * @param ids Object IDs
+   * @return Distance matrix
+   */
+  protected TriangularDistanceMatrix initializeDistanceMatrix(DistanceQuery<O, D> dq, ArrayDBIDs ids) {
+    TriangularDistanceMatrix matrix = TriangularDistanceMatrix.make(storage, ids.size());
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    // Ward uses variances -- i.e. squared values
+    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
+    long pos = 0;
+    for (ix.seek(0); ix.valid(); ix.advance()) {
+      for (iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        double d = dq.distance(ix, iy).doubleValue();
+        matrix.set(pos++, square ? d * d : d);
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Build the pointer representation from the recorded merges.
+   * 
+   * @param ids Object IDs
+   * @param mergea First cluster (any member offset) of each merge
+   * @param mergeb Second cluster (any member offset) of each merge
+   * @param heights Merge heights
+   * @param sort Sort merges by height (needed if they were not found in order)
+   * @return Pointer representation
+   */
+  protected static PointerHierarchyRepresentationResult<DoubleDistance> buildResult(ArrayDBIDs ids, int[] mergea, int[] mergeb, final double[] heights, boolean sort) {
+    final int size = ids.size(), nmerges = heights.length;
+    int[] order = new int[nmerges];
+    for (int i = 0; i < nmerges; i++) {
+      order[i] = i;
+    }
+    if (sort) {
+      // Sort by height, and by merge number on ties to keep the order stable.
+      IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+        @Override
+        public int compare(int x, int y) {
+          final int c = Double.compare(heights[x], heights[y]);
+          return (c != 0) ? c : (x < y) ? -1 : (x > y) ? 1 : 0;
+        }
+      });
+    }
+
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDistanceDataStore lambda = DataStoreUtil.makeDoubleDistanceStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for (; ix.valid(); ix.advance()) {
+      pi.put(ix, ix);
+      lambda.put(ix, Double.POSITIVE_INFINITY);
+    }
+    // Replay the merges; each cluster is represented by its lowest offset.
+    int[] parent = new int[size];
+    for (int i = 0; i < size; i++) {
+      parent[i] = i;
+    }
+    for (int i = 0; i < nmerges; i++) {
+      final int m = order[i];
+      int a = find(parent, mergea[m]), b = find(parent, mergeb[m]);
+      final int x = Math.max(a, b), y = Math.min(a, b);
+      parent[x] = y;
+      ix.seek(x);
+      iy.seek(y);
+      pi.put(ix, iy);
+      lambda.put(ix, heights[m]);
+    }
+    return new PointerHierarchyRepresentationResult<>(ids, pi, lambda);
+  }
+
+  /**
+   * Find the representative in a union-find array, with path halving.
+   * 
+   * @param parent Parent array
+   * @param i Element
+   * @return Representative
+   */
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  @Override
+  public DoubleDistance getDistanceFactory() {
+    return DoubleDistance.FACTORY;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    // The input relation must match our distance function:
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   * @param <D> Distance type
+   */
+  public abstract static class Parameterizer<O, D extends NumberDistance<D, ?>> extends AbstractDistanceBasedAlgorithm.Parameterizer<O, D> {
+    /**
+     * Option ID for linkage parameter.
+     */
+    public static final OptionID LINKAGE_ID = NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID;
+
+    /**
+     * Option ID for the distance matrix storage.
+     */
+    public static final OptionID STORAGE_ID = new OptionID("hierarchical.matrix", "Storage of the distance matrix: Java double or float arrays, or off-heap buffers for more than 65000 objects.");
+
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    /**
+     * Distance matrix storage.
+     */
+    protected TriangularDistanceMatrix.Storage storage;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // We don't call super, because we want a different default distance.
+      ObjectParameter<DistanceFunction<O, D>> distanceFunctionP = makeParameterDistanceFunction(SquaredEuclideanDistanceFunction.class, DistanceFunction.class);
+      if (config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if (config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+      }
+
+      EnumParameter<TriangularDistanceMatrix.Storage> storageP = new EnumParameter<>(STORAGE_ID, TriangularDistanceMatrix.Storage.class, TriangularDistanceMatrix.Storage.DOUBLE);
+      if (config.grab(storageP)) {
+        storage = storageP.getValue();
+      }
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.IndexedDoubleMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Generic agglomerative hierarchical clustering, using a priority queue of
+ * nearest-neighbor candidates as proposed by Müllner.
+ * 
+ * For every cluster, a lower bound of the distance to its nearest neighbor
+ * with a higher index is kept in an indexed heap; candidates are only
+ * recomputed when they turn out to be stale. This works with all
+ * Lance-Williams linkages, including {@link CentroidLinkageMethod} and
+ * {@link MedianLinkageMethod}, and usually runs in close to O(n^2) time,
+ * although the worst case is O(n^3).
+ * 
+ * Reference:
+ * <p>
+ * D. Müllner<br />
+ * Modern hierarchical, agglomerative clustering algorithms<br />
+ * arXiv preprint arXiv:1109.2378 (2011)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has IndexedDoubleMinHeap
+ * 
+ * @param <O> Object type
+ * @param <D> Distance type
+ */
+@Reference(authors = "D. Müllner", title = "Modern hierarchical, agglomerative clustering algorithms", booktitle = "arXiv preprint arXiv:1109.2378", url = "http://arxiv.org/abs/1109.2378")
+public class MuellnerHierarchicalClustering<O, D extends NumberDistance<D, ?>> extends AbstractAgglomerativeHierarchicalClustering<O, D> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(MuellnerHierarchicalClustering.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public MuellnerHierarchicalClustering(DistanceFunction<? super O, D> distanceFunction, LinkageMethod linkage, TriangularDistanceMatrix.Storage storage) {
+    super(distanceFunction, linkage, storage);
+  }
+
+  /**
+   * Run the algorithm
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult<DoubleDistance> run(Database db, Relation<O> relation) {
+    DistanceQuery<O, D> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    if (SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+
+    TriangularDistanceMatrix matrix = initializeDistanceMatrix(dq, ids);
+    // NaN distances would prevent the candidate check below from terminating.
+    for (long pos = 0, end = TriangularDistanceMatrix.triangleSize(size); pos < end; pos++) {
+      final double d = matrix.get(pos);
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        throw new AbortException("Distance matrix contains NaN or infinite values.");
+      }
+    }
+    int[] csize = new int[size];
+    for (int i = 0; i < size; i++) {
+      csize[i] = 1;
+    }
+    // Nearest neighbor candidate with a higher index, and a lower bound of its
+    // distance.
+    int[] nn = new int[size];
+    double[] mindist = new double[size];
+    IndexedDoubleMinHeap heap = new IndexedDoubleMinHeap(mindist);
+    for (int i = 0; i < size - 1; i++) {
+      updateNeighbor(matrix, csize, nn, mindist, i);
+      heap.add(i);
+    }
+
+    final int nmerges = Math.max(size - 1, 0);
+    int[] mergea = new int[nmerges], mergeb = new int[nmerges];
+    double[] heights = new double[nmerges];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", nmerges, LOG) : null;
+    for (int m = 0; m < nmerges; m++) {
+      int a = heap.peek(), b = nn[a];
+      // Recompute stale candidates until the top of the heap is exact.
+      while (matrix.get(b, a) != mindist[a]) {
+        updateNeighbor(matrix, csize, nn, mindist, a);
+        heap.update(a);
+        a = heap.peek();
+        b = nn[a];
+      }
+      final double dab = mindist[a];
+      heap.remove(a);
+      mergea[m] = a;
+      mergeb[m] = b;
+      heights[m] = dab;
+
+      // Merge a into b (note: a < b)
+      final int sizea = csize[a], sizeb = csize[b];
+      for (int j = 0; j < size; j++) {
+        if (j == a || j == b || csize[j] == 0) {
+          continue;
+        }
+        final long apos = TriangularDistanceMatrix.index(a, j), bpos = TriangularDistanceMatrix.index(b, j);
+        matrix.set(bpos, linkage.combine(sizea, matrix.get(apos), sizeb, matrix.get(bpos), csize[j], dab));
+      }
+      csize[b] = sizea + sizeb;
+      csize[a] = 0;
+
+      // Update the candidates of the clusters before b.
+      for (int j = 0; j < b; j++) {
+        if (csize[j] == 0) {
+          continue;
+        }
+        if (j < a && nn[j] == a) {
+          // Still a lower bound, will be recomputed if stale.
+          nn[j] = b;
+        }
+        final double d = matrix.get(b, j);
+        if (d < mindist[j]) {
+          nn[j] = b;
+          mindist[j] = d;
+          heap.update(j);
+        }
+      }
+      // Recompute the candidate of the merged cluster.
+      if (heap.contains(b)) {
+        if (updateNeighbor(matrix, csize, nn, mindist, b)) {
+          heap.update(b);
+        } else {
+          heap.remove(b);
+        }
+      }
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+    }
+    if (prog != null) {
+      prog.ensureCompleted(LOG);
+    }
+    // Merges are found in order, which is not necessarily monotone.
+    return buildResult(ids, mergea, mergeb, heights, false);
+  }
+
+  /**
+   * Find the nearest neighbor with a higher index.
+   * 
+   * @param matrix Distance matrix
+   * @param csize Cluster sizes
+   * @param nn Neighbor candidates (output)
+   * @param mindist Neighbor distances (output)
+   * @param i Cluster to update
+   * @return {@code false} when there is no remaining cluster after i
+   */
+  private static boolean updateNeighbor(TriangularDistanceMatrix matrix, int[] csize, int[] nn, double[] mindist, int i) {
+    int best = -1;
+    double bestd = Double.POSITIVE_INFINITY;
+    for (int j = i + 1; j < csize.length; j++) {
+      if (csize[j] == 0) {
+        continue;
+      }
+      final double d = matrix.get(TriangularDistanceMatrix.triangleSize(j) + i);
+      if (best < 0 || d < bestd) {
+        best = j;
+        bestd = d;
+      }
+    }
+    nn[i] = best;
+    mindist[i] = bestd;
+    return best >= 0;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   * @param <D> Distance type
+   */
+  public static class Parameterizer<O, D extends NumberDistance<D, ?>> extends AbstractAgglomerativeHierarchicalClustering.Parameterizer<O, D> {
+    @Override
+    protected MuellnerHierarchicalClustering<O, D> makeInstance() {
+      return new MuellnerHierarchicalClustering<>(distanceFunction, linkage, storage);
+    }
+  }
+}
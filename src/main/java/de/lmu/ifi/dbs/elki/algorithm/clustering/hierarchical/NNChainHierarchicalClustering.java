@@ -0,0 +1,212 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Agglomerative hierarchical clustering using the nearest-neighbor chain
+ * algorithm, in O(n^2) time.
+ * 
+ * The algorithm follows a chain of nearest neighbors until it finds a pair of
+ * reciprocal nearest neighbors, which are merged. This is only correct for
+ * reducible linkages (single, complete, average and Ward linkage), but not
+ * for {@link CentroidLinkageMethod} and {@link MedianLinkageMethod}; use
+ * {@link MuellnerHierarchicalClustering} for these.
+ * 
+ * Reference:
+ * <p>
+ * D. Müllner<br />
+ * Modern hierarchical, agglomerative clustering algorithms<br />
+ * arXiv preprint arXiv:1109.2378 (2011)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ * @param <D> Distance type
+ */
+@Reference(authors = "D. Müllner", title = "Modern hierarchical, agglomerative clustering algorithms", booktitle = "arXiv preprint arXiv:1109.2378", url = "http://arxiv.org/abs/1109.2378")
+public class NNChainHierarchicalClustering<O, D extends NumberDistance<D, ?>> extends AbstractAgglomerativeHierarchicalClustering<O, D> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNChainHierarchicalClustering.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param storage Distance matrix storage
+   */
+  public NNChainHierarchicalClustering(DistanceFunction<? super O, D> distanceFunction, LinkageMethod linkage, TriangularDistanceMatrix.Storage storage) {
+    super(distanceFunction, linkage, storage);
+  }
+
+  /**
+   * Run the algorithm
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult<DoubleDistance> run(Database db, Relation<O> relation) {
+    if (CentroidLinkageMethod.class.isInstance(linkage) || MedianLinkageMethod.class.isInstance(linkage)) {
+      throw new AbortException("The NN-chain algorithm requires a reducible linkage; " + linkage.getClass().getSimpleName() + " is not.");
+    }
+    DistanceQuery<O, D> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    if (SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+
+    TriangularDistanceMatrix matrix = initializeDistanceMatrix(dq, ids);
+    // Cluster sizes, 0 for clusters already merged.
+    int[] csize = new int[size];
+    for (int i = 0; i < size; i++) {
+      csize[i] = 1;
+    }
+    final int nmerges = Math.max(size - 1, 0);
+    int[] mergea = new int[nmerges], mergeb = new int[nmerges];
+    double[] heights = new double[nmerges];
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("NN-chain clustering", nmerges, LOG) : null;
+    int[] chain = new int[size];
+    int clen = 0, first = 0;
+    for (int m = 0; m < nmerges;) {
+      if (clen == 0) {
+        // Start a new chain at the first remaining cluster.
+        while (csize[first] == 0) {
+          first++;
+        }
+        chain[clen++] = first;
+      }
+      final int a = chain[clen - 1];
+      // Prefer the previous chain element on ties, to guarantee termination.
+      final int prev = (clen > 1) ? chain[clen - 2] : -1;
+      int b = prev;
+      double mindist = (prev >= 0) ? matrix.get(a, prev) : Double.POSITIVE_INFINITY;
+      final long abase = TriangularDistanceMatrix.triangleSize(a);
+      for (int j = 0; j < a; j++) {
+        if (csize[j] > 0) {
+          final double d = matrix.get(abase + j);
+          if (d < mindist) {
+            mindist = d;
+            b = j;
+          }
+        }
+      }
+      for (int j = a + 1; j < size; j++) {
+        if (csize[j] > 0) {
+          final double d = matrix.get(TriangularDistanceMatrix.triangleSize(j) + a);
+          if (d < mindist) {
+            mindist = d;
+            b = j;
+          }
+        }
+      }
+      if (b < 0) {
+        throw new AbortException("Distance matrix contains NaN or infinite values.");
+      }
+      if (b != prev) {
+        chain[clen++] = b;
+        continue;
+      }
+      // Reciprocal nearest neighbors: merge.
+      clen -= 2;
+      merge(matrix, csize, a, b, mindist);
+      mergea[m] = a;
+      mergeb[m] = b;
+      heights[m] = mindist;
+      m++;
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+    }
+    if (prog != null) {
+      prog.ensureCompleted(LOG);
+    }
+    // NN-chain finds the merges out of order.
+    return buildResult(ids, mergea, mergeb, heights, true);
+  }
+
+  /**
+   * Merge two clusters, keeping the lower index, and update the distance
+   * matrix.
+   * 
+   * @param matrix Distance matrix
+   * @param csize Cluster sizes
+   * @param a First cluster
+   * @param b Second cluster
+   * @param dab Distance of a and b
+   */
+  protected void merge(TriangularDistanceMatrix matrix, int[] csize, int a, int b, double dab) {
+    final int x = Math.max(a, b), y = Math.min(a, b);
+    final int sizex = csize[x], sizey = csize[y];
+    for (int j = 0; j < csize.length; j++) {
+      if (j == x || j == y || csize[j] == 0) {
+        continue;
+      }
+      final long xpos = TriangularDistanceMatrix.index(x, j), ypos = TriangularDistanceMatrix.index(y, j);
+      matrix.set(ypos, linkage.combine(sizex, matrix.get(xpos), sizey, matrix.get(ypos), csize[j], dab));
+    }
+    csize[y] = sizex + sizey;
+    csize[x] = 0;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   * @param <D> Distance type
+   */
+  public static class Parameterizer<O, D extends NumberDistance<D, ?>> extends AbstractAgglomerativeHierarchicalClustering.Parameterizer<O, D> {
+    @Override
+    protected NNChainHierarchicalClustering<O, D> makeInstance() {
+      return new NNChainHierarchicalClustering<>(distanceFunction, linkage, storage);
+    }
+  }
+}
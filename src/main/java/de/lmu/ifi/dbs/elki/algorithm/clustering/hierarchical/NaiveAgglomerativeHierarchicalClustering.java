@@ -58,7 +58,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * strategies.
  * 
  * This is the naive O(n^3) algorithm. See {@link SLINK} for a much faster
- * algorithm (however, only for single-linkage).
+ * algorithm (however, only for single-linkage), and
+ * {@link NNChainHierarchicalClustering} and
+ * {@link MuellnerHierarchicalClustering} for O(n^2) algorithms supporting
+ * other linkages and more compact distance matrixes.
  * 
  * Reference for the unified concept:
  * <p>
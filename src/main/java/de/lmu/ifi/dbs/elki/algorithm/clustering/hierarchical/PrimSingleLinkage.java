@@ -0,0 +1,439 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Single-linkage clustering via the minimum spanning tree, computed with a
+ * multi-threaded variant of Prim's algorithm.
+ * 
+ * The single-linkage dendrogram is obtained by merging along the edges of the
+ * minimum spanning tree, in order of increasing length. Like {@link SLINK},
+ * this needs O(n^2) distance computations and O(n) memory, but the distance
+ * computations of each step are split across worker threads, which only
+ * synchronize once per added edge.
+ * 
+ * The pointer representation uses the lowest offset of each cluster as
+ * representative, as in {@link NaiveAgglomerativeHierarchicalClustering}.
+ * 
+ * Reference:
+ * <p>
+ * J. C. Gower and G. J. S. Ross<br />
+ * Minimum spanning trees and single linkage cluster analysis<br />
+ * Journal of the Royal Statistical Society. Series C, Vol. 18, No. 1
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree
+ * 
+ * @param <O> Object type
+ * @param <D> Distance type
+ */
+@Title("Single-linkage clustering using Prim's minimum spanning tree")
+@Description("Computes the single-linkage hierarchy from the minimum spanning tree, found with Prim's algorithm using multiple threads.")
+@Reference(authors = "J. C. Gower and G. J. S. Ross", title = "Minimum spanning trees and single linkage cluster analysis", booktitle = "Journal of the Royal Statistical Society. Series C, Vol. 18, No. 1", url = "http://dx.doi.org/10.2307/2346439")
+public class PrimSingleLinkage<O, D extends NumberDistance<D, ?>> extends AbstractDistanceBasedAlgorithm<O, D, PointerHierarchyRepresentationResult<DoubleDistance>> implements HierarchicalClusteringAlgorithm<DoubleDistance> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(PrimSingleLinkage.class);
+
+  /**
+   * Number of threads to use.
+   */
+  protected int threads;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function to use
+   * @param threads Number of threads, 0 for automatic
+   */
+  public PrimSingleLinkage(DistanceFunction<? super O, D> distanceFunction, int threads) {
+    super(distanceFunction);
+    this.threads = threads;
+  }
+
+  /**
+   * Run the algorithm
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult<DoubleDistance> run(Database db, Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final int nedges = Math.max(size - 1, 0);
+    final MST mst = new MST(size, nedges);
+    if (nedges > 0) {
+      final DistanceQuery<O, D> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      // Node 0 is the start node, and not assigned to any worker.
+      final int nthreads = Math.min(ParallelExecutor.getThreads(threads), nedges);
+      final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Prim's minimum spanning tree", nedges, LOG) : null;
+      List<Worker> workers = new ArrayList<>(nthreads);
+      final CyclicBarrier barrier = new CyclicBarrier(nthreads, new Runnable() {
+        @Override
+        public void run() {
+          mst.addEdge(prog);
+        }
+      });
+      for (int t = 0, beg = 1; t < nthreads; t++) {
+        final int end = 1 + (int) ((nedges * (long) (t + 1)) / nthreads);
+        workers.add(new Worker(t, beg, end, mst, barrier, relation, ids, dq));
+        beg = end;
+      }
+      mst.localbest = new int[nthreads];
+      mst.localdist = new double[nthreads];
+      ParallelExecutor.run(nthreads, workers);
+      if (prog != null) {
+        prog.ensureCompleted(LOG);
+      }
+    }
+    // Merge along the tree edges, in order of increasing length.
+    return AbstractAgglomerativeHierarchicalClustering.buildResult(ids, mst.node, mst.parent, mst.length, true);
+  }
+
+  @Override
+  public DoubleDistance getDistanceFactory() {
+    return DoubleDistance.FACTORY;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Shared state of the minimum spanning tree construction.
+   * 
+   * All fields are only modified by the barrier action, or by the workers on
+   * their own slots; the barrier ensures visibility.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class MST {
+    /**
+     * Edges found: new node, and the tree node it attaches to.
+     */
+    final int[] node, parent;
+
+    /**
+     * Edge lengths.
+     */
+    final double[] length;
+
+    /**
+     * Closest tree node of each node not yet in the tree.
+     */
+    final int[] src;
+
+    /**
+     * Number of edges found.
+     */
+    int edges = 0;
+
+    /**
+     * Node most recently added to the tree.
+     */
+    int current = 0;
+
+    /**
+     * Best candidate of each worker in the current step.
+     */
+    int[] localbest;
+
+    /**
+     * Distance of the best candidate of each worker.
+     */
+    double[] localdist;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of nodes
+     * @param nedges Number of edges
+     */
+    MST(int size, int nedges) {
+      node = new int[nedges];
+      parent = new int[nedges];
+      length = new double[nedges];
+      src = new int[size];
+    }
+
+    /**
+     * Choose the globally best candidate, and add it to the tree.
+     * 
+     * @param prog Progress logging
+     */
+    void addEdge(FiniteProgress prog) {
+      int best = -1;
+      double bestd = Double.POSITIVE_INFINITY;
+      for (int t = 0; t < localbest.length; t++) {
+        final int c = localbest[t];
+        if (c < 0) {
+          continue;
+        }
+        // Ties are broken by node number, independent of the threads.
+        if (best < 0 || localdist[t] < bestd || (localdist[t] == bestd && c < best)) {
+          best = c;
+          bestd = localdist[t];
+        }
+      }
+      if (best < 0) {
+        throw new AbortException("No candidate found for the minimum spanning tree.");
+      }
+      node[edges] = best;
+      parent[edges] = src[best];
+      length[edges] = bestd;
+      ++edges;
+      current = best;
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+    }
+  }
+
+  /**
+   * Worker maintaining the candidate edges of a range of nodes.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Worker implements Callable<Void> {
+    /**
+     * Worker number.
+     */
+    final int num;
+
+    /**
+     * Nodes not yet in the tree.
+     */
+    final int[] todo;
+
+    /**
+     * Distance of each remaining node to the tree.
+     */
+    final double[] best;
+
+    /**
+     * Number of remaining nodes.
+     */
+    int remaining;
+
+    /**
+     * Shared state.
+     */
+    final MST mst;
+
+    /**
+     * Barrier, once per step.
+     */
+    final CyclicBarrier barrier;
+
+    /**
+     * Data relation.
+     */
+    final Relation<O> relation;
+
+    /**
+     * Object IDs.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<O, D> dq;
+
+    /**
+     * Constructor.
+     * 
+     * @param num Worker number
+     * @param begin First node
+     * @param end End node (exclusive)
+     * @param mst Shared state
+     * @param barrier Step barrier
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param dq Distance query
+     */
+    Worker(int num, int begin, int end, MST mst, CyclicBarrier barrier, Relation<O> relation, ArrayDBIDs ids, DistanceQuery<O, D> dq) {
+      this.num = num;
+      this.remaining = end - begin;
+      this.todo = new int[remaining];
+      this.best = new double[remaining];
+      for (int i = 0; i < remaining; i++) {
+        todo[i] = begin + i;
+        best[i] = Double.POSITIVE_INFINITY;
+      }
+      this.mst = mst;
+      this.barrier = barrier;
+      this.relation = relation;
+      this.ids = ids;
+      this.dq = dq;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Void call() {
+      final DistanceFunction<? super O, D> df = getDistanceFunction();
+      final PrimitiveDoubleDistanceFunction<? super O> pdf = (df instanceof PrimitiveDoubleDistanceFunction) ? (PrimitiveDoubleDistanceFunction<? super O>) df : null;
+      final DBIDArrayIter ic = ids.iter(), ij = ids.iter();
+      // Objects of this worker, for primitive distances.
+      final List<O> objs = (pdf != null) ? new ArrayList<O>(todo.length) : null;
+      if (objs != null) {
+        for (int i = 0; i < todo.length; i++) {
+          ij.seek(todo[i]);
+          objs.add(relation.get(ij));
+        }
+      }
+      final int first = todo.length > 0 ? todo[0] : 0;
+      try {
+        while (mst.edges < mst.node.length) {
+          final int current = mst.current;
+          ic.seek(current);
+          final O ocur = (pdf != null) ? relation.get(ic) : null;
+          int lbest = -1;
+          double ldist = Double.POSITIVE_INFINITY;
+          for (int i = 0; i < remaining; i++) {
+            final int j = todo[i];
+            final double d;
+            if (pdf != null) {
+              d = pdf.doubleDistance(ocur, objs.get(j - first));
+            } else {
+              ij.seek(j);
+              d = dq.distance(ic, ij).doubleValue();
+            }
+            if (d < best[i]) {
+              best[i] = d;
+              mst.src[j] = current;
+            }
+            if (lbest < 0 || best[i] < ldist || (best[i] == ldist && j < lbest)) {
+              lbest = j;
+              ldist = best[i];
+            }
+          }
+          mst.localbest[num] = lbest;
+          mst.localdist[num] = ldist;
+          barrier.await();
+          // Remove the node just added, if it was ours.
+          final int added = mst.current;
+          for (int i = 0; i < remaining; i++) {
+            if (todo[i] == added) {
+              --remaining;
+              todo[i] = todo[remaining];
+              best[i] = best[remaining];
+              break;
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AbortException("Interrupted while waiting for worker threads.", e);
+      } catch (BrokenBarrierException e) {
+        throw new AbortException("Another worker thread failed.", e);
+      } catch (RuntimeException e) {
+        // Release the other workers.
+        barrier.reset();
+        throw e;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   * @param <D> Distance type
+   */
+  public static class Parameterizer<O, D extends NumberDistance<D, ?>> extends AbstractDistanceBasedAlgorithm.Parameterizer<O, D> {
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("prim.threads", "Number of threads to use for the distance computations. 0 uses one thread per available processor.");
+
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+      if (config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected PrimSingleLinkage<O, D> makeInstance() {
+      return new PrimSingleLinkage<>(distanceFunction, threads);
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Lower triangular distance matrix (without the diagonal), used as scratch
+ * space by the agglomerative clustering algorithms.
+ * 
+ * Entry (x, y) with y &lt; x is stored at position {@code x*(x-1)/2+y}. The
+ * positions are 64 bit values, so that the off-heap storages can hold more
+ * than 2<sup>31</sup> entries (about 65000 objects).
+ * 
+ * @author Erich Schubert
+ */
+public abstract class TriangularDistanceMatrix {
+  /**
+   * Storage layouts.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static enum Storage {
+    /**
+     * Java double array.
+     */
+    DOUBLE,
+    /**
+     * Java float array, using half the memory.
+     */
+    FLOAT,
+    /**
+     * Direct (off-heap) buffers of double values.
+     */
+    OFFHEAP_DOUBLE,
+    /**
+     * Direct (off-heap) buffers of float values.
+     */
+    OFFHEAP_FLOAT,
+  }
+
+  /**
+   * Bits per off-heap segment (in bytes).
+   */
+  private static final int SEGMENT_BITS = 30;
+
+  /**
+   * Size of the matrix (number of objects).
+   */
+  protected final int size;
+
+  /**
+   * Constructor.
+   * 
+   * @param size Number of objects
+   */
+  protected TriangularDistanceMatrix(int size) {
+    super();
+    this.size = size;
+  }
+
+  /**
+   * Allocate a new matrix.
+   * 
+   * @param storage Storage layout
+   * @param size Number of objects
+   * @return New matrix
+   */
+  public static TriangularDistanceMatrix make(Storage storage, int size) {
+    switch (storage) {
+    case DOUBLE:
+      return new DoubleArrayMatrix(size);
+    case FLOAT:
+      return new FloatArrayMatrix(size);
+    case OFFHEAP_DOUBLE:
+      return new DirectDoubleMatrix(size);
+    case OFFHEAP_FLOAT:
+      return new DirectFloatMatrix(size);
+    default:
+      throw new AbortException("Unsupported storage: " + storage);
+    }
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   * 
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
+  }
+
+  /**
+   * Position of entry (x, y) in the matrix.
+   * 
+   * @param x First index
+   * @param y Second index
+   * @return Position
+   */
+  public static long index(int x, int y) {
+    return (x > y) ? triangleSize(x) + y : triangleSize(y) + x;
+  }
+
+  /**
+   * Get the size of the matrix.
+   * 
+   * @return Number of objects
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the value at position (x, y), x != y.
+   * 
+   * @param x First index
+   * @param y Second index
+   * @return Value
+   */
+  public double get(int x, int y) {
+    return get(index(x, y));
+  }
+
+  /**
+   * Set the value at position (x, y), x != y.
+   * 
+   * @param x First index
+   * @param y Second index
+   * @param v New value
+   */
+  public void set(int x, int y, double v) {
+    set(index(x, y), v);
+  }
+
+  /**
+   * Get the value at the given position.
+   * 
+   * @param pos Position, see {@link #index}
+   * @return Value
+   */
+  public abstract double get(long pos);
+
+  /**
+   * Set the value at the given position.
+   * 
+   * @param pos Position, see {@link #index}
+   * @param v New value
+   */
+  public abstract void set(long pos, double v);
+
+  /**
+   * Check that the matrix fits into a Java array.
+   * 
+   * @param size Number of objects
+   * @return Array length
+   */
+  private static int arraySize(int size) {
+    final long len = triangleSize(size);
+    if (len > Integer.MAX_VALUE - 8) {
+      throw new AbortException("A distance matrix for " + size + " objects does not fit into a Java array. Use an off-heap storage instead.");
+    }
+    return (int) len;
+  }
+
+  /**
+   * Allocate direct byte buffers for a matrix.
+   * 
+   * @param size Number of objects
+   * @param width Bytes per entry
+   * @return Buffers
+   */
+  private static ByteBuffer[] allocateDirect(int size, int width) {
+    final long bytes = triangleSize(size) * width;
+    final int nseg = (int) ((bytes + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+    ByteBuffer[] segments = new ByteBuffer[nseg];
+    try {
+      for (int i = 0; i < nseg; i++) {
+        final long segsize = Math.min(1L << SEGMENT_BITS, bytes - (((long) i) << SEGMENT_BITS));
+        segments[i] = ByteBuffer.allocateDirect((int) segsize).order(ByteOrder.nativeOrder());
+      }
+    } catch (OutOfMemoryError e) {
+      throw new AbortException("Not enough direct memory for a distance matrix of " + size + " objects (" + bytes + " bytes). Increase -XX:MaxDirectMemorySize.", e);
+    }
+    return segments;
+  }
+
+  /**
+   * Matrix stored in a double array.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class DoubleArrayMatrix extends TriangularDistanceMatrix {
+    /**
+     * Matrix data.
+     */
+    final double[] data;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     */
+    DoubleArrayMatrix(int size) {
+      super(size);
+      data = new double[arraySize(size)];
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) pos];
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      data[(int) pos] = v;
+    }
+  }
+
+  /**
+   * Matrix stored in a float array.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class FloatArrayMatrix extends TriangularDistanceMatrix {
+    /**
+     * Matrix data.
+     */
+    final float[] data;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     */
+    FloatArrayMatrix(int size) {
+      super(size);
+      data = new float[arraySize(size)];
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) pos];
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      data[(int) pos] = (float) v;
+    }
+  }
+
+  /**
+   * Matrix stored in direct buffers of doubles.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class DirectDoubleMatrix extends TriangularDistanceMatrix {
+    /**
+     * Shift for the segment number.
+     */
+    static final int SHIFT = SEGMENT_BITS - 3;
+
+    /**
+     * Mask for the position within a segment.
+     */
+    static final long MASK = (1L << SHIFT) - 1;
+
+    /**
+     * Matrix segments.
+     */
+    final DoubleBuffer[] data;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     */
+    DirectDoubleMatrix(int size) {
+      super(size);
+      ByteBuffer[] segments = allocateDirect(size, 8);
+      data = new DoubleBuffer[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        data[i] = segments[i].asDoubleBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> SHIFT)].get((int) (pos & MASK));
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      data[(int) (pos >>> SHIFT)].put((int) (pos & MASK), v);
+    }
+  }
+
+  /**
+   * Matrix stored in direct buffers of floats.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class DirectFloatMatrix extends TriangularDistanceMatrix {
+    /**
+     * Shift for the segment number.
+     */
+    static final int SHIFT = SEGMENT_BITS - 2;
+
+    /**
+     * Mask for the position within a segment.
+     */
+    static final long MASK = (1L << SHIFT) - 1;
+
+    /**
+     * Matrix segments.
+     */
+    final FloatBuffer[] data;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     */
+    DirectFloatMatrix(int size) {
+      super(size);
+      ByteBuffer[] segments = allocateDirect(size, 4);
+      data = new FloatBuffer[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        data[i] = segments[i].asFloatBuffer();
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> SHIFT)].get((int) (pos & MASK));
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      data[(int) (pos >>> SHIFT)].put((int) (pos & MASK), (float) v);
+    }
+  }
+}
@@ -0,0 +1,370 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Elkan's fast k-means, exploiting the triangle inequality.
+ * 
+ * For every object, an upper bound on the distance to its current center and
+ * a lower bound on the distance to every other center are maintained, along
+ * with all pairwise distances of the centers. This allows skipping most
+ * distance computations, while yielding the same clusters as
+ * {@link KMeansLloyd}. The price is memory for k lower bounds per object.
+ * 
+ * The distance function must be a metric; squared Euclidean distance is
+ * supported by computing the bounds on the (non-squared) Euclidean distance.
+ * 
+ * <p>
+ * Reference:<br />
+ * C. Elkan<br/>
+ * Using the triangle inequality to accelerate k-means<br/>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has KMeansModel
+ * 
+ * @param <V> vector datatype
+ * @param <D> distance value type
+ */
+@Title("K-Means (Elkan)")
+@Reference(authors = "C. Elkan", title = "Using the triangle inequality to accelerate k-means", booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php")
+public class KMeansElkan<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans<V, D, KMeansModel<V>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansElkan.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansElkan.class.getName();
+
+  /**
+   * Number of distance computations in the current run.
+   */
+  private long distcount;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   */
+  public KMeansElkan(PrimitiveDistanceFunction<NumberVector<?>, D> distanceFunction, int k, int maxiter, KMeansInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  public Clustering<KMeansModel<V>> run(Database database, Relation<V> relation) {
+    if (relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    List<? extends NumberVector<?>> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    // Setup cluster assignment store
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for (int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+    }
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    // Bounds: upper bound to own center, lower bound to each center.
+    WritableDoubleDataStore upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+    WritableDataStore<double[]> lower = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      lower.put(it, new double[k]);
+    }
+    // Half the distances between centers, and half the distance to the
+    // nearest other center.
+    double[][] cdist = new double[k][k];
+    double[] sep = new double[k];
+    double[] move = new double[k];
+
+    distcount = 0;
+    int iteration = 0;
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    for (; maxiter <= 0 || iteration < maxiter; iteration++) {
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+      boolean changed;
+      if (iteration == 0) {
+        changed = initialAssignToNearestCluster(relation, means, clusters, assignment, upper, lower);
+      } else {
+        recomputeSeparation(means, cdist, sep);
+        changed = assignToNearestCluster(relation, means, clusters, assignment, cdist, sep, upper, lower);
+      }
+      // Stop if no cluster assignment changed.
+      if (!changed) {
+        iteration++;
+        break;
+      }
+      // Recompute means.
+      List<Vector> newmeans = means(clusters, means, relation);
+      for (int i = 0; i < k; i++) {
+        move[i] = distance(means.get(i), newmeans.get(i));
+      }
+      updateBounds(relation, assignment, upper, lower, move);
+      means = newmeans;
+    }
+    if (prog != null) {
+      prog.setCompleted(LOG);
+    }
+    if (LOG.isStatistics()) {
+      final long full = iteration * (long) relation.size() * k;
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+      LOG.statistics(new LongStatistic(KEY + ".distance-computations", distcount));
+      LOG.statistics(new LongStatistic(KEY + ".distance-computations-saved", full - distcount));
+    }
+
+    // Wrap result
+    final NumberVector.Factory<V, ?> factory = RelationUtil.getNumberVectorFactory(relation);
+    Clustering<KMeansModel<V>> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for (int i = 0; i < clusters.size(); i++) {
+      KMeansModel<V> model = new KMeansModel<>(factory.newNumberVector(means.get(i).getColumnVector().getArrayRef()));
+      result.addToplevelCluster(new Cluster<>(clusters.get(i), model));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the distance used for the bounds (Euclidean instead of squared
+   * Euclidean), and count the distance computation.
+   * 
+   * @param a First vector
+   * @param b Second vector
+   * @return Distance
+   */
+  private double distance(NumberVector<?> a, NumberVector<?> b) {
+    ++distcount;
+    @SuppressWarnings("unchecked")
+    final PrimitiveDoubleDistanceFunction<? super NumberVector<?>> df = (PrimitiveDoubleDistanceFunction<? super NumberVector<?>>) getDistanceFunction();
+    final double d = df.doubleDistance(a, b);
+    return (df instanceof SquaredEuclideanDistanceFunction) ? Math.sqrt(d) : d;
+  }
+
+  /**
+   * Initial assignment, computing all distances and initializing the bounds.
+   * 
+   * @param relation Data relation
+   * @param means Initial means
+   * @param clusters Clusters
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @return {@code true} when an object was (re-)assigned
+   */
+  private boolean initialAssignToNearestCluster(Relation<V> relation, List<? extends NumberVector<?>> means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+    boolean changed = false;
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for (int i = 0; i < k; i++) {
+        final double dist = l[i] = distance(fv, means.get(i));
+        if (dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      upper.putDouble(it, mindist);
+      changed |= updateAssignment(it, clusters, assignment, minIndex);
+    }
+    return changed;
+  }
+
+  /**
+   * Recompute the (halved) distances of the centers.
+   * 
+   * @param means Means
+   * @param cdist Center distance matrix (output)
+   * @param sep Separation of each center (output)
+   */
+  private void recomputeSeparation(List<? extends NumberVector<?>> means, double[][] cdist, double[] sep) {
+    for (int i = 0; i < k; i++) {
+      sep[i] = Double.POSITIVE_INFINITY;
+    }
+    for (int i = 0; i < k; i++) {
+      cdist[i][i] = 0.;
+      for (int j = 0; j < i; j++) {
+        final double h = .5 * distance(means.get(i), means.get(j));
+        cdist[i][j] = cdist[j][i] = h;
+        sep[i] = (h < sep[i]) ? h : sep[i];
+        sep[j] = (h < sep[j]) ? h : sep[j];
+      }
+    }
+  }
+
+  /**
+   * Reassign objects, but only compute distances that cannot be pruned using
+   * the triangle inequality.
+   * 
+   * @param relation Data relation
+   * @param means Current means
+   * @param clusters Clusters
+   * @param assignment Cluster assignment
+   * @param cdist Halved center distances
+   * @param sep Separation of each center
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @return {@code true} when an object was reassigned
+   */
+  private boolean assignToNearestCluster(Relation<V> relation, List<? extends NumberVector<?>> means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[][] cdist, double[] sep, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+    boolean changed = false;
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int orig = assignment.intValue(it);
+      double u = upper.doubleValue(it);
+      // Upper bound is below half the distance to the nearest other center.
+      if (u <= sep[orig]) {
+        continue;
+      }
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      boolean stale = true; // Upper bound is not exact.
+      int cur = orig;
+      for (int j = 0; j < k; j++) {
+        if (j == cur || u <= l[j] || u <= cdist[cur][j]) {
+          continue;
+        }
+        if (stale) {
+          u = l[cur] = distance(fv, means.get(cur));
+          stale = false;
+          if (u <= l[j] || u <= cdist[cur][j]) {
+            continue;
+          }
+        }
+        final double dist = l[j] = distance(fv, means.get(j));
+        if (dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      upper.putDouble(it, u);
+      if (cur != orig) {
+        changed |= updateAssignment(it, clusters, assignment, cur);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Update the bounds after the centers have moved.
+   * 
+   * @param relation Data relation
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param move Distance each center moved
+   */
+  private void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[] move) {
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      upper.putDouble(it, upper.doubleValue(it) + move[assignment.intValue(it)]);
+      double[] l = lower.get(it);
+      for (int i = 0; i < k; i++) {
+        l[i] -= move[i];
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans.Parameterizer<V, D> {
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      checkTriangleInequality(config, distanceFunction);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansElkan<V, D> makeInstance() {
+      return new KMeansElkan<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+
+  /**
+   * Verify that the distance function can be used for triangle inequality
+   * pruning, and report a parameter error otherwise.
+   * 
+   * @param config Parameterization
+   * @param distanceFunction Distance function
+   */
+  protected static void checkTriangleInequality(Parameterization config, PrimitiveDistanceFunction<?, ?> distanceFunction) {
+    if (distanceFunction == null) {
+      return;
+    }
+    if (!(distanceFunction instanceof PrimitiveDoubleDistanceFunction) || !(distanceFunction.isMetric() || distanceFunction instanceof SquaredEuclideanDistanceFunction)) {
+      config.reportError(new WrongParameterValueException("Triangle inequality accelerated k-means requires a metric double-valued distance function (or squared Euclidean distance), not " + distanceFunction.getClass().getName()));
+    }
+  }
+}
@@ -0,0 +1,359 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Hamerly's fast k-means, exploiting the triangle inequality.
+ * 
+ * In contrast to {@link KMeansElkan}, only a single lower bound (to the second
+ * nearest center) is kept per object, so the memory overhead is constant per
+ * object. This makes it the better choice for large k and low
+ * dimensionality. The clusters are the same as with {@link KMeansLloyd}.
+ * 
+ * The distance function must be a metric; squared Euclidean distance is
+ * supported by computing the bounds on the (non-squared) Euclidean distance.
+ * 
+ * <p>
+ * Reference:<br />
+ * G. Hamerly<br/>
+ * Making k-means even faster<br/>
+ * Proc. 2010 SIAM International Conference on Data Mining
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has KMeansModel
+ * 
+ * @param <V> vector datatype
+ * @param <D> distance value type
+ */
+@Title("K-Means (Hamerly)")
+@Reference(authors = "G. Hamerly", title = "Making k-means even faster", booktitle = "Proc. 2010 SIAM International Conference on Data Mining", url = "http://dx.doi.org/10.1137/1.9781611972801.12")
+public class KMeansHamerly<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans<V, D, KMeansModel<V>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansHamerly.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansHamerly.class.getName();
+
+  /**
+   * Number of distance computations in the current run.
+   */
+  private long distcount;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   */
+  public KMeansHamerly(PrimitiveDistanceFunction<NumberVector<?>, D> distanceFunction, int k, int maxiter, KMeansInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  public Clustering<KMeansModel<V>> run(Database database, Relation<V> relation) {
+    if (relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    List<? extends NumberVector<?>> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    // Setup cluster assignment store
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for (int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+    }
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    // Bounds: upper bound to own center, lower bound to second nearest.
+    WritableDoubleDataStore upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+    WritableDoubleDataStore lower = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+    // Half the distance to the nearest other center.
+    double[] sep = new double[k];
+    double[] move = new double[k];
+
+    distcount = 0;
+    int iteration = 0;
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    for (; maxiter <= 0 || iteration < maxiter; iteration++) {
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+      boolean changed;
+      if (iteration == 0) {
+        changed = initialAssignToNearestCluster(relation, means, clusters, assignment, upper, lower);
+      } else {
+        recomputeSeparation(means, sep);
+        changed = assignToNearestCluster(relation, means, clusters, assignment, sep, upper, lower);
+      }
+      // Stop if no cluster assignment changed.
+      if (!changed) {
+        iteration++;
+        break;
+      }
+      // Recompute means.
+      List<Vector> newmeans = means(clusters, means, relation);
+      for (int i = 0; i < k; i++) {
+        move[i] = distance(means.get(i), newmeans.get(i));
+      }
+      updateBounds(relation, assignment, upper, lower, move);
+      means = newmeans;
+    }
+    if (prog != null) {
+      prog.setCompleted(LOG);
+    }
+    if (LOG.isStatistics()) {
+      final long full = iteration * (long) relation.size() * k;
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+      LOG.statistics(new LongStatistic(KEY + ".distance-computations", distcount));
+      LOG.statistics(new LongStatistic(KEY + ".distance-computations-saved", full - distcount));
+    }
+
+    // Wrap result
+    final NumberVector.Factory<V, ?> factory = RelationUtil.getNumberVectorFactory(relation);
+    Clustering<KMeansModel<V>> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for (int i = 0; i < clusters.size(); i++) {
+      KMeansModel<V> model = new KMeansModel<>(factory.newNumberVector(means.get(i).getColumnVector().getArrayRef()));
+      result.addToplevelCluster(new Cluster<>(clusters.get(i), model));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the distance used for the bounds (Euclidean instead of squared
+   * Euclidean), and count the distance computation.
+   * 
+   * @param a First vector
+   * @param b Second vector
+   * @return Distance
+   */
+  private double distance(NumberVector<?> a, NumberVector<?> b) {
+    ++distcount;
+    @SuppressWarnings("unchecked")
+    final PrimitiveDoubleDistanceFunction<? super NumberVector<?>> df = (PrimitiveDoubleDistanceFunction<? super NumberVector<?>>) getDistanceFunction();
+    final double d = df.doubleDistance(a, b);
+    return (df instanceof SquaredEuclideanDistanceFunction) ? Math.sqrt(d) : d;
+  }
+
+  /**
+   * Initial assignment, computing all distances and initializing the bounds.
+   * 
+   * @param relation Data relation
+   * @param means Initial means
+   * @param clusters Clusters
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @return {@code true} when an object was (re-)assigned
+   */
+  private boolean initialAssignToNearestCluster(Relation<V> relation, List<? extends NumberVector<?>> means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+    boolean changed = false;
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      V fv = relation.get(it);
+      double mindist = Double.POSITIVE_INFINITY, secdist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for (int i = 0; i < k; i++) {
+        final double dist = distance(fv, means.get(i));
+        if (dist < mindist) {
+          minIndex = i;
+          secdist = mindist;
+          mindist = dist;
+        } else if (dist < secdist) {
+          secdist = dist;
+        }
+      }
+      upper.putDouble(it, mindist);
+      lower.putDouble(it, secdist);
+      changed |= updateAssignment(it, clusters, assignment, minIndex);
+    }
+    return changed;
+  }
+
+  /**
+   * Recompute the separation of the centers: half the distance to the nearest
+   * other center.
+   * 
+   * @param means Means
+   * @param sep Separation of each center (output)
+   */
+  private void recomputeSeparation(List<? extends NumberVector<?>> means, double[] sep) {
+    for (int i = 0; i < k; i++) {
+      sep[i] = Double.POSITIVE_INFINITY;
+    }
+    for (int i = 0; i < k; i++) {
+      for (int j = 0; j < i; j++) {
+        final double h = .5 * distance(means.get(i), means.get(j));
+        sep[i] = (h < sep[i]) ? h : sep[i];
+        sep[j] = (h < sep[j]) ? h : sep[j];
+      }
+    }
+  }
+
+  /**
+   * Reassign objects, but only scan the centers for objects whose bounds do
+   * not guarantee that they stay in their cluster.
+   * 
+   * @param relation Data relation
+   * @param means Current means
+   * @param clusters Clusters
+   * @param assignment Cluster assignment
+   * @param sep Separation of each center
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @return {@code true} when an object was reassigned
+   */
+  private boolean assignToNearestCluster(Relation<V> relation, List<? extends NumberVector<?>> means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+    boolean changed = false;
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int orig = assignment.intValue(it);
+      double u = upper.doubleValue(it);
+      final double z = Math.max(lower.doubleValue(it), sep[orig]);
+      if (u <= z) {
+        continue;
+      }
+      // Tighten the upper bound, and test again.
+      V fv = relation.get(it);
+      u = distance(fv, means.get(orig));
+      upper.putDouble(it, u);
+      if (u <= z) {
+        continue;
+      }
+      // Full scan, reusing the exact distance to the current center.
+      double mindist = u, secdist = Double.POSITIVE_INFINITY;
+      int minIndex = orig;
+      for (int i = 0; i < k; i++) {
+        if (i == orig) {
+          continue;
+        }
+        final double dist = distance(fv, means.get(i));
+        if (dist < mindist) {
+          secdist = mindist;
+          mindist = dist;
+          minIndex = i;
+        } else if (dist < secdist) {
+          secdist = dist;
+        }
+      }
+      upper.putDouble(it, mindist);
+      lower.putDouble(it, secdist);
+      if (minIndex != orig) {
+        changed |= updateAssignment(it, clusters, assignment, minIndex);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Update the bounds after the centers have moved.
+   * 
+   * @param relation Data relation
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param move Distance each center moved
+   */
+  private void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[] move) {
+    // Find the largest and second largest movement.
+    int maxIndex = -1;
+    double maxmove = 0., secmove = 0.;
+    for (int i = 0; i < k; i++) {
+      if (move[i] > maxmove) {
+        secmove = maxmove;
+        maxmove = move[i];
+        maxIndex = i;
+      } else if (move[i] > secmove) {
+        secmove = move[i];
+      }
+    }
+    for (DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int a = assignment.intValue(it);
+      upper.putDouble(it, upper.doubleValue(it) + move[a]);
+      lower.putDouble(it, lower.doubleValue(it) - ((a == maxIndex) ? secmove : maxmove));
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans.Parameterizer<V, D> {
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      KMeansElkan.checkTriangleInequality(config, distanceFunction);
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansHamerly<V, D> makeInstance() {
+      return new KMeansHamerly<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
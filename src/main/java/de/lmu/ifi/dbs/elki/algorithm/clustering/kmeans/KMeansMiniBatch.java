@@ -0,0 +1,397 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Mini-batch k-means, processing the data as a stream.
+ * 
+ * The vectors are read from a {@link BundleStreamSource} (such as a streaming
+ * parser) in batches of a fixed size, without materializing the data set in a
+ * database. Only the k centers and their counts are kept in memory, in
+ * addition to the current batch. The initial means are chosen by the usual
+ * {@link KMeansInitialization}, run on the first batch only.
+ * 
+ * Each batch is first assigned to the current centers, then every center is
+ * moved towards its assigned objects with a per-center learning rate of
+ * 1/count. Because the stream is processed in a single pass, the input
+ * should not be ordered by cluster (shuffle the data once when writing it).
+ * 
+ * As the stream can only be read once, a final assignment of the objects has
+ * to be done with a second stream over the same data, see
+ * {@link #assign(BundleStreamSource, List, PrintStream)}.
+ * 
+ * <p>
+ * Reference:<br />
+ * D. Sculley<br/>
+ * Web-scale k-means clustering<br/>
+ * Proc. 19th International Conference on World Wide Web, WWW 2010
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf KMeansInitialization
+ * @apiviz.uses BundleStreamSource
+ * 
+ * @param <V> vector datatype
+ * @param <D> distance value type
+ */
+@Title("Mini-batch k-means")
+@Reference(authors = "D. Sculley", title = "Web-scale k-means clustering", booktitle = "Proc. 19th International Conference on World Wide Web, WWW 2010", url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class KMeansMiniBatch<V extends NumberVector<?>, D extends Distance<D>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Distance function.
+   */
+  protected PrimitiveDistanceFunction<? super NumberVector<?>, D> distanceFunction;
+
+  /**
+   * Number of clusters.
+   */
+  protected int k;
+
+  /**
+   * Batch size.
+   */
+  protected int batchsize;
+
+  /**
+   * Method to choose initial means.
+   */
+  protected KMeansInitialization<V> initializer;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param batchsize Batch size
+   * @param initializer Initialization method
+   */
+  public KMeansMiniBatch(PrimitiveDistanceFunction<? super NumberVector<?>, D> distanceFunction, int k, int batchsize, KMeansInitialization<V> initializer) {
+    super();
+    this.distanceFunction = distanceFunction;
+    this.k = k;
+    this.batchsize = batchsize;
+    this.initializer = initializer;
+  }
+
+  /**
+   * Process a data stream, and compute the cluster centers.
+   * 
+   * @param source Data stream
+   * @return Cluster centers
+   */
+  public List<Vector> run(BundleStreamSource source) {
+    List<V> batch = new ArrayList<>(batchsize);
+    List<Vector> means = null;
+    long[] counts = new long[k];
+    int[] nearest = new int[batchsize];
+    long processed = 0, batches = 0;
+
+    int vcol = -1;
+    SimpleTypeInformation<? super V> type = null;
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Mini-batches", LOG) : null;
+    for (boolean eos = false; !eos;) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev) {
+      case META_CHANGED:
+        vcol = findVectorColumn(source.getMeta());
+        @SuppressWarnings("unchecked")
+        final SimpleTypeInformation<? super V> vtype = (SimpleTypeInformation<? super V>) source.getMeta().get(vcol);
+        type = vtype;
+        continue;
+      case NEXT_OBJECT:
+        if (vcol < 0) {
+          throw new AbortException("Stream did not provide meta data before the first object.");
+        }
+        @SuppressWarnings("unchecked")
+        final V vec = (V) source.data(vcol);
+        batch.add(vec);
+        if (batch.size() < batchsize) {
+          continue;
+        }
+        break; // Process full batch.
+      case END_OF_STREAM:
+        eos = true;
+        if (batch.size() == 0) {
+          continue;
+        }
+        break; // Process last batch.
+      default:
+        LOG.warning("Unknown bundle stream event. API inconsistent? " + ev);
+        continue;
+      }
+      if (means == null) {
+        means = initialMeans(batch, type);
+      }
+      // Assign the batch to the current centers first:
+      for (int i = 0; i < batch.size(); i++) {
+        nearest[i] = nearest(batch.get(i), means);
+      }
+      // Then update the centers, with a learning rate decreasing per center.
+      for (int i = 0; i < batch.size(); i++) {
+        final int c = nearest[i];
+        final double eta = 1. / ++counts[c];
+        final double[] raw = means.get(c).getArrayRef();
+        final V vec = batch.get(i);
+        for (int d = 0; d < raw.length; d++) {
+          raw[d] += eta * (vec.doubleValue(d) - raw[d]);
+        }
+      }
+      processed += batch.size();
+      batches++;
+      batch.clear();
+      if (prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+    }
+    if (prog != null) {
+      prog.setCompleted(LOG);
+    }
+    if (means == null) {
+      throw new AbortException("No objects were read from the stream.");
+    }
+    if (LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KMeansMiniBatch.class.getName() + ".objects", processed));
+      LOG.statistics(new LongStatistic(KMeansMiniBatch.class.getName() + ".batches", batches));
+    }
+    return means;
+  }
+
+  /**
+   * Assign the objects of a data stream to the nearest center.
+   * 
+   * @param source Data stream
+   * @param means Cluster centers
+   * @param out Output stream to write the cluster number of each object to,
+   *        one per line and in stream order. May be {@code null}.
+   * @return Cluster sizes
+   */
+  public int[] assign(BundleStreamSource source, List<? extends NumberVector<?>> means, PrintStream out) {
+    int[] sizes = new int[means.size()];
+    int vcol = -1;
+    for (boolean eos = false; !eos;) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev) {
+      case META_CHANGED:
+        vcol = findVectorColumn(source.getMeta());
+        break;
+      case NEXT_OBJECT:
+        if (vcol < 0) {
+          throw new AbortException("Stream did not provide meta data before the first object.");
+        }
+        final int c = nearest((NumberVector<?>) source.data(vcol), means);
+        sizes[c]++;
+        if (out != null) {
+          out.println(c);
+        }
+        break;
+      case END_OF_STREAM:
+        eos = true;
+        break;
+      default:
+        LOG.warning("Unknown bundle stream event. API inconsistent? " + ev);
+        break;
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * Choose the initial means from the first batch.
+   * 
+   * @param batch First batch
+   * @param type Vector type
+   * @return Initial means
+   */
+  private List<Vector> initialMeans(List<V> batch, SimpleTypeInformation<? super V> type) {
+    if (batch.size() < k) {
+      throw new AbortException("The first batch must contain at least k=" + k + " objects, but only had " + batch.size());
+    }
+    final MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(type, batch);
+    Database db = new StaticArrayDatabase(new DatabaseConnection() {
+      @Override
+      public MultipleObjectsBundle loadData() {
+        return bundle;
+      }
+    }, null);
+    db.initialize();
+    Relation<V> relation = db.getRelation(type);
+    List<Vector> means = new ArrayList<>(k);
+    for (NumberVector<?> m : initializer.chooseInitialMeans(db, relation, k, distanceFunction)) {
+      means.add(m.getColumnVector());
+    }
+    return means;
+  }
+
+  /**
+   * Find the nearest center.
+   * 
+   * @param vec Vector
+   * @param means Centers
+   * @return Index of nearest center
+   */
+  private int nearest(NumberVector<?> vec, List<? extends NumberVector<?>> means) {
+    int minIndex = 0;
+    if (distanceFunction instanceof PrimitiveDoubleDistanceFunction) {
+      @SuppressWarnings("unchecked")
+      final PrimitiveDoubleDistanceFunction<? super NumberVector<?>> df = (PrimitiveDoubleDistanceFunction<? super NumberVector<?>>) distanceFunction;
+      double mindist = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < means.size(); i++) {
+        double dist = df.doubleDistance(vec, means.get(i));
+        if (dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+    } else {
+      D mindist = distanceFunction.getDistanceFactory().infiniteDistance();
+      for (int i = 0; i < means.size(); i++) {
+        D dist = distanceFunction.distance(vec, means.get(i));
+        if (dist.compareTo(mindist) < 0) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+    }
+    return minIndex;
+  }
+
+  /**
+   * Find the first number vector column of the stream.
+   * 
+   * @param meta Stream meta data
+   * @return Column number
+   */
+  private static int findVectorColumn(BundleMeta meta) {
+    for (int i = 0; i < meta.size(); i++) {
+      if (TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+        return i;
+      }
+    }
+    throw new AbortException("No number vector field in the input stream.");
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>, D extends Distance<D>> extends AbstractParameterizer {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.batchsize", "Number of objects to process in each mini-batch.");
+
+    /**
+     * Distance function.
+     */
+    protected PrimitiveDistanceFunction<NumberVector<?>, D> distanceFunction;
+
+    /**
+     * k Parameter.
+     */
+    protected int k;
+
+    /**
+     * Batch size.
+     */
+    protected int batchsize;
+
+    /**
+     * Initialization method.
+     */
+    protected KMeansInitialization<V> initializer;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PrimitiveDistanceFunction<NumberVector<?>, D>> distanceFunctionP = new ObjectParameter<>(DistanceBasedAlgorithm.DISTANCE_FUNCTION_ID, PrimitiveDistanceFunction.class, SquaredEuclideanDistanceFunction.class);
+      if (config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      IntParameter kP = new IntParameter(KMeans.K_ID);
+      kP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if (config.grab(kP)) {
+        k = kP.getValue();
+      }
+
+      ObjectParameter<KMeansInitialization<V>> initialP = new ObjectParameter<>(KMeans.INIT_ID, KMeansInitialization.class, RandomlyChosenInitialMeans.class);
+      if (config.grab(initialP)) {
+        initializer = initialP.instantiateClass(config);
+      }
+
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 10000);
+      batchsizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if (config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+    }
+
+    @Override
+    protected KMeansMiniBatch<V, D> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, batchsize, initializer);
+    }
+  }
+}
@@ -0,0 +1,367 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Multi-threaded variant of Lloyd-style k-means.
+ * 
+ * The data set is split into one contiguous chunk per thread. In each
+ * iteration, every worker assigns the objects of its chunk to the nearest
+ * mean, and accumulates the coordinate sums and counts of its chunk in its own
+ * buffers. The partial sums are then merged (in chunk order) to obtain the new
+ * means, so no synchronization is needed within an iteration.
+ * 
+ * The cluster assignments are the same as with {@link KMeansLloyd} for the
+ * same initialization, except for the rare case where the different summation
+ * order of the means changes the last digits enough to break a tie
+ * differently.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has KMeansModel
+ * 
+ * @param <V> vector datatype
+ * @param <D> distance value type
+ */
+@Title("Parallel K-Means")
+@Description("Finds a partitioning into k clusters, using multiple threads for Lloyd-style bulk iterations.")
+public class KMeansParallelLloyd<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans<V, D, KMeansModel<V>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansParallelLloyd.class);
+
+  /**
+   * Number of threads to use.
+   */
+  protected int threads;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param threads Number of threads, 0 for automatic
+   */
+  public KMeansParallelLloyd(PrimitiveDistanceFunction<NumberVector<?>, D> distanceFunction, int k, int maxiter, KMeansInitialization<V> initializer, int threads) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.threads = threads;
+  }
+
+  @Override
+  public Clustering<KMeansModel<V>> run(Database database, Relation<V> relation) {
+    if (relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    final int dim = RelationUtil.dimensionality(relation);
+    // Choose initial means
+    List<? extends NumberVector<?>> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Cluster assignment, by offset in ids. Workers write disjoint ranges.
+    final int[] assignment = new int[size];
+    Arrays.fill(assignment, -1);
+
+    // Setup one worker per chunk.
+    final int nthreads = Math.min(ParallelExecutor.getThreads(threads), size);
+    List<Worker> workers = new ArrayList<>(nthreads);
+    for (int t = 0, beg = 0; t < nthreads; t++) {
+      final int end = (int) ((size * (long) (t + 1)) / nthreads);
+      workers.add(new Worker(relation, ids, beg, end, assignment, dim));
+      beg = end;
+    }
+
+    final double[][] sums = new double[k][dim];
+    final int[] sizes = new int[k];
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    try (ParallelExecutor executor = new ParallelExecutor(nthreads)) {
+      for (int iteration = 0; maxiter <= 0 || iteration < maxiter; iteration++) {
+        if (prog != null) {
+          prog.incrementProcessed(LOG);
+        }
+        for (Worker w : workers) {
+          w.means = means;
+        }
+        boolean changed = false;
+        for (Boolean c : executor.execute(workers)) {
+          changed |= c.booleanValue();
+        }
+        // Stop if no cluster assignment changed.
+        if (!changed) {
+          break;
+        }
+        // Merge partial sums in chunk order, and recompute means.
+        for (int i = 0; i < k; i++) {
+          Arrays.fill(sums[i], 0.);
+        }
+        Arrays.fill(sizes, 0);
+        for (Worker w : workers) {
+          for (int i = 0; i < k; i++) {
+            sizes[i] += w.sizes[i];
+            final double[] wsum = w.sums[i], sum = sums[i];
+            for (int j = 0; j < dim; j++) {
+              sum[j] += wsum[j];
+            }
+          }
+        }
+        List<Vector> newMeans = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+          if (sizes[i] > 0) {
+            newMeans.add(new Vector(sums[i].clone()).timesEquals(1.0 / sizes[i]));
+          } else {
+            // Keep degenerated means as-is for now.
+            newMeans.add(means.get(i).getColumnVector());
+          }
+        }
+        means = newMeans;
+      }
+    }
+    if (prog != null) {
+      prog.setCompleted(LOG);
+    }
+
+    // Collect the clusters from the assignment array.
+    List<ArrayModifiableDBIDs> clusters = new ArrayList<>(k);
+    for (int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newArray());
+    }
+    for (DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      clusters.get(assignment[it.getOffset()]).add(it);
+    }
+
+    // Wrap result
+    final NumberVector.Factory<V, ?> factory = RelationUtil.getNumberVectorFactory(relation);
+    Clustering<KMeansModel<V>> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for (int i = 0; i < clusters.size(); i++) {
+      KMeansModel<V> model = new KMeansModel<>(factory.newNumberVector(means.get(i).getColumnVector().getArrayRef()));
+      result.addToplevelCluster(new Cluster<>(clusters.get(i), model));
+    }
+    return result;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Worker processing a single chunk of the data set.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Worker implements Callable<Boolean> {
+    /**
+     * Data relation.
+     */
+    final Relation<V> relation;
+
+    /**
+     * Object IDs.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Chunk to process.
+     */
+    final int begin, end;
+
+    /**
+     * Shared assignment array.
+     */
+    final int[] assignment;
+
+    /**
+     * Partial sums of this chunk.
+     */
+    final double[][] sums;
+
+    /**
+     * Partial cluster sizes of this chunk.
+     */
+    final int[] sizes;
+
+    /**
+     * Current means, set before each iteration.
+     */
+    List<? extends NumberVector<?>> means;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param ids Object IDs
+     * @param begin First offset to process
+     * @param end Offset to stop at
+     * @param assignment Shared assignment array
+     * @param dim Dimensionality
+     */
+    Worker(Relation<V> relation, ArrayDBIDs ids, int begin, int end, int[] assignment, int dim) {
+      this.relation = relation;
+      this.ids = ids;
+      this.begin = begin;
+      this.end = end;
+      this.assignment = assignment;
+      this.sums = new double[k][dim];
+      this.sizes = new int[k];
+    }
+
+    @Override
+    public Boolean call() {
+      for (int i = 0; i < k; i++) {
+        Arrays.fill(sums[i], 0.);
+      }
+      Arrays.fill(sizes, 0);
+      boolean changed = false;
+      DBIDArrayIter it = ids.iter();
+      if (getDistanceFunction() instanceof PrimitiveDoubleDistanceFunction) {
+        @SuppressWarnings("unchecked")
+        final PrimitiveDoubleDistanceFunction<? super NumberVector<?>> df = (PrimitiveDoubleDistanceFunction<? super NumberVector<?>>) getDistanceFunction();
+        for (int off = begin; off < end; off++) {
+          it.seek(off);
+          V fv = relation.get(it);
+          double mindist = Double.POSITIVE_INFINITY;
+          int minIndex = 0;
+          for (int i = 0; i < k; i++) {
+            double dist = df.doubleDistance(fv, means.get(i));
+            if (dist < mindist) {
+              minIndex = i;
+              mindist = dist;
+            }
+          }
+          changed |= update(off, fv, minIndex);
+        }
+      } else {
+        final PrimitiveDistanceFunction<? super NumberVector<?>, D> df = getDistanceFunction();
+        for (int off = begin; off < end; off++) {
+          it.seek(off);
+          V fv = relation.get(it);
+          D mindist = df.getDistanceFactory().infiniteDistance();
+          int minIndex = 0;
+          for (int i = 0; i < k; i++) {
+            D dist = df.distance(fv, means.get(i));
+            if (dist.compareTo(mindist) < 0) {
+              minIndex = i;
+              mindist = dist;
+            }
+          }
+          changed |= update(off, fv, minIndex);
+        }
+      }
+      return Boolean.valueOf(changed);
+    }
+
+    /**
+     * Update the assignment and the partial sums.
+     * 
+     * @param off Object offset
+     * @param fv Object vector
+     * @param minIndex Nearest cluster
+     * @return {@code true} when the assignment changed
+     */
+    private boolean update(int off, V fv, int minIndex) {
+      sizes[minIndex]++;
+      final double[] sum = sums[minIndex];
+      for (int j = 0; j < sum.length; j++) {
+        sum[j] += fv.doubleValue(j);
+      }
+      if (assignment[off] == minIndex) {
+        return false;
+      }
+      assignment[off] = minIndex;
+      return true;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>, D extends Distance<D>> extends AbstractKMeans.Parameterizer<V, D> {
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("kmeans.threads", "Number of threads to use for the assignment step. 0 uses one thread per available processor.");
+
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+      if (config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansParallelLloyd<V, D> makeInstance() {
+      return new KMeansParallelLloyd<>(distanceFunction, k, maxiter, initializer, threads);
+    }
+  }
+}
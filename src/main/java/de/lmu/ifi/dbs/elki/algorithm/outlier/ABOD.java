@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -31,16 +35,14 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.DenseKernelMatrix;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.PolynomialKernelFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
@@ -54,14 +56,18 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * Angle-Based Outlier Detection / Angle-Based Outlier Factor.
  * 
  * Outlier detection using variance analysis on angles, especially for high
  * dimensional data sets. Exact version, which has cubic runtime (see also
- * {@link FastABOD} and {@link LBABOD} for faster versions).
+ * {@link FastABOD} and {@link LBABOD} for faster versions, and {@link FastVOA}
+ * for a random projection based approximation). The kernel matrix is cached
+ * in a {@link DenseKernelMatrix}, and objects are scored in parallel.
  * 
  * H.-P. Kriegel, M. Schubert, and A. Zimek: Angle-Based Outlier Detection in
  * High-dimensional Data. In: Proc. 14th ACM SIGKDD Int. Conf. on Knowledge
@@ -70,6 +76,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @author Matthias Schubert (Original Code)
  * @author Erich Schubert (ELKIfication)
  * 
+ * @apiviz.uses DenseKernelMatrix
+ * 
  * @param <V> Vector type
  */
 @Title("ABOD: Angle-Based Outlier Detection")
@@ -81,19 +89,40 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
    */
   private static final Logging LOG = Logging.getLogger(ABOD.class);
 
+  /**
+   * Number of objects per task.
+   */
+  protected static final int BLOCKSIZE = 64;
+
   /**
    * Store the configured Kernel version.
    */
   protected SimilarityFunction<? super V, DoubleDistance> kernelFunction;
 
+  /**
+   * Number of threads.
+   */
+  protected int threads;
+
   /**
    * Constructor for Angle-Based Outlier Detection (ABOD).
    * 
    * @param kernelFunction kernel function to use
    */
   public ABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction) {
+    this(kernelFunction, 1);
+  }
+
+  /**
+   * Constructor for Angle-Based Outlier Detection (ABOD).
+   * 
+   * @param kernelFunction kernel function to use
+   * @param threads Number of threads, 0 for automatic
+   */
+  public ABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction, int threads) {
     super();
     this.kernelFunction = kernelFunction;
+    this.threads = threads;
   }
 
   /**
@@ -103,23 +132,47 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
    * @return Outlier detection result
    */
   public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
     // Build a kernel matrix, to make O(n^3) slightly less bad.
     SimilarityQuery<V, DoubleDistance> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final DenseKernelMatrix kernel = new DenseKernelMatrix(sq, relation.getDBIDs(), threads);
+    final double[] abofs = new double[kernel.size()];
 
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int begin = 0; begin < abofs.length; begin += BLOCKSIZE) {
+      final int from = begin, to = Math.min(begin + BLOCKSIZE, abofs.length);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          MeanVariance s = new MeanVariance();
+          for (int a = from; a < to; a++) {
+            abofs[a] = computeABOF(kernel, a, s);
+          }
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+    return buildResult(kernel.getIDs(), abofs);
+  }
+
+  /**
+   * Build the outlier result.
+   * 
+   * @param ids Object IDs, in offset order
+   * @param abofs ABOF values
+   * @return Outlier result
+   */
+  protected static OutlierResult buildResult(ArrayDBIDs ids, double[] abofs) {
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
-
-    MeanVariance s = new MeanVariance();
-    for (DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
-      final double abof = computeABOF(relation, kernelMatrix, pA, s);
+    for (DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final double abof = abofs[it.getOffset()];
       minmaxabod.put(abof);
-      abodvalues.putDouble(pA, abof);
+      abodvalues.putDouble(it, abof);
     }
 
     // Build result representation.
-    Relation<Double> scoreResult = new MaterializedRelation<>("Angle-Based Outlier Degree", "abod-outlier", TypeUtil.DOUBLE, abodvalues, relation.getDBIDs());
+    Relation<Double> scoreResult = new MaterializedRelation<>("Angle-Based Outlier Degree", "abod-outlier", TypeUtil.DOUBLE, abodvalues, ids);
     OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
     return new OutlierResult(scoreMeta, scoreResult);
   }
@@ -127,32 +180,51 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
   /**
    * Compute the exact ABOF value.
    * 
-   * @param relation Relation
-   * @param kernelMatrix Kernel matrix
-   * @param pA Object A to compute ABOF for
+   * @param kernel Kernel matrix
+   * @param a Offset of object A to compute ABOF for
    * @param s Statistics tracker
    * @return ABOF value
    */
-  protected double computeABOF(Relation<V> relation, KernelMatrix kernelMatrix, DBIDRef pA, MeanVariance s) {
+  protected static double computeABOF(DenseKernelMatrix kernel, int a, MeanVariance s) {
     s.reset(); // Reused
-    double simAA = kernelMatrix.getSimilarity(pA, pA);
+    accumulateABOF(kernel, a, s, 0, kernel.size());
+    // Sample variance probably would be correct, but the ABOD publication
+    // uses the naive variance.
+    return s.getNaiveVariance();
+  }
+
+  /**
+   * Accumulate the angle statistics of object A, for all pairs (B, C) where B
+   * is in the given range and C is not before B.
+   * 
+   * @param kernel Kernel matrix
+   * @param a Offset of object A
+   * @param s Statistics tracker (output)
+   * @param from First offset of B
+   * @param to Last offset of B (exclusive)
+   */
+  protected static void accumulateABOF(DenseKernelMatrix kernel, int a, MeanVariance s, int from, int to) {
+    final int size = kernel.size();
+    final double[] diag = kernel.getDiagonal(), rowA = kernel.getRow(a);
+    final double simAA = diag[a];
 
-    for (DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-      if (DBIDUtil.equal(nB, pA)) {
+    for (int b = from; b < to; b++) {
+      if (b == a) {
         continue;
       }
-      double simBB = kernelMatrix.getSimilarity(nB, nB);
-      double simAB = kernelMatrix.getSimilarity(pA, nB);
+      final double[] rowB = kernel.getRow(b);
+      double simBB = diag[b];
+      double simAB = rowA[b];
       double sqdAB = simAA + simBB - simAB - simAB;
       if (!(sqdAB > 0.)) {
         continue;
       }
-      for (DBIDIter nC = relation.iterDBIDs(); nC.valid(); nC.advance()) {
-        if (DBIDUtil.equal(nC, pA) || DBIDUtil.compare(nC, nB) < 0) {
+      for (int c = b; c < size; c++) {
+        if (c == a) {
           continue;
         }
-        double simCC = kernelMatrix.getSimilarity(nC, nC);
-        double simAC = kernelMatrix.getSimilarity(pA, nC);
+        double simCC = diag[c];
+        double simAC = rowA[c];
         double sqdAC = simAA + simCC - simAC;
         if (!(sqdAC > 0.)) {
           continue;
@@ -161,16 +233,12 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
         // <B-A, C-A> = <B, C-A> - <A,C-A>
         // = <B,C> - <B,A> - <A,C> + <A,A>
         // For computing variance, AA is a constant and can be ignored.
-        double simBC = kernelMatrix.getSimilarity(nB, nC);
+        double simBC = rowB[c];
         double numerator = simBC - simAB - simAC; // + simAA;
         double val = numerator / (sqdAB * sqdAC);
         s.put(val, 1. / Math.sqrt(sqdAB * sqdAC));
       }
     }
-    // Sample variance probably would be correct, but the ABOD publication
-    // uses the naive variance.
-    final double abof = s.getNaiveVariance();
-    return abof;
   }
 
   @Override
@@ -196,11 +264,21 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
      */
     public static final OptionID KERNEL_FUNCTION_ID = new OptionID("abod.kernelfunction", "Kernel function to use.");
 
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("abod.threads", "Number of threads to use for computing the angle variances. 0 uses one thread per available processor.");
+
     /**
      * Distance function.
      */
     protected SimilarityFunction<V, DoubleDistance> kernelFunction = null;
 
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -208,11 +286,15 @@ public class ABOD<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
       if (config.grab(param)) {
         kernelFunction = param.instantiateClass(config);
       }
+      final IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if (config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
     }
 
     @Override
     protected ABOD<V> makeInstance() {
-      return new ABOD<>(kernelFunction);
+      return new ABOD<>(kernelFunction, threads);
     }
   }
 }
@@ -23,37 +23,31 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
-import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
-import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
-import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.DenseKernelMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
-import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
-import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMaxHeap;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ObjectHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * Angle-Based Outlier Detection / Angle-Based Outlier Factor.
@@ -90,7 +84,18 @@ public class FastABOD<V extends NumberVector<?>> extends ABOD<V> {
    * @param k Number of nearest neighbors
    */
   public FastABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction, int k) {
-    super(kernelFunction);
+    this(kernelFunction, k, 1);
+  }
+
+  /**
+   * Constructor for Angle-Based Outlier Detection (ABOD).
+   * 
+   * @param kernelFunction kernel function to use
+   * @param k Number of nearest neighbors
+   * @param threads Number of threads, 0 for automatic
+   */
+  public FastABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction, int k, int threads) {
+    super(kernelFunction, threads);
     this.k = k;
   }
 
@@ -102,76 +107,94 @@ public class FastABOD<V extends NumberVector<?>> extends ABOD<V> {
    */
   @Override
   public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
     // Build a kernel matrix, to make O(n^3) slightly less bad.
     SimilarityQuery<V, DoubleDistance> sq = db.getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
-
-    WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmaxabod = new DoubleMinMax();
-
-    MeanVariance s = new MeanVariance();
-    for (DBIDIter pA = ids.iter(); pA.valid(); pA.advance()) {
-      s.reset();
-      final double simAA = kernelMatrix.getSimilarity(pA, pA);
-
-      // Choose the k-min nearest
-      ComparableMaxHeap<DoubleDBIDPair> nn = new ComparableMaxHeap<>(k);
-      for (DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-        if (DBIDUtil.equal(nB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(nB, nB);
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        if (!(sqdAB > 0.)) {
-          continue;
-        }
-        if (nn.size() < k) {
-          nn.add(DBIDUtil.newPair(sqdAB, nB));
-        } else if (sqdAB < nn.peek().doubleValue()) {
-          nn.replaceTopElement(DBIDUtil.newPair(sqdAB, nB));
+    final DenseKernelMatrix kernel = new DenseKernelMatrix(sq, relation.getDBIDs(), threads);
+    final double[] abofs = new double[kernel.size()];
+
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int begin = 0; begin < abofs.length; begin += BLOCKSIZE) {
+      final int from = begin, to = Math.min(begin + BLOCKSIZE, abofs.length);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          MeanVariance s = new MeanVariance();
+          DoubleIntegerMaxHeap nn = new DoubleIntegerMaxHeap(k);
+          for (int a = from; a < to; a++) {
+            abofs[a] = computeFastABOF(kernel, a, nn, s);
+          }
+          return null;
         }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+    return buildResult(kernel.getIDs(), abofs);
+  }
+
+  /**
+   * Compute the approximate ABOF value, using the k nearest neighbors only.
+   * 
+   * @param kernel Kernel matrix
+   * @param a Offset of object A
+   * @param nn Nearest neighbor heap (reused)
+   * @param s Statistics tracker (reused)
+   * @return Approximate ABOF value
+   */
+  protected double computeFastABOF(DenseKernelMatrix kernel, int a, DoubleIntegerMaxHeap nn, MeanVariance s) {
+    s.reset();
+    final double[] diag = kernel.getDiagonal(), rowA = kernel.getRow(a);
+    final double simAA = diag[a];
+
+    // Choose the k-min nearest
+    nn.clear();
+    for (int b = 0; b < diag.length; b++) {
+      if (b == a) {
+        continue;
+      }
+      double simBB = diag[b];
+      double simAB = rowA[b];
+      double sqdAB = simAA + simBB - simAB - simAB;
+      if (!(sqdAB > 0.)) {
+        continue;
       }
+      if (nn.size() < k) {
+        nn.add(sqdAB, b);
+      } else if (sqdAB < nn.peekKey()) {
+        nn.replaceTopElement(sqdAB, b);
+      }
+    }
 
-      for (ObjectHeap.UnsortedIter<DoubleDBIDPair> iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
-        DoubleDBIDPair nB = iB.get();
-        double sqdAB = nB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        if (!(sqdAB > 0.)) {
+    for (DoubleIntegerHeap.UnsortedIter iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
+      final int b = iB.getValue();
+      final double[] rowB = kernel.getRow(b);
+      double sqdAB = iB.getKey();
+      double simAB = rowA[b];
+      if (!(sqdAB > 0.)) {
+        continue;
+      }
+      for (DoubleIntegerHeap.UnsortedIter iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
+        final int c = iC.getValue();
+        if (c < b) {
           continue;
         }
-        for (ObjectHeap.UnsortedIter<DoubleDBIDPair> iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
-          DoubleDBIDPair nC = iC.get();
-          if (DBIDUtil.compare(nC, nB) < 0) {
-            continue;
-          }
-          double sqdAC = nC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, nC);
-          if (!(sqdAC > 0.)) {
-            continue;
-          }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          // For computing variance, AA is a constant and can be ignored.
-          double simBC = kernelMatrix.getSimilarity(nB, nC);
-          double numerator = simBC - simAB - simAC; // + simAA;
-          double val = numerator / (sqdAB * sqdAC);
-          s.put(val, 1. / Math.sqrt(sqdAB * sqdAC));
+        double sqdAC = iC.getKey();
+        double simAC = rowA[c];
+        if (!(sqdAC > 0.)) {
+          continue;
         }
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B, C-A> - <A,C-A>
+        // = <B,C> - <B,A> - <A,C> + <A,A>
+        // For computing variance, AA is a constant and can be ignored.
+        double simBC = rowB[c];
+        double numerator = simBC - simAB - simAC; // + simAA;
+        double val = numerator / (sqdAB * sqdAC);
+        s.put(val, 1. / Math.sqrt(sqdAB * sqdAC));
       }
-      // Sample variance probably would be correct, but the ABOD publication
-      // uses the naive variance.
-      final double abof = s.getNaiveVariance();
-      minmaxabod.put(abof);
-      abodvalues.putDouble(pA, abof);
     }
-
-    // Build result representation.
-    Relation<Double> scoreResult = new MaterializedRelation<>("Angle-Based Outlier Degree", "abod-outlier", TypeUtil.DOUBLE, abodvalues, relation.getDBIDs());
-    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
-    return new OutlierResult(scoreMeta, scoreResult);
+    // Sample variance probably would be correct, but the ABOD publication
+    // uses the naive variance.
+    return s.getNaiveVariance();
   }
 
   @Override
@@ -213,7 +236,7 @@ public class FastABOD<V extends NumberVector<?>> extends ABOD<V> {
 
     @Override
     protected FastABOD<V> makeInstance() {
-      return new FastABOD<>(kernelFunction, k);
+      return new FastABOD<>(kernelFunction, k, threads);
     }
   }
 }
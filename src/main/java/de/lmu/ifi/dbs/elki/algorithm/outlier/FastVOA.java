@@ -0,0 +1,443 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
+import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Fast approximation of the variance of angles (VOA), using random
+ * projections.
+ * 
+ * Instead of the weighted variance of cosines used by {@link ABOD}, this
+ * estimates the (unweighted) variance of the angles between each object and
+ * all pairs of other objects, which is also low for outliers. The angle at A
+ * between B and C is proportional to the probability that a random projection
+ * places A between B and C, so the first moment can be estimated from the
+ * ranks of A in t random projections. The second moment is estimated with
+ * AMS sketches: averaging s1 sketches and taking the median of s2 such
+ * averages gives a relative error of O(1/sqrt(s1)) with a failure probability
+ * exponentially small in s2. The total runtime is O(n log n t + n t s1 s2),
+ * instead of the O(n^3) of exact ABOD.
+ * 
+ * Projections, sorting and sketches are computed in parallel; as all random
+ * choices are derived from the seed, the result does not depend on the number
+ * of threads.
+ * 
+ * Reference:
+ * <p>
+ * N. Pham and R. Pagh<br />
+ * A near-linear time approximation algorithm for angle-based outlier
+ * detection in high-dimensional data<br />
+ * Proc. 18th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * (KDD '12)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <V> Vector type
+ */
+@Title("FastVOA: Fast Variance of Angles")
+@Description("Approximate angle-based outlier detection in near-linear time, using random projections and AMS sketches.")
+@Reference(authors = "N. Pham and R. Pagh", title = "A near-linear time approximation algorithm for angle-based outlier detection in high-dimensional data", booktitle = "Proc. 18th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining (KDD '12)", url = "http://dx.doi.org/10.1145/2339530.2339669")
+public class FastVOA<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierResult> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(FastVOA.class);
+
+  /**
+   * Number of objects per task.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Number of random projections.
+   */
+  protected int projections;
+
+  /**
+   * Number of sketches to average.
+   */
+  protected int s1;
+
+  /**
+   * Number of averages to take the median of.
+   */
+  protected int s2;
+
+  /**
+   * Random generator.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Number of threads.
+   */
+  protected int threads;
+
+  /**
+   * Constructor.
+   * 
+   * @param projections Number of random projections
+   * @param s1 Number of sketches to average
+   * @param s2 Number of averages to take the median of
+   * @param rnd Random generator
+   * @param threads Number of threads, 0 for automatic
+   */
+  public FastVOA(int projections, int s1, int s2, RandomFactory rnd, int threads) {
+    super();
+    this.projections = projections;
+    this.s1 = s1;
+    this.s2 = s2;
+    this.rnd = rnd;
+    this.threads = threads;
+  }
+
+  /**
+   * Run FastVOA on the data set.
+   * 
+   * @param relation Relation to process
+   * @return Outlier detection result
+   */
+  public OutlierResult run(final Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final int dim = RelationUtil.dimensionality(relation);
+    final Random random = rnd.getSingleThreadedRandom();
+    final long seed = random.nextLong();
+
+    // Random projection vectors.
+    final double[][] vecs = new double[projections][dim];
+    for(double[] vec : vecs) {
+      for(int d = 0; d < dim; d++) {
+        vec[d] = random.nextGaussian();
+      }
+    }
+    // Project the data, in parallel over blocks of objects.
+    final double[][] projected = new double[projections][size];
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for(int begin = 0; begin < size; begin += BLOCKSIZE) {
+      final int from = begin, to = Math.min(begin + BLOCKSIZE, size);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          DBIDArrayIter it = ids.iter();
+          for(int i = from; i < to; i++) {
+            it.seek(i);
+            V v = relation.get(it);
+            for(int p = 0; p < projections; p++) {
+              final double[] vec = vecs[p];
+              double sum = 0.;
+              for(int d = 0; d < dim; d++) {
+                sum += vec[d] * v.doubleValue(d);
+              }
+              projected[p][i] = sum;
+            }
+          }
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+
+    // Sort the objects by each projection, in parallel.
+    final int[][] orders = new int[projections][];
+    tasks.clear();
+    for(int p = 0; p < projections; p++) {
+      final int proj = p;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final double[] values = projected[proj];
+          final int[] order = new int[size];
+          for(int i = 0; i < size; i++) {
+            order[i] = i;
+          }
+          IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+            @Override
+            public int compare(int x, int y) {
+              final int c = Double.compare(values[x], values[y]);
+              return (c != 0) ? c : (x - y);
+            }
+          });
+          orders[proj] = order;
+          projected[proj] = null;
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+
+    // First moment: number of pairs separated by each object.
+    double[] f1 = new double[size];
+    for(int[] order : orders) {
+      for(int r = 0; r < size; r++) {
+        f1[order[r]] += r * (double) (size - 1 - r);
+      }
+    }
+
+    // Second moment: AMS sketches, one task per median group.
+    List<Callable<double[]>> stasks = new ArrayList<>(s2);
+    for(int g = 0; g < s2; g++) {
+      final int group = g;
+      stasks.add(new Callable<double[]>() {
+        @Override
+        public double[] call() {
+          return estimateSecondMoment(orders, size, seed, group);
+        }
+      });
+    }
+    List<double[]> f2s = ParallelExecutor.run(threads, stasks);
+
+    // Combine the estimates.
+    final double pairs = .5 * (size - 1) * (size - 2);
+    final double t = projections;
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax = new DoubleMinMax();
+    double[] buf = new double[s2];
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < size; i++, it.advance()) {
+      // With fewer than three objects, there are no angles to vary.
+      double voa = 0.;
+      if(pairs > 0) {
+        for(int g = 0; g < s2; g++) {
+          buf[g] = f2s.get(g)[i];
+        }
+        final double f2 = (s2 > 1) ? QuickSelect.median(buf) : buf[0];
+        final double moa1 = Math.PI * f1[i] / (t * pairs);
+        final double moa2 = Math.PI * Math.PI * (f2 - f1[i]) / (t * (t - 1) * pairs);
+        voa = moa2 - moa1 * moa1;
+      }
+      scores.putDouble(it, voa);
+      minmax.put(voa);
+    }
+
+    // Build result representation.
+    Relation<Double> scoreResult = new MaterializedRelation<>("Fast Variance of Angles", "fastvoa-outlier", TypeUtil.DOUBLE, scores, ids);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Estimate the sum of squared separation counts of each object, averaging
+   * s1 AMS sketches.
+   * 
+   * @param orders Object orders, one per projection
+   * @param size Number of objects
+   * @param seed Random seed
+   * @param group Median group
+   * @return Estimates, per object
+   */
+  protected double[] estimateSecondMoment(int[][] orders, int size, long seed, int group) {
+    double[] sketch = new double[size], avg = new double[size];
+    for(int m = 0; m < s1; m++) {
+      final long sseed = mix(seed + group * (long) s1 + m);
+      double total = 0.;
+      for(int i = 0; i < size; i++) {
+        total += sign(sseed, i);
+      }
+      Arrays.fill(sketch, 0.);
+      for(int[] order : orders) {
+        // Sum of the signs left and right of each object.
+        double left = 0.;
+        for(int r = 0; r < size; r++) {
+          final int i = order[r];
+          final double si = sign(sseed, i);
+          sketch[i] += left * (total - left - si);
+          left += si;
+        }
+      }
+      for(int i = 0; i < size; i++) {
+        avg[i] += sketch[i] * sketch[i];
+      }
+    }
+    for(int i = 0; i < size; i++) {
+      avg[i] /= s1;
+    }
+    return avg;
+  }
+
+  /**
+   * Pseudo-random sign of an object, for a sketch.
+   * 
+   * @param sseed Sketch seed
+   * @param i Object offset
+   * @return +1 or -1
+   */
+  private static double sign(long sseed, int i) {
+    return (mix(sseed ^ i) < 0) ? -1. : 1.;
+  }
+
+  /**
+   * Mix the bits of a long (SplitMix64 finalizer).
+   * 
+   * @param z Input
+   * @return Mixed value
+   */
+  private static long mix(long z) {
+    z += 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector<?>> extends AbstractParameterizer {
+    /**
+     * Number of random projections.
+     */
+    public static final OptionID PROJECTIONS_ID = new OptionID("fastvoa.projections", "Number of random projections.");
+
+    /**
+     * Number of sketches to average.
+     */
+    public static final OptionID S1_ID = new OptionID("fastvoa.s1", "Number of AMS sketches to average; controls the error bound.");
+
+    /**
+     * Number of averages to take the median of.
+     */
+    public static final OptionID S2_ID = new OptionID("fastvoa.s2", "Number of sketch averages to take the median of; controls the failure probability.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("fastvoa.seed", "Random generator seed.");
+
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("fastvoa.threads", "Number of threads to use for the random projections. 0 uses one thread per available processor.");
+
+    /**
+     * Number of random projections.
+     */
+    protected int projections;
+
+    /**
+     * Number of sketches to average.
+     */
+    protected int s1;
+
+    /**
+     * Number of averages to take the median of.
+     */
+    protected int s2;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      final IntParameter projectionsP = new IntParameter(PROJECTIONS_ID, 100);
+      projectionsP.addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      if(config.grab(projectionsP)) {
+        projections = projectionsP.intValue();
+      }
+      final IntParameter s1P = new IntParameter(S1_ID, 100);
+      s1P.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(s1P)) {
+        s1 = s1P.intValue();
+      }
+      final IntParameter s2P = new IntParameter(S2_ID, 3);
+      s2P.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(s2P)) {
+        s2 = s2P.intValue();
+      }
+      final RandomParameter rndP = new RandomParameter(SEED_ID);
+      if(config.grab(rndP)) {
+        rnd = rndP.getValue();
+      }
+      final IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+    }
+
+    @Override
+    protected FastVOA<V> makeInstance() {
+      return new FastVOA<>(projections, s1, s2, rnd, threads);
+    }
+  }
+}
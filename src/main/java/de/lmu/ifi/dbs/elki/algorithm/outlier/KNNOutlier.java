@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -30,7 +32,9 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -89,6 +93,11 @@ public class KNNOutlier<O, D extends NumberDistance<D, ?>> extends AbstractDista
    */
   private int k;
 
+  /**
+   * Number of objects per bulk kNN query, to bound the memory use.
+   */
+  private static final int BULK_SIZE = 1 << 14;
+
   /**
    * Constructor for a single kNN query.
    * 
@@ -114,23 +123,29 @@ public class KNNOutlier<O, D extends NumberDistance<D, ?>> extends AbstractDista
 
     DoubleMinMax minmax = new DoubleMinMax();
     WritableDoubleDataStore knno_score = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
-    // compute distance to the k nearest neighbor.
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      // distance to the kth nearest neighbor
-      final KNNList<D> knns = knnQuery.getKNNForDBID(iditer, k);
-      final double dkn;
-      if(knns instanceof DoubleDistanceKNNList) {
-        dkn = ((DoubleDistanceKNNList) knns).doubleKNNDistance();
-      }
-      else {
-        dkn = knns.getKNNDistance().doubleValue();
-      }
-
-      knno_score.putDouble(iditer, dkn);
-      minmax.put(dkn);
-
-      if(progressKNNDistance != null) {
-        progressKNNDistance.incrementProcessed(LOG);
+    // compute distance to the k nearest neighbor, using bulk queries.
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    for(int start = 0; start < ids.size(); start += BULK_SIZE) {
+      ArrayDBIDs block = ids.slice(start, Math.min(start + BULK_SIZE, ids.size()));
+      List<? extends KNNList<D>> knnlists = knnQuery.getKNNForBulkDBIDs(block, k);
+      int i = 0;
+      for(DBIDIter iditer = block.iter(); iditer.valid(); iditer.advance(), i++) {
+        // distance to the kth nearest neighbor
+        final KNNList<D> knns = knnlists.get(i);
+        final double dkn;
+        if(knns instanceof DoubleDistanceKNNList) {
+          dkn = ((DoubleDistanceKNNList) knns).doubleKNNDistance();
+        }
+        else {
+          dkn = knns.getKNNDistance().doubleValue();
+        }
+
+        knno_score.putDouble(iditer, dkn);
+        minmax.put(dkn);
+
+        if(progressKNNDistance != null) {
+          progressKNNDistance.incrementProcessed(LOG);
+        }
       }
     }
     if(progressKNNDistance != null) {
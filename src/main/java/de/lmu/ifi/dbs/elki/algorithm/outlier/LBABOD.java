@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -30,16 +34,14 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
-import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.KernelMatrix;
+import de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel.DenseKernelMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.Logging.Level;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
@@ -49,10 +51,10 @@ import de.lmu.ifi.dbs.elki.math.MeanVariance;
 import de.lmu.ifi.dbs.elki.result.outlier.InvertedOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMaxHeap;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ObjectHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
@@ -60,6 +62,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * Angle-Based Outlier Detection / Angle-Based Outlier Factor.
@@ -101,7 +104,19 @@ public class LBABOD<V extends NumberVector<?>> extends FastABOD<V> {
    * @param l Number of outliers to find exact
    */
   public LBABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction, int k, int l) {
-    super(kernelFunction, k);
+    this(kernelFunction, k, l, 1);
+  }
+
+  /**
+   * Actual constructor, with parameters. Fast mode (sampling).
+   * 
+   * @param kernelFunction Kernel function to use
+   * @param k k parameter
+   * @param l Number of outliers to find exact
+   * @param threads Number of threads, 0 for automatic
+   */
+  public LBABOD(SimilarityFunction<? super V, DoubleDistance> kernelFunction, int k, int l, int threads) {
+    super(kernelFunction, k, threads);
     this.l = l;
   }
 
@@ -113,133 +128,224 @@ public class LBABOD<V extends NumberVector<?>> extends FastABOD<V> {
    */
   @Override
   public OutlierResult run(Database db, Relation<V> relation) {
-    DBIDs ids = relation.getDBIDs();
     SimilarityQuery<V, DoubleDistance> sq = relation.getDatabase().getSimilarityQuery(relation, kernelFunction);
-    KernelMatrix kernelMatrix = new KernelMatrix(sq, relation, ids);
+    final DenseKernelMatrix kernel = new DenseKernelMatrix(sq, relation.getDBIDs(), threads);
+    final ArrayDBIDs ids = kernel.getIDs();
+    final int size = kernel.size();
 
     // Output storage.
     WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmaxabod = new DoubleMinMax();
     double max = 0.;
 
-    // Storage for squared distances (will be reused!)
-    WritableDoubleDataStore sqDists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT);
-    // Nearest neighbor heap (will be reused!)
-    ComparableMaxHeap<DoubleDBIDPair> nn = new ComparableMaxHeap<>(k);
+    // Blocks for refinement, by the triangular amount of work.
+    final int[] bounds = triangularBlocks(size, (size + BLOCKSIZE - 1) / BLOCKSIZE);
+    int refinements = 0;
+    try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+      // get Candidate Ranking, in parallel.
+      final double[] lbabofs = new double[size];
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for(int begin = 0; begin < size; begin += BLOCKSIZE) {
+        final int from = begin, to = Math.min(begin + BLOCKSIZE, size);
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            // Nearest neighbor heap (will be reused!)
+            DoubleIntegerMaxHeap nn = new DoubleIntegerMaxHeap(k);
+            for(int a = from; a < to; a++) {
+              lbabofs[a] = computeLBABOF(kernel, a, nn);
+            }
+            return null;
+          }
+        });
+      }
+      executor.execute(tasks);
 
-    // Priority queue for candidates
-    ComparableMinHeap<DoubleDBIDPair> candidates = new ComparableMinHeap<>(relation.size());
-    // get Candidate Ranking
-    for(DBIDIter pA = relation.iterDBIDs(); pA.valid(); pA.advance()) {
-      // Compute nearest neighbors and distances.
-      nn.clear();
-      double simAA = kernelMatrix.getSimilarity(pA, pA);
-      // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
-      double sumid = 0., sumisqd = 0.;
-      for(DBIDIter nB = relation.iterDBIDs(); nB.valid(); nB.advance()) {
-        if(DBIDUtil.equal(nB, pA)) {
-          continue;
-        }
-        double simBB = kernelMatrix.getSimilarity(nB, nB);
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        double sqdAB = simAA + simBB - simAB - simAB;
-        sqDists.putDouble(nB, sqdAB);
-        if(!(sqdAB > 0.)) {
-          continue;
-        }
-        sumid += 1. / Math.sqrt(sqdAB);
-        sumisqd += 1. / sqdAB;
-        // Update heap
-        if(nn.size() < k) {
-          nn.add(DBIDUtil.newPair(sqdAB, nB));
-        }
-        else if(sqdAB < nn.peek().doubleValue()) {
-          nn.replaceTopElement(DBIDUtil.newPair(sqdAB, nB));
+      // Priority queue for candidates
+      DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap(size);
+      DBIDArrayIter iter = ids.iter();
+      for(int a = 0; a < size; a++) {
+        final double lbabof = lbabofs[a];
+        // Track maximum?
+        if(lbabof > max) {
+          max = lbabof;
         }
+        iter.seek(a);
+        abodvalues.putDouble(iter, lbabof);
+        candidates.add(lbabof, a);
       }
+      minmaxabod.put(max); // Put maximum from approximate values.
 
-      // Compute FastABOD approximation, adjust for lower bound.
-      // LB-ABOF is defined via a numerically unstable formula.
-      // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
-      // TODO: ensure numerical precision!
-      double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
-      for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
-        DoubleDBIDPair nB = iB.get();
-        double sqdAB = nB.doubleValue();
-        double simAB = kernelMatrix.getSimilarity(pA, nB);
-        if(!(sqdAB > 0.)) {
-          continue;
+      // refine Candidates
+      DoubleMinHeap topscores = new DoubleMinHeap(l);
+      while(!candidates.isEmpty()) {
+        // Stop refining
+        if(topscores.size() >= k && candidates.peekKey() > topscores.peek()) {
+          break;
         }
-        for(ObjectHeap.UnsortedIter<DoubleDBIDPair> iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
-          DoubleDBIDPair nC = iC.get();
-          if(DBIDUtil.compare(nC, nB) < 0) {
-            continue;
-          }
-          double sqdAC = nC.doubleValue();
-          double simAC = kernelMatrix.getSimilarity(pA, nC);
-          if(!(sqdAC > 0.)) {
-            continue;
+        final int a = candidates.peekValue();
+        candidates.poll();
+        final double abof = computeParallelABOF(kernel, a, bounds, executor);
+        // Store refined score:
+        iter.seek(a);
+        abodvalues.putDouble(iter, abof);
+        minmaxabod.put(abof);
+        // Update the heap tracking the top scores.
+        if(topscores.size() < k) {
+          topscores.add(abof);
+        }
+        else {
+          if(topscores.peek() > abof) {
+            topscores.replaceTopElement(abof);
           }
-          // Exploit bilinearity of scalar product:
-          // <B-A, C-A> = <B, C-A> - <A,C-A>
-          // = <B,C> - <B,A> - <A,C> + <A,A>
-          double simBC = kernelMatrix.getSimilarity(nB, nC);
-          double numerator = simBC - simAB - simAC + simAA;
-          double sqweight = 1. / (sqdAB * sqdAC);
-          double weight = Math.sqrt(sqweight);
-          double val = numerator * sqweight;
-          nnsum += val * weight;
-          nnsumsq += val * val * weight;
-          nnsumisqd += sqweight;
         }
+        refinements += 1;
       }
-      // Remaining weight, term R2:
-      double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
-      double tmp = (2. * nnsum + r2) / (sumid * sumid);
-      double lbabof = 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
+    }
+    if(LOG.isStatistics()) {
+      LoggingConfiguration.setVerbose(Level.VERYVERBOSE);
+      LOG.statistics(new LongStatistic("lb-abod.refinements", refinements));
+    }
+    // Build result representation.
+    Relation<Double> scoreResult = new MaterializedRelation<>("Angle-based Outlier Detection", "abod-outlier", TypeUtil.DOUBLE, abodvalues, ids);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
 
-      // Track maximum?
-      if(lbabof > max) {
-        max = lbabof;
+  /**
+   * Compute the lower bound of the ABOF value.
+   * 
+   * @param kernel Kernel matrix
+   * @param a Offset of object A
+   * @param nn Nearest neighbor heap (reused)
+   * @return Lower bound ABOF
+   */
+  protected double computeLBABOF(DenseKernelMatrix kernel, int a, DoubleIntegerMaxHeap nn) {
+    final double[] diag = kernel.getDiagonal(), rowA = kernel.getRow(a);
+    // Compute nearest neighbors and distances.
+    nn.clear();
+    double simAA = diag[a];
+    // Sum of 1./(|AB|) and 1./(|AB|^2); for computing R2.
+    double sumid = 0., sumisqd = 0.;
+    for(int b = 0; b < diag.length; b++) {
+      if(b == a) {
+        continue;
+      }
+      double simBB = diag[b];
+      double simAB = rowA[b];
+      double sqdAB = simAA + simBB - simAB - simAB;
+      if(!(sqdAB > 0.)) {
+        continue;
+      }
+      sumid += 1. / Math.sqrt(sqdAB);
+      sumisqd += 1. / sqdAB;
+      // Update heap
+      if(nn.size() < k) {
+        nn.add(sqdAB, b);
+      }
+      else if(sqdAB < nn.peekKey()) {
+        nn.replaceTopElement(sqdAB, b);
       }
-      abodvalues.putDouble(pA, lbabof);
-      candidates.add(DBIDUtil.newPair(lbabof, pA));
     }
-    minmaxabod.put(max); // Put maximum from approximate values.
 
-    // refine Candidates
-    int refinements = 0;
-    DoubleMinHeap topscores = new DoubleMinHeap(l);
-    MeanVariance s = new MeanVariance();
-    while(!candidates.isEmpty()) {
-      // Stop refining
-      if(topscores.size() >= k && candidates.peek().doubleValue() > topscores.peek()) {
-        break;
+    // Compute FastABOD approximation, adjust for lower bound.
+    // LB-ABOF is defined via a numerically unstable formula.
+    // Variance as E(X^2)-E(X)^2 suffers from catastrophic cancellation!
+    // TODO: ensure numerical precision!
+    double nnsum = 0., nnsumsq = 0., nnsumisqd = 0.;
+    for(DoubleIntegerHeap.UnsortedIter iB = nn.unsortedIter(); iB.valid(); iB.advance()) {
+      final int b = iB.getValue();
+      final double[] rowB = kernel.getRow(b);
+      double sqdAB = iB.getKey();
+      double simAB = rowA[b];
+      if(!(sqdAB > 0.)) {
+        continue;
       }
-      DoubleDBIDPair pA = candidates.poll();
-      final double abof = computeABOF(relation, kernelMatrix, pA, s);
-      // Store refined score:
-      abodvalues.putDouble(pA, abof);
-      minmaxabod.put(abof);
-      // Update the heap tracking the top scores.
-      if(topscores.size() < k) {
-        topscores.add(abof);
+      for(DoubleIntegerHeap.UnsortedIter iC = nn.unsortedIter(); iC.valid(); iC.advance()) {
+        final int c = iC.getValue();
+        if(c < b) {
+          continue;
+        }
+        double sqdAC = iC.getKey();
+        double simAC = rowA[c];
+        if(!(sqdAC > 0.)) {
+          continue;
+        }
+        // Exploit bilinearity of scalar product:
+        // <B-A, C-A> = <B, C-A> - <A,C-A>
+        // = <B,C> - <B,A> - <A,C> + <A,A>
+        double simBC = rowB[c];
+        double numerator = simBC - simAB - simAC + simAA;
+        double sqweight = 1. / (sqdAB * sqdAC);
+        double weight = Math.sqrt(sqweight);
+        double val = numerator * sqweight;
+        nnsum += val * weight;
+        nnsumsq += val * val * weight;
+        nnsumisqd += sqweight;
       }
-      else {
-        if(topscores.peek() > abof) {
-          topscores.replaceTopElement(abof);
+    }
+    // Remaining weight, term R2:
+    double r2 = sumisqd * sumisqd - 2. * nnsumisqd;
+    double tmp = (2. * nnsum + r2) / (sumid * sumid);
+    return 2. * nnsumsq / (sumid * sumid) - tmp * tmp;
+  }
+
+  /**
+   * Compute the exact ABOF value of a single object, splitting the pairs over
+   * multiple threads. The blocks are merged in a fixed order, so the result
+   * does not depend on the number of threads.
+   * 
+   * @param kernel Kernel matrix
+   * @param a Offset of object A
+   * @param bounds Block boundaries, see {@link #triangularBlocks}
+   * @param executor Executor to run the blocks
+   * @return ABOF value
+   */
+  protected double computeParallelABOF(final DenseKernelMatrix kernel, final int a, int[] bounds, ParallelExecutor executor) {
+    List<Callable<MeanVariance>> tasks = new ArrayList<>(bounds.length - 1);
+    for(int i = 1; i < bounds.length; i++) {
+      final int from = bounds[i - 1], to = bounds[i];
+      tasks.add(new Callable<MeanVariance>() {
+        @Override
+        public MeanVariance call() {
+          MeanVariance s = new MeanVariance();
+          accumulateABOF(kernel, a, s, from, to);
+          return s;
         }
+      });
+    }
+    MeanVariance s = new MeanVariance();
+    for(MeanVariance part : executor.execute(tasks)) {
+      if(part.getCount() > 0) {
+        s.put(part);
       }
-      refinements += 1;
     }
-    if(LOG.isStatistics()) {
-      LoggingConfiguration.setVerbose(Level.VERYVERBOSE);
-      LOG.statistics(new LongStatistic("lb-abod.refinements", refinements));
+    // Sample variance probably would be correct, but the ABOD publication
+    // uses the naive variance.
+    return s.getNaiveVariance();
+  }
+
+  /**
+   * Split the outer loop of the pair enumeration (b, with c from b to size)
+   * into blocks with about the same number of pairs each.
+   * 
+   * @param size Number of objects
+   * @param nblocks Number of blocks
+   * @return Block boundaries, {@code nblocks + 1} entries
+   */
+  protected static int[] triangularBlocks(int size, int nblocks) {
+    int[] bounds = new int[nblocks + 1];
+    final double total = size * (size + 1.) * .5;
+    double done = 0.;
+    for(int i = 1, b = 0; i < nblocks; i++) {
+      final double target = total * i / nblocks;
+      for(; b < size && done + (size - b) <= target; b++) {
+        done += size - b;
+      }
+      bounds[i] = b;
     }
-    // Build result representation.
-    Relation<Double> scoreResult = new MaterializedRelation<>("Angle-based Outlier Detection", "abod-outlier", TypeUtil.DOUBLE, abodvalues, ids);
-    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
-    return new OutlierResult(scoreMeta, scoreResult);
+    bounds[nblocks] = size;
+    return bounds;
   }
 
   @Override
@@ -282,7 +388,7 @@ public class LBABOD<V extends NumberVector<?>> extends FastABOD<V> {
 
     @Override
     protected LBABOD<V> makeInstance() {
-      return new LBABOD<>(kernelFunction, k, l);
+      return new LBABOD<>(kernelFunction, k, l, threads);
     }
   }
 }
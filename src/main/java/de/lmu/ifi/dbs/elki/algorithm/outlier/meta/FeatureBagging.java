@@ -25,7 +25,9 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
@@ -33,14 +35,19 @@ import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelection;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -60,6 +67,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
 import de.lmu.ifi.dbs.elki.utilities.pairs.Pair;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * A simple ensemble method called "Feature bagging" for outlier detection.
@@ -71,6 +79,13 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.Pair;
  * </p>
  * 
  * <p>
+ * By default, the LOF instances are run one after another. With multiple
+ * threads, they are run concurrently, each on its own materialized projection
+ * of the data. The number of concurrent instances is reduced when the
+ * available heap memory is low.
+ * </p>
+ * 
+ * <p>
  * Reference: <br>
  * A. Lazarevic, V. Kumar: Feature Bagging for Outlier Detection<br />
  * In: Proc. of the 11th ACM SIGKDD international conference on Knowledge
@@ -108,6 +123,17 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
    */
   private int k;
 
+  /**
+   * Number of threads.
+   */
+  private int threads;
+
+  /**
+   * Estimated memory use of a single LOF instance per database object, in
+   * bytes.
+   */
+  private int memory;
+
   /**
    * Constructor.
    * 
@@ -117,11 +143,27 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
    * @param rnd Random generator
    */
   public FeatureBagging(int k, int num, boolean breadth, RandomFactory rnd) {
+    this(k, num, breadth, rnd, 1, 0);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param k k Parameter for LOF
+   * @param num Number of subspaces to use
+   * @param breadth Flag for breadth-first merging
+   * @param rnd Random generator
+   * @param threads Number of threads, 0 for automatic
+   * @param memory Estimated memory use of one instance per object, in bytes
+   */
+  public FeatureBagging(int k, int num, boolean breadth, RandomFactory rnd, int threads, int memory) {
     super();
     this.k = k;
     this.num = num;
     this.breadth = breadth;
     this.rnd = rnd;
+    this.threads = threads;
+    this.memory = memory;
   }
 
   /**
@@ -131,30 +173,50 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
    * @param relation Relation to use
    * @return Outlier detection result
    */
-  public OutlierResult run(Database database, Relation<NumberVector<?>> relation) {
+  public OutlierResult run(final Database database, final Relation<NumberVector<?>> relation) {
     final int dbdim = RelationUtil.dimensionality(relation);
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
 
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
-      for(int i = 0; i < num; i++) {
-        BitSet dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
-        LOF<NumberVector<?>, DoubleDistance> lof = new LOF<>(k, df);
-
-        // run LOF and collect the result
-        OutlierResult result = lof.run(database, relation);
-        results.add(result);
-        if(prog != null) {
-          prog.incrementProcessed(LOG);
+    final int usethreads = ParallelExecutor.limitByMemory(Math.min(ParallelExecutor.getThreads(threads), num), relation.size() * (long) memory);
+    if(LOG.isVerbose() && usethreads < Math.min(ParallelExecutor.getThreads(threads), num)) {
+      LOG.verbose("Limiting to " + usethreads + " concurrent LOF instances due to memory constraints.");
+    }
+
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    // Draw all subspaces first, so the result does not depend on scheduling.
+    List<Callable<OutlierResult>> tasks = new ArrayList<>(num);
+    for(int i = 0; i < num; i++) {
+      final BitSet dimset = randomSubspace(dbdim, mindim, maxdim, rand);
+      tasks.add(new Callable<OutlierResult>() {
+        @Override
+        public OutlierResult call() {
+          final OutlierResult result;
+          if(usethreads > 1) {
+            // Concurrent members use their own projected relation and kNN
+            // preprocessor.
+            ProxyDatabase pdb = new ProxyDatabase(relation.getDBIDs());
+            Relation<NumberVector<?>> proj = project(pdb, relation, dimset);
+            pdb.addRelation(proj);
+            LOF<NumberVector<?>, DoubleDistance> lof = new LOF<>(k, EuclideanDistanceFunction.STATIC);
+            result = lof.run(pdb, proj);
+          }
+          else {
+            SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
+            LOF<NumberVector<?>, DoubleDistance> lof = new LOF<>(k, df);
+            result = lof.run(database, relation);
+          }
+          if(prog != null) {
+            prog.incrementProcessed(LOG);
+          }
+          return result;
         }
-      }
-      if(prog != null) {
-        prog.ensureCompleted(LOG);
-      }
+      });
+    }
+    List<OutlierResult> results = ParallelExecutor.run(usethreads, tasks);
+    if(prog != null) {
+      prog.ensureCompleted(LOG);
     }
 
     WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
@@ -226,6 +288,23 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
     return new OutlierResult(meta, scoreres);
   }
 
+  /**
+   * Materialize the projection of a relation to a subspace.
+   * 
+   * @param database Database of the projected relation
+   * @param relation Relation to project
+   * @param dimset Subspace
+   * @return Projected relation
+   */
+  private static Relation<NumberVector<?>> project(Database database, Relation<NumberVector<?>> relation, BitSet dimset) {
+    ProjectedView<NumberVector<?>, NumberVector<?>> view = new ProjectedView<>(relation, new NumericalFeatureSelection<>(dimset));
+    WritableDataStore<NumberVector<?>> store = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, NumberVector.class);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      store.put(iter, view.get(iter));
+    }
+    return new MaterializedRelation<>(database, view.getDataTypeInformation(), relation.getDBIDs(), "Feature bagging projection", store);
+  }
+
   /**
    * Choose a random subspace.
    * 
@@ -294,6 +373,11 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
      */
     public static final OptionID SEED_ID = new OptionID("fbagging.seed", "Specify a particular random seed.");
 
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("fbagging.threads", "Number of ensemble members to run concurrently. 0 uses one thread per available processor.");
+
     /**
      * The neighborhood size to use.
      */
@@ -314,6 +398,16 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
      */
     protected RandomFactory rnd;
 
+    /**
+     * Number of threads.
+     */
+    protected int threads;
+
+    /**
+     * Estimated memory use of one instance per object.
+     */
+    protected int memory;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -335,12 +429,23 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
       if(config.grab(rndP)) {
         rnd = rndP.getValue();
       }
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+      if(threads != 1) {
+        IntParameter memoryP = new IntParameter(SimpleOutlierEnsemble.Parameterizer.MEMORY_ID, 1024);
+        memoryP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if(config.grab(memoryP)) {
+          memory = memoryP.intValue();
+        }
+      }
     }
 
     @Override
     protected FeatureBagging makeInstance() {
       // Default is to re-use the same distance
-      return new FeatureBagging(k, num, breadth, rnd);
+      return new FeatureBagging(k, num, breadth, rnd, threads, memory);
     }
   }
 }
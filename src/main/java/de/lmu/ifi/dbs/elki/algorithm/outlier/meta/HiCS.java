@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
@@ -31,13 +32,12 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
-import de.lmu.ifi.dbs.elki.data.VectorUtil;
-import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelection;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -46,7 +46,6 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -56,6 +55,7 @@ import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
@@ -65,6 +65,8 @@ import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -78,11 +80,19 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * Algorithm to compute High Contrast Subspaces for Density-Based Outlier
  * Ranking.
  * 
+ * The contrast of the candidate subspaces and the outlier scores in the
+ * selected subspaces can be computed in parallel; by default, a single thread
+ * is used. The random numbers are drawn in candidate order before processing
+ * the candidates, so results only depend on the seed, not on the number of
+ * threads. When running in parallel, the inner outlier algorithm must support
+ * concurrent runs on different databases.
+ * 
  * Reference:
  * <p>
  * Fabian Keller, Emmanuel Müller, Klemens Böhm:<br />
@@ -143,6 +153,11 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
    */
   private RandomFactory rnd;
 
+  /**
+   * Number of threads.
+   */
+  private int threads;
+
   /**
    * Constructor.
    * 
@@ -154,6 +169,21 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
    * @param rnd Random generator
    */
   public HiCS(int m, double alpha, OutlierAlgorithm outlierAlgorithm, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd) {
+    this(m, alpha, outlierAlgorithm, statTest, cutoff, rnd, 1);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param m value of m
+   * @param alpha value of alpha
+   * @param outlierAlgorithm Inner outlier detection algorithm
+   * @param statTest Test to use
+   * @param cutoff Candidate limit
+   * @param rnd Random generator
+   * @param threads Number of threads, 0 for automatic
+   */
+  public HiCS(int m, double alpha, OutlierAlgorithm outlierAlgorithm, GoodnessOfFitTest statTest, int cutoff, RandomFactory rnd, int threads) {
     super();
     this.m = m;
     this.alpha = alpha;
@@ -161,6 +191,7 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
     this.statTest = statTest;
     this.cutoff = cutoff;
     this.rnd = rnd;
+    this.threads = threads;
   }
 
   /**
@@ -170,36 +201,42 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
    * @return The aggregated resulting scores that were assigned by the given
    *         outlier detection algorithm
    */
-  public OutlierResult run(Relation<V> relation) {
+  public OutlierResult run(final Relation<V> relation) {
     final DBIDs ids = relation.getDBIDs();
 
-    ArrayList<ArrayDBIDs> subspaceIndex = buildOneDimIndexes(relation);
-    Set<HiCSSubspace> subspaces = calculateSubspaces(relation, subspaceIndex, rnd.getSingleThreadedRandom());
+    OneDimIndexes subspaceIndex = buildOneDimIndexes(relation);
+    Set<HiCSSubspace> subspaces = calculateSubspaces(subspaceIndex, rnd.getSingleThreadedRandom());
 
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<Relation<Double>> results = new ArrayList<>();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
     // run outlier detection and collect the result
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistanceFunction?)
-    for(HiCSSubspace dimset : subspaces) {
-      if(LOG.isVerbose()) {
-        LOG.verbose("Performing outlier detection in subspace " + dimset);
-      }
+    List<Callable<Relation<Double>>> tasks = new ArrayList<>(subspaces.size());
+    for(final HiCSSubspace dimset : subspaces) {
+      tasks.add(new Callable<Relation<Double>>() {
+        @Override
+        public Relation<Double> call() {
+          if(LOG.isVerbose()) {
+            LOG.verbose("Performing outlier detection in subspace " + dimset);
+          }
 
-      ProxyDatabase pdb = new ProxyDatabase(ids);
-      pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
+          ProxyDatabase pdb = new ProxyDatabase(ids);
+          pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dimset)));
 
-      // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.run(pdb);
-      results.add(result.getScores());
-      if(prog != null) {
-        prog.incrementProcessed(LOG);
-      }
+          // run LOF and collect the result
+          OutlierResult result = outlierAlgorithm.run(pdb);
+          if(prog != null) {
+            prog.incrementProcessed(LOG);
+          }
+          return result.getScores();
+        }
+      });
     }
+    List<Relation<Double>> results = ParallelExecutor.run(threads, tasks);
     if(prog != null) {
       prog.ensureCompleted(LOG);
     }
@@ -225,37 +262,47 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
   }
 
   /**
-   * Calculates "index structures" for every attribute, i.e. sorts a
-   * ModifiableArray of every DBID in the database for every dimension and
-   * stores them in a list
+   * Calculates "index structures" for every attribute, i.e. sorts the objects
+   * by every dimension, and stores the sort order, the rank of each object,
+   * and the sorted values.
    * 
    * @param relation Relation to index
-   * @return List of sorted objects
+   * @return Indexes
    */
-  private ArrayList<ArrayDBIDs> buildOneDimIndexes(Relation<? extends NumberVector<?>> relation) {
+  private OneDimIndexes buildOneDimIndexes(Relation<? extends NumberVector<?>> relation) {
     final int dim = RelationUtil.dimensionality(relation);
-    ArrayList<ArrayDBIDs> subspaceIndex = new ArrayList<>(dim + 1);
-
-    SortDBIDsBySingleDimension comp = new VectorUtil.SortDBIDsBySingleDimension(relation);
-    for(int i = 0; i < dim; i++) {
-      ArrayModifiableDBIDs amDBIDs = DBIDUtil.newArray(relation.getDBIDs());
-      comp.setDimension(i);
-      amDBIDs.sort(comp);
-      subspaceIndex.add(amDBIDs);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final OneDimIndexes index = new OneDimIndexes(dim, ids.size());
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      NumberVector<?> vec = relation.get(it);
+      for(int d = 0; d < dim; d++) {
+        index.values[d][it.getOffset()] = vec.doubleValue(d);
+      }
     }
-
-    return subspaceIndex;
+    List<Callable<Void>> tasks = new ArrayList<>(dim);
+    for(int d = 0; d < dim; d++) {
+      final int dimension = d;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          index.sortDimension(dimension);
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+    return index;
   }
 
   /**
    * Identifies high contrast subspaces in a given full-dimensional database.
    * 
-   * @param relation the relation the HiCS should be evaluated for
    * @param subspaceIndex Subspace indexes
+   * @param random Random generator
    * @return a set of high contrast subspaces
    */
-  private Set<HiCSSubspace> calculateSubspaces(Relation<? extends NumberVector<?>> relation, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
-    final int dbdim = RelationUtil.dimensionality(relation);
+  private Set<HiCSSubspace> calculateSubspaces(OneDimIndexes subspaceIndex, Random random) {
+    final int dbdim = subspaceIndex.values.length;
 
     FiniteProgress dprog = LOG.isVerbose() ? new FiniteProgress("Subspace dimensionality", dbdim, LOG) : null;
     if(dprog != null) {
@@ -266,18 +313,19 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
     TopBoundedHeap<HiCSSubspace> dDimensionalList = new TopBoundedHeap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> candidates = new ArrayList<>();
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
         HiCSSubspace ts = new HiCSSubspace();
         ts.set(i);
         ts.set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts);
-        if(prog != null) {
-          prog.incrementProcessed(LOG);
-        }
+        candidates.add(ts);
       }
     }
+    calculateContrasts(subspaceIndex, candidates, random, prog);
+    for(HiCSSubspace ts : candidates) {
+      dDimensionalList.add(ts);
+    }
     if(prog != null) {
       prog.ensureCompleted(LOG);
     }
@@ -299,6 +347,7 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      candidates.clear();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace set1 = candidateList.get(i);
@@ -310,14 +359,13 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
           if(joinedSet.cardinality() != d) {
             continue;
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet);
-          if(qprog != null) {
-            qprog.incrementProcessed(LOG);
-          }
+          candidates.add(joinedSet);
         }
       }
+      calculateContrasts(subspaceIndex, candidates, random, qprog);
+      for(HiCSSubspace joinedSet : candidates) {
+        dDimensionalList.add(joinedSet);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -338,46 +386,137 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
     return subspaceList;
   }
 
+  /**
+   * Calculate the contrast of a list of candidate subspaces, in parallel.
+   * 
+   * The random numbers of every candidate are drawn from the main random
+   * generator in candidate order before the candidates are processed, so the
+   * result does not depend on the number of threads, and is the same as when
+   * processing the candidates sequentially.
+   * 
+   * @param subspaceIndex Subspace indexes
+   * @param candidates Candidate subspaces
+   * @param random Random generator
+   * @param prog Progress (may be {@code null})
+   */
+  private void calculateContrasts(final OneDimIndexes subspaceIndex, List<HiCSSubspace> candidates, Random random, final AbstractProgress prog) {
+    List<Callable<Void>> tasks = new ArrayList<>(candidates.size());
+    final int size = subspaceIndex.size;
+    for(final HiCSSubspace cand : candidates) {
+      final int card = cand.cardinality();
+      final int[] draws = new int[m * card];
+      drawWindows(draws, card, size - windowSize(size, card), random);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          calculateContrast(subspaceIndex, cand, draws);
+          if(prog != null) {
+            prog.incrementProcessed(LOG);
+          }
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+  }
+
+  /**
+   * Size of the index blocks for a subspace.
+   * 
+   * @param size Number of objects
+   * @param card Subspace dimensionality
+   * @return Window size
+   */
+  private int windowSize(int size, int card) {
+    final double alpha1 = Math.pow(alpha, (1.0 / card));
+    return (int) (size * alpha1);
+  }
+
+  /**
+   * Draw the random numbers for the Monte-Carlo iterations of a subspace, in
+   * the order they are used: for every iteration, the index of the chosen
+   * dimension, followed by the start of the index block in every other
+   * dimension.
+   * 
+   * @param draws Output array, of length m * card
+   * @param card Subspace dimensionality
+   * @param range Range of the index block start
+   * @param random Random generator
+   */
+  private static void drawWindows(int[] draws, int card, int range, Random random) {
+    for(int p = 0; p < draws.length;) {
+      draws[p++] = random.nextInt(card);
+      for(int j = 1; j < card; j++) {
+        draws[p++] = random.nextInt(range);
+      }
+    }
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
-   * @param relation Relation to process
-   * @param subspace Subspace
    * @param subspaceIndex Subspace indexes
+   * @param subspace Subspace
+   * @param draws Random numbers, see {@link #drawWindows}
    */
-  private void calculateContrast(Relation<? extends NumberVector<?>> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private void calculateContrast(OneDimIndexes subspaceIndex, HiCSSubspace subspace, int[] draws) {
+    final int size = subspaceIndex.size;
     final int card = subspace.cardinality();
-    final double alpha1 = Math.pow(alpha, (1.0 / card));
-    final int windowsize = (int) (relation.size() * alpha1);
+    final int windowsize = windowSize(size, card);
     final FiniteProgress prog = LOG.isDebugging() ? new FiniteProgress("Monte-Carlo iterations", m, LOG) : null;
 
+    // Window start of each dimension, and buffers reused across iterations.
+    final int[] start = new int[subspaceIndex.values.length];
+    final double[] fullValues = new double[size];
+    final double[] sampleBuffer = new double[windowsize];
+
+    // Position in the random numbers, and generator for retries.
+    int p = 0;
+    Random random = null;
+
     int retries = 0;
     double deviationSum = 0.0;
     for(int i = 0; i < m; i++) {
+      if(p == draws.length) {
+        // Retries used up the pre-drawn numbers, draw more.
+        random = (random != null) ? random : new Random(Arrays.hashCode(draws));
+        drawWindows(draws, card, size - windowsize, random);
+        p = 0;
+      }
       // Choose a random set bit.
       int chosen = -1;
-      for(int tmp = random.nextInt(card); tmp >= 0; tmp--) {
+      for(int tmp = draws[p++]; tmp >= 0; tmp--) {
         chosen = subspace.nextSetBit(chosen + 1);
       }
-      // initialize sample
-      DBIDs conditionalSample = relation.getDBIDs();
-
+      // Choose an index block in every other dimension.
+      int first = -1;
       for(int j = subspace.nextSetBit(0); j >= 0; j = subspace.nextSetBit(j + 1)) {
         if(j == chosen) {
           continue;
         }
-        ArrayDBIDs sortedIndices = subspaceIndex.get(j);
-        ArrayModifiableDBIDs indexBlock = DBIDUtil.newArray(windowsize);
-        // initialize index block
-        DBIDArrayIter iter = sortedIndices.iter();
-        iter.seek(random.nextInt(relation.size() - windowsize));
-        for(int k = 0; k < windowsize; k++, iter.advance()) {
-          indexBlock.add(iter); // select index block
+        start[j] = draws[p++];
+        first = (first < 0) ? j : first;
+      }
+      // The conditional sample is the intersection of all blocks: scan the
+      // first block, and test the ranks in the other dimensions.
+      final int[] firstOrder = subspaceIndex.order[first];
+      final double[] chosenValues = subspaceIndex.values[chosen];
+      int samplesize = 0;
+      for(int k = start[first], end = start[first] + windowsize; k < end; k++) {
+        final int obj = firstOrder[k];
+        boolean inside = true;
+        for(int j = subspace.nextSetBit(first + 1); j >= 0 && inside; j = subspace.nextSetBit(j + 1)) {
+          if(j == chosen) {
+            continue;
+          }
+          final int r = subspaceIndex.rank[j][obj];
+          inside = (r >= start[j] && r < start[j] + windowsize);
+        }
+        if(inside) {
+          sampleBuffer[samplesize++] = chosenValues[obj];
         }
-
-        conditionalSample = DBIDUtil.intersection(conditionalSample, indexBlock);
       }
-      if(conditionalSample.size() < 10) {
+      if(samplesize < 10) {
         retries++;
         if(LOG.isDebugging()) {
           LOG.debug("Sample size very small. Retry no. " + retries);
@@ -390,24 +529,9 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
           continue;
         }
       }
-      // Project conditional set
-      double[] sampleValues = new double[conditionalSample.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = conditionalSample.iter(); iter.valid(); iter.advance()) {
-          sampleValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
-      // Project full set
-      double[] fullValues = new double[relation.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = subspaceIndex.get(chosen).iter(); iter.valid(); iter.advance()) {
-          fullValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
+      // The test may modify (sort) its input, so we pass copies.
+      double[] sampleValues = Arrays.copyOf(sampleBuffer, samplesize);
+      System.arraycopy(subspaceIndex.sorted[chosen], 0, fullValues, 0, size);
       double contrast = statTest.deviation(fullValues, sampleValues);
       if(Double.isNaN(contrast)) {
         i--;
@@ -425,6 +549,84 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
     subspace.contrast = deviationSum / m;
   }
 
+  /**
+   * One-dimensional indexes of the data: for every dimension the attribute
+   * values, the sort order, the rank of every object and the sorted values.
+   * These are computed once, and shared by all contrast computations.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class OneDimIndexes {
+    /**
+     * Number of objects.
+     */
+    final int size;
+
+    /**
+     * Attribute values, by dimension and offset.
+     */
+    final double[][] values;
+
+    /**
+     * Offsets sorted by attribute value, by dimension.
+     */
+    final int[][] order;
+
+    /**
+     * Rank of each offset, by dimension.
+     */
+    final int[][] rank;
+
+    /**
+     * Sorted attribute values, by dimension.
+     */
+    final double[][] sorted;
+
+    /**
+     * Constructor.
+     * 
+     * @param dim Dimensionality
+     * @param size Number of objects
+     */
+    OneDimIndexes(int dim, int size) {
+      this.size = size;
+      this.values = new double[dim][size];
+      this.order = new int[dim][];
+      this.rank = new int[dim][];
+      this.sorted = new double[dim][];
+    }
+
+    /**
+     * Sort one dimension.
+     * 
+     * @param d Dimension
+     */
+    void sortDimension(int d) {
+      final double[] vals = values[d];
+      final int[] ord = new int[size], rnk = new int[size];
+      final double[] srt = new double[size];
+      for(int i = 0; i < size; i++) {
+        ord[i] = i;
+      }
+      IntegerArrayQuickSort.sort(ord, new IntegerComparator() {
+        @Override
+        public int compare(int x, int y) {
+          final int c = Double.compare(vals[x], vals[y]);
+          return (c != 0) ? c : (x - y);
+        }
+      });
+      for(int i = 0; i < size; i++) {
+        rnk[ord[i]] = i;
+        srt[i] = vals[ord[i]];
+      }
+      order[d] = ord;
+      rank[d] = rnk;
+      sorted[d] = srt;
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
@@ -565,6 +767,11 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
      */
     public static final OptionID SEED_ID = new OptionID("hics.seed", "The random seed.");
 
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("hics.threads", "Number of threads to use for the subspace search and the outlier detection runs. 0 uses one thread per available processor.");
+
     /**
      * Holds the value of {@link #M_ID}.
      */
@@ -595,6 +802,11 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
      */
     private RandomFactory rnd;
 
+    /**
+     * Number of threads.
+     */
+    private int threads;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -630,11 +842,16 @@ public class HiCS<V extends NumberVector<?>> extends AbstractAlgorithm<OutlierRe
       if(config.grab(rndP)) {
         rnd = rndP.getValue();
       }
+
+      final IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
     }
 
     @Override
     protected HiCS<V> makeInstance() {
-      return new HiCS<>(m, alpha, outlierAlgorithm, statTest, cutoff, rnd);
+      return new HiCS<>(m, alpha, outlierAlgorithm, statTest, cutoff, rnd, threads);
     }
   }
 }
@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
@@ -34,11 +35,13 @@ import de.lmu.ifi.dbs.elki.data.type.CombinedTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -53,16 +56,26 @@ import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.utilities.ensemble.EnsembleVoting;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ChainedParameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
 
 /**
  * Simple outlier ensemble method.
  * 
+ * By default, the ensemble members are run one after another. With multiple
+ * threads, they are run concurrently, each on its own {@link ProxyDatabase}
+ * of the shared relations, so that members do not share lazily created
+ * queries, preprocessors or result hierarchies. Indexes of the database are
+ * then not used by the members. The number of concurrent members is reduced
+ * when the available heap memory is low.
+ * 
  * @author Erich Schubert
  * 
  * @apiviz.composedOf EnsembleVoting
@@ -85,6 +98,17 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
    */
   private EnsembleVoting voting;
 
+  /**
+   * Number of threads.
+   */
+  private int threads;
+
+  /**
+   * Estimated memory use of a single ensemble member per database object, in
+   * bytes.
+   */
+  private int memory;
+
   /**
    * Constructor.
    * 
@@ -92,28 +116,57 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
    * @param voting Voting method
    */
   public SimpleOutlierEnsemble(List<OutlierAlgorithm> algorithms, EnsembleVoting voting) {
+    this(algorithms, voting, 1, 0);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param algorithms Algorithms to run
+   * @param voting Voting method
+   * @param threads Number of threads, 0 for automatic
+   * @param memory Estimated memory use of one member per object, in bytes
+   */
+  public SimpleOutlierEnsemble(List<OutlierAlgorithm> algorithms, EnsembleVoting voting, int threads, int memory) {
     this.algorithms = algorithms;
     this.voting = voting;
+    this.threads = threads;
+    this.memory = memory;
   }
 
   @Override
-  public OutlierResult run(Database database) throws IllegalStateException {
+  public OutlierResult run(final Database database) throws IllegalStateException {
     int num = algorithms.size();
     // Run inner outlier algorithms
     ModifiableDBIDs ids = DBIDUtil.newHashSet();
     ArrayList<OutlierResult> results = new ArrayList<>(num);
     {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
-      for (Algorithm alg : algorithms) {
-        Result res = alg.run(database);
-        List<OutlierResult> ors = ResultUtil.getOutlierResults(res);
+      final DBIDs dbids = database.getRelation(TypeUtil.DBID).getDBIDs();
+      final int usethreads = ParallelExecutor.limitByMemory(Math.min(ParallelExecutor.getThreads(threads), num), dbids.size() * (long) memory);
+      if (LOG.isVerbose() && usethreads < Math.min(ParallelExecutor.getThreads(threads), num)) {
+        LOG.verbose("Limiting to " + usethreads + " concurrent ensemble members due to memory constraints.");
+      }
+      final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
+      List<Callable<List<OutlierResult>>> tasks = new ArrayList<>(num);
+      for (final Algorithm alg : algorithms) {
+        tasks.add(new Callable<List<OutlierResult>>() {
+          @Override
+          public List<OutlierResult> call() {
+            // Concurrent members get their own database view.
+            Database db = (usethreads > 1) ? new ProxyDatabase(dbids, database) : database;
+            Result res = alg.run(db);
+            if (prog != null) {
+              prog.incrementProcessed(LOG);
+            }
+            return ResultUtil.getOutlierResults(res);
+          }
+        });
+      }
+      for (List<OutlierResult> ors : ParallelExecutor.run(usethreads, tasks)) {
         for (OutlierResult or : ors) {
           results.add(or);
           ids.addDBIDs(or.getScores().getDBIDs());
         }
-        if (prog != null) {
-          prog.incrementProcessed(LOG);
-        }
       }
       if (prog != null) {
         prog.ensureCompleted(LOG);
@@ -188,6 +241,16 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
      */
     public static final OptionID VOTING_ID = new OptionID("ensemble.voting", "Voting strategy to use in the ensemble.");
 
+    /**
+     * Estimated memory use of one ensemble member, per object.
+     */
+    public static final OptionID MEMORY_ID = new OptionID("ensemble.member-memory", "Estimated memory use of one ensemble member per object, in bytes. Used to limit the number of members run concurrently.");
+
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("ensemble.threads", "Number of ensemble members to run concurrently. 0 uses one thread per available processor.");
+
     /**
      * The algorithms to run.
      */
@@ -198,6 +261,16 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
      */
     private EnsembleVoting voting;
 
+    /**
+     * Number of threads.
+     */
+    private int threads;
+
+    /**
+     * Estimated memory use of one member per object.
+     */
+    private int memory;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -213,11 +286,22 @@ public class SimpleOutlierEnsemble extends AbstractAlgorithm<OutlierResult> impl
       if (config.grab(votingP)) {
         voting = votingP.instantiateClass(config);
       }
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if (config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+      if (threads != 1) {
+        IntParameter memoryP = new IntParameter(MEMORY_ID, 1024);
+        memoryP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if (config.grab(memoryP)) {
+          memory = memoryP.intValue();
+        }
+      }
     }
 
     @Override
     protected SimpleOutlierEnsemble makeInstance() {
-      return new SimpleOutlierEnsemble(algorithms, voting);
+      return new SimpleOutlierEnsemble(algorithms, voting, threads, memory);
     }
   }
 }
@@ -32,16 +32,25 @@ import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnBundleWriter;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.UnableToComplyException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Convert an input file to the more efficient ELKI bundle format.
  * 
+ * Optionally, the column-wise format of {@link ColumnBundleWriter} is used,
+ * which can be loaded with
+ * {@link de.lmu.ifi.dbs.elki.datasource.ColumnBundleDatabaseConnection}.
+ * 
  * @author Erich Schubert
  */
 public class ConvertToBundleApplication extends AbstractApplication {
@@ -60,6 +69,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
    */
   private File outfile;
 
+  /**
+   * Column-wise writer, {@code null} for the row-wise format.
+   */
+  private ColumnBundleWriter columnwriter;
+
   /**
    * Constructor.
    * 
@@ -67,9 +81,22 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @param outfile Output filename
    */
   public ConvertToBundleApplication(DatabaseConnection input, File outfile) {
+    this(input, outfile, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param input Data source configuration
+   * @param outfile Output filename
+   * @param columnwriter Column-wise writer, {@code null} for the row-wise
+   *        format
+   */
+  public ConvertToBundleApplication(DatabaseConnection input, File outfile, ColumnBundleWriter columnwriter) {
     super();
     this.input = input;
     this.outfile = outfile;
+    this.columnwriter = columnwriter;
   }
 
   @Override
@@ -81,12 +108,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
     if(LOG.isVerbose()) {
       LOG.verbose("Serializing to output file: " + outfile.toString());
     }
-    // TODO: make configurable?
-    BundleWriter writer = new BundleWriter();
     try {
       FileOutputStream fos = new FileOutputStream(outfile);
       FileChannel channel = fos.getChannel();
-      writer.writeBundleStream(new StreamFromBundle(bundle), channel);
+      if(columnwriter != null) {
+        columnwriter.writeBundle(bundle, channel);
+      }
+      else {
+        new BundleWriter().writeBundleStream(new StreamFromBundle(bundle), channel);
+      }
       channel.close();
       fos.close();
     }
@@ -103,6 +133,26 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Flag to use the column-wise format.
+     */
+    public static final OptionID COLUMNAR_ID = new OptionID("bundle.columnar", "Write a column-wise bundle, which allows loading only some columns or rows.");
+
+    /**
+     * Flag to store dense vectors with single precision.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("bundle.float32", "Store dense vectors with single precision in the column-wise bundle.");
+
+    /**
+     * Flag to compress the blocks.
+     */
+    public static final OptionID COMPRESS_ID = new OptionID("bundle.compress", "Compress the blocks of the column-wise bundle.");
+
+    /**
+     * Number of rows per block.
+     */
+    public static final OptionID ROWGROUP_ID = new OptionID("bundle.rowgroup", "Number of rows per block of the column-wise bundle.");
+
     /**
      * The data input step.
      */
@@ -113,6 +163,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     private File outfile;
 
+    /**
+     * Column-wise writer.
+     */
+    private ColumnBundleWriter columnwriter = null;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -121,11 +176,23 @@ public class ConvertToBundleApplication extends AbstractApplication {
         input = inputP.instantiateClass(config);
       }
       outfile = super.getParameterOutputFile(config, "File name to serialize the bundle to.");
+      Flag columnarF = new Flag(COLUMNAR_ID);
+      if(config.grab(columnarF) && columnarF.isTrue()) {
+        Flag floatF = new Flag(FLOAT_ID);
+        config.grab(floatF);
+        Flag compressF = new Flag(COMPRESS_ID);
+        config.grab(compressF);
+        IntParameter rowgroupP = new IntParameter(ROWGROUP_ID, ColumnBundleWriter.DEFAULT_ROWGROUP);
+        rowgroupP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(rowgroupP)) {
+          columnwriter = new ColumnBundleWriter(floatF.isTrue(), compressF.isTrue(), rowgroupP.intValue());
+        }
+      }
     }
 
     @Override
     protected ConvertToBundleApplication makeInstance() {
-      return new ConvertToBundleApplication(input, outfile);
+      return new ConvertToBundleApplication(input, outfile, columnwriter);
     }
   }
 
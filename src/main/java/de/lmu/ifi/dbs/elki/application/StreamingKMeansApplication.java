@@ -0,0 +1,215 @@
+package de.lmu.ifi.dbs.elki.application;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansMiniBatch;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.UnableToComplyException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Run mini-batch k-means on a file that is too large to be loaded into a
+ * database, by streaming it through a parser.
+ * 
+ * The cluster centers are written to the output file, one per line. If an
+ * assignment file is given, the input is streamed a second time, and the
+ * cluster number of each object is written to that file, one per line.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf KMeansMiniBatch
+ * @apiviz.composedOf StreamingParser
+ */
+public class StreamingKMeansApplication extends AbstractApplication {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(StreamingKMeansApplication.class);
+
+  /**
+   * Input file.
+   */
+  private File infile;
+
+  /**
+   * Parser to use.
+   */
+  private StreamingParser parser;
+
+  /**
+   * k-means algorithm.
+   */
+  private KMeansMiniBatch<?, ?> kmeans;
+
+  /**
+   * Output file for the centers.
+   */
+  private File outfile;
+
+  /**
+   * Output file for the assignment (may be null).
+   */
+  private File assignfile;
+
+  /**
+   * Constructor.
+   * 
+   * @param infile Input file
+   * @param parser Parser
+   * @param kmeans k-means algorithm
+   * @param outfile Output file for the centers
+   * @param assignfile Output file for the assignment (may be null)
+   */
+  public StreamingKMeansApplication(File infile, StreamingParser parser, KMeansMiniBatch<?, ?> kmeans, File outfile, File assignfile) {
+    super();
+    this.infile = infile;
+    this.parser = parser;
+    this.kmeans = kmeans;
+    this.outfile = outfile;
+    this.assignfile = assignfile;
+  }
+
+  @Override
+  public void run() throws UnableToComplyException {
+    try {
+      if(LOG.isVerbose()) {
+        LOG.verbose("Clustering stream: " + infile.toString());
+      }
+      InputStream in = FileUtil.tryGzipInput(new FileInputStream(infile));
+      parser.initStream(in);
+      List<Vector> means = kmeans.run(parser);
+      in.close();
+
+      PrintStream out = new PrintStream(new FileOutputStream(outfile));
+      for(Vector mean : means) {
+        out.println(FormatUtil.format(mean.getArrayRef(), " "));
+      }
+      out.close();
+
+      if(assignfile != null) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("Assigning objects: " + assignfile.toString());
+        }
+        in = FileUtil.tryGzipInput(new FileInputStream(infile));
+        parser.initStream(in);
+        PrintStream aout = new PrintStream(new FileOutputStream(assignfile));
+        int[] sizes = kmeans.assign(parser, means, aout);
+        aout.close();
+        in.close();
+        if(LOG.isVerbose()) {
+          LOG.verbose("Cluster sizes: " + FormatUtil.format(sizes, " "));
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new UnableToComplyException("IO Error", e);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Output file for the cluster assignment.
+     */
+    public static final OptionID ASSIGNMENT_ID = new OptionID("kmeans.assignment", "File to write the cluster number of each object to, using a second pass over the input.");
+
+    /**
+     * Input file.
+     */
+    private File infile;
+
+    /**
+     * Parser to use.
+     */
+    private StreamingParser parser;
+
+    /**
+     * k-means algorithm.
+     */
+    private KMeansMiniBatch<?, ?> kmeans;
+
+    /**
+     * Output file for the centers.
+     */
+    private File outfile;
+
+    /**
+     * Output file for the assignment.
+     */
+    private File assignfile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      infile = super.getParameterInputFile(config, "File to cluster.");
+      ObjectParameter<StreamingParser> parserP = new ObjectParameter<>(AbstractDatabaseConnection.Parameterizer.PARSER_ID, StreamingParser.class, NumberVectorLabelParser.class);
+      if(config.grab(parserP)) {
+        parser = parserP.instantiateClass(config);
+      }
+      kmeans = config.tryInstantiate(KMeansMiniBatch.class);
+      outfile = super.getParameterOutputFile(config, "File to write the cluster centers to.");
+      FileParameter assignP = new FileParameter(ASSIGNMENT_ID, FileParameter.FileType.OUTPUT_FILE, true);
+      if(config.grab(assignP)) {
+        assignfile = assignP.getValue();
+      }
+    }
+
+    @Override
+    protected StreamingKMeansApplication makeInstance() {
+      return new StreamingKMeansApplication(infile, parser, kmeans, outfile, assignfile);
+    }
+  }
+
+  /**
+   * Run command line application.
+   * 
+   * @param args Command line parameters
+   */
+  public static void main(String[] args) {
+    runCLIApplication(StreamingKMeansApplication.class, args);
+  }
+}
@@ -0,0 +1,232 @@
+package de.lmu.ifi.dbs.elki.data;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.persistent.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Float vector that is a flyweight view onto a row of a shared
+ * {@link FloatBuffer}, for example a direct or memory-mapped buffer.
+ * 
+ * Instances do not own their data; they are usually obtained from a
+ * {@link de.lmu.ifi.dbs.elki.database.relation.FloatVectorBuffer}, and may be
+ * repositioned to a different row to avoid allocations in inner loops.
+ * 
+ * @author Erich Schubert
+ */
+public class BufferFloatVector extends AbstractNumberVector<Float> {
+  /**
+   * Static factory instance.
+   */
+  public static final BufferFloatVector.Factory FACTORY = new BufferFloatVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<BufferFloatVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Buffer containing the data.
+   */
+  private FloatBuffer data;
+
+  /**
+   * Offset of the first value in the buffer.
+   */
+  private int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param data Data buffer
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public BufferFloatVector(FloatBuffer data, int offset, int dim) {
+    super();
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  /**
+   * Reposition this view.
+   * 
+   * @param data Data buffer
+   * @param offset Offset of the first value
+   */
+  public void moveTo(FloatBuffer data, int offset) {
+    this.data = data;
+    this.offset = offset;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Deprecated
+  @Override
+  public Float getValue(int dimension) {
+    return data.get(offset + dimension);
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return data.get(offset + dimension);
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    return data.get(offset + dimension);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) data.get(offset + dimension);
+  }
+
+  @Override
+  public Vector getColumnVector() {
+    final double[] values = new double[dim];
+    for(int i = 0; i < dim; i++) {
+      values[i] = data.get(offset + i);
+    }
+    return new Vector(values);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(data.get(offset + i));
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for buffer float vectors. New vectors are backed by their own,
+   * heap-allocated buffer.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.has BufferFloatVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<BufferFloatVector, Float> {
+    @Override
+    public <A> BufferFloatVector newFeatureVector(A array, ArrayAdapter<Float, A> adapter) {
+      int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i);
+      }
+      return new BufferFloatVector(FloatBuffer.wrap(values), 0, dim);
+    }
+
+    @Override
+    public <A> BufferFloatVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getFloat(array, i);
+      }
+      return new BufferFloatVector(FloatBuffer.wrap(values), 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<BufferFloatVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super BufferFloatVector> getRestrictionClass() {
+      return BufferFloatVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected BufferFloatVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encodings.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.uses BufferFloatVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<BufferFloatVector> {
+    @Override
+    public BufferFloatVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * dimensionality);
+      final float[] values = new float[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getFloat();
+      }
+      return new BufferFloatVector(FloatBuffer.wrap(values), 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, BufferFloatVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * vec.dim);
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putFloat(vec.data.get(vec.offset + i));
+      }
+    }
+
+    @Override
+    public int getByteSize(BufferFloatVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_FLOAT * vec.dim;
+    }
+  }
+}
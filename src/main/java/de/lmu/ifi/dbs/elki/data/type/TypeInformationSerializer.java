@@ -24,6 +24,8 @@ package de.lmu.ifi.dbs.elki.data.type;
  */
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -141,6 +143,30 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
    */
   static final ByteBufferSerializer<VectorFieldTypeInformation<?>> VECTOR_FIELD_TYPE_SERIALIZER = new VectorFieldTypeSerializer();
 
+  /**
+   * Instantiate a serializer class by name.
+   * 
+   * Serializers may have a private constructor, to encourage the use of a
+   * static instance.
+   * 
+   * @param sername Serializer class name
+   * @return New serializer instance
+   * @throws ClassNotFoundException when the class was not found
+   * @throws InstantiationException when the class could not be instantiated
+   * @throws IllegalAccessException when the constructor is not accessible
+   */
+  static Object newSerializer(String sername) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+    try {
+      Constructor<?> c = Class.forName(sername).getDeclaredConstructor();
+      c.setAccessible(true);
+      return c.newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new InstantiationException("No default constructor: " + sername);
+    } catch (InvocationTargetException e) {
+      throw new InstantiationException("Constructor failed: " + e.getCause());
+    }
+  }
+
   /**
    * Serialization class for pure simple types.
    * 
@@ -158,7 +184,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
         String label = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buffer);
         label = ("".equals(label)) ? null : label;
         String sername = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buffer);
-        ByteBufferSerializer<Object> serializer = (ByteBufferSerializer<Object>) Class.forName(sername).newInstance();
+        ByteBufferSerializer<Object> serializer = (ByteBufferSerializer<Object>) newSerializer(sername);
         return new SimpleTypeInformation<>(clz, label, serializer);
       } catch (ClassNotFoundException e) {
         throw new UnsupportedOperationException("Cannot deserialize - class not found: " + e, e);
@@ -211,7 +237,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
       // Type class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.getStringSize(object.getLabel());
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       return total;
@@ -237,7 +263,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
         String label = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buffer);
         label = ("".equals(label)) ? null : label;
         String sername = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buffer);
-        ByteBufferSerializer<DoubleVector> serializer = (ByteBufferSerializer<DoubleVector>) Class.forName(sername).newInstance();
+        ByteBufferSerializer<DoubleVector> serializer = (ByteBufferSerializer<DoubleVector>) newSerializer(sername);
         int mindim = ByteArrayUtil.readSignedVarint(buffer);
         int maxdim = ByteArrayUtil.readSignedVarint(buffer);
         return new VectorTypeInformation<>(clz, serializer, mindim, maxdim);
@@ -294,7 +320,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
       // Type class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.getStringSize(object.getLabel());
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       // Dimensionality
@@ -326,7 +352,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
         label = ("".equals(label)) ? null : label;
         // Serialization class
         String sername = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(buffer);
-        ByteBufferSerializer<DoubleVector> serializer = (ByteBufferSerializer<DoubleVector>) Class.forName(sername).newInstance();
+        ByteBufferSerializer<DoubleVector> serializer = (ByteBufferSerializer<DoubleVector>) newSerializer(sername);
         // Dimensionalities
         int mindim = ByteArrayUtil.readSignedVarint(buffer);
         int maxdim = ByteArrayUtil.readSignedVarint(buffer);
@@ -405,10 +431,10 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
         throw new UnsupportedOperationException("Serialization not possible.", e);
       }
       int total = 0;
-      // Type class
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
+      // Factory class
+      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getFactory().getClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.getStringSize(object.getLabel());
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       // Dimensionality
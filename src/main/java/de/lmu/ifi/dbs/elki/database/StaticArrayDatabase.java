@@ -32,10 +32,13 @@ import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBuffer;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBufferRelation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
@@ -55,6 +58,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * dynamic insert, delete and update operations. However, array access is
  * expected to be faster and use less memory.
  * 
+ * Columns supplied as {@link VectorBuffer} by the database connection are
+ * used as relations directly, without copying them into heap objects.
+ * 
  * @author Arthur Zimek
  * @author Erich Schubert
  * 
@@ -154,8 +160,8 @@ public class StaticArrayDatabase extends AbstractDatabase implements Parameteriz
       for(int j = 0; j < numObjects; j++, newid.advance()) {
         // insert object
         for(int i = 0; i < targets.length; i++) {
-          // DBIDs were handled above.
-          if(i == idrepnr) {
+          // DBIDs were handled above, vector buffers are used as is.
+          if(i == idrepnr || targets[i] instanceof VectorBufferRelation) {
             continue;
           }
           @SuppressWarnings("unchecked")
@@ -232,6 +238,18 @@ public class StaticArrayDatabase extends AbstractDatabase implements Parameteriz
     BitSet used = new BitSet(relations.size());
     for(int i = 0; i < targets.length; i++) {
       SimpleTypeInformation<?> meta = pack.meta(i);
+      // Vector buffers are used directly, without copying.
+      if(ids instanceof DBIDRange && pack instanceof MultipleObjectsBundle) {
+        final Object column = ((MultipleObjectsBundle) pack).getColumn(i);
+        if(column instanceof VectorBuffer) {
+          Relation<?> relation = new VectorBufferRelation<>(this, (DBIDRange) ids, (VectorBuffer<?>) column);
+          relations.add(relation);
+          getHierarchy().add(this, relation);
+          targets[i] = relation;
+          used.set(relations.size() - 1);
+          continue;
+        }
+      }
       // TODO: aggressively try to match exact metas first?
       // Try to match unused representations only
       for(int j = used.nextClearBit(0); j >= 0 && j < relations.size(); j = used.nextClearBit(j + 1)) {
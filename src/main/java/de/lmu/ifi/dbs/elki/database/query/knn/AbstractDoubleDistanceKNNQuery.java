@@ -0,0 +1,69 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+
+/**
+ * Abstract base class for kNN queries specialized to double distances.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ */
+public abstract class AbstractDoubleDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O, DoubleDistance> implements DoubleDistanceKNNQuery<O> {
+  /**
+   * Constructor.
+   * 
+   * @param distanceQuery Distance query used
+   */
+  public AbstractDoubleDistanceKNNQuery(DistanceQuery<O, DoubleDistance> distanceQuery) {
+    super(distanceQuery);
+  }
+
+  @Override
+  public List<? extends DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    List<DoubleDistanceKNNList> ret = new ArrayList<>(ids.size());
+    for (DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      ret.add(getKNNForDBID(iter, k));
+    }
+    return ret;
+  }
+
+  @Override
+  public DoubleDistanceKNNList getKNNForDBID(DBIDRef id, int k) {
+    return getKNNForObject(relation.get(id), k);
+  }
+
+  @Override
+  abstract public DoubleDistanceKNNList getKNNForObject(O obj, int k);
+}
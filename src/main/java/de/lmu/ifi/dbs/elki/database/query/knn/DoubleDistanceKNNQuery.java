@@ -0,0 +1,56 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+
+/**
+ * kNN query specialized to double distances.
+ * 
+ * All results are {@link DoubleDistanceKNNList}s, so that the neighbors can be
+ * processed using {@link DoubleDistanceKNNList#doubleKNNDistance()} and the
+ * {@link de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceDBIDListIter#doubleDistance()}
+ * of their iterators, without creating {@link DoubleDistance} objects.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses DoubleDistanceKNNList oneway - - «create»
+ * 
+ * @param <O> Object type
+ */
+public interface DoubleDistanceKNNQuery<O> extends KNNQuery<O, DoubleDistance> {
+  @Override
+  public DoubleDistanceKNNList getKNNForDBID(DBIDRef id, int k);
+
+  @Override
+  public List<? extends DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k);
+
+  @Override
+  public DoubleDistanceKNNList getKNNForObject(O obj, int k);
+}
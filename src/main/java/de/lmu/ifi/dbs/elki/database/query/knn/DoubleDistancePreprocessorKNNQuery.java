@@ -0,0 +1,129 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Instance for a particular database, invoking the preprocessor, specialized
+ * to double distances.
+ * 
+ * The tie handling when fewer neighbors than materialized are requested uses
+ * primitive doubles only.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ * @param <T> Result type
+ */
+public class DoubleDistancePreprocessorKNNQuery<O, T extends KNNList<DoubleDistance>> extends PreprocessorKNNQuery<O, DoubleDistance, T> implements DoubleDistanceKNNQuery<O> {
+  /**
+   * Constructor.
+   * 
+   * @param database Database to query
+   * @param preprocessor Preprocessor instance to use
+   */
+  public DoubleDistancePreprocessorKNNQuery(Relation<O> database, AbstractMaterializeKNNPreprocessor<O, DoubleDistance, T> preprocessor) {
+    super(database, preprocessor);
+  }
+
+  @Override
+  public DoubleDistanceKNNList getKNNForDBID(DBIDRef id, int k) {
+    final AbstractMaterializeKNNPreprocessor<O, DoubleDistance, T> preprocessor = getPreprocessor();
+    if(k > preprocessor.getK()) {
+      LoggingUtil.warning("Requested more neighbors than preprocessed!");
+    }
+    return subList(asDoubleKNNList(preprocessor.get(id)), k);
+  }
+
+  @Override
+  public List<? extends DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    final AbstractMaterializeKNNPreprocessor<O, DoubleDistance, T> preprocessor = getPreprocessor();
+    if(k > preprocessor.getK()) {
+      LoggingUtil.warning("Requested more neighbors than preprocessed!");
+    }
+    List<DoubleDistanceKNNList> result = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      result.add(subList(asDoubleKNNList(preprocessor.get(iter)), k));
+    }
+    return result;
+  }
+
+  @Override
+  public DoubleDistanceKNNList getKNNForObject(O obj, int k) {
+    throw new AbortException("Preprocessor KNN query only supports ID queries.");
+  }
+
+  /**
+   * Reduce a kNN list to the first k neighbors, including ties.
+   * 
+   * @param dr Materialized list
+   * @param k Number of neighbors requested
+   * @return Sublist
+   */
+  private static DoubleDistanceKNNList subList(DoubleDistanceKNNList dr, int k) {
+    if(k >= dr.size()) {
+      return dr;
+    }
+    final double kdist = dr.get(k - 1).doubleDistance();
+    int subk = k;
+    while(subk < dr.size() && dr.get(subk).doubleDistance() == kdist) {
+      // Tie - increase subk.
+      subk++;
+    }
+    return (DoubleDistanceKNNList) DBIDUtil.subList(dr, subk);
+  }
+
+  /**
+   * Ensure that a kNN list is double-specialized; other lists are converted.
+   * 
+   * @param list kNN list
+   * @return Double distance kNN list
+   */
+  private static DoubleDistanceKNNList asDoubleKNNList(KNNList<DoubleDistance> list) {
+    if(list instanceof DoubleDistanceKNNList) {
+      return (DoubleDistanceKNNList) list;
+    }
+    DoubleDistanceKNNHeap heap = DBIDUtil.newDoubleDistanceHeap(list.getK());
+    for(DistanceDBIDListIter<DoubleDistance> iter = list.iter(); iter.valid(); iter.advance()) {
+      heap.insert(iter.getDistance().doubleValue(), iter);
+    }
+    return heap.toKNNList();
+  }
+}
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.database.query.knn;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -31,6 +32,7 @@ import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBufferRelation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 
@@ -43,7 +45,7 @@ import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
  * 
  * @param <O> Object type
  */
-public class DoubleOptimizedDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O, DoubleDistance> implements LinearScanQuery {
+public class DoubleOptimizedDistanceKNNQuery<O> extends AbstractDoubleDistanceKNNQuery<O> implements LinearScanQuery {
   /**
    * Raw distance function.
    */
@@ -79,6 +81,10 @@ public class DoubleOptimizedDistanceKNNQuery<O> extends AbstractDistanceKNNQuery
   }
 
   private static <O> void linearScan(Relation<? extends O> relation, DBIDIter iter, PrimitiveDoubleDistanceFunction<? super O> rawdist, final O obj, DoubleDistanceKNNHeap heap) {
+    if(relation instanceof VectorBufferRelation) {
+      linearScanBuffer((VectorBufferRelation<?>) relation, iter, rawdist, obj, heap);
+      return;
+    }
     double kdist = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
       final double dist = rawdist.doubleDistance(obj, relation.get(iter));
@@ -88,4 +94,27 @@ public class DoubleOptimizedDistanceKNNQuery<O> extends AbstractDistanceKNNQuery
       iter.advance();
     }
   }
+
+  /**
+   * Linear scan over a vector buffer, reusing a single flyweight.
+   * 
+   * @param relation Relation
+   * @param iter Iterator
+   * @param rawdist Distance function
+   * @param obj Query object
+   * @param heap Result heap
+   */
+  @SuppressWarnings("unchecked")
+  private static <O, V extends NumberVector<?>> void linearScanBuffer(VectorBufferRelation<V> relation, DBIDIter iter, PrimitiveDoubleDistanceFunction<? super O> rawdist, final O obj, DoubleDistanceKNNHeap heap) {
+    final V view = relation.newView();
+    double kdist = Double.POSITIVE_INFINITY;
+    while(iter.valid()) {
+      relation.moveView(view, iter);
+      final double dist = rawdist.doubleDistance(obj, (O) view);
+      if(dist <= kdist) {
+        kdist = heap.insert(dist, iter);
+      }
+      iter.advance();
+    }
+  }
 }
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.database.query.range;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
@@ -31,6 +32,7 @@ import de.lmu.ifi.dbs.elki.database.ids.integer.DoubleDistanceIntegerDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBufferRelation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 
@@ -81,6 +83,10 @@ public class DoubleOptimizedDistanceRangeQuery<O> extends AbstractDistanceRangeQ
   }
 
   private static <O> void linearScan(Relation<? extends O> relation, DBIDIter iter, PrimitiveDoubleDistanceFunction<? super O> rawdist, O obj, double range, ModifiableDoubleDistanceDBIDList result) {
+    if(relation instanceof VectorBufferRelation) {
+      linearScanBuffer((VectorBufferRelation<?>) relation, iter, rawdist, obj, range, result);
+      return;
+    }
     while(iter.valid()) {
       final double doubleDistance = rawdist.doubleDistance(obj, relation.get(iter));
       if(doubleDistance <= range) {
@@ -89,4 +95,27 @@ public class DoubleOptimizedDistanceRangeQuery<O> extends AbstractDistanceRangeQ
       iter.advance();
     }
   }
+
+  /**
+   * Linear scan over a vector buffer, reusing a single flyweight.
+   * 
+   * @param relation Relation
+   * @param iter Iterator
+   * @param rawdist Distance function
+   * @param obj Query object
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  @SuppressWarnings("unchecked")
+  private static <O, V extends NumberVector<?>> void linearScanBuffer(VectorBufferRelation<V> relation, DBIDIter iter, PrimitiveDoubleDistanceFunction<? super O> rawdist, O obj, double range, ModifiableDoubleDistanceDBIDList result) {
+    final V view = relation.newView();
+    while(iter.valid()) {
+      relation.moveView(view, iter);
+      final double doubleDistance = rawdist.doubleDistance(obj, (O) view);
+      if(doubleDistance <= range) {
+        result.add(doubleDistance, iter);
+      }
+      iter.advance();
+    }
+  }
 }
@@ -0,0 +1,101 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.BufferDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+
+/**
+ * Vector buffer storing double precision values.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has BufferDoubleVector
+ */
+public class DoubleVectorBuffer extends VectorBuffer<BufferDoubleVector> {
+  /**
+   * Typed views of the chunks.
+   */
+  private DoubleBuffer[] views = new DoubleBuffer[0];
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<BufferDoubleVector> type;
+
+  /**
+   * Constructor.
+   * 
+   * @param dim Dimensionality
+   * @param channel File channel to map the data from, or null for off-heap
+   *        memory
+   */
+  public DoubleVectorBuffer(int dim, FileChannel channel) {
+    super(dim, 8, channel);
+    this.type = new VectorFieldTypeInformation<>(BufferDoubleVector.FACTORY, dim);
+  }
+
+  @Override
+  public VectorFieldTypeInformation<BufferDoubleVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public BufferDoubleVector get(int index) {
+    assert (index >= 0 && index < size());
+    return new BufferDoubleVector(views[index / rowsPerChunk], (index % rowsPerChunk) * dim, dim);
+  }
+
+  @Override
+  public BufferDoubleVector newView() {
+    return new BufferDoubleVector(views.length > 0 ? views[0] : null, 0, dim);
+  }
+
+  @Override
+  public void moveView(BufferDoubleVector view, int index) {
+    assert (index >= 0 && index < size());
+    view.moveTo(views[index / rowsPerChunk], (index % rowsPerChunk) * dim);
+  }
+
+  @Override
+  public void put(int index, NumberVector<?> vec) {
+    final DoubleBuffer view = views[index / rowsPerChunk];
+    final int offset = (index % rowsPerChunk) * dim;
+    for(int d = 0; d < dim; d++) {
+      view.put(offset + d, vec.doubleValue(d));
+    }
+  }
+
+  @Override
+  protected void chunkAdded(ByteBuffer chunk) {
+    views = Arrays.copyOf(views, views.length + 1);
+    views[views.length - 1] = chunk.asDoubleBuffer();
+  }
+}
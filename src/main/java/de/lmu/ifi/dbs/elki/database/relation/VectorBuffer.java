@@ -0,0 +1,201 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Row-major storage of fixed-dimensional vectors in a small number of large
+ * {@link ByteBuffer}s, which are either allocated off-heap, or memory-mapped
+ * from a file.
+ * 
+ * This avoids having one heap object (and one array) per vector, which
+ * becomes a major cost for the garbage collector with hundreds of millions of
+ * vectors. The vectors are exposed as {@link java.util.List} of flyweight
+ * views, so that the buffer can also be used as a column of a
+ * {@link de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle}.
+ * 
+ * The data is split into chunks, as a single NIO buffer cannot exceed 2 GB.
+ * When memory mapping, the file uses the native byte order, and is only
+ * intended as scratch space.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <V> Vector type
+ */
+public abstract class VectorBuffer<V extends NumberVector<?>> extends AbstractList<V> {
+  /**
+   * Default chunk size, in bytes.
+   */
+  private static final int CHUNK_BYTES = 1 << 26;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Number of vectors per chunk.
+   */
+  protected final int rowsPerChunk;
+
+  /**
+   * Size of a chunk in bytes.
+   */
+  private final int chunkBytes;
+
+  /**
+   * File channel to map chunks from, may be null.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Number of vectors stored.
+   */
+  private int size = 0;
+
+  /**
+   * Data chunks.
+   */
+  private ByteBuffer[] chunks = new ByteBuffer[0];
+
+  /**
+   * Constructor.
+   * 
+   * @param dim Dimensionality
+   * @param valueBytes Size of a single value in bytes
+   * @param channel File channel to map the data from, or null for off-heap
+   *        memory
+   */
+  protected VectorBuffer(int dim, int valueBytes, FileChannel channel) {
+    super();
+    if(dim <= 0) {
+      throw new AbortException("Vector buffers require a fixed, positive dimensionality.");
+    }
+    this.dim = dim;
+    this.channel = channel;
+    final int rowBytes = dim * valueBytes;
+    this.rowsPerChunk = Math.max(1, CHUNK_BYTES / rowBytes);
+    this.chunkBytes = rowsPerChunk * rowBytes;
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Get the type information of the stored vectors.
+   * 
+   * @return Type information
+   */
+  public abstract VectorFieldTypeInformation<V> getDataTypeInformation();
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Create a new view, which may then be repositioned using
+   * {@link #moveView}.
+   * 
+   * @return New view
+   */
+  public abstract V newView();
+
+  /**
+   * Reposition a view onto a different vector.
+   * 
+   * @param view View obtained from {@link #newView}
+   * @param index Vector index
+   */
+  public abstract void moveView(V view, int index);
+
+  /**
+   * Overwrite the vector at the given position.
+   * 
+   * @param index Vector index
+   * @param vec New values
+   */
+  public abstract void put(int index, NumberVector<?> vec);
+
+  /**
+   * Append a vector, growing the storage as needed.
+   * 
+   * @param vec Vector to append
+   */
+  public void append(NumberVector<?> vec) {
+    if(vec.getDimensionality() != dim) {
+      throw new AbortException("Vector buffers require all vectors to have dimensionality " + dim + ", but got " + vec.getDimensionality());
+    }
+    if(size == chunks.length * rowsPerChunk) {
+      addChunk();
+    }
+    put(size++, vec);
+  }
+
+  /**
+   * Allocate or map an additional chunk.
+   */
+  private void addChunk() {
+    final int i = chunks.length;
+    ByteBuffer chunk;
+    if(channel != null) {
+      try {
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkBytes, chunkBytes);
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not map vector buffer file.", e);
+      }
+    }
+    else {
+      chunk = ByteBuffer.allocateDirect(chunkBytes);
+    }
+    chunk.order(ByteOrder.nativeOrder());
+    chunks = Arrays.copyOf(chunks, i + 1);
+    chunks[i] = chunk;
+    chunkAdded(chunk);
+  }
+
+  /**
+   * Hook to build typed views of a newly added chunk.
+   * 
+   * @param chunk New chunk
+   */
+  protected abstract void chunkAdded(ByteBuffer chunk);
+}
@@ -0,0 +1,148 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.result.AbstractHierarchicalResult;
+
+/**
+ * Static relation backed by a {@link VectorBuffer}, for a contiguous range of
+ * object IDs.
+ * 
+ * Every call to {@link #get} returns a new (but cheap) flyweight view. Inner
+ * loops such as linear scans can avoid these allocations by using
+ * {@link #newView} and {@link #moveView}.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf VectorBuffer
+ * 
+ * @param <V> Vector type
+ */
+public class VectorBufferRelation<V extends NumberVector<?>> extends AbstractHierarchicalResult implements Relation<V> {
+  /**
+   * Our database
+   */
+  private final Database database;
+
+  /**
+   * The DBIDs this relation is defined for.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Vector storage.
+   */
+  private final VectorBuffer<V> buffer;
+
+  /**
+   * Constructor.
+   * 
+   * @param database Database
+   * @param ids IDs, must be of the same size as the buffer
+   * @param buffer Vector storage
+   */
+  public VectorBufferRelation(Database database, DBIDRange ids, VectorBuffer<V> buffer) {
+    super();
+    assert (ids.size() == buffer.size());
+    this.database = database;
+    this.ids = ids;
+    this.buffer = buffer;
+  }
+
+  @Override
+  public Database getDatabase() {
+    return database;
+  }
+
+  @Override
+  public V get(DBIDRef id) {
+    return buffer.get(ids.getOffset(id));
+  }
+
+  /**
+   * Create a reusable view, to be positioned with {@link #moveView}.
+   * 
+   * @return New view
+   */
+  public V newView() {
+    return buffer.newView();
+  }
+
+  /**
+   * Reposition a view onto the vector of the given object.
+   * 
+   * @param view View obtained from {@link #newView}
+   * @param id Object ID
+   */
+  public void moveView(V view, DBIDRef id) {
+    buffer.moveView(view, ids.getOffset(id));
+  }
+
+  @Override
+  public void set(DBIDRef id, V val) {
+    buffer.put(ids.getOffset(id), val);
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    throw new UnsupportedOperationException("Vector buffer relations are static.");
+  }
+
+  @Override
+  public SimpleTypeInformation<V> getDataTypeInformation() {
+    return buffer.getDataTypeInformation();
+  }
+
+  @Override
+  public DBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return buffer.getDataTypeInformation().toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+}
@@ -0,0 +1,198 @@
+package de.lmu.ifi.dbs.elki.datasource;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Class to load a database from a column bundle file, as written by
+ * {@link de.lmu.ifi.dbs.elki.datasource.bundle.ColumnBundleWriter}.
+ * 
+ * Only the selected columns and rows are loaded, by mapping only the blocks
+ * containing them.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf ColumnBundleReader
+ */
+public class ColumnBundleDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ColumnBundleDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Columns to load, {@code null} for all.
+   */
+  private int[] columns;
+
+  /**
+   * Range of rows to load, end -1 for all.
+   */
+  private int start, end;
+
+  /**
+   * Constructor.
+   * 
+   * @param filters Filters
+   * @param infile Input file
+   * @param columns Columns to load, {@code null} for all
+   * @param start First row to load
+   * @param end End of rows to load (exclusive), -1 for all
+   */
+  public ColumnBundleDatabaseConnection(List<ObjectFilter> filters, File infile, int[] columns, int start, int end) {
+    super(filters);
+    this.infile = infile;
+    this.columns = columns;
+    this.start = start;
+    this.end = end;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try (FileInputStream fis = new FileInputStream(infile); FileChannel channel = fis.getChannel()) {
+      ColumnBundleReader reader = new ColumnBundleReader(channel);
+      int[] cols = columns;
+      if(cols == null) {
+        cols = new int[reader.getMeta().size()];
+        for(int c = 0; c < cols.length; c++) {
+          cols[c] = c;
+        }
+      }
+      final int rend = (end < 0) ? reader.size() : Math.min(end, reader.size());
+      if(LOG.isVerbose()) {
+        LOG.verbose("Loading " + cols.length + " of " + reader.getMeta().size() + " columns, rows " + start + " to " + rend + " of " + reader.size());
+      }
+      return invokeFilters(reader.load(cols, Math.min(start, rend), rend));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading column bundle", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * Option ID for the input file.
+     */
+    public static final OptionID INPUT_ID = new OptionID("columnbundle.input", "Column bundle file to load the data from.");
+
+    /**
+     * Option ID for the columns to load.
+     */
+    public static final OptionID COLUMNS_ID = new OptionID("columnbundle.columns", "Columns (relations) to load, starting at 0. Default: all columns.");
+
+    /**
+     * Option ID for the first row to load.
+     */
+    public static final OptionID START_ID = new OptionID("columnbundle.start", "First row to load, starting at 0.");
+
+    /**
+     * Option ID for the end of the rows to load.
+     */
+    public static final OptionID END_ID = new OptionID("columnbundle.end", "End of the rows to load (exclusive). Default: all rows.");
+
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    /**
+     * Columns to load.
+     */
+    private int[] columns = null;
+
+    /**
+     * Range of rows to load.
+     */
+    private int start = 0, end = -1;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(INPUT_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+      IntListParameter columnsP = new IntListParameter(COLUMNS_ID, true);
+      columnsP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT_LIST);
+      if(config.grab(columnsP)) {
+        List<Integer> cols = columnsP.getValue();
+        columns = new int[cols.size()];
+        for(int i = 0; i < columns.length; i++) {
+          columns[i] = cols.get(i).intValue();
+        }
+      }
+      IntParameter startP = new IntParameter(START_ID, 0);
+      startP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(startP)) {
+        start = startP.intValue();
+      }
+      IntParameter endP = new IntParameter(END_ID);
+      endP.setOptional(true);
+      endP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(endP)) {
+        end = endP.intValue();
+      }
+    }
+
+    @Override
+    protected ColumnBundleDatabaseConnection makeInstance() {
+      return new ColumnBundleDatabaseConnection(filters, infile, columns, start, end);
+    }
+  }
+}
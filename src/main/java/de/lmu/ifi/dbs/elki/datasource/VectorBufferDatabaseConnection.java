@@ -0,0 +1,311 @@
+package de.lmu.ifi.dbs.elki.datasource;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleVectorBuffer;
+import de.lmu.ifi.dbs.elki.database.relation.FloatVectorBuffer;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBuffer;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.StreamingParser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.utilities.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Database connection that streams a file through a parser, and stores the
+ * (first) number vector column in an off-heap or memory-mapped
+ * {@link VectorBuffer} instead of individual vector objects.
+ * 
+ * The vectors must all have the same dimensionality. Other columns, such as
+ * labels, are stored as usual. When used with a
+ * {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase}, the buffer is used
+ * as relation directly.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses StreamingParser oneway - - runs
+ * @apiviz.uses VectorBuffer oneway - - «create»
+ */
+@Title("Off-heap vector database connection")
+@Description("Parse a file into an off-heap or memory-mapped vector buffer.")
+public class VectorBufferDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(VectorBufferDatabaseConnection.class);
+
+  /**
+   * Parser to use.
+   */
+  private StreamingParser parser;
+
+  /**
+   * Input file.
+   */
+  private File infile;
+
+  /**
+   * File to memory-map, may be null.
+   */
+  private File mapfile;
+
+  /**
+   * Use single precision.
+   */
+  private boolean floats;
+
+  /**
+   * Constructor.
+   * 
+   * @param filters Filters to use
+   * @param parser Streaming parser
+   * @param infile Input file
+   * @param mapfile File to memory-map the vectors to, null for off-heap memory
+   * @param floats Use single precision instead of double precision
+   */
+  public VectorBufferDatabaseConnection(List<ObjectFilter> filters, StreamingParser parser, File infile, File mapfile, boolean floats) {
+    super(filters);
+    this.parser = parser;
+    this.infile = infile;
+    this.mapfile = mapfile;
+    this.floats = floats;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".load") : null;
+    if(duration != null) {
+      duration.begin();
+    }
+    try (InputStream in = new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(infile)))) {
+      parser.initStream(in);
+      MultipleObjectsBundle bundle = loadStream(invokeFilters(parser));
+      if(duration != null) {
+        duration.end();
+        LOG.statistics(duration);
+      }
+      return bundle;
+    }
+    catch(IOException e) {
+      throw new AbortException("Input file could not be read.", e);
+    }
+  }
+
+  /**
+   * Load a stream into a bundle, storing the first vector column in a buffer.
+   * 
+   * @param source Stream source
+   * @return Bundle
+   * @throws IOException on errors mapping the buffer file
+   */
+  protected MultipleObjectsBundle loadStream(BundleStreamSource source) throws IOException {
+    final FileChannel channel = (mapfile != null) ? new RandomAccessFile(mapfile, "rw").getChannel() : null;
+    try {
+      return loadStream(source, channel);
+    }
+    finally {
+      // Mapped buffers remain valid after closing the channel.
+      if(channel != null) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Load a stream into a bundle.
+   * 
+   * @param source Stream source
+   * @param channel File channel to map, may be null
+   * @return Bundle
+   */
+  private MultipleObjectsBundle loadStream(BundleStreamSource source, FileChannel channel) {
+    BundleMeta meta = new BundleMeta();
+    List<List<?>> columns = new ArrayList<>();
+    VectorBuffer<?> buffer = null;
+    int vcol = -1, size = 0;
+    while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case END_OF_STREAM: {
+        if(buffer == null) {
+          throw new AbortException("No number vector column found in the input data.");
+        }
+        MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+        for(int i = 0; i < meta.size(); i++) {
+          bundle.appendColumn(meta.get(i), columns.get(i));
+        }
+        return bundle;
+      }
+      case META_CHANGED: {
+        BundleMeta smeta = source.getMeta();
+        if(buffer == null) {
+          for(int i = 0; i < smeta.size(); i++) {
+            if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(smeta.get(i))) {
+              vcol = i;
+              break;
+            }
+          }
+          if(vcol < 0) {
+            throw new AbortException("No number vector column found in the input data.");
+          }
+          final int dim = ((VectorFieldTypeInformation<?>) smeta.get(vcol)).getDimensionality();
+          buffer = floats ? new FloatVectorBuffer(dim, channel) : new DoubleVectorBuffer(dim, channel);
+        }
+        else if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(smeta.get(vcol)) || ((VectorFieldTypeInformation<?>) smeta.get(vcol)).getDimensionality() != buffer.getDimensionality()) {
+          throw new AbortException("Vector buffers require all vectors to have the same dimensionality.");
+        }
+        // Update the column types, and add new columns.
+        for(int i = 0; i < smeta.size(); i++) {
+          SimpleTypeInformation<?> type = (i == vcol) ? buffer.getDataTypeInformation() : smeta.get(i);
+          if(i < meta.size()) {
+            meta.set(i, type);
+            continue;
+          }
+          meta.add(type);
+          if(i == vcol) {
+            columns.add(buffer);
+          }
+          else {
+            List<Object> data = new ArrayList<>(size + 1);
+            for(int j = 0; j < size; j++) {
+              data.add(null);
+            }
+            columns.add(data);
+          }
+        }
+        break;
+      }
+      case NEXT_OBJECT:
+        for(int i = 0; i < meta.size(); i++) {
+          if(i == vcol) {
+            buffer.append((NumberVector<?>) source.data(i));
+          }
+          else {
+            @SuppressWarnings("unchecked")
+            final List<Object> col = (List<Object>) columns.get(i);
+            col.add(source.data(i));
+          }
+        }
+        size++;
+        break;
+      default:
+        LOG.warning("Unknown event: " + ev);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * File to memory-map the vector data to.
+     * <p>
+     * Key: {@code -vectorbuffer.file}
+     * </p>
+     */
+    public static final OptionID MAPFILE_ID = new OptionID("vectorbuffer.file", "File to memory-map the vector data to. If not given, off-heap memory is used. The file is overwritten.");
+
+    /**
+     * Flag to use single precision.
+     * <p>
+     * Key: {@code -vectorbuffer.float}
+     * </p>
+     */
+    public static final OptionID FLOAT_ID = new OptionID("vectorbuffer.float", "Store the vectors with single precision (float) only.");
+
+    /**
+     * Input file.
+     */
+    protected File infile;
+
+    /**
+     * File to memory-map.
+     */
+    protected File mapfile;
+
+    /**
+     * Use single precision.
+     */
+    protected boolean floats;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      final FileParameter inputParam = new FileParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(inputParam)) {
+        infile = inputParam.getValue();
+      }
+      super.makeOptions(config);
+      configParser(config, StreamingParser.class, NumberVectorLabelParser.class);
+      configFilters(config);
+      final FileParameter mapfileP = new FileParameter(MAPFILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+      if(config.grab(mapfileP)) {
+        mapfile = mapfileP.getValue();
+      }
+      final Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        floats = floatF.isTrue();
+      }
+    }
+
+    @Override
+    protected VectorBufferDatabaseConnection makeInstance() {
+      return new VectorBufferDatabaseConnection(filters, (StreamingParser) parser, infile, mapfile, floats);
+    }
+  }
+}
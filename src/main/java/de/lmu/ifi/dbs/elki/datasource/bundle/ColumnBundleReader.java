@@ -0,0 +1,357 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.persistent.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Read a file written by {@link ColumnBundleWriter}.
+ * 
+ * Only the header and the block index are read on construction. The data
+ * blocks are memory mapped on demand, so that loading a few columns, or a
+ * range of rows, only touches the relevant parts of the file. All data is
+ * copied out of the mapped blocks, which are then left to the garbage
+ * collector.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses FileChannel
+ * @apiviz.uses LZ4BlockCompression
+ * @apiviz.has MultipleObjectsBundle oneway - - produces
+ */
+public class ColumnBundleReader {
+  /**
+   * Magic number, shared with {@link ColumnBundleWriter}.
+   */
+  public static final int MAGIC = ColumnBundleWriter.MAGIC;
+
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * Bundle metadata.
+   */
+  private BundleMeta meta;
+
+  /**
+   * Column encodings.
+   */
+  private byte[] encodings;
+
+  /**
+   * Number of rows.
+   */
+  private int numrows;
+
+  /**
+   * Rows per block.
+   */
+  private int rowgroup;
+
+  /**
+   * Number of blocks per column.
+   */
+  private int numgroups;
+
+  /**
+   * Block offsets in the file.
+   */
+  private long[] offsets;
+
+  /**
+   * Stored and uncompressed block sizes.
+   */
+  private int[] stored, raw;
+
+  /**
+   * Constructor.
+   * 
+   * @param input Input channel
+   * @throws IOException on IO errors
+   */
+  public ColumnBundleReader(FileChannel input) throws IOException {
+    super();
+    this.input = input;
+    readIndex();
+  }
+
+  /**
+   * Read the trailer, the block index and the header.
+   * 
+   * @throws IOException on IO errors
+   */
+  private void readIndex() throws IOException {
+    final long size = input.size();
+    if(size < ColumnBundleWriter.TRAILER_SIZE) {
+      throw new AbortException("File is too short to be a column bundle.");
+    }
+    ByteBuffer trailer = map(size - ColumnBundleWriter.TRAILER_SIZE, ColumnBundleWriter.TRAILER_SIZE);
+    final long indexpos = trailer.getLong();
+    if(trailer.getInt() != MAGIC) {
+      throw new AbortException("File does not end with expected magic.");
+    }
+    // Read the block index first, to find the end of the header.
+    final int nblocks = (int) ((size - ColumnBundleWriter.TRAILER_SIZE - indexpos) / ColumnBundleWriter.INDEX_ENTRY_SIZE);
+    offsets = new long[nblocks];
+    stored = new int[nblocks];
+    raw = new int[nblocks];
+    ByteBuffer index = map(indexpos, nblocks * ColumnBundleWriter.INDEX_ENTRY_SIZE);
+    for(int i = 0; i < nblocks; i++) {
+      offsets[i] = index.getLong();
+      stored[i] = index.getInt();
+      raw[i] = index.getInt();
+    }
+    ByteBuffer header = map(0, (int) (nblocks > 0 ? offsets[0] : indexpos));
+    if(header.getInt() != MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int version = header.getInt();
+    if(version != ColumnBundleWriter.VERSION) {
+      throw new AbortException("Unsupported column bundle version: " + version);
+    }
+    numrows = header.getInt();
+    rowgroup = header.getInt();
+    final int numcols = header.getInt();
+    numgroups = (numrows + rowgroup - 1) / rowgroup;
+    if(numcols * numgroups != nblocks) {
+      throw new AbortException("Block index does not match the header.");
+    }
+    meta = new BundleMeta(numcols);
+    encodings = new byte[numcols];
+    for(int c = 0; c < numcols; c++) {
+      encodings[c] = header.get();
+      try {
+        meta.add((SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(header));
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Get the bundle metadata.
+   * 
+   * @return Metadata
+   */
+  public BundleMeta getMeta() {
+    return meta;
+  }
+
+  /**
+   * Get the number of rows.
+   * 
+   * @return Number of rows
+   */
+  public int size() {
+    return numrows;
+  }
+
+  /**
+   * Load all columns and rows.
+   * 
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle load() throws IOException {
+    int[] columns = new int[meta.size()];
+    for(int c = 0; c < columns.length; c++) {
+      columns[c] = c;
+    }
+    return load(columns, 0, numrows);
+  }
+
+  /**
+   * Load the selected columns of a range of rows.
+   * 
+   * @param columns Columns to load
+   * @param start First row
+   * @param end End row (exclusive)
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle load(int[] columns, int start, int end) throws IOException {
+    if(start < 0 || end > numrows || start > end) {
+      throw new AbortException("Invalid row range: " + start + " to " + end + ", bundle has " + numrows + " rows.");
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int c : columns) {
+      if(c < 0 || c >= meta.size()) {
+        throw new AbortException("Invalid column: " + c + ", bundle has " + meta.size() + " columns.");
+      }
+      bundle.appendColumn(meta.get(c), readColumn(c, start, end));
+    }
+    return bundle;
+  }
+
+  /**
+   * Read a range of rows of a single column.
+   * 
+   * @param c Column
+   * @param start First row
+   * @param end End row (exclusive)
+   * @return Column data
+   * @throws IOException on IO errors
+   */
+  private List<Object> readColumn(int c, int start, int end) throws IOException {
+    List<Object> data = new ArrayList<>(end - start);
+    if(start == end) {
+      return data;
+    }
+    for(int g = start / rowgroup, last = (end - 1) / rowgroup; g <= last; g++) {
+      final int gstart = g * rowgroup;
+      final int from = Math.max(start, gstart) - gstart;
+      final int to = Math.min(end, gstart + rowgroup) - gstart;
+      final int b = c * numgroups + g;
+      ByteBuffer block = map(offsets[b], stored[b]);
+      if(stored[b] < raw[b]) {
+        byte[] cbuf = new byte[stored[b]];
+        block.get(cbuf);
+        byte[] rbuf = new byte[raw[b]];
+        LZ4BlockCompression.decompress(cbuf, 0, cbuf.length, rbuf, rbuf.length);
+        block = ByteBuffer.wrap(rbuf);
+      }
+      decodeBlock(c, block, from, to, data);
+    }
+    return data;
+  }
+
+  /**
+   * Decode the rows of a block.
+   * 
+   * @param c Column
+   * @param block Block data
+   * @param from First row in the block
+   * @param to End row in the block (exclusive)
+   * @param data Output list
+   * @throws IOException on deserialization errors
+   */
+  private void decodeBlock(int c, ByteBuffer block, int from, int to, List<Object> data) throws IOException {
+    switch(encodings[c]){
+    case ColumnBundleWriter.ENCODING_DOUBLE: {
+      final VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) meta.get(c);
+      final NumberVector.Factory<?, ?> factory = (NumberVector.Factory<?, ?>) type.getFactory();
+      final int dim = type.getDimensionality();
+      DoubleBuffer buf = block.asDoubleBuffer();
+      buf.position(from * dim);
+      for(int r = from; r < to; r++) {
+        double[] vec = new double[dim];
+        buf.get(vec);
+        data.add(factory.newNumberVector(vec));
+      }
+      break;
+    }
+    case ColumnBundleWriter.ENCODING_FLOAT: {
+      final VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) meta.get(c);
+      final NumberVector.Factory<?, ?> factory = (NumberVector.Factory<?, ?>) type.getFactory();
+      final int dim = type.getDimensionality();
+      FloatBuffer buf = block.asFloatBuffer();
+      buf.position(from * dim);
+      float[] tmp = new float[dim];
+      for(int r = from; r < to; r++) {
+        buf.get(tmp);
+        double[] vec = new double[dim];
+        for(int d = 0; d < dim; d++) {
+          vec[d] = tmp[d];
+        }
+        data.add(factory.newNumberVector(vec));
+      }
+      break;
+    }
+    case ColumnBundleWriter.ENCODING_LABELS:
+    case ColumnBundleWriter.ENCODING_STRING: {
+      final boolean labels = (encodings[c] == ColumnBundleWriter.ENCODING_LABELS);
+      String[] dict = new String[ByteArrayUtil.readUnsignedVarint(block)];
+      for(int i = 0; i < dict.length; i++) {
+        dict[i] = ByteArrayUtil.readString(block);
+      }
+      for(int r = 0; r < to; r++) {
+        if(labels) {
+          final int len = ByteArrayUtil.readUnsignedVarint(block);
+          String[] ll = new String[len];
+          for(int i = 0; i < len; i++) {
+            ll[i] = dict[ByteArrayUtil.readUnsignedVarint(block)];
+          }
+          if(r >= from) {
+            data.add(LabelList.make(Arrays.asList(ll)));
+          }
+        }
+        else {
+          // Index 0 marks null strings.
+          final int i = ByteArrayUtil.readUnsignedVarint(block);
+          final String s = (i > 0) ? dict[i - 1] : null;
+          if(r >= from) {
+            data.add(s);
+          }
+        }
+      }
+      break;
+    }
+    case ColumnBundleWriter.ENCODING_SERIALIZED: {
+      final ByteBufferSerializer<?> ser = meta.get(c).getSerializer();
+      for(int r = 0; r < to; r++) {
+        Object o = ser.fromByteBuffer(block);
+        if(r >= from) {
+          data.add(o);
+        }
+      }
+      break;
+    }
+    default:
+      throw new AbortException("Unknown column encoding: " + encodings[c]);
+    }
+  }
+
+  /**
+   * Map a region of the input file.
+   * 
+   * @param pos Position
+   * @param len Length
+   * @return Mapped buffer
+   * @throws IOException on IO errors
+   */
+  private MappedByteBuffer map(long pos, int len) throws IOException {
+    return input.map(MapMode.READ_ONLY, pos, len);
+  }
+}
@@ -0,0 +1,427 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Write an object bundle to a file channel, column by column.
+ * 
+ * Unlike {@link BundleWriter}, which stores one object after another, this
+ * format stores each relation as a sequence of blocks of (at most)
+ * {@code rowgroup} rows, followed by an index of all blocks. This allows
+ * {@link ColumnBundleReader} to load only some columns, or only a range of
+ * rows, by mapping just the necessary blocks.
+ * 
+ * Dense vector fields are stored as raw double (or, optionally, float) arrays,
+ * label lists and strings use a dictionary per block ({@code null} strings are
+ * preserved), and all other types use their {@link ByteBufferSerializer}.
+ * Blocks can be compressed with {@link LZ4BlockCompression}, and are stored
+ * uncompressed when this does not save space. A block must fit into a byte
+ * array: the row group size is reduced if necessary for dense vectors, other
+ * columns are rejected when a block becomes too large.
+ * 
+ * File layout: magic, version, number of rows, row group size, number of
+ * columns, then the encoding and type of each column; the data blocks; the
+ * block index (offset, stored size, raw size of each block); and finally the
+ * position of the index and the magic again.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses MultipleObjectsBundle
+ * @apiviz.uses LZ4BlockCompression
+ * @apiviz.uses WritableByteChannel
+ */
+public class ColumnBundleWriter {
+  /**
+   * Class logger for the bundle writer.
+   */
+  private static final Logging LOG = Logging.getLogger(ColumnBundleWriter.class);
+
+  /**
+   * Random magic number.
+   */
+  public static final int MAGIC = 0xa8123b13;
+
+  /**
+   * File format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Default number of rows per block.
+   */
+  public static final int DEFAULT_ROWGROUP = 1 << 16;
+
+  /**
+   * Size of an index entry: long offset, int stored size, int raw size.
+   */
+  static final int INDEX_ENTRY_SIZE = ByteArrayUtil.SIZE_LONG + 2 * ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Size of the trailer: long index position, int magic.
+   */
+  static final int TRAILER_SIZE = ByteArrayUtil.SIZE_LONG + ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Column encoding: dense vectors of doubles.
+   */
+  static final byte ENCODING_DOUBLE = 0;
+
+  /**
+   * Column encoding: dense vectors of floats.
+   */
+  static final byte ENCODING_FLOAT = 1;
+
+  /**
+   * Column encoding: label lists, using a dictionary.
+   */
+  static final byte ENCODING_LABELS = 2;
+
+  /**
+   * Column encoding: strings, using a dictionary.
+   */
+  static final byte ENCODING_STRING = 3;
+
+  /**
+   * Column encoding: the type serializer.
+   */
+  static final byte ENCODING_SERIALIZED = 4;
+
+  /**
+   * Store dense vectors with single precision.
+   */
+  private boolean float32;
+
+  /**
+   * Compress the blocks.
+   */
+  private boolean compress;
+
+  /**
+   * Number of rows per block.
+   */
+  private int rowgroup;
+
+  /**
+   * Constructor.
+   * 
+   * @param float32 Store dense vectors with single precision
+   * @param compress Compress the blocks
+   * @param rowgroup Number of rows per block
+   */
+  public ColumnBundleWriter(boolean float32, boolean compress, int rowgroup) {
+    super();
+    this.float32 = float32;
+    this.compress = compress;
+    this.rowgroup = rowgroup;
+  }
+
+  /**
+   * Constructor, with double precision, compression and the default row group
+   * size.
+   */
+  public ColumnBundleWriter() {
+    this(false, true, DEFAULT_ROWGROUP);
+  }
+
+  /**
+   * Write a bundle to an output channel.
+   * 
+   * @param bundle Bundle to write
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  public void writeBundle(MultipleObjectsBundle bundle, WritableByteChannel output) throws IOException {
+    final int numcols = bundle.metaLength(), numrows = bundle.dataLength();
+    byte[] encodings = new byte[numcols];
+    int headersize = 5 * ByteArrayUtil.SIZE_INT + numcols;
+    int rowgroup = this.rowgroup;
+    for(int c = 0; c < numcols; c++) {
+      SimpleTypeInformation<?> type = bundle.meta(c);
+      encodings[c] = chooseEncoding(type);
+      headersize += TypeInformationSerializer.STATIC.getByteSize(type);
+      if(encodings[c] == ENCODING_DOUBLE || encodings[c] == ENCODING_FLOAT) {
+        // Dense blocks must fit into a byte array, also when compressed.
+        final long rowsize = ((VectorFieldTypeInformation<?>) type).getDimensionality() * (long) (encodings[c] == ENCODING_FLOAT ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+        final long maxrows = (compress ? LZ4BlockCompression.MAX_INPUT_LENGTH : Integer.MAX_VALUE) / Math.max(rowsize, 1L);
+        if(maxrows < 1) {
+          throw new AbortException("Vectors of column " + c + " are too large to be stored: " + rowsize + " bytes.");
+        }
+        if(rowgroup > maxrows) {
+          rowgroup = (int) maxrows;
+          LOG.warning("Reducing the row group size to " + rowgroup + " rows, because of the size of the vectors in column " + c + ".");
+        }
+      }
+    }
+    final int numgroups = (numrows + rowgroup - 1) / rowgroup;
+    ByteBuffer header = ByteBuffer.allocate(headersize);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(numrows);
+    header.putInt(rowgroup);
+    header.putInt(numcols);
+    for(int c = 0; c < numcols; c++) {
+      header.put(encodings[c]);
+      TypeInformationSerializer.STATIC.toByteBuffer(header, bundle.meta(c));
+    }
+    header.flip();
+    long pos = write(header, output);
+
+    ByteBuffer index = ByteBuffer.allocate(numcols * numgroups * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+    byte[] cbuf = null;
+    long rawsize = 0;
+    for(int c = 0; c < numcols; c++) {
+      for(int g = 0; g < numgroups; g++) {
+        final int start = g * rowgroup, end = Math.min(start + rowgroup, numrows);
+        byte[] raw = encodeBlock(bundle, c, encodings[c], start, end);
+        ByteBuffer block = ByteBuffer.wrap(raw);
+        // Variable size blocks may be too large to compress.
+        if(compress && raw.length <= LZ4BlockCompression.MAX_INPUT_LENGTH) {
+          final int maxlen = LZ4BlockCompression.maxCompressedLength(raw.length);
+          if(cbuf == null || cbuf.length < maxlen) {
+            cbuf = new byte[maxlen];
+          }
+          final int clen = LZ4BlockCompression.compress(raw, raw.length, cbuf);
+          if(clen < raw.length) {
+            block = ByteBuffer.wrap(cbuf, 0, clen);
+          }
+        }
+        index.putLong(pos);
+        index.putInt(block.remaining());
+        index.putInt(raw.length);
+        rawsize += raw.length;
+        pos += write(block, output);
+      }
+    }
+    index.putLong(pos);
+    index.putInt(MAGIC);
+    index.flip();
+    write(index, output);
+    if(LOG.isVerbose()) {
+      LOG.verbose("Wrote " + numcols * numgroups + " blocks, " + pos + " bytes (" + rawsize + " bytes uncompressed).");
+    }
+  }
+
+  /**
+   * Choose the encoding for a column type.
+   * 
+   * @param type Column type
+   * @return Encoding
+   */
+  private byte chooseEncoding(SimpleTypeInformation<?> type) {
+    if(type instanceof VectorFieldTypeInformation) {
+      VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+      if(vtype.mindim() == vtype.maxdim() && vtype.getFactory() instanceof NumberVector.Factory && !(vtype.getFactory() instanceof SparseNumberVector.Factory)) {
+        return float32 ? ENCODING_FLOAT : ENCODING_DOUBLE;
+      }
+    }
+    if(LabelList.class.equals(type.getRestrictionClass())) {
+      return ENCODING_LABELS;
+    }
+    if(String.class.equals(type.getRestrictionClass())) {
+      return ENCODING_STRING;
+    }
+    if(type.getSerializer() == null) {
+      throw new AbortException("Cannot serialize - no serializer found for type: " + type.toString());
+    }
+    return ENCODING_SERIALIZED;
+  }
+
+  /**
+   * Encode a block of a single column.
+   * 
+   * @param bundle Bundle
+   * @param c Column
+   * @param encoding Column encoding
+   * @param start First row
+   * @param end End row (exclusive)
+   * @return Encoded block
+   * @throws IOException on serialization errors
+   */
+  private byte[] encodeBlock(MultipleObjectsBundle bundle, int c, byte encoding, int start, int end) throws IOException {
+    final List<?> column = bundle.getColumn(c);
+    switch(encoding){
+    case ENCODING_DOUBLE:
+    case ENCODING_FLOAT: {
+      final int dim = ((VectorFieldTypeInformation<?>) bundle.meta(c)).getDimensionality();
+      final boolean single = (encoding == ENCODING_FLOAT);
+      // The row group size was chosen such that this does not overflow.
+      ByteBuffer buf = ByteBuffer.allocate((end - start) * dim * (single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE));
+      for(int r = start; r < end; r++) {
+        NumberVector<?> vec = (NumberVector<?>) column.get(r);
+        for(int d = 0; d < dim; d++) {
+          if(single) {
+            buf.putFloat((float) vec.doubleValue(d));
+          }
+          else {
+            buf.putDouble(vec.doubleValue(d));
+          }
+        }
+      }
+      return buf.array();
+    }
+    case ENCODING_LABELS:
+    case ENCODING_STRING: {
+      final boolean labels = (encoding == ENCODING_LABELS);
+      HashMap<String, Integer> map = new HashMap<>();
+      ArrayList<String> dict = new ArrayList<>();
+      long size = 0;
+      for(int r = start; r < end; r++) {
+        if(labels) {
+          LabelList ll = (LabelList) column.get(r);
+          size += ByteArrayUtil.getUnsignedVarintSize(ll.size());
+          for(int i = 0; i < ll.size(); i++) {
+            size += ByteArrayUtil.getUnsignedVarintSize(lookup(map, dict, ll.get(i)));
+          }
+        }
+        else {
+          size += ByteArrayUtil.getUnsignedVarintSize(lookupOrNull(map, dict, (String) column.get(r)));
+        }
+      }
+      size += ByteArrayUtil.getUnsignedVarintSize(dict.size());
+      for(String s : dict) {
+        size += ByteArrayUtil.getStringSize(s);
+      }
+      ByteBuffer buf = ByteBuffer.allocate(checkBlockSize(size, c));
+      ByteArrayUtil.writeUnsignedVarint(buf, dict.size());
+      for(String s : dict) {
+        ByteArrayUtil.writeString(buf, s);
+      }
+      for(int r = start; r < end; r++) {
+        if(labels) {
+          LabelList ll = (LabelList) column.get(r);
+          ByteArrayUtil.writeUnsignedVarint(buf, ll.size());
+          for(int i = 0; i < ll.size(); i++) {
+            ByteArrayUtil.writeUnsignedVarint(buf, lookup(map, dict, ll.get(i)));
+          }
+        }
+        else {
+          ByteArrayUtil.writeUnsignedVarint(buf, lookupOrNull(map, dict, (String) column.get(r)));
+        }
+      }
+      return buf.array();
+    }
+    case ENCODING_SERIALIZED: {
+      @SuppressWarnings("unchecked")
+      final ByteBufferSerializer<Object> ser = (ByteBufferSerializer<Object>) bundle.meta(c).getSerializer();
+      long size = 0;
+      for(int r = start; r < end; r++) {
+        size += ser.getByteSize(column.get(r));
+      }
+      ByteBuffer buf = ByteBuffer.allocate(checkBlockSize(size, c));
+      for(int r = start; r < end; r++) {
+        ser.toByteBuffer(buf, column.get(r));
+      }
+      return buf.array();
+    }
+    default:
+      throw new AbortException("Unknown column encoding: " + encoding);
+    }
+  }
+
+  /**
+   * Check that a block fits into a byte array.
+   * 
+   * @param size Block size
+   * @param c Column
+   * @return Block size
+   */
+  private static int checkBlockSize(long size, int c) {
+    if(size > Integer.MAX_VALUE) {
+      throw new AbortException("Block of column " + c + " is too large (" + size + " bytes), use a smaller row group size.");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Look up a string column value in the dictionary, adding it when new.
+   * 
+   * The index is shifted by one, so that 0 can mark {@code null} values.
+   * 
+   * @param map Dictionary map
+   * @param dict Dictionary list
+   * @param s String, may be {@code null}
+   * @return Dictionary index + 1, or 0 for {@code null}
+   */
+  private static int lookupOrNull(HashMap<String, Integer> map, ArrayList<String> dict, String s) {
+    return (s == null) ? 0 : lookup(map, dict, s) + 1;
+  }
+
+  /**
+   * Look up a string in the dictionary, adding it when new.
+   * 
+   * As with {@link ByteArrayUtil#writeString}, {@code null} is stored as the
+   * empty string.
+   * 
+   * @param map Dictionary map
+   * @param dict Dictionary list
+   * @param s String
+   * @return Dictionary index
+   */
+  private static int lookup(HashMap<String, Integer> map, ArrayList<String> dict, String s) {
+    if(s == null) {
+      s = "";
+    }
+    Integer i = map.get(s);
+    if(i == null) {
+      i = Integer.valueOf(dict.size());
+      map.put(s, i);
+      dict.add(s);
+    }
+    return i.intValue();
+  }
+
+  /**
+   * Write a buffer completely.
+   * 
+   * @param buffer Buffer, ready for reading
+   * @param output Output channel
+   * @return Number of bytes written
+   * @throws IOException on IO errors
+   */
+  private static int write(ByteBuffer buffer, WritableByteChannel output) throws IOException {
+    final int len = buffer.remaining();
+    while(buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+    return len;
+  }
+}
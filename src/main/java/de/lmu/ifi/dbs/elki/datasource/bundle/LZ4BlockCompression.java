@@ -0,0 +1,252 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.persistent.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Block compression in the LZ4 block format.
+ * 
+ * This is a simple, single-pass LZ77 compressor using a hash table of the last
+ * occurrence of each 4-byte sequence. It does not attempt to find the best
+ * match, but it is fast, and decompression only copies bytes around. The
+ * output is compatible with the LZ4 block format (without frame headers).
+ * 
+ * @author Erich Schubert
+ */
+public final class LZ4BlockCompression {
+  /**
+   * Minimum match length.
+   */
+  private static final int MINMATCH = 4;
+
+  /**
+   * The last bytes of a block are always literals.
+   */
+  private static final int LASTLITERALS = 5;
+
+  /**
+   * The last match must start this many bytes before the end of the block.
+   */
+  private static final int MFLIMIT = 12;
+
+  /**
+   * Maximum match offset.
+   */
+  private static final int MAX_OFFSET = 0xFFFF;
+
+  /**
+   * Hash table size (bits).
+   */
+  private static final int HASH_BITS = 16;
+
+  /**
+   * Mask for the lower 4 bits of the token.
+   */
+  private static final int RUN_MASK = 0xF;
+
+  /**
+   * Largest input length whose maximum compressed length still fits into a
+   * byte array.
+   */
+  public static final int MAX_INPUT_LENGTH = (int) ((Integer.MAX_VALUE - 16L) * 255L / 256L);
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private LZ4BlockCompression() {
+    // Do not instantiate
+  }
+
+  /**
+   * Maximum size of the compressed data, for incompressible input.
+   * 
+   * @param len Input length, at most {@link #MAX_INPUT_LENGTH}
+   * @return Maximum output length
+   */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Compress a block of data.
+   * 
+   * @param src Source data
+   * @param len Source length
+   * @param dst Output buffer, at least {@link #maxCompressedLength} bytes
+   * @return Compressed length
+   */
+  public static int compress(byte[] src, int len, byte[] dst) {
+    int anchor = 0, op = 0;
+    if(len >= MFLIMIT + 1) {
+      // Positions + 1, so that 0 means unused.
+      final int[] table = new int[1 << HASH_BITS];
+      final int mflimit = len - MFLIMIT, matchlimit = len - LASTLITERALS;
+      int ip = 0;
+      while(ip < mflimit) {
+        final int seq = ByteArrayUtil.readInt(src, ip);
+        final int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+        int ref = table[h] - 1;
+        table[h] = ip + 1;
+        if(ref < 0 || ip - ref > MAX_OFFSET || ByteArrayUtil.readInt(src, ref) != seq) {
+          // Skip faster over incompressible data.
+          ip += 1 + ((ip - anchor) >>> 6);
+          continue;
+        }
+        // Extend the match backwards and forwards.
+        while(ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+          --ip;
+          --ref;
+        }
+        int mlen = MINMATCH;
+        while(ip + mlen < matchlimit && src[ip + mlen] == src[ref + mlen]) {
+          ++mlen;
+        }
+        op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, mlen);
+        ip += mlen;
+        anchor = ip;
+      }
+    }
+    return writeSequence(src, anchor, len - anchor, dst, op, 0, 0);
+  }
+
+  /**
+   * Write a single sequence: literals and (optionally) a match.
+   * 
+   * @param src Source data
+   * @param lpos Literals position
+   * @param llen Literals length
+   * @param dst Output buffer
+   * @param op Output position
+   * @param offset Match offset, 0 for the final sequence
+   * @param mlen Match length
+   * @return New output position
+   */
+  private static int writeSequence(byte[] src, int lpos, int llen, byte[] dst, int op, int offset, int mlen) {
+    final int mcode = offset > 0 ? mlen - MINMATCH : 0;
+    dst[op++] = (byte) ((Math.min(llen, RUN_MASK) << 4) | Math.min(mcode, RUN_MASK));
+    op = writeLength(llen, dst, op);
+    System.arraycopy(src, lpos, dst, op, llen);
+    op += llen;
+    if(offset > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      op = writeLength(mcode, dst, op);
+    }
+    return op;
+  }
+
+  /**
+   * Write the extra bytes of a length field.
+   * 
+   * @param len Length
+   * @param dst Output buffer
+   * @param op Output position
+   * @return New output position
+   */
+  private static int writeLength(int len, byte[] dst, int op) {
+    if(len >= RUN_MASK) {
+      len -= RUN_MASK;
+      for(; len >= 255; len -= 255) {
+        dst[op++] = (byte) 255;
+      }
+      dst[op++] = (byte) len;
+    }
+    return op;
+  }
+
+  /**
+   * Decompress a block of data.
+   * 
+   * @param src Compressed data
+   * @param soff Offset in the compressed data
+   * @param slen Length of the compressed data
+   * @param dst Output buffer
+   * @param dlen Expected decompressed length
+   */
+  public static void decompress(byte[] src, int soff, int slen, byte[] dst, int dlen) {
+    final int end = soff + slen;
+    int ip = soff, op = 0;
+    while(ip < end) {
+      final int token = src[ip++] & 0xFF;
+      int llen = token >>> 4;
+      if(llen == RUN_MASK) {
+        int b;
+        do {
+          if(ip >= end) {
+            throw new AbortException("Corrupt compressed block: truncated literal length.");
+          }
+          b = src[ip++] & 0xFF;
+          llen += b;
+        }
+        while(b == 255);
+      }
+      if(ip + llen > end || op + llen > dlen) {
+        throw new AbortException("Corrupt compressed block: literals exceed the block.");
+      }
+      System.arraycopy(src, ip, dst, op, llen);
+      ip += llen;
+      op += llen;
+      if(ip >= end) {
+        break; // Final sequence
+      }
+      if(ip + 2 > end) {
+        throw new AbortException("Corrupt compressed block: truncated match offset.");
+      }
+      final int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+      ip += 2;
+      int mlen = token & RUN_MASK;
+      if(mlen == RUN_MASK) {
+        int b;
+        do {
+          if(ip >= end) {
+            throw new AbortException("Corrupt compressed block: truncated match length.");
+          }
+          b = src[ip++] & 0xFF;
+          mlen += b;
+        }
+        while(b == 255);
+      }
+      mlen += MINMATCH;
+      int ref = op - offset;
+      if(offset == 0 || ref < 0 || op + mlen > dlen) {
+        throw new AbortException("Corrupt compressed block: invalid match.");
+      }
+      if(offset >= mlen) {
+        System.arraycopy(dst, ref, dst, op, mlen);
+        op += mlen;
+      }
+      else {
+        // Overlapping copy, e.g. for runs.
+        for(int i = 0; i < mlen; i++) {
+          dst[op++] = dst[ref++];
+        }
+      }
+    }
+    if(op != dlen) {
+      throw new AbortException("Corrupt compressed block: expected " + dlen + " bytes, got " + op);
+    }
+  }
+}
@@ -27,11 +27,10 @@ import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntDoubleHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StreamTokenizer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -155,7 +154,7 @@ public class ArffParser implements Parser {
   @Override
   public MultipleObjectsBundle parse(InputStream instream) {
     try {
-      BufferedReader br = new BufferedReader(new InputStreamReader(instream));
+      BufferedLineReader br = new BufferedLineReader(instream);
       ArrayList<String> names = new ArrayList<>();
       ArrayList<String> types = new ArrayList<>();
 
@@ -171,11 +170,11 @@ public class ArffParser implements Parser {
       // Prepare bundle:
       // This is a bit complicated to produce vector fields.
       MultipleObjectsBundle bundle = new MultipleObjectsBundle();
-      StreamTokenizer tokenizer = makeArffTokenizer(br);
+      ArffTokenizer tokenizer = new ArffTokenizer(br);
 
       int state = 0;
 
-      nextToken(tokenizer);
+      tokenizer.nextToken();
       while(tokenizer.ttype != StreamTokenizer.TT_EOF) {
         // Parse instance
         if(tokenizer.ttype == StreamTokenizer.TT_EOL) {
@@ -203,9 +202,10 @@ public class ArffParser implements Parser {
           bundle.appendSimple(loadSparseInstance(tokenizer, targ, dimsize, elkitypes, bundle.metaLength()));
         }
         if(tokenizer.ttype != StreamTokenizer.TT_EOF) {
-          nextToken(tokenizer);
+          tokenizer.nextToken();
         }
       }
+      br.close();
       return bundle;
     }
     catch(IOException e) {
@@ -213,14 +213,14 @@ public class ArffParser implements Parser {
     }
   }
 
-  private Object[] loadSparseInstance(StreamTokenizer tokenizer, int[] targ, int[] dimsize, TypeInformation[] elkitypes, int metaLength) throws IOException {
+  private Object[] loadSparseInstance(ArffTokenizer tokenizer, int[] targ, int[] dimsize, TypeInformation[] elkitypes, int metaLength) throws IOException {
     // logger.warning("Sparse instance.");
     TIntObjectHashMap<Object> map = new TIntObjectHashMap<>();
     while(true) {
-      nextToken(tokenizer);
+      tokenizer.nextToken();
       assert (tokenizer.ttype != StreamTokenizer.TT_EOF && tokenizer.ttype != StreamTokenizer.TT_EOL);
       if(tokenizer.ttype == '}') {
-        nextToken(tokenizer);
+        tokenizer.nextToken();
         assert (tokenizer.ttype == StreamTokenizer.TT_EOF || tokenizer.ttype == StreamTokenizer.TT_EOL);
         break;
       }
@@ -229,17 +229,17 @@ public class ArffParser implements Parser {
         if(tokenizer.ttype != StreamTokenizer.TT_WORD) {
           throw new AbortException("Unexpected token type encountered: " + tokenizer.toString() + " type: " + tokenizer.ttype);
         }
-        int dim = Integer.valueOf(tokenizer.sval);
+        int dim = (int) tokenizer.getLongBase10();
         if(map.containsKey(dim)) {
           throw new AbortException("Duplicate key in sparse vector: " + tokenizer.toString());
         }
-        nextToken(tokenizer);
+        tokenizer.nextToken();
         if(tokenizer.ttype == StreamTokenizer.TT_WORD) {
           if(TypeUtil.NUMBER_VECTOR_FIELD.equals(elkitypes[targ[dim]])) {
-            map.put(dim, FormatUtil.parseDouble(tokenizer.sval));
+            map.put(dim, tokenizer.getDouble());
           }
           else {
-            map.put(dim, tokenizer.sval);
+            map.put(dim, tokenizer.getString());
           }
         }
         else {
@@ -263,12 +263,10 @@ public class ArffParser implements Parser {
         for(TIntObjectIterator<Object> iter = map.iterator(); iter.hasNext();) {
           iter.advance();
           int i = iter.key();
-          if(i < s) {
+          // The map is not ordered, so we need to check all entries.
+          if(i < s || i >= s + dimsize[out]) {
             continue;
           }
-          if(i >= s + dimsize[out]) {
-            break;
-          }
           double v = ((Double) iter.value()).doubleValue();
           f.put(i - s, v);
         }
@@ -280,12 +278,10 @@ public class ArffParser implements Parser {
         for(TIntObjectIterator<Object> iter = map.iterator(); iter.hasNext();) {
           iter.advance();
           int i = iter.key();
-          if(i < s) {
+          // The map is not ordered, so we need to check all entries.
+          if(i < s || i >= s + dimsize[out]) {
             continue;
           }
-          if(i >= s + dimsize[out]) {
-            break;
-          }
           String v = (String) iter.value();
           if(labels.size() < i - s) {
             LOG.warning("Sparse consecutive labels are currently not correctly supported.");
@@ -321,7 +317,7 @@ public class ArffParser implements Parser {
     return data;
   }
 
-  private Object[] loadDenseInstance(StreamTokenizer tokenizer, int[] dimsize, TypeInformation[] etyp, int outdim) throws IOException {
+  private Object[] loadDenseInstance(ArffTokenizer tokenizer, int[] dimsize, TypeInformation[] etyp, int outdim) throws IOException {
     Object[] data = new Object[outdim];
     for(int out = 0; out < outdim; out++) {
       if(TypeUtil.NUMBER_VECTOR_FIELD.equals(etyp[out])) {
@@ -329,20 +325,20 @@ public class ArffParser implements Parser {
         double[] cur = new double[dimsize[out]];
         for(int k = 0; k < dimsize[out]; k++) {
           if(tokenizer.ttype == '?') {
-            tokenizer.nval = Double.NaN;
+            cur[k] = Double.NaN;
           }
           else if(tokenizer.ttype == StreamTokenizer.TT_WORD) {
             try {
-              cur[k] = FormatUtil.parseDouble(tokenizer.sval);
+              cur[k] = tokenizer.getDouble();
             }
             catch(NumberFormatException e) {
-              throw new AbortException("Expected number value, got: " + tokenizer.sval);
+              throw new AbortException("Expected number value, got: " + tokenizer.getString());
             }
           }
           else {
             throw new AbortException("Expected word token, got: " + tokenizer.toString());
           }
-          nextToken(tokenizer);
+          tokenizer.nextToken();
         }
         data[out] = new DoubleVector(cur);
       }
@@ -353,8 +349,8 @@ public class ArffParser implements Parser {
           if(tokenizer.ttype != StreamTokenizer.TT_WORD) {
             throw new AbortException("Expected word token, got: " + tokenizer.toString());
           }
-          labels.add(tokenizer.sval);
-          nextToken(tokenizer);
+          labels.add(tokenizer.getString());
+          tokenizer.nextToken();
         }
         data[out] = LabelList.make(labels);
       }
@@ -362,17 +358,17 @@ public class ArffParser implements Parser {
         if(tokenizer.ttype != StreamTokenizer.TT_WORD) {
           throw new AbortException("Expected word token, got: " + tokenizer.toString());
         }
-        data[out] = new ExternalID(tokenizer.sval);
-        nextToken(tokenizer);
+        data[out] = new ExternalID(tokenizer.getString());
+        tokenizer.nextToken();
       }
       else if(TypeUtil.CLASSLABEL.equals(etyp[out])) {
         if(tokenizer.ttype != StreamTokenizer.TT_WORD) {
           throw new AbortException("Expected word token, got: " + tokenizer.toString());
         }
         // TODO: support other class label types.
-        ClassLabel lbl = new SimpleClassLabel(tokenizer.sval);
+        ClassLabel lbl = new SimpleClassLabel(tokenizer.getString());
         data[out] = lbl;
-        nextToken(tokenizer);
+        tokenizer.nextToken();
       }
       else {
         throw new AbortException("Unsupported type for column " + "->" + out + ": " + ((etyp[out] != null) ? etyp[out].toString() : "null"));
@@ -381,33 +377,6 @@ public class ArffParser implements Parser {
     return data;
   }
 
-  /**
-   * Make a StreamTokenizer for the ARFF format.
-   * 
-   * @param br Buffered reader
-   * @return Tokenizer
-   */
-  private StreamTokenizer makeArffTokenizer(BufferedReader br) {
-    // Setup tokenizer
-    StreamTokenizer tokenizer = new StreamTokenizer(br);
-    {
-      tokenizer.resetSyntax();
-      tokenizer.whitespaceChars(0, ' ');
-      tokenizer.ordinaryChars('0', '9'); // Do not parse numbers
-      tokenizer.ordinaryChar('-');
-      tokenizer.ordinaryChar('.');
-      tokenizer.wordChars(' ' + 1, '\u00FF');
-      tokenizer.whitespaceChars(',', ',');
-      tokenizer.commentChar('%');
-      tokenizer.quoteChar('"');
-      tokenizer.quoteChar('\'');
-      tokenizer.ordinaryChar('{');
-      tokenizer.ordinaryChar('}');
-      tokenizer.eolIsSignificant(true);
-    }
-    return tokenizer;
-  }
-
   /**
    * Setup the headers for the object bundle.
    * 
@@ -468,11 +437,11 @@ public class ArffParser implements Parser {
    * @param br Buffered Reader
    * @throws IOException
    */
-  private void readHeader(BufferedReader br) throws IOException {
+  private void readHeader(BufferedLineReader br) throws IOException {
     String line;
     // Locate header line
     while(true) {
-      line = br.readLine();
+      line = br.nextLine() ? br.toString() : null;
       if(line == null) {
         throw new AbortException(ARFF_HEADER_RELATION + " not found in file.");
       }
@@ -496,11 +465,11 @@ public class ArffParser implements Parser {
    * @param types List (to fill) of attribute types
    * @throws IOException
    */
-  private void parseAttributeStatements(BufferedReader br, ArrayList<String> names, ArrayList<String> types) throws IOException {
+  private void parseAttributeStatements(BufferedLineReader br, ArrayList<String> names, ArrayList<String> types) throws IOException {
     String line;
     // Load attribute metadata
     while(true) {
-      line = br.readLine();
+      line = br.nextLine() ? br.toString() : null;
       if(line == null) {
         throw new AbortException(ARFF_HEADER_DATA + " not found in file.");
       }
@@ -597,35 +566,258 @@ public class ArffParser implements Parser {
   }
 
   /**
-   * Helper function for token handling.
+   * Tokenizer for the data section of ARFF files, working on the byte buffer
+   * of a {@link BufferedLineReader}.
    * 
-   * @param tokenizer Tokenizer
-   * @throws IOException
+   * This follows the syntax previously configured for a
+   * {@link StreamTokenizer}: whitespace and commas separate tokens, {@code %}
+   * starts a comment, single and double quotes enclose strings (with backslash
+   * escapes), and braces are returned as individual tokens. Numbers are parsed
+   * directly from the buffer, Strings are only built on demand.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
    */
-  private void nextToken(StreamTokenizer tokenizer) throws IOException {
-    tokenizer.nextToken();
-    if((tokenizer.ttype == '\'') || (tokenizer.ttype == '"')) {
-      tokenizer.ttype = StreamTokenizer.TT_WORD;
+  private static class ArffTokenizer {
+    /**
+     * Character set for decoding.
+     */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * Line reader.
+     */
+    private final BufferedLineReader reader;
+
+    /**
+     * Buffer of the current line.
+     */
+    private byte[] buf;
+
+    /**
+     * Position in the current line, and end of line; -1 when a new line needs
+     * to be read.
+     */
+    private int pos = -1, lend = -1;
+
+    /**
+     * Current token type, as in {@link StreamTokenizer}.
+     */
+    int ttype = StreamTokenizer.TT_EOL;
+
+    /**
+     * Range of the current word token.
+     */
+    private int start, end;
+
+    /**
+     * Flag for quoted tokens containing escape characters.
+     */
+    private boolean escaped;
+
+    /**
+     * Current line number.
+     */
+    private int lineno = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param reader Line reader, positioned before the data section
+     */
+    ArffTokenizer(BufferedLineReader reader) {
+      super();
+      this.reader = reader;
     }
-    else if((tokenizer.ttype == StreamTokenizer.TT_WORD) && (tokenizer.sval.equals("?"))) {
-      tokenizer.ttype = '?';
+
+    /**
+     * Advance to the next token.
+     * 
+     * @throws IOException on read errors
+     */
+    void nextToken() throws IOException {
+      readToken();
+      if(LOG.isDebugging()) {
+        LOG.debug("token: " + this.toString());
+      }
     }
-    if(LOG.isDebugging()) {
-      if(tokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-        LOG.debug("token: " + tokenizer.nval);
+
+    /**
+     * Read the next token.
+     * 
+     * @throws IOException on read errors
+     */
+    private void readToken() throws IOException {
+      if(pos < 0) {
+        if(!reader.nextLine()) {
+          ttype = StreamTokenizer.TT_EOF;
+          return;
+        }
+        lineno++;
+        buf = reader.getBuffer();
+        pos = reader.getBegin();
+        lend = reader.getEnd();
+      }
+      // Skip whitespace and commas.
+      while(pos < lend && ((buf[pos] & 0xFF) <= ' ' || buf[pos] == ',')) {
+        pos++;
+      }
+      // End of line, or comment until end of line.
+      if(pos >= lend || buf[pos] == '%') {
+        ttype = StreamTokenizer.TT_EOL;
+        pos = -1;
+        return;
+      }
+      final byte c = buf[pos];
+      if(c == '{' || c == '}') {
+        ttype = c;
+        pos++;
+        return;
+      }
+      escaped = false;
+      if(c == '\'' || c == '"') {
+        // Quoted string, until the closing quote or the end of the line.
+        start = ++pos;
+        while(pos < lend && buf[pos] != c) {
+          if(buf[pos] == '\\') {
+            escaped = true;
+            pos++;
+          }
+          pos++;
+        }
+        end = Math.min(pos, lend);
+        pos = Math.min(pos + 1, lend);
+        ttype = StreamTokenizer.TT_WORD;
+        return;
       }
-      else if(tokenizer.ttype == StreamTokenizer.TT_WORD) {
-        LOG.debug("token: " + tokenizer.sval);
+      start = pos;
+      while(pos < lend && isWordChar(buf[pos])) {
+        pos++;
       }
-      else if(tokenizer.ttype == StreamTokenizer.TT_EOF) {
-        LOG.debug("token: EOF");
+      end = pos;
+      ttype = (end - start == 1 && c == '?') ? '?' : StreamTokenizer.TT_WORD;
+    }
+
+    /**
+     * Test for characters that may be part of a word.
+     * 
+     * @param c Character
+     * @return {@code true} for word characters
+     */
+    private static boolean isWordChar(byte c) {
+      return (c & 0xFF) > ' ' && c != ',' && c != '%' && c != '\'' && c != '"' && c != '{' && c != '}';
+    }
+
+    /**
+     * Get the current token as double.
+     * 
+     * @return Double value
+     * @throws NumberFormatException if the token is not a number
+     */
+    double getDouble() throws NumberFormatException {
+      return escaped ? FormatUtil.parseDouble(getString()) : FormatUtil.parseDouble(buf, start, end);
+    }
+
+    /**
+     * Get the current token as integer.
+     * 
+     * @return Long value
+     * @throws NumberFormatException if the token is not an integer
+     */
+    long getLongBase10() throws NumberFormatException {
+      if(escaped) {
+        final String s = getString();
+        return FormatUtil.parseLongBase10(s, 0, s.length());
       }
-      else if(tokenizer.ttype == StreamTokenizer.TT_EOL) {
-        LOG.debug("token: EOL");
+      return FormatUtil.parseLongBase10(buf, start, end);
+    }
+
+    /**
+     * Get the current token as String.
+     * 
+     * @return String value
+     */
+    String getString() {
+      final String s = new String(buf, start, end - start, CHARSET);
+      return escaped ? unescape(s) : s;
+    }
+
+    /**
+     * Process backslash escapes, as {@link StreamTokenizer} does.
+     * 
+     * @param s Input string
+     * @return Unescaped string
+     */
+    private static String unescape(String s) {
+      StringBuilder b = new StringBuilder(s.length());
+      for(int i = 0, n = s.length(); i < n; i++) {
+        char c = s.charAt(i);
+        if(c != '\\' || i + 1 >= n) {
+          b.append(c);
+          continue;
+        }
+        c = s.charAt(++i);
+        if(c >= '0' && c <= '7') {
+          // Octal escape, up to three digits.
+          final char first = c;
+          int v = c - '0';
+          if(i + 1 < n && s.charAt(i + 1) >= '0' && s.charAt(i + 1) <= '7') {
+            v = (v << 3) + (s.charAt(++i) - '0');
+            if(first <= '3' && i + 1 < n && s.charAt(i + 1) >= '0' && s.charAt(i + 1) <= '7') {
+              v = (v << 3) + (s.charAt(++i) - '0');
+            }
+          }
+          b.append((char) v);
+          continue;
+        }
+        switch(c){
+        case 'a':
+          c = 0x7;
+          break;
+        case 'b':
+          c = '\b';
+          break;
+        case 'f':
+          c = 0xC;
+          break;
+        case 'n':
+          c = '\n';
+          break;
+        case 'r':
+          c = '\r';
+          break;
+        case 't':
+          c = '\t';
+          break;
+        case 'v':
+          c = 0xB;
+          break;
+        default:
+          break;
+        }
+        b.append(c);
       }
-      else {
-        LOG.debug("token type: " + tokenizer.ttype);
+      return b.toString();
+    }
+
+    @Override
+    public String toString() {
+      final String t;
+      switch(ttype){
+      case StreamTokenizer.TT_EOF:
+        t = "EOF";
+        break;
+      case StreamTokenizer.TT_EOL:
+        t = "EOL";
+        break;
+      case StreamTokenizer.TT_WORD:
+        t = getString();
+        break;
+      default:
+        t = "'" + (char) ttype + "'";
       }
+      return "Token[" + t + "], line " + lineno;
     }
   }
 
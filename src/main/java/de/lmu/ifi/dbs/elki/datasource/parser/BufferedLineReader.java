@@ -0,0 +1,241 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line reader working on a byte buffer, to avoid decoding the input into
+ * characters and creating a String object for each line.
+ * 
+ * The current line is accessible both as a range of the byte buffer, e.g. for
+ * {@link de.lmu.ifi.dbs.elki.utilities.FormatUtil#parseDouble(byte[], int, int)},
+ * and via the {@link CharSequence} interface, e.g. for regular expressions.
+ * The character view maps each byte to one character, so this requires an
+ * ASCII compatible encoding such as UTF-8; Strings (see {@link #toString} and
+ * {@link #subSequence}) are decoded using the default character set, as with
+ * an {@link java.io.InputStreamReader}.
+ * 
+ * Lines are terminated by {@code \n}, {@code \r} or {@code \r\n}, as in
+ * {@link java.io.BufferedReader#readLine}.
+ * 
+ * @author Erich Schubert
+ */
+public class BufferedLineReader implements CharSequence, Closeable {
+  /**
+   * Initial buffer size.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Character set for decoding.
+   */
+  private static final Charset CHARSET = Charset.defaultCharset();
+
+  /**
+   * Input stream, may be {@code null}.
+   */
+  private InputStream in;
+
+  /**
+   * Buffer.
+   */
+  private byte[] buf;
+
+  /**
+   * Number of valid bytes in the buffer.
+   */
+  private int len;
+
+  /**
+   * Position of the next line.
+   */
+  private int pos = 0;
+
+  /**
+   * Begin and end of the current line.
+   */
+  private int begin = 0, end = 0;
+
+  /**
+   * Flag when the end of the input was reached.
+   */
+  private boolean eof;
+
+  /**
+   * Constructor.
+   * 
+   * @param in Input stream
+   */
+  public BufferedLineReader(InputStream in) {
+    super();
+    this.in = in;
+    this.buf = new byte[BUFFER_SIZE];
+    this.len = 0;
+    this.eof = false;
+  }
+
+  /**
+   * Constructor, for data already in memory.
+   * 
+   * @param buf Buffer (will not be copied)
+   * @param len Number of valid bytes
+   */
+  public BufferedLineReader(byte[] buf, int len) {
+    super();
+    this.in = null;
+    this.buf = buf;
+    this.len = len;
+    this.eof = true;
+  }
+
+  /**
+   * Advance to the next line.
+   * 
+   * @return {@code false} at the end of the input
+   * @throws IOException on read errors
+   */
+  public boolean nextLine() throws IOException {
+    int i = pos;
+    while(true) {
+      for(; i < len; i++) {
+        final byte c = buf[i];
+        if(c == '\n' || c == '\r') {
+          // Need to look ahead for \r\n
+          if(c == '\r' && i + 1 == len && !eof) {
+            break;
+          }
+          begin = pos;
+          end = i;
+          pos = (c == '\r' && i + 1 < len && buf[i + 1] == '\n') ? i + 2 : i + 1;
+          return true;
+        }
+      }
+      if(eof) {
+        begin = pos;
+        end = pos = len;
+        return begin < end;
+      }
+      i -= pos;
+      fill();
+    }
+  }
+
+  /**
+   * Read more data, compacting or enlarging the buffer as needed.
+   * 
+   * @throws IOException on read errors
+   */
+  private void fill() throws IOException {
+    if(pos > 0) {
+      System.arraycopy(buf, pos, buf, 0, len - pos);
+      len -= pos;
+      pos = 0;
+    }
+    if(len == buf.length) {
+      buf = Arrays.copyOf(buf, buf.length << 1);
+    }
+    final int r = in.read(buf, len, buf.length - len);
+    if(r < 0) {
+      eof = true;
+    }
+    else {
+      len += r;
+    }
+  }
+
+  /**
+   * Get the buffer containing the current line. This is invalidated by
+   * {@link #nextLine}.
+   * 
+   * @return Buffer
+   */
+  public byte[] getBuffer() {
+    return buf;
+  }
+
+  /**
+   * Get the offset of the current line in the buffer.
+   * 
+   * @return Begin of the current line
+   */
+  public int getBegin() {
+    return begin;
+  }
+
+  /**
+   * Get the end of the current line in the buffer, excluding the line
+   * terminator.
+   * 
+   * @return End of the current line
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  @Override
+  public int length() {
+    return end - begin;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char) (buf[begin + index] & 0xFF);
+  }
+
+  /**
+   * Decode a part of the current line.
+   * 
+   * @param start Begin, relative to the line start
+   * @param end End, relative to the line start
+   * @return Decoded string
+   */
+  @Override
+  public String subSequence(int start, int end) {
+    return new String(buf, begin + start, end - start, CHARSET);
+  }
+
+  /**
+   * Decode the current line.
+   * 
+   * @return Current line
+   */
+  @Override
+  public String toString() {
+    return new String(buf, begin, end - begin, CHARSET);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(in != null) {
+      in.close();
+      in = null;
+    }
+    buf = null;
+  }
+}
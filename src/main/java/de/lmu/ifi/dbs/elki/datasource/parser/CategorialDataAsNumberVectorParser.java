@@ -33,6 +33,7 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayLikeUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 
 /**
  * A very simple parser for categorial data, which will then be encoded as
@@ -103,13 +104,12 @@ public class CategorialDataAsNumberVectorParser<V extends NumberVector<?>> exten
   }
 
   @Override
-  protected void parseLineInternal(String line) {
+  protected void parseLineInternal() {
     // Split into numerical attributes and labels
     attributes.reset();
     labels.clear();
 
-    int i = 0;
-    for(tokenizer.initialize(line, 0, lengthWithoutLinefeed(line)); tokenizer.valid(); tokenizer.advance(), i++) {
+    for(int i = 0; tokenizer.valid(); tokenizer.advance(), i++) {
       if(labelIndices == null || !labelIndices.get(i)) {
         try {
           double attribute = tokenizer.getDouble();
@@ -153,6 +153,11 @@ public class CategorialDataAsNumberVectorParser<V extends NumberVector<?>> exten
    * @apiviz.exclude
    */
   public static class Parameterizer<V extends NumberVector<?>> extends NumberVectorLabelParser.Parameterizer<V> {
+    @Override
+    protected void getThreads(Parameterization config) {
+      // Do nothing: parsed sequentially
+    }
+
     @Override
     protected CategorialDataAsNumberVectorParser<V> makeInstance() {
       return new CategorialDataAsNumberVectorParser<>(colSep, quoteChars, comment, labelIndices, factory);
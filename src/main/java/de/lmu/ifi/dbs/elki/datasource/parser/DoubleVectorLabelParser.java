@@ -68,7 +68,20 @@ public class DoubleVectorLabelParser extends NumberVectorLabelParser<DoubleVecto
    * @param labelIndices Indices to use as labels
    */
   public DoubleVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices) {
-    super(colSep, quoteChars, comment, labelIndices, DoubleVector.FACTORY);
+    this(colSep, quoteChars, comment, labelIndices, 1);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param colSep Column separator
+   * @param quoteChars Quotation character
+   * @param comment Comment pattern
+   * @param labelIndices Indices to use as labels
+   * @param threads Number of threads, 0 for automatic
+   */
+  public DoubleVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, int threads) {
+    super(colSep, quoteChars, comment, labelIndices, DoubleVector.FACTORY, threads);
   }
 
   /**
@@ -98,7 +111,7 @@ public class DoubleVectorLabelParser extends NumberVectorLabelParser<DoubleVecto
 
     @Override
     protected DoubleVectorLabelParser makeInstance() {
-      return new DoubleVectorLabelParser(colSep, quoteChars, comment, labelIndices);
+      return new DoubleVectorLabelParser(colSep, quoteChars, comment, labelIndices, threads);
     }
   }
 }
@@ -70,7 +70,20 @@ public class FloatVectorLabelParser extends NumberVectorLabelParser<FloatVector>
    * @param labelIndices Indices to use as labels
    */
   public FloatVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices) {
-    super(colSep, quoteChars, comment, labelIndices, FloatVector.FACTORY);
+    this(colSep, quoteChars, comment, labelIndices, 1);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param colSep Column separator
+   * @param quoteChars Quotation character
+   * @param comment Comment pattern
+   * @param labelIndices Indices to use as labels
+   * @param threads Number of threads, 0 for automatic
+   */
+  public FloatVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, int threads) {
+    super(colSep, quoteChars, comment, labelIndices, FloatVector.FACTORY, threads);
   }
 
   @Override
@@ -93,7 +106,7 @@ public class FloatVectorLabelParser extends NumberVectorLabelParser<FloatVector>
 
     @Override
     protected FloatVectorLabelParser makeInstance() {
-      return new FloatVectorLabelParser(colSep, quoteChars, comment, labelIndices);
+      return new FloatVectorLabelParser(colSep, quoteChars, comment, labelIndices, threads);
     }
   }
 }
\ No newline at end of file
@@ -25,14 +25,18 @@ package de.lmu.ifi.dbs.elki.datasource.parser;
 
 import gnu.trove.list.array.TDoubleArrayList;
 
-import java.io.BufferedReader;
+import gnu.trove.list.array.TIntArrayList;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -50,7 +54,9 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * <p>
@@ -65,6 +71,12 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * An index can be specified to identify an entry to be treated as class label.
  * This index counts all entries (numeric and labels as well) starting with 0.
  * </p>
+ * <p>
+ * When multiple threads are used, the input is read in blocks that are split
+ * at line boundaries, and the blocks are parsed concurrently. The objects are
+ * then reported in the original order, with the same labels and column
+ * handling as when parsing on a single thread.
+ * </p>
  * 
  * @author Arthur Zimek
  * 
@@ -79,6 +91,11 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
    */
   private static final Logging LOG = Logging.getLogger(NumberVectorLabelParser.class);
 
+  /**
+   * Size of the blocks read for parallel parsing.
+   */
+  static final int CHUNKSIZE = 1 << 20;
+
   /**
    * Keeps the indices of the attributes to be treated as a string label.
    */
@@ -90,9 +107,14 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
   protected NumberVector.Factory<V, ?> factory;
 
   /**
-   * Buffer reader.
+   * Line reader.
    */
-  private BufferedReader reader;
+  private BufferedLineReader reader;
+
+  /**
+   * Matcher for comment lines.
+   */
+  private Matcher commentMatcher;
 
   /**
    * Current line number.
@@ -154,6 +176,66 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
    */
   Event nextevent = null;
 
+  /**
+   * Number of threads for parsing.
+   */
+  protected int threads;
+
+  /**
+   * Column separator, for the tokenizers of the worker threads.
+   */
+  private final Pattern colSep;
+
+  /**
+   * Quote characters, for the tokenizers of the worker threads.
+   */
+  private final String quoteChars;
+
+  /**
+   * Input stream, for parallel parsing.
+   */
+  private InputStream input;
+
+  /**
+   * Worker threads, for parallel parsing.
+   */
+  private ParallelExecutor executor;
+
+  /**
+   * Incomplete line at the end of the previous block.
+   */
+  private byte[] carry;
+
+  /**
+   * Length of the incomplete line.
+   */
+  private int carrylen;
+
+  /**
+   * First block of the input not yet read.
+   */
+  private boolean firstchunk;
+
+  /**
+   * Parsed blocks, not yet reported.
+   */
+  private ArrayDeque<Chunk> chunks;
+
+  /**
+   * Block currently reported.
+   */
+  private Chunk chunk;
+
+  /**
+   * Next object in the current block.
+   */
+  private int chunkpos;
+
+  /**
+   * Line number before the current block.
+   */
+  private int linebase;
+
   /**
    * Constructor with defaults.
    * 
@@ -173,15 +255,49 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
    * @param factory Vector factory
    */
   public NumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, NumberVector.Factory<V, ?> factory) {
+    this(colSep, quoteChars, comment, labelIndices, factory, 1);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param colSep Column separator
+   * @param quoteChars Quote character
+   * @param comment Comment pattern
+   * @param labelIndices Column indexes that are numeric.
+   * @param factory Vector factory
+   * @param threads Number of threads, 0 for automatic
+   */
+  public NumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, NumberVector.Factory<V, ?> factory, int threads) {
     super(colSep, quoteChars, comment);
     this.labelIndices = labelIndices;
     this.factory = factory;
+    this.threads = threads;
+    this.colSep = colSep;
+    this.quoteChars = quoteChars;
   }
 
   @Override
   public void initStream(InputStream in) {
-    reader = new BufferedReader(new InputStreamReader(in));
-    lineNumber = 1;
+    if(ParallelExecutor.getThreads(threads) > 1) {
+      input = in;
+      if(executor != null) {
+        executor.close();
+      }
+      executor = new ParallelExecutor(threads);
+      carry = new byte[0];
+      carrylen = 0;
+      firstchunk = true;
+      chunks = new ArrayDeque<>();
+      chunk = null;
+      chunkpos = 0;
+      linebase = 0;
+    }
+    else {
+      reader = new BufferedLineReader(in);
+      commentMatcher = (comment != null) ? comment.matcher(reader) : null;
+    }
+    lineNumber = 0;
     mindim = Integer.MAX_VALUE;
     maxdim = 0;
     columnnames = null;
@@ -205,33 +321,26 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
       return ret;
     }
     try {
-      for(String line; (line = reader.readLine()) != null; lineNumber++) {
+      if(input != null) {
+        return nextEventParallel();
+      }
+      while(reader.nextLine()) {
+        lineNumber++;
         // Skip empty lines and comments
-        if(line.length() <= 0 || (comment != null && comment.matcher(line).matches())) {
+        if(reader.length() <= 0 || (commentMatcher != null && commentMatcher.reset(reader).matches())) {
           continue;
         }
-        parseLineInternal(line);
+        tokenizer.initialize(reader);
+        parseLineInternal();
         // Maybe a header column?
         if(curvec == null) {
           continue;
         }
-        final int curdim = curvec.getDimensionality();
-        if(curdim > maxdim || mindim > curdim) {
-          mindim = Math.min(mindim, curdim);
-          maxdim = Math.max(maxdim, curdim);
-          buildMeta();
-          nextevent = Event.NEXT_OBJECT;
-          return Event.META_CHANGED;
-        }
-        else if(curlbl != null && meta != null && meta.size() == 1) {
-          buildMeta();
-          nextevent = Event.NEXT_OBJECT;
-          return Event.META_CHANGED;
-        }
-        return Event.NEXT_OBJECT;
+        return checkMeta();
       }
       reader.close();
       reader = null;
+      commentMatcher = null;
       unique.clear();
       return Event.END_OF_STREAM;
     }
@@ -240,6 +349,136 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
     }
   }
 
+  /**
+   * Check whether the current object changes the metadata.
+   * 
+   * @return Event to report
+   */
+  private Event checkMeta() {
+    final int curdim = curvec.getDimensionality();
+    if(curdim > maxdim || mindim > curdim) {
+      mindim = Math.min(mindim, curdim);
+      maxdim = Math.max(maxdim, curdim);
+      buildMeta();
+      nextevent = Event.NEXT_OBJECT;
+      return Event.META_CHANGED;
+    }
+    else if(haslabels && meta != null && meta.size() == 1) {
+      buildMeta();
+      nextevent = Event.NEXT_OBJECT;
+      return Event.META_CHANGED;
+    }
+    return Event.NEXT_OBJECT;
+  }
+
+  /**
+   * Report the next object of the parallel parser.
+   * 
+   * @return Event to report
+   * @throws IOException on read errors
+   */
+  private Event nextEventParallel() throws IOException {
+    while(chunk == null || chunkpos >= chunk.vecs.size()) {
+      if(chunk != null) {
+        linebase += chunk.lines;
+        lineNumber = linebase;
+      }
+      chunk = nextChunk();
+      chunkpos = 0;
+      if(chunk == null) {
+        input.close();
+        input = null;
+        executor.close();
+        executor = null;
+        chunks = null;
+        carry = null;
+        return Event.END_OF_STREAM;
+      }
+      if(chunk.header != null) {
+        columnnames = chunk.header;
+      }
+    }
+    curvec = chunk.vecs.get(chunkpos);
+    curlbl = chunk.lbls.get(chunkpos);
+    lineNumber = linebase + chunk.rowline.get(chunkpos);
+    // Replay the label columns detected up to this object.
+    for(; chunk.colpos < chunk.newcols.size() && chunk.newcolrow.get(chunk.colpos) <= chunkpos; chunk.colpos++) {
+      labelcolumns.set(chunk.newcols.get(chunk.colpos));
+    }
+    haslabels |= curlbl.size() > 0;
+    chunkpos++;
+    return checkMeta();
+  }
+
+  /**
+   * Get the next parsed block, parsing a batch of blocks in parallel when
+   * necessary.
+   * 
+   * @return Next block, {@code null} at the end of the input
+   * @throws IOException on read errors
+   */
+  private Chunk nextChunk() throws IOException {
+    if(chunks.isEmpty()) {
+      final int batch = executor.getThreads() << 1;
+      List<Chunk> tasks = new ArrayList<>(batch);
+      for(Chunk c; tasks.size() < batch && (c = readChunk()) != null;) {
+        tasks.add(c);
+      }
+      chunks.addAll(executor.execute(tasks));
+    }
+    return chunks.poll();
+  }
+
+  /**
+   * Read the next block of complete lines. A single line longer than the block
+   * size is read completely.
+   * 
+   * @return Unparsed block, {@code null} at the end of the input
+   * @throws IOException on read errors
+   */
+  private Chunk readChunk() throws IOException {
+    byte[] buf = new byte[Math.max(CHUNKSIZE, carrylen << 1)];
+    System.arraycopy(carry, 0, buf, 0, carrylen);
+    int len = carrylen;
+    while(true) {
+      for(int r; len < buf.length && (r = input.read(buf, len, buf.length - len)) >= 0;) {
+        len += r;
+      }
+      if(len < buf.length) {
+        // End of input reached.
+        carrylen = 0;
+        return (len > 0) ? makeChunk(buf, len) : null;
+      }
+      int end = len;
+      while(end > 0 && buf[end - 1] != '\n') {
+        end--;
+      }
+      if(end > 0) {
+        carrylen = len - end;
+        if(carry.length < carrylen) {
+          carry = new byte[carrylen];
+        }
+        System.arraycopy(buf, end, carry, 0, carrylen);
+        return makeChunk(buf, end);
+      }
+      // No line break found: enlarge the buffer.
+      buf = Arrays.copyOf(buf, buf.length << 1);
+    }
+  }
+
+  /**
+   * Make a block to parse.
+   * 
+   * @param buf Buffer
+   * @param len Number of bytes used
+   * @return Block
+   */
+  private Chunk makeChunk(byte[] buf, int len) {
+    Chunk c = new Chunk(buf, len, firstchunk);
+    firstchunk = false;
+    return c;
+  }
+
   /**
    * Update the meta element.
    */
@@ -271,15 +510,43 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
    * as well as block parsing. This saves the building of meta data for each
    * line.
    * 
-   * @param line Line to process
+   * The {@link #tokenizer} has been initialized with the line to process.
    */
-  protected void parseLineInternal(String line) {
+  protected void parseLineInternal() {
     attributes.reset();
     labels.clear();
 
-    // Split into numerical attributes and labels
-    int i = 0;
-    for(tokenizer.initialize(line, 0, lengthWithoutLinefeed(line)); tokenizer.valid(); tokenizer.advance(), i++) {
+    haslabels |= tokenizeLine(tokenizer, attributes, labels, labelcolumns, unique);
+    // Maybe a label row?
+    if(lineNumber == 1 && attributes.size() == 0) {
+      columnnames = new ArrayList<>(labels);
+      labelcolumns.clear();
+      if(labelIndices != null) {
+        labelcolumns.or(labelIndices);
+      }
+      curvec = null;
+      curlbl = null;
+      haslabels = false;
+      return;
+    }
+    // Pass outside via class variables
+    curvec = createDBObject(attributes, ArrayLikeUtil.TDOUBLELISTADAPTER);
+    curlbl = LabelList.make(labels);
+  }
+
+  /**
+   * Split the tokens of a line into numerical attributes and labels.
+   * 
+   * @param tokenizer Tokenizer, initialized with the line
+   * @param attributes Output for the numerical attributes
+   * @param labels Output for the labels
+   * @param labelcolumns Columns that are not numeric (will be updated)
+   * @param unique Map for unifying label strings
+   * @return {@code true} if the line has labels
+   */
+  private boolean tokenizeLine(Tokenizer tokenizer, TDoubleArrayList attributes, ArrayList<String> labels, BitSet labelcolumns, HashMap<String, String> unique) {
+    boolean haslbl = false;
+    for(int i = 0; tokenizer.valid(); tokenizer.advance(), i++) {
       if(labelIndices == null || !labelIndices.get(i)) {
         try {
           double attribute = tokenizer.getDouble();
@@ -292,7 +559,7 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
         }
       }
       // Else: labels.
-      haslabels = true;
+      haslbl = true;
       final String lbl = tokenizer.getSubstring();
       String u = unique.get(lbl);
       if(u == null) {
@@ -301,21 +568,127 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
       }
       labels.add(u);
     }
-    // Maybe a label row?
-    if(lineNumber == 1 && attributes.size() == 0) {
-      columnnames = new ArrayList<>(labels);
-      labelcolumns.clear();
-      if(labelIndices != null) {
-        labelcolumns.or(labelIndices);
+    return haslbl;
+  }
+
+  /**
+   * Block of input lines, parsed by a worker thread.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Chunk implements Callable<Chunk> {
+    /**
+     * Raw input, released after parsing.
+     */
+    byte[] buf;
+
+    /**
+     * Number of bytes in the buffer.
+     */
+    int len;
+
+    /**
+     * Flag for the first block, which may contain a header line.
+     */
+    boolean first;
+
+    /**
+     * Number of lines in this block.
+     */
+    int lines = 0;
+
+    /**
+     * Column names from the header line.
+     */
+    List<String> header = null;
+
+    /**
+     * Parsed vectors.
+     */
+    ArrayList<V> vecs = new ArrayList<>();
+
+    /**
+     * Parsed labels.
+     */
+    ArrayList<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Line number (within the block) of each object.
+     */
+    TIntArrayList rowline = new TIntArrayList();
+
+    /**
+     * Columns detected as non-numeric, in order of detection.
+     */
+    TIntArrayList newcols = new TIntArrayList();
+
+    /**
+     * Object at which each column was detected as non-numeric.
+     */
+    TIntArrayList newcolrow = new TIntArrayList();
+
+    /**
+     * Next column to replay.
+     */
+    int colpos = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Input buffer
+     * @param len Number of bytes in the buffer
+     * @param first Flag for the first block
+     */
+    Chunk(byte[] buf, int len, boolean first) {
+      this.buf = buf;
+      this.len = len;
+      this.first = first;
+    }
+
+    @Override
+    public Chunk call() throws IOException {
+      final BufferedLineReader reader = new BufferedLineReader(buf, len);
+      buf = null;
+      final Tokenizer tok = new Tokenizer(colSep, quoteChars);
+      final Matcher cm = (comment != null) ? comment.matcher(reader) : null;
+      final TDoubleArrayList attributes = new TDoubleArrayList();
+      final ArrayList<String> labels = new ArrayList<>();
+      final HashMap<String, String> unique = new HashMap<>();
+      final BitSet labelcols = new BitSet(), known = new BitSet();
+      while(reader.nextLine()) {
+        lines++;
+        // Skip empty lines and comments
+        if(reader.length() <= 0 || (cm != null && cm.reset(reader).matches())) {
+          continue;
+        }
+        attributes.reset();
+        labels.clear();
+        tok.initialize(reader);
+        tokenizeLine(tok, attributes, labels, labelcols, unique);
+        // Maybe a label row?
+        if(first && lines == 1 && attributes.size() == 0) {
+          header = new ArrayList<>(labels);
+          labelcols.clear();
+          continue;
+        }
+        // Record newly detected label columns.
+        if(labelcols.cardinality() > known.cardinality()) {
+          for(int i = labelcols.nextSetBit(0); i >= 0; i = labelcols.nextSetBit(i + 1)) {
+            if(!known.get(i)) {
+              newcols.add(i);
+              newcolrow.add(vecs.size());
+            }
+          }
+          known.or(labelcols);
+        }
+        vecs.add(createDBObject(attributes, ArrayLikeUtil.TDOUBLELISTADAPTER));
+        lbls.add(LabelList.make(labels));
+        rowline.add(lines);
       }
-      curvec = null;
-      curlbl = null;
-      haslabels = false;
-      return;
+      return this;
     }
-    // Pass outside via class variables
-    curvec = createDBObject(attributes, ArrayLikeUtil.TDOUBLELISTADAPTER);
-    curlbl = LabelList.make(labels);
   }
 
   /**
@@ -394,6 +767,15 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
      */
     public static final OptionID VECTOR_TYPE_ID = new OptionID("parser.vector-type", "The type of vectors to create for numerical attributes.");
 
+    /**
+     * Parameter for the number of threads used to parse the lines.
+     * <p>
+     * Key: {@code -parser.threads}<br />
+     * Default: 1
+     * </p>
+     */
+    public static final OptionID THREADS_ID = new OptionID("parser.threads", "Number of threads to use for parsing. 0 uses one thread per available processor.");
+
     /**
      * Keeps the indices of the attributes to be treated as a string label.
      */
@@ -404,11 +786,29 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
      */
     protected NumberVector.Factory<V, ?> factory;
 
+    /**
+     * Number of threads.
+     */
+    protected int threads = 1;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
       getLabelIndices(config);
       getFactory(config);
+      getThreads(config);
+    }
+
+    /**
+     * Get the number of threads for parsing.
+     * 
+     * @param config Parameterization
+     */
+    protected void getThreads(Parameterization config) {
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
     }
 
     /**
@@ -442,7 +842,7 @@ public class NumberVectorLabelParser<V extends NumberVector<?>> extends Abstract
 
     @Override
     protected NumberVectorLabelParser<V> makeInstance() {
-      return new NumberVectorLabelParser<>(colSep, quoteChars, comment, labelIndices, factory);
+      return new NumberVectorLabelParser<>(colSep, quoteChars, comment, labelIndices, factory, threads);
     }
   }
 }
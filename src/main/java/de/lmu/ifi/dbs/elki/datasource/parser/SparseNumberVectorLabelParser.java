@@ -116,8 +116,7 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector<?>> exte
   }
 
   @Override
-  protected void parseLineInternal(String line) {
-    tokenizer.initialize(line, 0, lengthWithoutLinefeed(line));
+  protected void parseLineInternal() {
     int cardinality = (int) tokenizer.getLongBase10();
 
     values.clear();
@@ -183,6 +182,11 @@ public class SparseNumberVectorLabelParser<V extends SparseNumberVector<?>> exte
       }
     }
 
+    @Override
+    protected void getThreads(Parameterization config) {
+      // Do nothing: parsed sequentially
+    }
+
     @Override
     protected SparseNumberVectorLabelParser<V> makeInstance() {
       return new SparseNumberVectorLabelParser<>(colSep, quoteChars, comment, labelIndices, (SparseNumberVector.Factory<V, ?>) factory);
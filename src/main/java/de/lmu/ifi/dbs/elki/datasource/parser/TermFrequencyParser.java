@@ -110,13 +110,13 @@ public class TermFrequencyParser<V extends SparseNumberVector<?>> extends Number
   }
 
   @Override
-  protected void parseLineInternal(String line) {
+  protected void parseLineInternal() {
     double len = 0;
     values.clear();
     labels.clear();
 
     String curterm = null;
-    for(tokenizer.initialize(line, 0, lengthWithoutLinefeed(line)); tokenizer.valid(); tokenizer.advance()) {
+    for(; tokenizer.valid(); tokenizer.advance()) {
       if(curterm == null) {
         curterm = tokenizer.getSubstring();
       }
@@ -208,6 +208,11 @@ public class TermFrequencyParser<V extends SparseNumberVector<?>> extends Number
       }
     }
 
+    @Override
+    protected void getThreads(Parameterization config) {
+      // Do nothing: parsed sequentially
+    }
+
     @Override
     protected TermFrequencyParser<V> makeInstance() {
       return new TermFrequencyParser<>(normalize, colSep, quoteChars, comment, labelIndices, (SparseNumberVector.Factory<V, ?>) factory);
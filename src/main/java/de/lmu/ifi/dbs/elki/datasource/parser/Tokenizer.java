@@ -78,6 +78,16 @@ public class Tokenizer implements Iter {
    */
   private CharSequence input;
 
+  /**
+   * Byte buffer of the current line, {@code null} for character input.
+   */
+  private byte[] bytes;
+
+  /**
+   * Offset of the current line in the byte buffer.
+   */
+  private int boff;
+
   /**
    * Substring to process.
    */
@@ -97,12 +107,26 @@ public class Tokenizer implements Iter {
    */
   public void initialize(CharSequence input, int begin, int end) {
     this.input = input;
+    this.bytes = null;
     this.send = end;
-    this.m = colSep.matcher(input).region(begin, end);
+    this.m = (m == null) ? colSep.matcher(input) : m.reset(input);
+    m.region(begin, end);
     this.index = begin;
     advance();
   }
 
+  /**
+   * Initialize the parser with the current line of a reader. Numbers will then
+   * be parsed directly from the byte buffer.
+   * 
+   * @param line Line reader
+   */
+  public void initialize(BufferedLineReader line) {
+    initialize(line, 0, line.length());
+    this.bytes = line.getBuffer();
+    this.boff = line.getBegin();
+  }
+
   @Override
   public boolean valid() {
     return start < send;
@@ -165,6 +189,9 @@ public class Tokenizer implements Iter {
    *         value.
    */
   public double getDouble() throws NumberFormatException {
+    if(bytes != null) {
+      return FormatUtil.parseDouble(bytes, boff + start, boff + end);
+    }
     return FormatUtil.parseDouble(input, start, end);
   }
 
@@ -176,6 +203,9 @@ public class Tokenizer implements Iter {
    *         value.
    */
   public long getLongBase10() throws NumberFormatException {
+    if(bytes != null) {
+      return FormatUtil.parseLongBase10(bytes, boff + start, boff + end);
+    }
     return FormatUtil.parseLongBase10(input, start, end);
   }
 
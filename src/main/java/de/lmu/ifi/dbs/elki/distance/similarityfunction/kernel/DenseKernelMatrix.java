@@ -0,0 +1,179 @@
+package de.lmu.ifi.dbs.elki.distance.similarityfunction.kernel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.NumberDistance;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Kernel matrix stored as a primitive two-dimensional array, addressed by
+ * offsets instead of DBIDs, and computed using multiple threads.
+ * 
+ * Objects are ordered by their DBID (as in {@link KernelMatrix}), so the
+ * offset order can be used to enumerate each unordered pair once. The matrix
+ * is stored in full, so that both rows needed for a triple of objects can be
+ * scanned sequentially; it can be reused for multiple passes over the data.
+ * 
+ * @author Erich Schubert
+ */
+public class DenseKernelMatrix {
+  /**
+   * Rows per task.
+   */
+  private static final int BLOCKSIZE = 64;
+
+  /**
+   * Object IDs, in offset order.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Kernel values.
+   */
+  private final double[][] kernel;
+
+  /**
+   * Diagonal of the kernel matrix.
+   */
+  private final double[] diagonal;
+
+  /**
+   * Constructor.
+   * 
+   * @param sq Kernel similarity query
+   * @param ids Object IDs
+   * @param threads Number of threads, 0 for automatic
+   */
+  public <O, D extends NumberDistance<?, ?>> DenseKernelMatrix(final SimilarityQuery<? super O, D> sq, DBIDs ids, int threads) {
+    super();
+    if(ids instanceof DBIDRange) {
+      this.ids = (DBIDRange) ids;
+    }
+    else {
+      ArrayModifiableDBIDs sorted = DBIDUtil.newArray(ids);
+      sorted.sort();
+      this.ids = sorted;
+    }
+    final int size = this.ids.size();
+    this.kernel = new double[size][size];
+    // Rows are interleaved across tasks, as the upper triangle shrinks.
+    final int ntasks = (size + BLOCKSIZE - 1) / BLOCKSIZE;
+    List<Callable<Void>> tasks = new ArrayList<>(ntasks);
+    for(int t = 0; t < ntasks; t++) {
+      final int first = t;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          DBIDArrayIter i1 = DenseKernelMatrix.this.ids.iter(), i2 = DenseKernelMatrix.this.ids.iter();
+          for(int i = first; i < size; i += ntasks) {
+            i1.seek(i);
+            final double[] row = kernel[i];
+            i2.seek(i);
+            for(int j = i; j < size; j++, i2.advance()) {
+              final double value = sq.similarity(i1, i2).doubleValue();
+              row[j] = value;
+              kernel[j][i] = value;
+            }
+          }
+          return null;
+        }
+      });
+    }
+    ParallelExecutor.run(threads, tasks);
+    this.diagonal = new double[size];
+    for(int i = 0; i < size; i++) {
+      diagonal[i] = kernel[i][i];
+    }
+  }
+
+  /**
+   * Get the object IDs, in offset order.
+   * 
+   * @return IDs
+   */
+  public ArrayDBIDs getIDs() {
+    return ids;
+  }
+
+  /**
+   * Get the number of objects.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return kernel.length;
+  }
+
+  /**
+   * Get the kernel value of two objects.
+   * 
+   * @param i First offset
+   * @param j Second offset
+   * @return Kernel value
+   */
+  public double get(int i, int j) {
+    return kernel[i][j];
+  }
+
+  /**
+   * Get a row of the kernel matrix. The array must not be modified.
+   * 
+   * @param i Offset
+   * @return Row
+   */
+  public double[] getRow(int i) {
+    return kernel[i];
+  }
+
+  /**
+   * Get the diagonal of the kernel matrix. The array must not be modified.
+   * 
+   * @return Diagonal
+   */
+  public double[] getDiagonal() {
+    return diagonal;
+  }
+
+  /**
+   * Get the squared distance in kernel space.
+   * 
+   * @param i First offset
+   * @param j Second offset
+   * @return Squared distance
+   */
+  public double getSquaredDistance(int i, int j) {
+    return kernel[i][i] + kernel[j][j] - 2 * kernel[i][j];
+  }
+}
@@ -22,17 +22,17 @@ package de.lmu.ifi.dbs.elki.index.lsh;
  You should have received a copy of the GNU Affero General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-import gnu.trove.iterator.TIntObjectIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
@@ -50,6 +50,7 @@ import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -59,12 +60,23 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraint
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * Locality Sensitive Hashing.
  * 
+ * The hash tables are built in parallel, and stored in compressed sparse row
+ * format: per table, one array of bucket offsets and one array of object
+ * offsets, instead of a map of DBIDs objects.
+ * 
+ * When the hash functions support it, queries can probe additional buckets
+ * close to the query bucket (multi-probe LSH), which allows reaching the same
+ * recall with much fewer hash tables.
+ * 
  * @author Erich Schubert
  * 
+ * @apiviz.uses MultiProbeSequence
+ * 
  * @param <V> Object type to index
  */
 public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.Instance> {
@@ -88,6 +100,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    */
   int numberOfBuckets;
 
+  /**
+   * Number of additional buckets to probe in each table.
+   */
+  int probes;
+
+  /**
+   * Number of threads to use for building the tables.
+   */
+  int threads;
+
   /**
    * Constructor.
    * 
@@ -96,15 +118,30 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 0, 1);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of additional buckets to probe in each table
+   * @param threads Number of threads to use for building, 0 for automatic
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes, int threads) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
+    this.threads = threads;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes, threads);
   }
 
   @Override
@@ -116,6 +153,8 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * Instance of a LSH index for a single relation.
    * 
    * @author Erich Schubert
+   * 
+   * @apiviz.has HashTable
    */
   public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
     /**
@@ -124,25 +163,56 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * The actual tables
      */
-    ArrayList<TIntObjectMap<DBIDs>> hashtables;
+    List<HashTable> hashtables;
+
+    /**
+     * Indexed objects, the tables store offsets into this array.
+     */
+    ArrayDBIDs ids;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of additional buckets to probe in each table.
+     */
+    private int probes;
+
+    /**
+     * Number of threads to use for building the tables.
+     */
+    private int threads;
+
     /**
      * Constructor.
      * 
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
      */
     public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+      this(relation, hashfunctions, numberOfBuckets, 0, 1);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Relation to index.
+     * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
+     * @param probes Number of additional buckets to probe in each table
+     * @param threads Number of threads to use for building, 0 for automatic
+     */
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes, int threads) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
+      this.threads = threads;
     }
 
     @Override
@@ -157,51 +227,34 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
     @Override
     public void initialize() {
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new TIntObjectHashMap<DBIDs>(numberOfBuckets));
-      }
-
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index.", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
+      final FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH hash tables", numhash, LOG) : null;
+      List<Callable<HashTable>> tasks = new ArrayList<>(numhash);
+      for(final LocalitySensitiveHashFunction<? super V> hashfunc : hashfunctions) {
+        tasks.add(new Callable<HashTable>() {
+          @Override
+          public HashTable call() {
+            HashTable table = buildTable(hashfunc);
+            if(progress != null) {
+              progress.incrementProcessed(LOG);
+            }
+            return table;
           }
-        }
-        if(progress != null) {
-          progress.incrementProcessed(LOG);
-        }
+        });
       }
+      hashtables = ParallelExecutor.run(threads, tasks);
       if(progress != null) {
         progress.ensureCompleted(LOG);
       }
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          for(TIntObjectIterator<DBIDs> iter = table.iterator(); iter.hasNext();) {
-            iter.advance();
-            int size = iter.value().size();
+        for(HashTable table : hashtables) {
+          for(int b = 0; b < numberOfBuckets; b++) {
+            final int size = table.start[b + 1] - table.start[b];
+            if(size == 0) {
+              continue;
+            }
             if(size < min) {
               min = size;
             }
@@ -210,12 +263,102 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
             }
           }
         }
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", min));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
       }
     }
 
+    /**
+     * Build a single hash table, using a counting sort of the object offsets
+     * by bucket.
+     * 
+     * @param hashfunc Hash function
+     * @return Hash table
+     */
+    protected HashTable buildTable(LocalitySensitiveHashFunction<? super V> hashfunc) {
+      final int size = ids.size();
+      int[] buckets = new int[size];
+      int[] start = new int[numberOfBuckets + 1];
+      int off = 0;
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance(), off++) {
+        final int bucket = reduceHash(hashfunc.hashObject(relation.get(iter)));
+        buckets[off] = bucket;
+        start[bucket + 1]++;
+      }
+      for(int b = 0; b < numberOfBuckets; b++) {
+        start[b + 1] += start[b];
+      }
+      int[] members = new int[size];
+      int[] pos = Arrays.copyOf(start, numberOfBuckets);
+      for(int i = 0; i < size; i++) {
+        members[pos[buckets[i]]++] = i;
+      }
+      return new HashTable(start, members);
+    }
+
+    /**
+     * Reduce a hash code to the hash table size.
+     * 
+     * @param hash Hash code
+     * @return Bucket number
+     */
+    private int reduceHash(int hash) {
+      final int bucket = hash % numberOfBuckets;
+      return (bucket < 0) ? bucket + numberOfBuckets : bucket;
+    }
+
+    /**
+     * Collect the candidates of a query object from all hash tables.
+     * 
+     * @param obj Query object
+     * @return Object offsets, sorted and without duplicates
+     */
+    protected TIntArrayList getCandidates(V obj) {
+      TIntArrayList candidates = new TIntArrayList();
+      MultiProbeSequence seq = null;
+      int[] slots = null, perturbed = null;
+      double[] lower = null, upper = null;
+      final int numhash = hashtables.size();
+      for(int i = 0; i < numhash; i++) {
+        final HashTable table = hashtables.get(i);
+        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
+        if(probes <= 0 || !(hashfunc instanceof MultiProbeLocalitySensitiveHashFunction)) {
+          table.collect(reduceHash(hashfunc.hashObject(obj)), candidates);
+          continue;
+        }
+        final MultiProbeLocalitySensitiveHashFunction<? super V> mphash = (MultiProbeLocalitySensitiveHashFunction<? super V>) hashfunc;
+        final int k = mphash.getNumberOfProjections();
+        if(seq == null || slots.length != k) {
+          seq = new MultiProbeSequence(k);
+          slots = new int[k];
+          perturbed = new int[k];
+          lower = new double[k];
+          upper = new double[k];
+        }
+        table.collect(reduceHash(mphash.hashObject(obj, slots, lower, upper)), candidates);
+        seq.reset(lower, upper);
+        for(int p = 0; p < probes && seq.next(slots, perturbed); p++) {
+          table.collect(reduceHash(mphash.hashSlots(perturbed)), candidates);
+        }
+      }
+      // Remove duplicates.
+      final int size = candidates.size();
+      if(size > 1) {
+        candidates.sort();
+        int n = 1;
+        for(int i = 1, prev = candidates.get(0); i < size; i++) {
+          final int cur = candidates.get(i);
+          if(cur != prev) {
+            candidates.set(n++, cur);
+            prev = cur;
+          }
+        }
+        candidates.remove(n, size - n);
+      }
+      return candidates;
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -270,34 +413,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public KNNList<D> getKNNForObject(V obj, int k) {
-        ModifiableDBIDs candidates = null;
-        final int numhash = hashtables.size();
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            if(candidates == null) {
-              candidates = DBIDUtil.newHashSet(cur.size() * numhash + k);
-            }
-            candidates.addDBIDs(cur);
-          }
-        }
-        if(candidates == null) {
-          candidates = DBIDUtil.newArray();
-        }
-
+        final TIntArrayList candidates = getCandidates(obj);
         // Refine.
         KNNHeap<D> heap = DBIDUtil.newHeap(distanceQuery.getDistanceFactory(), k);
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(int i = 0; i < candidates.size(); i++) {
+          iter.seek(candidates.get(i));
           final D dist = distanceQuery.distance(obj, iter);
-          super.incRefinements(1);
           heap.insert(dist, iter);
         }
+        super.incRefinements(candidates.size());
         return heap.toKNNList();
       }
     }
@@ -323,35 +448,65 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public DistanceDBIDList<D> getRangeForObject(V obj, D range) {
-        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
-        final int numhash = hashtables.size();
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            candidates.addDBIDs(cur);
-          }
-        }
-
+        final TIntArrayList candidates = getCandidates(obj);
         // Refine.
         GenericDistanceDBIDList<D> result = new GenericDistanceDBIDList<>();
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(int i = 0; i < candidates.size(); i++) {
+          iter.seek(candidates.get(i));
           final D dist = distanceQuery.distance(obj, iter);
-          super.incRefinements(1);
           if(range.compareTo(dist) >= 0) {
             result.add(dist, iter);
           }
         }
+        super.incRefinements(candidates.size());
         return result;
       }
     }
   }
 
+  /**
+   * Hash table in compressed sparse row format.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  protected static class HashTable {
+    /**
+     * Start of each bucket in the members array; bucket b ends at
+     * {@code start[b + 1]}.
+     */
+    final int[] start;
+
+    /**
+     * Object offsets, grouped by bucket.
+     */
+    final int[] members;
+
+    /**
+     * Constructor.
+     * 
+     * @param start Bucket offsets
+     * @param members Object offsets
+     */
+    HashTable(int[] start, int[] members) {
+      super();
+      this.start = start;
+      this.members = members;
+    }
+
+    /**
+     * Add the members of a bucket to the candidates.
+     * 
+     * @param bucket Bucket number
+     * @param candidates Candidate list
+     */
+    void collect(int bucket, TIntArrayList candidates) {
+      candidates.add(members, start[bucket], start[bucket + 1] - start[bucket]);
+    }
+  }
+
   /**
    * Parameterization class.
    * 
@@ -375,6 +530,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of additional buckets to probe in each table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of additional neighboring buckets to probe in each hash table (multi-probe LSH).");
+
+    /**
+     * Parameter for the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("lsh.threads", "Number of threads to use for building the hash tables. 0 uses one thread per available processor.");
+
     /**
      * LSH hash function family to use.
      */
@@ -390,6 +555,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     int numberOfBuckets;
 
+    /**
+     * Number of additional buckets to probe in each table.
+     */
+    int probes;
+
+    /**
+     * Number of threads to use for building the tables.
+     */
+    int threads = 1;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -410,11 +585,22 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 0);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
+
+      IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes, threads);
     }
   }
 }
@@ -0,0 +1,207 @@
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.PriorityQueue;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Query-directed probing sequence for multi-probe LSH.
+ * 
+ * Given the distances of the query to the slot boundaries of each projection,
+ * this enumerates the perturbation vectors (moving the query by -1 or +1 in a
+ * subset of the projections) in order of increasing score, i.e. the sum of the
+ * squared boundary distances. The sets are generated lazily using the shift
+ * and expand operations on the sorted boundary distances.
+ * 
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ * 
+ * @author Erich Schubert
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+class MultiProbeSequence {
+  /**
+   * Number of projections.
+   */
+  private final int k;
+
+  /**
+   * Scores of the single perturbations, sorted ascending.
+   */
+  private final double[] scores;
+
+  /**
+   * Perturbations, in the same order as the scores: {@code 2 * dim} for -1,
+   * {@code 2 * dim + 1} for +1.
+   */
+  private final int[] perturbations;
+
+  /**
+   * Heap of perturbation sets.
+   */
+  private final PriorityQueue<Probe> heap = new PriorityQueue<>();
+
+  /**
+   * Constructor.
+   * 
+   * @param k Number of projections
+   */
+  MultiProbeSequence(int k) {
+    super();
+    this.k = k;
+    this.scores = new double[k << 1];
+    this.perturbations = new int[k << 1];
+  }
+
+  /**
+   * Start a new probing sequence.
+   * 
+   * @param lower Distances to the lower slot boundaries
+   * @param upper Distances to the upper slot boundaries
+   */
+  void reset(double[] lower, double[] upper) {
+    // Insertion sort, k is small.
+    for(int i = 0, n = 0; i < k; i++) {
+      n = insert(n, lower[i] * lower[i], i << 1);
+      n = insert(n, upper[i] * upper[i], (i << 1) + 1);
+    }
+    heap.clear();
+    heap.add(new Probe(new int[] { 0 }, scores[0]));
+  }
+
+  /**
+   * Insert a perturbation into the sorted arrays.
+   * 
+   * @param n Current number of perturbations
+   * @param score Score
+   * @param perturbation Perturbation code
+   * @return New number of perturbations
+   */
+  private int insert(int n, double score, int perturbation) {
+    int j = n;
+    for(; j > 0 && scores[j - 1] > score; j--) {
+      scores[j] = scores[j - 1];
+      perturbations[j] = perturbations[j - 1];
+    }
+    scores[j] = score;
+    perturbations[j] = perturbation;
+    return n + 1;
+  }
+
+  /**
+   * Produce the next perturbed slot vector.
+   * 
+   * @param slots Slots of the query
+   * @param out Output: perturbed slots
+   * @return {@code false} when all perturbations have been enumerated
+   */
+  boolean next(int[] slots, int[] out) {
+    while(!heap.isEmpty()) {
+      final Probe cur = heap.poll();
+      final int[] set = cur.set;
+      final int last = set[set.length - 1];
+      if(last + 1 < scores.length) {
+        // Shift: replace the largest element by its successor.
+        int[] shift = set.clone();
+        shift[set.length - 1] = last + 1;
+        heap.add(new Probe(shift, cur.score - scores[last] + scores[last + 1]));
+        // Expand: add the successor of the largest element.
+        int[] expand = new int[set.length + 1];
+        System.arraycopy(set, 0, expand, 0, set.length);
+        expand[set.length] = last + 1;
+        heap.add(new Probe(expand, cur.score + scores[last + 1]));
+      }
+      if(!isValid(set)) {
+        continue;
+      }
+      System.arraycopy(slots, 0, out, 0, k);
+      for(int p : set) {
+        final int code = perturbations[p];
+        out[code >>> 1] += ((code & 1) == 0) ? -1 : +1;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * A set is valid if it perturbs each projection at most once.
+   * 
+   * @param set Perturbation set
+   * @return {@code true} when valid
+   */
+  private boolean isValid(int[] set) {
+    for(int i = 1; i < set.length; i++) {
+      final int di = perturbations[set[i]] >>> 1;
+      for(int j = 0; j < i; j++) {
+        if(di == perturbations[set[j]] >>> 1) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Perturbation set, as positions in the sorted perturbation array.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Probe implements Comparable<Probe> {
+    /**
+     * Positions, ascending.
+     */
+    final int[] set;
+
+    /**
+     * Score of the set.
+     */
+    final double score;
+
+    /**
+     * Constructor.
+     * 
+     * @param set Positions
+     * @param score Score
+     */
+    Probe(int[] set, double score) {
+      super();
+      this.set = set;
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo(Probe o) {
+      return Double.compare(score, o.score);
+    }
+  }
+}
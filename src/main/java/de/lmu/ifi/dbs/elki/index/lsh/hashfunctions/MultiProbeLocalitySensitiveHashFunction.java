@@ -0,0 +1,62 @@
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LSH hash function that supports multi-probe queries: the hash code is
+ * composed of several quantized projections, and the query can be moved into
+ * neighboring slots to obtain the hash codes of nearby buckets.
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <V> Object type
+ */
+public interface MultiProbeLocalitySensitiveHashFunction<V> extends LocalitySensitiveHashFunction<V> {
+  /**
+   * Get the number of projections combined into a single hash code.
+   * 
+   * @return Number of projections
+   */
+  int getNumberOfProjections();
+
+  /**
+   * Compute the hash value of an object, and store the slot of each projection
+   * along with the distances to the lower and upper slot boundaries.
+   * 
+   * @param obj Object to hash
+   * @param slots Output: slot of each projection
+   * @param lower Output: distance to the lower boundary of each slot
+   * @param upper Output: distance to the upper boundary of each slot
+   * @return Hash value, same as {@link #hashObject}
+   */
+  int hashObject(V obj, int[] slots, double[] lower, double[] upper);
+
+  /**
+   * Compute the hash value of a (perturbed) slot vector.
+   * 
+   * @param slots Slot of each projection
+   * @return Hash value
+   */
+  int hashSlots(int[] slots);
+}
@@ -42,7 +42,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * @author Erich Schubert
  */
 @Reference(authors = "M. Datar and N. Immorlica and P. Indyk and V. S. Mirrokni", title = "Locality-sensitive hashing scheme based on p-stable distributions", booktitle = "Proc. 20th annual symposium on Computational geometry", url = "http://dx.doi.org/10.1145/997817.997857")
-public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector<?>> {
+public class MultipleProjectionsLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector<?>> {
   /**
    * Projection matrix.
    */
@@ -99,6 +99,36 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int getNumberOfProjections() {
+    return shift.length;
+  }
+
+  @Override
+  public int hashObject(NumberVector<?> vec, int[] slots, double[] lower, double[] upper) {
+    long t1sum = 0L;
+    // Project the vector:
+    final double[] proj = projection.project(vec);
+    for (int i = 0; i < shift.length; i++) {
+      final double v = proj[i] + shift[i];
+      int ai = (int) Math.floor(v / width);
+      slots[i] = ai;
+      lower[i] = v - ai * width;
+      upper[i] = width - lower[i];
+      t1sum += randoms1[i] * (long) ai;
+    }
+    return fastModPrime(t1sum);
+  }
+
+  @Override
+  public int hashSlots(int[] slots) {
+    long t1sum = 0L;
+    for (int i = 0; i < shift.length; i++) {
+      t1sum += randoms1[i] * (long) slots[i];
+    }
+    return fastModPrime(t1sum);
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    * 
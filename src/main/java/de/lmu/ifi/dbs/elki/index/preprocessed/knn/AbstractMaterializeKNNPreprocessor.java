@@ -30,12 +30,14 @@ import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.DoubleDistancePreprocessorKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.preprocessed.AbstractPreprocessorIndex;
@@ -170,6 +172,10 @@ public abstract class AbstractMaterializeKNNPreprocessor<O, D extends Distance<D
     }
     // To make compilers happy:
     AbstractMaterializeKNNPreprocessor<?, ?, ?> tmp = this;
+    if(distQ.getDistanceFactory() instanceof DoubleDistance) {
+      KNNQuery<O, ?> dq = new DoubleDistancePreprocessorKNNQuery<>(relation, (AbstractMaterializeKNNPreprocessor<O, DoubleDistance, KNNList<DoubleDistance>>) tmp);
+      return (KNNQuery<O, S>) dq;
+    }
     return new PreprocessorKNNQuery<>(relation, (AbstractMaterializeKNNPreprocessor<O, S, KNNList<S>>) tmp);
   }
 
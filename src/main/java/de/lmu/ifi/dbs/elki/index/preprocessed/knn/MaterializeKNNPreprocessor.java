@@ -23,12 +23,15 @@ package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.swing.event.EventListenerList;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -37,6 +40,7 @@ import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -49,6 +53,10 @@ import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
@@ -56,6 +64,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
  * 
  * Used for example by {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF}.
  * 
+ * The initial materialization can be run on multiple threads. The object IDs
+ * are then split into contiguous blocks, and every worker uses its own kNN
+ * query. This requires the kNN queries of the database to be safe for
+ * concurrent read-only use, which holds for linear scans and the tree indexes.
+ * 
  * @author Erich Schubert
  * 
  * @apiviz.has DistanceFunction
@@ -74,17 +87,26 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
   /**
-   * Flag to use bulk operations.
-   * 
-   * TODO: right now, bulk is not that good - so don't use
+   * Flag to use bulk operations. Tree indexes process bulk queries in groups
+   * of nearby objects, sharing one traversal per group.
+   */
+  private static final boolean usebulk = true;
+
+  /**
+   * Number of objects per bulk query, so that progress can be reported.
    */
-  private static final boolean usebulk = false;
+  private static final int BULK_BATCH = 4096;
 
   /**
    * KNNQuery instance to use.
    */
   protected final KNNQuery<O, D> knnQuery;
 
+  /**
+   * Additional kNN queries for the worker threads (may be null).
+   */
+  private final List<KNNQuery<O, D>> workerQueries;
+
   /**
    * Holds the listener.
    */
@@ -98,8 +120,33 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
    * @param k query k
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O, D> distanceFunction, int k) {
+    this(relation, distanceFunction, k, 1);
+  }
+
+  /**
+   * Constructor with preprocessing step.
+   * 
+   * @param relation Relation to preprocess
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param threads Number of threads for the initial materialization, 0 for
+   *        one per processor
+   */
+  public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O, D> distanceFunction, int k, int threads) {
     super(relation, distanceFunction, k);
     this.knnQuery = relation.getDatabase().getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+    threads = ParallelExecutor.getThreads(threads);
+    if (threads > 1) {
+      // Obtain the queries now, before this index is added to the database.
+      workerQueries = new ArrayList<>(threads);
+      workerQueries.add(knnQuery);
+      for (int i = 1; i < threads; i++) {
+        DistanceQuery<O, D> dq = distanceFunction.instantiate(relation);
+        workerQueries.add(relation.getDatabase().getKNNQuery(dq, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE));
+      }
+    } else {
+      workerQueries = null;
+    }
   }
 
   /**
@@ -119,14 +166,15 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
       duration.begin();
     }
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    List<? extends KNNList<D>> kNNList = null;
-    if (usebulk) {
-      kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
-      if (kNNList != null) {
-        int i = 0;
-        for (DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
-          storage.put(id, kNNList.get(i));
+    if (workerQueries != null && ids.size() > workerQueries.size()) {
+      preprocessParallel(ids, progress);
+    } else if (usebulk) {
+      DBIDArrayIter iter = ids.iter();
+      for (int begin = 0; begin < ids.size(); begin += BULK_BATCH) {
+        final int end = Math.min(begin + BULK_BATCH, ids.size());
+        for (KNNList<D> knn : knnQuery.getKNNForBulkDBIDs(ids.slice(begin, end), k)) {
+          storage.put(iter, knn);
+          iter.advance();
           if (progress != null) {
             progress.incrementProcessed(getLogger());
           }
@@ -150,6 +198,104 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
     }
   }
 
+  /**
+   * Materialize the kNN lists using multiple threads.
+   * 
+   * Every worker processes a contiguous block of the object IDs with its own
+   * query. The results are buffered per block and then stored in order, so
+   * the storage does not need to support concurrent writes.
+   * 
+   * @param ids Object IDs
+   * @param progress Progress, may be null
+   */
+  private void preprocessParallel(ArrayDBIDs ids, FiniteProgress progress) {
+    final int size = ids.size(), threads = workerQueries.size();
+    List<Worker> tasks = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      final int begin = (int) ((long) size * i / threads);
+      final int end = (int) ((long) size * (i + 1) / threads);
+      tasks.add(new Worker(workerQueries.get(i), ids, begin, end, progress));
+    }
+    List<List<KNNList<D>>> results = ParallelExecutor.run(threads, tasks);
+    DBIDArrayIter iter = ids.iter();
+    for (List<KNNList<D>> block : results) {
+      for (KNNList<D> knn : block) {
+        storage.put(iter, knn);
+        iter.advance();
+      }
+    }
+  }
+
+  /**
+   * Worker computing the kNN lists of a contiguous block of objects.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Worker implements Callable<List<KNNList<D>>> {
+    /**
+     * kNN query of this worker.
+     */
+    private final KNNQuery<O, D> query;
+
+    /**
+     * Object IDs.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Block range.
+     */
+    private final int begin, end;
+
+    /**
+     * Shared progress, may be null.
+     */
+    private final FiniteProgress progress;
+
+    /**
+     * Constructor.
+     * 
+     * @param query kNN query of this worker
+     * @param ids Object IDs
+     * @param begin First offset
+     * @param end Last offset (exclusive)
+     * @param progress Shared progress, may be null
+     */
+    Worker(KNNQuery<O, D> query, ArrayDBIDs ids, int begin, int end, FiniteProgress progress) {
+      super();
+      this.query = query;
+      this.ids = ids;
+      this.begin = begin;
+      this.end = end;
+      this.progress = progress;
+    }
+
+    @Override
+    public List<KNNList<D>> call() {
+      List<KNNList<D>> block = new ArrayList<>(end - begin);
+      if (usebulk) {
+        for (int i = begin; i < end; i += BULK_BATCH) {
+          final int iend = Math.min(i + BULK_BATCH, end);
+          block.addAll(query.getKNNForBulkDBIDs(ids.slice(i, iend), k));
+          for (int j = i; progress != null && j < iend; j++) {
+            progress.incrementProcessed(getLogger());
+          }
+        }
+        return block;
+      }
+      DBIDArrayIter iter = ids.iter();
+      for (iter.seek(begin); iter.getOffset() < end; iter.advance()) {
+        block.add(query.getKNNForDBID(iter, k));
+        if (progress != null) {
+          progress.incrementProcessed(getLogger());
+        }
+      }
+      return block;
+    }
+  }
+
   @Override
   public final void insert(DBIDRef id) {
     objectsInserted(DBIDUtil.deref(id));
@@ -406,6 +552,11 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
    * @param <D> The distance type
    */
   public static class Factory<O, D extends Distance<D>> extends AbstractMaterializeKNNPreprocessor.Factory<O, D, KNNList<D>> {
+    /**
+     * Number of threads for the initial materialization.
+     */
+    protected int threads;
+
     /**
      * Index factory.
      * 
@@ -413,12 +564,24 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
      * @param distanceFunction distance function
      */
     public Factory(int k, DistanceFunction<? super O, D> distanceFunction) {
+      this(k, distanceFunction, 1);
+    }
+
+    /**
+     * Index factory.
+     * 
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param threads Number of threads, 0 for one per processor
+     */
+    public Factory(int k, DistanceFunction<? super O, D> distanceFunction, int threads) {
       super(k, distanceFunction);
+      this.threads = threads;
     }
 
     @Override
     public MaterializeKNNPreprocessor<O, D> instantiate(Relation<O> relation) {
-      MaterializeKNNPreprocessor<O, D> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNPreprocessor<O, D> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k, threads);
       return instance;
     }
 
@@ -430,9 +593,28 @@ public class MaterializeKNNPreprocessor<O, D extends Distance<D>> extends Abstra
      * @apiviz.exclude
      */
     public static class Parameterizer<O, D extends Distance<D>> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O, D> {
+      /**
+       * Parameter for the number of threads.
+       */
+      public static final OptionID THREADS_ID = new OptionID("materialize.threads", "Number of threads to use for materializing the nearest neighbors. 0 uses one thread per available processor.");
+
+      /**
+       * Number of threads.
+       */
+      protected int threads;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 1);
+        if (config.grab(threadsP)) {
+          threads = threadsP.intValue();
+        }
+      }
+
       @Override
       protected Factory<O, D> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, threads);
       }
     }
   }
@@ -0,0 +1,835 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceDBIDPairList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.AbstractDataBasedQuery;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.Distance;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.RKNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Approximate kNN graph construction using NN-Descent.
+ * 
+ * Starting from random neighbors, every object repeatedly compares the
+ * neighbors of its neighbors (including reverse neighbors), as "a neighbor of
+ * a neighbor is likely to be a neighbor". Only a sample (rate rho) of the
+ * neighbors that were newly found in the previous iteration take part in
+ * each iteration, and the process stops when fewer than delta * n * k
+ * neighbors were updated, or after the maximum number of iterations. Larger
+ * sample rates, smaller delta and more iterations yield a better recall.
+ * 
+ * The comparisons of each iteration are performed in parallel, in waves of
+ * one block per thread. The updates of each wave are applied in block order
+ * before the next wave starts, which bounds the memory used for pending
+ * updates. Since the comparisons only drop pairs that would be rejected when
+ * applied, the result only depends on the random seed.
+ * 
+ * Only object IDs are supported as queries, as for the other materialized
+ * preprocessors. The result can be evaluated against the exact kNN using
+ * {@link de.lmu.ifi.dbs.elki.algorithm.benchmark.ValidateApproximativeKNNIndex}.
+ * 
+ * Reference:
+ * <p>
+ * W. Dong, M. Charikar, K. Li<br />
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br />
+ * In: Proc. 20th International Conference on World Wide Web (WWW '11)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * 
+ * @param <O> Object type
+ */
+@Title("NN-Descent")
+@Reference(authors = "W. Dong, M. Charikar, K. Li", title = "Efficient k-nearest neighbor graph construction for generic similarity measures", booktitle = "Proc. 20th International Conference on World Wide Web (WWW '11)", url = "http://dx.doi.org/10.1145/1963405.1963487")
+public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O, DoubleDistance, KNNList<DoubleDistance>> implements RKNNIndex<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNDescent.class);
+
+  /**
+   * Number of objects per parallel task.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Sample rate.
+   */
+  private final double rho;
+
+  /**
+   * Early termination threshold.
+   */
+  private final double delta;
+
+  /**
+   * Maximum number of iterations.
+   */
+  private final int maxiter;
+
+  /**
+   * Random generator.
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Number of threads.
+   */
+  private final int threads;
+
+  /**
+   * Primitive distance function, if available.
+   */
+  private final PrimitiveDoubleDistanceFunction<? super O> primitive;
+
+  /**
+   * Reverse kNN lists, computed on demand.
+   */
+  private WritableDataStore<DoubleDistanceDBIDPairList> rknns = null;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors (including the query object)
+   * @param rho Sample rate
+   * @param delta Early termination threshold
+   * @param maxiter Maximum number of iterations
+   * @param rnd Random generator
+   * @param threads Number of threads, 0 for automatic
+   */
+  public NNDescent(Relation<O> relation, DistanceFunction<? super O, DoubleDistance> distanceFunction, int k, double rho, double delta, int maxiter, RandomFactory rnd, int threads) {
+    super(relation, distanceFunction, k);
+    this.rho = rho;
+    this.delta = delta;
+    this.maxiter = maxiter;
+    this.rnd = rnd;
+    this.threads = threads;
+    this.primitive = (distanceFunction instanceof PrimitiveDoubleDistanceFunction) ? (PrimitiveDoubleDistanceFunction<? super O>) distanceFunction : null;
+  }
+
+  @Override
+  protected void preprocess() {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Neighbors besides the object itself.
+    final int kk = Math.max(0, Math.min(k - 1, size - 1));
+    final Random random = rnd.getSingleThreadedRandom();
+    final Graph graph = new Graph(size, kk);
+
+    // Random initial neighbors.
+    for(int u = 0; u < size; u++) {
+      final int[] row = graph.nids[u];
+      for(int c = 0; c < kk;) {
+        int v = random.nextInt(size - 1);
+        v = (v >= u) ? v + 1 : v;
+        boolean dup = false;
+        for(int i = 0; i < c && !dup; i++) {
+          dup = (row[i] == v);
+        }
+        if(!dup) {
+          row[c++] = v;
+        }
+      }
+    }
+    List<Callable<Void>> init = new ArrayList<>();
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      final int from = start, to = Math.min(start + BLOCKSIZE, size);
+      init.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+          for(int u = from; u < to; u++) {
+            final int[] sample = graph.nids[u].clone();
+            for(int v : sample) {
+              graph.insert(u, v, distance(ia, u, ib, v));
+            }
+          }
+          return null;
+        }
+      });
+    }
+    long distcalc = size * (long) kk;
+    final int samples = Math.max(1, (int) Math.ceil(rho * kk));
+    final TIntArrayList[] newc = new TIntArrayList[size], oldc = new TIntArrayList[size];
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("NN-Descent iterations", LOG) : null;
+    int iter = 0;
+    try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+      executor.execute(init);
+
+      // NN-Descent iterations.
+      final int wave = executor.getThreads();
+      final List<Callable<Updates>> tasks = new ArrayList<>(wave);
+      while(kk > 0 && iter < maxiter) {
+        iter++;
+        buildCandidates(graph, newc, oldc, samples, random);
+        long updates = 0;
+        for(int start = 0; start < size;) {
+          tasks.clear();
+          for(int b = 0; b < wave && start < size; b++, start += BLOCKSIZE) {
+            final int from = start, to = Math.min(start + BLOCKSIZE, size);
+            tasks.add(new Callable<Updates>() {
+              @Override
+              public Updates call() {
+                return localJoin(ids, graph, newc, oldc, from, to);
+              }
+            });
+          }
+          // Apply in block order, before the next wave reads the graph.
+          for(Updates u : executor.execute(tasks)) {
+            distcalc += u.distcalc;
+            for(int i = 0, j = 0; i < u.dists.size(); i++, j += 2) {
+              final int p = u.pairs.get(j), q = u.pairs.get(j + 1);
+              final double d = u.dists.get(i);
+              updates += graph.insert(p, q, d) ? 1 : 0;
+              updates += graph.insert(q, p, d) ? 1 : 0;
+            }
+          }
+        }
+        if(LOG.isDebugging()) {
+          LOG.debug("NN-Descent iteration " + iter + ": " + updates + " updates.");
+        }
+        if(prog != null) {
+          prog.incrementProcessed(LOG);
+        }
+        if(updates <= delta * size * kk) {
+          break;
+        }
+      }
+    }
+    if(prog != null) {
+      prog.setCompleted(LOG);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".iterations", iter));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distcalc));
+    }
+
+    // Store the kNN lists, including the object itself.
+    createStorage();
+    DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+    for(int u = 0; u < size; u++) {
+      ia.seek(u);
+      DoubleDistanceKNNHeap heap = DBIDUtil.newDoubleDistanceHeap(k);
+      heap.insert(distance(ia, u, ib, u), ia);
+      for(int i = 0; i < graph.count[u]; i++) {
+        ib.seek(graph.nids[u][i]);
+        heap.insert(graph.ndist[u][i], ib);
+      }
+      storage.put(ia, heap.toKNNList());
+    }
+  }
+
+  /**
+   * Build the candidate lists for the local join: a sample of the new
+   * neighbors, all old neighbors, and samples of the reverse neighbors.
+   * 
+   * @param graph Neighbor graph
+   * @param newc New candidates (output)
+   * @param oldc Old candidates (output)
+   * @param samples Sample size
+   * @param random Random generator
+   */
+  private static void buildCandidates(Graph graph, TIntArrayList[] newc, TIntArrayList[] oldc, int samples, Random random) {
+    final int size = newc.length;
+    final TIntArrayList[] rnew = new TIntArrayList[size], rold = new TIntArrayList[size];
+    for(int u = 0; u < size; u++) {
+      newc[u] = new TIntArrayList(samples << 1);
+      oldc[u] = new TIntArrayList();
+      rnew[u] = new TIntArrayList();
+      rold[u] = new TIntArrayList();
+    }
+    final TIntArrayList fresh = new TIntArrayList();
+    for(int u = 0; u < size; u++) {
+      final int[] row = graph.nids[u];
+      final boolean[] isnew = graph.isnew[u];
+      fresh.resetQuick();
+      for(int i = 0; i < graph.count[u]; i++) {
+        if(isnew[i]) {
+          fresh.add(i);
+        }
+        else {
+          oldc[u].add(row[i]);
+          rold[row[i]].add(u);
+        }
+      }
+      // Sample the new neighbors, which are then no longer new.
+      for(int i = 0; i < samples && i < fresh.size(); i++) {
+        swap(fresh, i, i + random.nextInt(fresh.size() - i));
+        final int pos = fresh.get(i);
+        isnew[pos] = false;
+        newc[u].add(row[pos]);
+        rnew[row[pos]].add(u);
+      }
+    }
+    // Add samples of the reverse neighbors.
+    for(int u = 0; u < size; u++) {
+      addSample(newc[u], rnew[u], samples, random);
+      addSample(oldc[u], rold[u], samples, random);
+    }
+  }
+
+  /**
+   * Add a random sample of the source list to the destination list, skipping
+   * duplicates.
+   * 
+   * @param dest Destination list
+   * @param src Source list (will be reordered)
+   * @param samples Sample size
+   * @param random Random generator
+   */
+  private static void addSample(TIntArrayList dest, TIntArrayList src, int samples, Random random) {
+    for(int i = 0; i < samples && i < src.size(); i++) {
+      swap(src, i, i + random.nextInt(src.size() - i));
+      final int v = src.get(i);
+      if(!dest.contains(v)) {
+        dest.add(v);
+      }
+    }
+  }
+
+  /**
+   * Swap two list entries.
+   * 
+   * @param list List
+   * @param i First position
+   * @param j Second position
+   */
+  private static void swap(TIntArrayList list, int i, int j) {
+    final int tmp = list.get(i);
+    list.set(i, list.get(j));
+    list.set(j, tmp);
+  }
+
+  /**
+   * Local join for a block of objects: compare the candidates of each object
+   * with each other, and collect the pairs that may improve a neighbor list.
+   * 
+   * @param ids Object IDs
+   * @param graph Neighbor graph (read only)
+   * @param newc New candidates
+   * @param oldc Old candidates
+   * @param from First object
+   * @param to End of block (exclusive)
+   * @return Updates to apply
+   */
+  private Updates localJoin(ArrayDBIDs ids, Graph graph, TIntArrayList[] newc, TIntArrayList[] oldc, int from, int to) {
+    Updates updates = new Updates();
+    DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+    for(int u = from; u < to; u++) {
+      final TIntArrayList nw = newc[u], od = oldc[u];
+      for(int i = 0; i < nw.size(); i++) {
+        final int p = nw.get(i);
+        for(int j = i + 1; j < nw.size(); j++) {
+          updates.check(graph, p, nw.get(j), ia, ib);
+        }
+        for(int j = 0; j < od.size(); j++) {
+          updates.check(graph, p, od.get(j), ia, ib);
+        }
+      }
+    }
+    return updates;
+  }
+
+  /**
+   * Compute the distance of two objects.
+   * 
+   * @param ia Iterator for the first object
+   * @param a Offset of the first object
+   * @param ib Iterator for the second object
+   * @param b Offset of the second object
+   * @return Distance
+   */
+  protected double distance(DBIDArrayIter ia, int a, DBIDArrayIter ib, int b) {
+    ia.seek(a);
+    ib.seek(b);
+    if(primitive != null) {
+      return primitive.doubleDistance(relation.get(ia), relation.get(ib));
+    }
+    return distanceQuery.distance(ia, ib).doubleValue();
+  }
+
+  /**
+   * Candidate updates found by a local join task.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class Updates {
+    /**
+     * Object pairs.
+     */
+    TIntArrayList pairs = new TIntArrayList();
+
+    /**
+     * Distances of the pairs.
+     */
+    TDoubleArrayList dists = new TDoubleArrayList();
+
+    /**
+     * Number of distance computations.
+     */
+    long distcalc = 0;
+
+    /**
+     * Compare two objects, and keep the pair if it may improve one of their
+     * neighbor lists.
+     * 
+     * @param graph Neighbor graph
+     * @param p First object
+     * @param q Second object
+     * @param ia Iterator
+     * @param ib Iterator
+     */
+    void check(Graph graph, int p, int q, DBIDArrayIter ia, DBIDArrayIter ib) {
+      if(p == q) {
+        return;
+      }
+      final double d = distance(ia, p, ib, q);
+      distcalc++;
+      if(d < graph.kdist(p) || d < graph.kdist(q)) {
+        pairs.add(p);
+        pairs.add(q);
+        dists.add(d);
+      }
+    }
+  }
+
+  /**
+   * Approximate neighbor graph, with rows sorted by distance.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Graph {
+    /**
+     * Neighbor offsets.
+     */
+    final int[][] nids;
+
+    /**
+     * Neighbor distances.
+     */
+    final double[][] ndist;
+
+    /**
+     * Flag for neighbors not yet used in a local join.
+     */
+    final boolean[][] isnew;
+
+    /**
+     * Number of neighbors in each row.
+     */
+    final int[] count;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of objects
+     * @param k Number of neighbors
+     */
+    Graph(int size, int k) {
+      nids = new int[size][k];
+      ndist = new double[size][k];
+      isnew = new boolean[size][k];
+      count = new int[size];
+    }
+
+    /**
+     * Current k-distance of an object.
+     * 
+     * @param u Object
+     * @return k-distance, infinity if less than k neighbors are known
+     */
+    double kdist(int u) {
+      final int c = count[u];
+      return (c < nids[u].length) ? Double.POSITIVE_INFINITY : ndist[u][c - 1];
+    }
+
+    /**
+     * Insert a neighbor.
+     * 
+     * @param u Object
+     * @param v Neighbor
+     * @param d Distance
+     * @return {@code true} if the neighbor list was changed
+     */
+    boolean insert(int u, int v, double d) {
+      final int[] row = nids[u];
+      final double[] dists = ndist[u];
+      final boolean[] flags = isnew[u];
+      final int c = count[u], k = row.length;
+      if(c == k && !(d < dists[k - 1])) {
+        return false;
+      }
+      for(int i = 0; i < c; i++) {
+        if(row[i] == v) {
+          return false;
+        }
+      }
+      int pos = (c < k) ? c : k - 1;
+      for(; pos > 0 && dists[pos - 1] > d; pos--) {
+        row[pos] = row[pos - 1];
+        dists[pos] = dists[pos - 1];
+        flags[pos] = flags[pos - 1];
+      }
+      row[pos] = v;
+      dists[pos] = d;
+      flags[pos] = true;
+      if(c < k) {
+        count[u]++;
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public <S extends Distance<S>> KNNQuery<O, S> getKNNQuery(DistanceQuery<O, S> distQ, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return super.getKNNQuery(distQ, hints);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <S extends Distance<S>> RKNNQuery<O, S> getRKNNQuery(DistanceQuery<O, S> distQ, Object... hints) {
+    if(!this.distanceFunction.equals(distQ.getDistanceFunction())) {
+      return null;
+    }
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return (RKNNQuery<O, S>) new NNDescentRKNNQuery();
+  }
+
+  /**
+   * Get the reverse kNN of an object, with respect to the approximate kNN
+   * graph.
+   * 
+   * @param id Object ID
+   * @return Reverse neighbors
+   */
+  public synchronized DistanceDBIDList<DoubleDistance> getRKNN(DBIDRef id) {
+    if(rknns == null) {
+      rknns = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, DoubleDistanceDBIDPairList.class);
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        rknns.put(iter, new DoubleDistanceDBIDPairList());
+      }
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        DoubleDistanceKNNList knn = (DoubleDistanceKNNList) get(iter);
+        for(DoubleDistanceDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+          rknns.get(it).add(it.doubleDistance(), iter);
+        }
+      }
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        rknns.get(iter).sort();
+      }
+    }
+    return rknns.get(id);
+  }
+
+  /**
+   * Reverse kNN query using the approximate kNN graph.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class NNDescentRKNNQuery extends AbstractDataBasedQuery<O> implements RKNNQuery<O, DoubleDistance> {
+    /**
+     * Constructor.
+     */
+    NNDescentRKNNQuery() {
+      super(NNDescent.this.relation);
+    }
+
+    @Override
+    public DistanceDBIDList<DoubleDistance> getRKNNForDBID(DBIDRef id, int k) {
+      if(k != NNDescent.this.k) {
+        throw new AbortException("NN-Descent reverse kNN queries are only supported for k=" + NNDescent.this.k);
+      }
+      return getRKNN(id);
+    }
+
+    @Override
+    public DistanceDBIDList<DoubleDistance> getRKNNForObject(O obj, int k) {
+      throw new AbortException("Preprocessor RkNN query only supports ID queries.");
+    }
+
+    @Override
+    public List<? extends DistanceDBIDList<DoubleDistance>> getRKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      List<DistanceDBIDList<DoubleDistance>> result = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        result.add(getRKNNForDBID(iter, k));
+      }
+      return result;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public String getLongName() {
+    return "NN-Descent kNN graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "nn-descent";
+  }
+
+  @Override
+  public void logStatistics() {
+    // No statistics to log.
+  }
+
+  /**
+   * The parameterizable factory.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.landmark
+   * @apiviz.stereotype factory
+   * @apiviz.uses NNDescent oneway - - «create»
+   * 
+   * @param <O> The object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O, DoubleDistance, KNNList<DoubleDistance>> {
+    /**
+     * Sample rate.
+     */
+    private final double rho;
+
+    /**
+     * Early termination threshold.
+     */
+    private final double delta;
+
+    /**
+     * Maximum number of iterations.
+     */
+    private final int maxiter;
+
+    /**
+     * Random generator.
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Number of threads.
+     */
+    private final int threads;
+
+    /**
+     * Constructor.
+     * 
+     * @param k K
+     * @param distanceFunction distance function
+     * @param rho Sample rate
+     * @param delta Early termination threshold
+     * @param maxiter Maximum number of iterations
+     * @param rnd Random generator
+     * @param threads Number of threads, 0 for automatic
+     */
+    public Factory(int k, DistanceFunction<? super O, DoubleDistance> distanceFunction, double rho, double delta, int maxiter, RandomFactory rnd, int threads) {
+      super(k, distanceFunction);
+      this.rho = rho;
+      this.delta = delta;
+      this.maxiter = maxiter;
+      this.rnd = rnd;
+      this.threads = threads;
+    }
+
+    @Override
+    public NNDescent<O> instantiate(Relation<O> relation) {
+      return new NNDescent<>(relation, distanceFunction, k, rho, delta, maxiter, rnd, threads);
+    }
+
+    /**
+     * Parameterization class
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     * 
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O, DoubleDistance> {
+      /**
+       * Sample rate of the new neighbors per iteration.
+       * 
+       * <p>
+       * Key: {@code -nndescent.sample}
+       * </p>
+       */
+      public static final OptionID RHO_ID = new OptionID("nndescent.sample", "Sample rate of the new neighbors used in each iteration. Higher values improve recall, at higher cost.");
+
+      /**
+       * Early termination threshold.
+       * 
+       * <p>
+       * Key: {@code -nndescent.delta}
+       * </p>
+       */
+      public static final OptionID DELTA_ID = new OptionID("nndescent.delta", "Stop when less than delta * n * k neighbors were updated in an iteration.");
+
+      /**
+       * Maximum number of iterations.
+       * 
+       * <p>
+       * Key: {@code -nndescent.iterations}
+       * </p>
+       */
+      public static final OptionID ITER_ID = new OptionID("nndescent.iterations", "Maximum number of iterations.");
+
+      /**
+       * Random number generator seed.
+       * 
+       * <p>
+       * Key: {@code -nndescent.seed}
+       * </p>
+       */
+      public static final OptionID SEED_ID = new OptionID("nndescent.seed", "The random number seed.");
+
+      /**
+       * Parameter for the number of threads.
+       */
+      public static final OptionID THREADS_ID = new OptionID("nndescent.threads", "Number of threads to use for the neighbor updates. 0 uses one thread per available processor.");
+
+      /**
+       * Sample rate.
+       */
+      private double rho = 1.;
+
+      /**
+       * Early termination threshold.
+       */
+      private double delta = 0.001;
+
+      /**
+       * Maximum number of iterations.
+       */
+      private int maxiter = 20;
+
+      /**
+       * Random generator.
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Number of threads.
+       */
+      private int threads;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        DoubleParameter rhoP = new DoubleParameter(RHO_ID, 1.);
+        rhoP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        rhoP.addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.doubleValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(DELTA_ID, 0.001);
+        deltaP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.doubleValue();
+        }
+        IntParameter iterP = new IntParameter(ITER_ID, 20);
+        iterP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          maxiter = iterP.intValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        IntParameter threadsP = ParallelExecutor.makeThreadsParameter(THREADS_ID, 0);
+        if(config.grab(threadsP)) {
+          threads = threadsP.intValue();
+        }
+      }
+
+      @Override
+      protected NNDescent.Factory<O> makeInstance() {
+        return new NNDescent.Factory<>(k, distanceFunction, rho, delta, maxiter, rnd, threads);
+      }
+    }
+  }
+}
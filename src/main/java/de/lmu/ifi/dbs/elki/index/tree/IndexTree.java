@@ -31,6 +31,14 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 /**
  * Abstract super class for all tree based index classes.
  * 
+ * Thread safety: once the index has been built, it may be queried from
+ * multiple threads concurrently, provided that the page file supports
+ * concurrent reads (see {@link PageFile#readPage}) and that no thread modifies
+ * the tree (insertions, deletions, bulk loads) at the same time. Query objects
+ * do not keep per-query state, so a single kNN or range query instance may be
+ * shared by multiple threads, too. Modifications must be synchronized
+ * externally.
+ * 
  * @author Elke Achtert
  * 
  * @apiviz.composedOf PageFile
@@ -23,18 +23,25 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNHeap;
-import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDoubleDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDoubleDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.query.BatchKNNUtil;
 import de.lmu.ifi.dbs.elki.index.tree.query.DoubleMTreeDistanceSearchCandidate;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
 
@@ -47,7 +54,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
  * 
  * @param <O> Object type
  */
-public class DoubleDistanceMetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O, DoubleDistance> {
+public class DoubleDistanceMetricalIndexKNNQuery<O> extends AbstractDoubleDistanceKNNQuery<O> {
   /**
    * The index to use
    */
@@ -72,7 +79,7 @@ public class DoubleDistanceMetricalIndexKNNQuery<O> extends AbstractDistanceKNNQ
   }
 
   @Override
-  public KNNList<DoubleDistance> getKNNForObject(O q, int k) {
+  public DoubleDistanceKNNList getKNNForObject(O q, int k) {
     if (k < 1) {
       throw new IllegalArgumentException("At least one object has to be requested!");
     }
@@ -140,4 +147,223 @@ public class DoubleDistanceMetricalIndexKNNQuery<O> extends AbstractDistanceKNNQ
     }
     return knnList.toKNNList();
   }
+
+  /**
+   * Batch kNN query: the queries are processed in groups that share a single
+   * best-first traversal of the tree. If the objects are spatial, they are
+   * sorted along a Hilbert curve first to obtain compact groups.
+   * 
+   * Each group uses its middle query as pivot: with the distances of all
+   * queries to the pivot, a single distance computation from the pivot to a
+   * routing object bounds the distances of the whole group by the triangle
+   * inequality, so directory nodes are pruned with one distance computation
+   * per entry instead of one per query and entry.
+   */
+  @Override
+  public List<DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException("At least one object has to be requested!");
+    }
+    final int size = ids.size();
+    List<O> objs = new ArrayList<>(size);
+    for (DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      objs.add(relation.get(iter));
+    }
+    final int[] order = spatialOrder(objs);
+    DoubleDistanceKNNHeap[] heaps = new DoubleDistanceKNNHeap[size];
+    for (int start = 0; start < size; start += BatchKNNUtil.GROUP_SIZE) {
+      final int end = Math.min(start + BatchKNNUtil.GROUP_SIZE, size);
+      for (int i = start; i < end; i++) {
+        heaps[order[i]] = DBIDUtil.newDoubleDistanceHeap(k);
+      }
+      batchKNN(objs, order, start, end, heaps);
+    }
+
+    List<DoubleDistanceKNNList> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      index.statistics.countKNNQuery();
+      result.add(heaps[i].toKNNList());
+    }
+    return result;
+  }
+
+  /**
+   * Get the processing order of the queries: Hilbert curve order for spatial
+   * objects, the original order otherwise.
+   * 
+   * @param objs Query objects
+   * @return Processing order
+   */
+  @SuppressWarnings("unchecked")
+  private int[] spatialOrder(List<O> objs) {
+    if (objs.size() > 0 && objs.get(0) instanceof SpatialComparable) {
+      return BatchKNNUtil.hilbertOrder((List<? extends SpatialComparable>) objs);
+    }
+    int[] order = new int[objs.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    return order;
+  }
+
+  /**
+   * Process one group of a batch query.
+   * 
+   * @param objs Query objects
+   * @param order Processing order
+   * @param start First query of the group (offset in order)
+   * @param end End of the group (exclusive)
+   * @param heaps kNN heaps, by query offset
+   */
+  protected void batchKNN(List<O> objs, int[] order, int start, int end, DoubleDistanceKNNHeap[] heaps) {
+    // Pivot, and the distances of the group to the pivot.
+    final O pivot = objs.get(order[(start + end) >>> 1]);
+    final double[] dpq = new double[end - start];
+    double radius = 0.;
+    for (int j = start; j < end; j++) {
+      dpq[j - start] = distf.doubleDistance(pivot, objs.get(order[j]));
+      index.statistics.countDistanceCalculation();
+      radius = Math.max(radius, dpq[j - start]);
+    }
+    final ComparableMinHeap<BatchCandidate> pq = new ComparableMinHeap<>();
+    double maxDist = expandBatch(objs, order, start, end, heaps, pivot, dpq, radius, pq, index.getRootID(), null, Double.POSITIVE_INFINITY);
+    while (!pq.isEmpty()) {
+      BatchCandidate cand = pq.poll();
+      if (cand.mindist > maxDist) {
+        break;
+      }
+      maxDist = expandBatch(objs, order, start, end, heaps, pivot, dpq, radius, pq, cand.nodeID, cand, maxDist);
+    }
+  }
+
+  /**
+   * Expand a node for a group of queries.
+   * 
+   * @param objs Query objects
+   * @param order Processing order
+   * @param start First query of the group (offset in order)
+   * @param end End of the group (exclusive)
+   * @param heaps kNN heaps, by query offset
+   * @param pivot Pivot object of the group
+   * @param dpq Distances of the group to the pivot
+   * @param radius Maximum distance of the group to the pivot
+   * @param pq Priority queue
+   * @param nodeID Node to expand
+   * @param cand Search candidate of the node, {@code null} for the root
+   * @param maxDist Current maximum kNN distance of the group
+   * @return New maximum kNN distance of the group
+   */
+  private double expandBatch(List<O> objs, int[] order, int start, int end, DoubleDistanceKNNHeap[] heaps, O pivot, double[] dpq, double radius, ComparableMinHeap<BatchCandidate> pq, int nodeID, BatchCandidate cand, double maxDist) {
+    AbstractMTreeNode<?, DoubleDistance, ?, ?> node = index.getNode(nodeID);
+    if (!node.isLeaf()) {
+      for (int i = 0; i < node.getNumEntries(); i++) {
+        final MTreeEntry entry = node.getEntry(i);
+        final double or_i = entry.getCoveringRadius();
+        // Lower bound via the parent distance, without computing a distance.
+        if (cand != null && Math.abs(cand.pivotDistance - entry.getParentDistance()) - radius - or_i > maxDist) {
+          continue;
+        }
+        final DBID id_i = entry.getRoutingObjectID();
+        double dpi = distf.doubleDistance(pivot, relation.get(id_i));
+        index.statistics.countDistanceCalculation();
+        double d_min = Math.max(dpi - radius - or_i, 0);
+        if (d_min <= maxDist) {
+          pq.add(new BatchCandidate(d_min, ((DirectoryEntry) entry).getPageID(), id_i, dpi, or_i));
+        }
+      }
+      return maxDist;
+    }
+    final O r = (cand != null) ? relation.get(cand.routingObjectID) : null;
+    double newMax = 0.;
+    for (int j = start; j < end; j++) {
+      final DoubleDistanceKNNHeap heap = heaps[order[j]];
+      double d_k = heap.doubleKNNDistance();
+      final O q = objs.get(order[j]);
+      double d1 = 0.;
+      if (r != null) {
+        // Skip the leaf if it cannot contain neighbors of this query.
+        if (Math.abs(cand.pivotDistance - dpq[j - start]) - cand.coveringRadius > d_k) {
+          newMax = Math.max(newMax, d_k);
+          continue;
+        }
+        d1 = distf.doubleDistance(r, q);
+        index.statistics.countDistanceCalculation();
+        if (d1 - cand.coveringRadius > d_k) {
+          newMax = Math.max(newMax, d_k);
+          continue;
+        }
+      }
+      for (int i = 0; i < node.getNumEntries(); i++) {
+        final MTreeEntry entry = node.getEntry(i);
+        double d2 = r != null ? entry.getParentDistance() : 0;
+        if (Math.abs(d1 - d2) <= d_k) {
+          final DBID id_i = entry.getRoutingObjectID();
+          double d3 = distf.doubleDistance(relation.get(id_i), q);
+          index.statistics.countDistanceCalculation();
+          if (d3 <= d_k) {
+            heap.insert(d3, id_i);
+            d_k = heap.doubleKNNDistance();
+          }
+        }
+      }
+      newMax = Math.max(newMax, d_k);
+    }
+    return newMax;
+  }
+
+  /**
+   * Search candidate of a batch query.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class BatchCandidate implements Comparable<BatchCandidate> {
+    /**
+     * Minimum distance to the query group.
+     */
+    final double mindist;
+
+    /**
+     * Page id of the node.
+     */
+    final int nodeID;
+
+    /**
+     * Routing object of the node.
+     */
+    final DBID routingObjectID;
+
+    /**
+     * Distance of the routing object to the group pivot.
+     */
+    final double pivotDistance;
+
+    /**
+     * Covering radius of the node.
+     */
+    final double coveringRadius;
+
+    /**
+     * Constructor.
+     * 
+     * @param mindist Minimum distance to the query group
+     * @param nodeID Page id of the node
+     * @param routingObjectID Routing object of the node
+     * @param pivotDistance Distance of the routing object to the group pivot
+     * @param coveringRadius Covering radius of the node
+     */
+    BatchCandidate(double mindist, int nodeID, DBID routingObjectID, double pivotDistance, double coveringRadius) {
+      this.mindist = mindist;
+      this.nodeID = nodeID;
+      this.routingObjectID = routingObjectID;
+      this.pivotDistance = pivotDistance;
+      this.coveringRadius = coveringRadius;
+    }
+
+    @Override
+    public int compareTo(BatchCandidate o) {
+      return Double.compare(this.mindist, o.mindist);
+    }
+  }
 }
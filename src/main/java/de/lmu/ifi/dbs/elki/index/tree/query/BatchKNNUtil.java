@@ -0,0 +1,125 @@
+package de.lmu.ifi.dbs.elki.index.tree.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
+
+/**
+ * Utility functions for batch kNN queries on tree indexes.
+ * 
+ * Batch queries sort the query objects along a Hilbert curve, and then process
+ * them in groups of {@link #GROUP_SIZE} objects: each group traverses the tree
+ * only once, so that each node is loaded once per group instead of once per
+ * query, and the directory can be pruned with a single distance computation
+ * per entry for the whole group.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses HilbertSpatialSorter
+ */
+public final class BatchKNNUtil {
+  /**
+   * Number of queries processed together.
+   */
+  public static final int GROUP_SIZE = 32;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BatchKNNUtil() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Compute the Hilbert curve order of a list of spatial objects.
+   * 
+   * @param objs Objects
+   * @return Offsets into objs, in Hilbert curve order
+   */
+  public static int[] hilbertOrder(List<? extends SpatialComparable> objs) {
+    final int size = objs.size();
+    int[] order = new int[size];
+    if(size <= 1) {
+      return order;
+    }
+    List<Ref> refs = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      refs.add(new Ref(objs.get(i), i));
+    }
+    new HilbertSpatialSorter().sort(refs);
+    for(int i = 0; i < size; i++) {
+      order[i] = refs.get(i).offset;
+    }
+    return order;
+  }
+
+  /**
+   * Sortable reference to a query object.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class Ref implements SpatialComparable {
+    /**
+     * Query object.
+     */
+    final SpatialComparable obj;
+
+    /**
+     * Offset in the query list.
+     */
+    final int offset;
+
+    /**
+     * Constructor.
+     * 
+     * @param obj Query object
+     * @param offset Offset in the query list
+     */
+    Ref(SpatialComparable obj, int offset) {
+      this.obj = obj;
+      this.offset = offset;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return obj.getDimensionality();
+    }
+
+    @Override
+    public double getMin(int dimension) {
+      return obj.getMin(dimension);
+    }
+
+    @Override
+    public double getMax(int dimension) {
+      return obj.getMax(dimension);
+    }
+  }
+}
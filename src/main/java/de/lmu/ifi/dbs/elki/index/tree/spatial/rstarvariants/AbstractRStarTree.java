@@ -48,6 +48,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
@@ -866,9 +867,10 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      // Atomic, as queries may run concurrently.
+      distanceCalcs = log.isStatistics() ? new AtomicLongCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? new AtomicLongCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? new AtomicLongCounter(prefix + ".rangequeries") : null;
     }
 
     /**
@@ -24,31 +24,22 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  */
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceKNNList;
 import de.lmu.ifi.dbs.elki.database.ids.integer.DoubleDistanceIntegerDBIDKNNHeap;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDoubleDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDoubleDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
-import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
-import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.query.BatchKNNUtil;
 import de.lmu.ifi.dbs.elki.index.tree.query.DoubleDistanceSearchCandidate;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
-import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
@@ -71,7 +62,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * @apiviz.uses SpatialPrimitiveDoubleDistanceFunction
  */
 @Reference(authors = "G. R. Hjaltason, H. Samet", title = "Ranking in spatial databases", booktitle = "Advances in Spatial Databases - 4th Symposium, SSD'95", url = "http://dx.doi.org/10.1007/3-540-60159-7_6")
-public class DoubleDistanceRStarTreeKNNQuery<O extends SpatialComparable> extends AbstractDistanceKNNQuery<O, DoubleDistance> {
+public class DoubleDistanceRStarTreeKNNQuery<O extends SpatialComparable> extends AbstractDoubleDistanceKNNQuery<O> {
   /**
    * The index to use
    */
@@ -154,137 +145,153 @@ public class DoubleDistanceRStarTreeKNNQuery<O extends SpatialComparable> extend
   }
 
   /**
-   * Performs a batch knn query.
-   * 
-   * @param node the node for which the query should be performed
-   * @param knnLists a map containing the knn lists for each query objects
+   * Batch kNN query: the queries are sorted along a Hilbert curve, and
+   * processed in groups that share a single best-first traversal of the tree.
+   * Directory entries are prioritized and pruned by their minimum distance to
+   * the bounding box of the whole group; a leaf is then only scanned for those
+   * queries of the group whose kNN sphere it intersects.
    */
-  protected void batchNN(AbstractRStarTreeNode<?, ?> node, Map<DBID, DoubleDistanceKNNHeap> knnLists) {
-    if(node.isLeaf()) {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialEntry p = node.getEntry(i);
-        for(Entry<DBID, DoubleDistanceKNNHeap> ent : knnLists.entrySet()) {
-          final DBID q = ent.getKey();
-          final DoubleDistanceKNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.doubleKNNDistance();
-
-          DBID pid = ((LeafEntry) p).getDBID();
-          // FIXME: objects are NOT accessible by DBID in a plain R-tree
-          // context!
-          double dist_pq = distanceFunction.doubleDistance(relation.get(pid), relation.get(q));
-          tree.statistics.countDistanceCalculation();
-          if(dist_pq <= knn_q_maxDist) {
-            knns_q.insert(dist_pq, pid);
-          }
-        }
-      }
+  @Override
+  public List<DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one enumeration has to be requested!");
     }
-    else {
-      ModifiableDBIDs ids = DBIDUtil.newArray(knnLists.size());
-      for(DBID id : knnLists.keySet()) {
-        ids.add(id);
+    final int size = ids.size();
+    List<O> objs = new ArrayList<>(size);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      objs.add(relation.get(iter));
+    }
+    final int[] order = BatchKNNUtil.hilbertOrder(objs);
+    DoubleDistanceKNNHeap[] heaps = new DoubleDistanceKNNHeap[size];
+    for(int start = 0; start < size; start += BatchKNNUtil.GROUP_SIZE) {
+      final int end = Math.min(start + BatchKNNUtil.GROUP_SIZE, size);
+      for(int i = start; i < end; i++) {
+        heaps[order[i]] = new DoubleDistanceIntegerDBIDKNNHeap(k);
       }
-      List<DoubleDistanceEntry> entries = getSortedEntries(node, ids);
-      for(DoubleDistanceEntry distEntry : entries) {
-        double minDist = distEntry.distance;
-        for(Entry<DBID, DoubleDistanceKNNHeap> ent : knnLists.entrySet()) {
-          final DoubleDistanceKNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.doubleKNNDistance();
+      batchKNN(objs, order, start, end, heaps);
+    }
 
-          if(minDist <= knn_q_maxDist) {
-            SpatialEntry entry = distEntry.entry;
-            AbstractRStarTreeNode<?, ?> child = tree.getNode(((DirectoryEntry) entry).getPageID().intValue());
-            batchNN(child, knnLists);
-            break;
-          }
-        }
-      }
+    List<DoubleDistanceKNNList> result = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      tree.statistics.countKNNQuery();
+      result.add(heaps[i].toKNNList());
     }
+    return result;
   }
 
   /**
-   * Sorts the entries of the specified node according to their minimum distance
-   * to the specified objects.
+   * Process one group of a batch query.
    * 
-   * @param node the node
-   * @param ids the id of the objects
-   * @return a list of the sorted entries
+   * @param objs Query objects
+   * @param order Processing order
+   * @param start First query of the group (offset in order)
+   * @param end End of the group (exclusive)
+   * @param heaps kNN heaps, by query offset
    */
-  protected List<DoubleDistanceEntry> getSortedEntries(AbstractRStarTreeNode<?, ?> node, DBIDs ids) {
-    List<DoubleDistanceEntry> result = new ArrayList<>();
+  protected void batchKNN(List<O> objs, int[] order, int start, int end, DoubleDistanceKNNHeap[] heaps) {
+    // Bounding box of the group
+    ModifiableHyperBoundingBox mbr = new ModifiableHyperBoundingBox(objs.get(order[start]));
+    for(int i = start + 1; i < end; i++) {
+      mbr.extend(objs.get(order[i]));
+    }
+    final ComparableMinHeap<BatchCandidate> pq = new ComparableMinHeap<>();
+    double maxDist = expandBatch(objs, order, start, end, heaps, mbr, pq, tree.getRootID(), null, Double.POSITIVE_INFINITY);
+    while(!pq.isEmpty()) {
+      BatchCandidate cand = pq.poll();
+      if(cand.mindist > maxDist) {
+        break;
+      }
+      maxDist = expandBatch(objs, order, start, end, heaps, mbr, pq, cand.entry.getPageID(), cand.entry, maxDist);
+    }
+  }
 
-    for(int i = 0; i < node.getNumEntries(); i++) {
-      SpatialEntry entry = node.getEntry(i);
-      double minMinDist = Double.MAX_VALUE;
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        double minDist = distanceFunction.doubleMinDist(entry, relation.get(iter));
+  /**
+   * Expand a node for a group of queries.
+   * 
+   * @param objs Query objects
+   * @param order Processing order
+   * @param start First query of the group (offset in order)
+   * @param end End of the group (exclusive)
+   * @param heaps kNN heaps, by query offset
+   * @param mbr Bounding box of the group
+   * @param pq Priority queue
+   * @param nodeID Node to expand
+   * @param nodeEntry Directory entry of the node, {@code null} for the root
+   * @param maxDist Current maximum kNN distance of the group
+   * @return New maximum kNN distance of the group
+   */
+  private double expandBatch(List<O> objs, int[] order, int start, int end, DoubleDistanceKNNHeap[] heaps, SpatialComparable mbr, ComparableMinHeap<BatchCandidate> pq, int nodeID, SpatialDirectoryEntry nodeEntry, double maxDist) {
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+    if(!node.isLeaf()) {
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+        double distance = distanceFunction.doubleMinDist(entry, mbr);
         tree.statistics.countDistanceCalculation();
-        minMinDist = Math.min(minDist, minMinDist);
+        if(distance <= maxDist) {
+          pq.add(new BatchCandidate(distance, entry));
+        }
       }
-      result.add(new DoubleDistanceEntry(entry, minMinDist));
+      return maxDist;
     }
-
-    Collections.sort(result);
-    return result;
+    double newMax = 0.;
+    for(int j = start; j < end; j++) {
+      final O obj = objs.get(order[j]);
+      final DoubleDistanceKNNHeap heap = heaps[order[j]];
+      double kdist = heap.doubleKNNDistance();
+      // Skip this leaf if it cannot contain neighbors of this query.
+      if(nodeEntry != null && kdist < Double.POSITIVE_INFINITY) {
+        tree.statistics.countDistanceCalculation();
+        if(distanceFunction.doubleMinDist(nodeEntry, obj) > kdist) {
+          newMax = Math.max(newMax, kdist);
+          continue;
+        }
+      }
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+        double distance = distanceFunction.doubleMinDist(entry, obj);
+        tree.statistics.countDistanceCalculation();
+        if(distance <= kdist) {
+          kdist = heap.insert(distance, entry.getDBID());
+        }
+      }
+      newMax = Math.max(newMax, kdist);
+    }
+    return newMax;
   }
 
   /**
-   * Optimized double distance entry implementation.
+   * Search candidate of a batch query, keeping the directory entry for
+   * per-query pruning.
    * 
    * @author Erich Schubert
    * 
-   * @apiviz.hidden
+   * @apiviz.exclude
    */
-  class DoubleDistanceEntry implements Comparable<DoubleDistanceEntry> {
+  private static class BatchCandidate implements Comparable<BatchCandidate> {
     /**
-     * Referenced entry
+     * Minimum distance to the query group.
      */
-    SpatialEntry entry;
+    final double mindist;
 
     /**
-     * Distance value
+     * Directory entry.
      */
-    double distance;
+    final SpatialDirectoryEntry entry;
 
     /**
      * Constructor.
      * 
-     * @param entry Entry
-     * @param distance Distance
+     * @param mindist Minimum distance to the query group
+     * @param entry Directory entry
      */
-    public DoubleDistanceEntry(SpatialEntry entry, double distance) {
+    BatchCandidate(double mindist, SpatialDirectoryEntry entry) {
+      this.mindist = mindist;
       this.entry = entry;
-      this.distance = distance;
     }
 
     @Override
-    public int compareTo(DoubleDistanceEntry o) {
-      return Double.compare(this.distance, o.distance);
-    }
-  }
-
-  @Override
-  public List<DoubleDistanceKNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
-    if(k < 1) {
-      throw new IllegalArgumentException("At least one enumeration has to be requested!");
+    public int compareTo(BatchCandidate o) {
+      return Double.compare(this.mindist, o.mindist);
     }
-
-    // While this works, it seems to be slow at least for large sets!
-    // TODO: use a DataStore instead of a map.
-    final Map<DBID, DoubleDistanceKNNHeap> knnLists = new HashMap<>(ids.size());
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      knnLists.put(id, new DoubleDistanceIntegerDBIDKNNHeap(k));
-    }
-
-    batchNN(tree.getRoot(), knnLists);
-
-    List<DoubleDistanceKNNList> result = new ArrayList<>();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      tree.statistics.countKNNQuery();
-      result.add(knnLists.get(id).toKNNList());
-    }
-    return result;
   }
-}
\ No newline at end of file
+}
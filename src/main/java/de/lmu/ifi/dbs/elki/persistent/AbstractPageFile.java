@@ -1,6 +1,7 @@
 package de.lmu.ifi.dbs.elki.persistent;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 
 /*
@@ -51,8 +52,9 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
   public AbstractPageFile() {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    // Atomic, as pages may be read concurrently.
+    this.readAccess = log.isStatistics() ? new AtomicLongCounter(this.getClass().getName() + ".reads") : null;
+    this.writeAccess = log.isStatistics() ? new AtomicLongCounter(this.getClass().getName() + ".writes") : null;
   }
 
   /**
@@ -763,13 +763,13 @@ public final class ByteArrayUtil {
   }
 
   /**
-   * Compute the size of the string after encoding.
+   * Compute the size of the string after encoding with {@link #writeString}.
    * 
    * @param s String to encode
    * @return Byte size
    */
   public static int getStringSize(String s) {
-    return STRING_SERIALIZER.getByteSize(s);
+    return STRING_SERIALIZER.getByteSize(s != null ? s : "");
   }
 
   /**
@@ -0,0 +1,338 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page cache using the CLOCK (second chance) replacement strategy, which
+ * allows concurrent readers.
+ * 
+ * Contrary to the {@link LRUCache}, a cache hit does not reorder any shared
+ * data structure: it is a lookup in a concurrent hash map, and sets the
+ * "referenced" bit of the entry. Only cache misses and writes synchronize, to
+ * insert the page and advance the clock hand. When the clock hand finds a page
+ * that was referenced since its last visit, the bit is cleared and the page
+ * gets a second chance; otherwise the page is evicted (and written to the
+ * backing file if dirty). This approximates LRU well, at a much lower cost.
+ * 
+ * Reads from the backing page file on a cache miss are performed outside of the
+ * lock if the backing file supports concurrent reads ({@link MappedPageFile}),
+ * and serialized otherwise.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.uses PageFile
+ * 
+ * @param <P> Page type
+ */
+public class ClockCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The map from page ids to cache entries.
+   */
+  private ConcurrentHashMap<Integer, Entry<P>> map;
+
+  /**
+   * The clock: cache slots.
+   */
+  private Entry<P>[] slots;
+
+  /**
+   * The clock hand.
+   */
+  private int hand = 0;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Whether the backing file allows concurrent reads.
+   */
+  private final boolean concurrentBacking;
+
+  /**
+   * Initializes this cache with the specified parameters.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(int cacheSizeBytes, PageFile<P> file) {
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.concurrentBacking = file instanceof MappedPageFile;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    Entry<P> entry = map.get(pageID);
+    if(entry != null) {
+      entry.referenced = true;
+      return entry.page;
+    }
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Read from backing: " + pageID);
+    }
+    if(concurrentBacking) {
+      P page = file.readPage(pageID);
+      synchronized(this) {
+        return insert(pageID, page, false);
+      }
+    }
+    synchronized(this) {
+      entry = map.get(pageID);
+      if(entry != null) {
+        entry.referenced = true;
+        return entry.page;
+      }
+      return insert(pageID, file.readPage(pageID), false);
+    }
+  }
+
+  @Override
+  public synchronized void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    insert(pageID, page, true);
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to cache: " + pageID);
+    }
+  }
+
+  /**
+   * Insert a page into the cache, evicting pages as necessary. Must be called
+   * while holding the lock.
+   * 
+   * @param pageID Page id
+   * @param page Page
+   * @param replace Replace an existing page (on writes).
+   * @return the cached page
+   */
+  private P insert(int pageID, P page, boolean replace) {
+    if(page == null) {
+      return null; // Empty page
+    }
+    Entry<P> entry = map.get(pageID);
+    if(entry != null) {
+      // Loaded concurrently, or an update.
+      if(replace) {
+        entry.page = page;
+      }
+      entry.referenced = true;
+      return entry.page;
+    }
+    // Advance the clock hand to a free or unreferenced slot.
+    while(true) {
+      Entry<P> cur = slots[hand];
+      if(cur == null) {
+        break;
+      }
+      if(cur.referenced) {
+        cur.referenced = false;
+        hand = (hand + 1) % slots.length;
+        continue;
+      }
+      map.remove(cur.pageID);
+      expirePage(cur.page);
+      break;
+    }
+    entry = new Entry<>(pageID, page, hand);
+    slots[hand] = entry;
+    hand = (hand + 1) % slots.length;
+    map.put(pageID, entry);
+    return page;
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    countWrite();
+    Entry<P> entry = map.remove(pageID);
+    if(entry != null) {
+      slots[entry.slot] = null;
+    }
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Write page through to disk.
+   * 
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("Clock cache size is " + cacheSize + " pages.");
+    }
+    this.map = new ConcurrentHashMap<>((int) Math.ceil(cacheSize / 0.75f) + 1);
+    this.slots = new Entry[cacheSize];
+    this.hand = 0;
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public synchronized void flush() {
+    for(Entry<P> entry : map.values()) {
+      expirePage(entry.page);
+    }
+    clear();
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    for(int i = 0; i < slots.length; i++) {
+      slots[i] = null;
+    }
+    hand = 0;
+  }
+
+  @Override
+  public String toString() {
+    return map.toString();
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Cache entry.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <P> Page type
+   */
+  private static class Entry<P> {
+    /**
+     * Page id.
+     */
+    final int pageID;
+
+    /**
+     * Cached page.
+     */
+    volatile P page;
+
+    /**
+     * Slot in the clock.
+     */
+    final int slot;
+
+    /**
+     * Referenced since the last visit of the clock hand.
+     */
+    volatile boolean referenced = true;
+
+    /**
+     * Constructor.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     * @param slot Slot in the clock
+     */
+    Entry(int pageID, P page, int slot) {
+      this.pageID = pageID;
+      this.page = page;
+      this.slot = slot;
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(page);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for a concurrent CLOCK cache in front of another page
+ * file, by default a memory-mapped file.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has ClockCache
+ * @apiviz.composedOf PageFileFactory
+ * 
+ * @param <P> Page type
+ */
+public class ClockCachePageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private int cacheSize;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   */
+  public ClockCachePageFileFactory(PageFileFactory<P> pageFileFactory, int cacheSize) {
+    super();
+    this.cacheSize = cacheSize;
+    this.pageFileFactory = pageFileFactory;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    PageFile<P> inner = pageFileFactory.newPageFile(cls);
+    return new ClockCache<>(cacheSize, inner);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected int cacheSize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PageFileFactory<Page>> pffP = new ObjectParameter<>(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, PageFileFactory.class, MappedPageFileFactory.class);
+      if(config.grab(pffP)) {
+        pageFileFactory = pffP.instantiateClass(config);
+      }
+
+      IntParameter cacheSizeP = new IntParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID);
+      cacheSizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(cacheSizeP)) {
+        cacheSize = cacheSizeP.getValue();
+      }
+    }
+
+    @Override
+    protected ClockCachePageFileFactory<Page> makeInstance() {
+      return new ClockCachePageFileFactory<>(pageFileFactory, cacheSize);
+    }
+  }
+}
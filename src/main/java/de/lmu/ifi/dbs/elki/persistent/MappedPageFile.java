@@ -0,0 +1,425 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page file that memory-maps the index file, in segments of
+ * {@link #SEGMENT_SIZE} bytes, and deserializes pages directly from the mapped
+ * buffers, instead of seeking and reading through a {@link RandomAccessFile}
+ * as the {@link PersistentPageFile} does. The file format is the same as for
+ * the {@link PersistentPageFile}, so files can be exchanged.
+ * 
+ * Page reads are thread-safe and do not block each other, so this page file
+ * can be used with concurrent read-only queries (for example, behind a
+ * {@link ClockCache}). Writes of different pages may happen concurrently, but
+ * structural changes (allocating and deleting pages) must be serialized by the
+ * caller, as with the other page files.
+ * 
+ * Segments are mapped beyond the end of the file, which makes the file grow in
+ * steps of the segment size; it is truncated again when the page file is
+ * closed. Note that some operating systems do not allow truncating a file that
+ * is still mapped.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page, as in {@link PersistentPageFile}.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page, as in {@link PersistentPageFile}.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Size of a mapped segment, in bytes (rounded down to full pages).
+   */
+  public static final int SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The file channel used for mapping.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The mapped segments. The array is replaced when growing, never modified
+   * in place after publishing.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Number of pages per segment.
+   */
+  private int pagesPerSegment;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+  }
+
+  /**
+   * Get a buffer positioned at the beginning of the given page.
+   * 
+   * The returned buffer is private to the caller, and limited to the page.
+   * 
+   * @param pageID Page id
+   * @return Buffer
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer pageBuffer(int pageID) throws IOException {
+    final int seg = pageID / pagesPerSegment;
+    MappedByteBuffer[] segs = segments;
+    MappedByteBuffer buf = (seg < segs.length) ? segs[seg] : null;
+    if(buf == null) {
+      buf = mapSegment(seg);
+    }
+    ByteBuffer view = buf.duplicate();
+    final int pos = (pageID - seg * pagesPerSegment) * pageSize;
+    view.limit(pos + pageSize).position(pos);
+    return view;
+  }
+
+  /**
+   * Map a segment of the file.
+   * 
+   * @param seg Segment number
+   * @return Mapped segment
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer mapSegment(int seg) throws IOException {
+    MappedByteBuffer[] segs = segments;
+    if(seg < segs.length && segs[seg] != null) {
+      return segs[seg]; // Mapped concurrently.
+    }
+    final long start = ((long) header.getReservedPages()) * pageSize + ((long) seg) * pagesPerSegment * pageSize;
+    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, start, ((long) pagesPerSegment) * pageSize);
+    segs = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+    segs[seg] = buf;
+    segments = segs;
+    return buf;
+  }
+
+  /**
+   * Reads the page with the given id from this file.
+   * 
+   * @param pageID the id of the page to be returned
+   * @return the page with the given pageId
+   */
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      return bufferToPage(pageBuffer(pageID));
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  /**
+   * Deletes the node with the specified id from this file.
+   * 
+   * @param pageID the id of the node to be deleted
+   */
+  @Override
+  public void deletePage(int pageID) {
+    try {
+      super.deletePage(pageID);
+      countWrite();
+      pageBuffer(pageID).put(pageToByteArray(null));
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      pageBuffer(pageID).put(pageToByteArray(page));
+      page.setDirty(false);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Closes this file.
+   */
+  @Override
+  public void close() {
+    try {
+      super.close();
+      for(MappedByteBuffer buf : segments) {
+        if(buf != null) {
+          buf.force();
+        }
+      }
+      segments = new MappedByteBuffer[0];
+      // Remove the unused tail of the last segment. Some platforms (Windows)
+      // do not allow this while the segments are still mapped; the tail then
+      // remains, and is skipped when the file is reopened.
+      try {
+        file.setLength(((long) header.getReservedPages() + nextPageID) * pageSize);
+      }
+      catch(IOException e) {
+        LOG.warning("Could not truncate the page file, keeping the unused tail: " + e.getMessage());
+      }
+      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
+        // write the list of empty pages to the end of the file
+        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      }
+      if(header instanceof TreeIndexHeader) {
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Clears this PageFile.
+   * 
+   * The mapped segments are kept, but all pages in use are zeroed, so that
+   * they read as empty. The file is truncated when it is closed.
+   */
+  @Override
+  public void clear() {
+    try {
+      final byte[] zeros = new byte[pageSize];
+      for(int i = 0; i < nextPageID; i++) {
+        pageBuffer(i).put(zeros);
+      }
+      nextPageID = 0;
+      emptyPages.clear();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reconstruct a page from the given buffer.
+   * 
+   * @param buffer the buffer, positioned at the page
+   * @return the page, or {@code null} for empty and unwritten pages
+   * @throws IOException on read errors
+   */
+  private P bufferToPage(ByteBuffer buffer) throws IOException {
+    if(buffer.getShort(buffer.position()) == 0) {
+      return null; // Never written, or cleared.
+    }
+    ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buffer));
+    int type = ois.readInt();
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    try {
+      P page = pageclass.newInstance();
+      page.readExternal(ois);
+      return page;
+    }
+    catch(InstantiationException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IllegalAccessException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+  }
+
+  /**
+   * Serializes a page into a byte array, padded to the page size.
+   * 
+   * @param page the page to be serialized, may be {@code null}
+   * @return the byte array
+   * @throws IOException on serialization errors
+   */
+  private byte[] pageToByteArray(P page) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(pageSize);
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    if(page == null) {
+      oos.writeInt(EMPTY_PAGE);
+    }
+    else {
+      oos.writeInt(FILLED_PAGE);
+      page.writeExternal(oos);
+    }
+    oos.close();
+    byte[] array = baos.toByteArray();
+    if(array.length > pageSize) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified" + " pagesize: " + array.length + " > " + pageSize);
+    }
+    return (array.length == pageSize) ? array : Arrays.copyOf(array, pageSize);
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      this.header = header;
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        this.pageSize = header.getPageSize();
+      }
+      pagesPerSegment = Math.max(1, SEGMENT_SIZE / pageSize);
+      if(existed) {
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+        }
+        else { // must scan complete file
+          final long reserved = ((long) header.getReservedPages()) * pageSize;
+          final int numpages = (int) ((file.length() - reserved) / pageSize);
+          for(int i = 0; i < numpages; i++) {
+            ByteBuffer buffer = pageBuffer(i);
+            if(buffer.getShort(buffer.position()) == 0) {
+              continue; // Never written, e.g. the tail of the last segment.
+            }
+            ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buffer));
+            int type = ois.readInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -58,7 +58,7 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
   }
 
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
     countRead();
     return file.get(pageID);
   }
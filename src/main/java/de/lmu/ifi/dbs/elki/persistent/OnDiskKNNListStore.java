@@ -0,0 +1,252 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DoubleDistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.integer.DoubleDistanceIntegerDBIDKNNList;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Storage for double distance kNN lists, backed by on-disk arrays.
+ * 
+ * Lists are appended in the order they are stored, so writing is sequential.
+ * Each list occupies one record of k neighbors, or more consecutive records
+ * if it contains ties; only the position of the first record is kept in
+ * memory. Storing a list again appends a new copy. Since a single memory
+ * mapped file is limited to 2 GiB, the records are split into multiple files
+ * in the given directory, which are removed by {@link #destroy}.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.composedOf OnDiskArray
+ */
+public class OnDiskKNNListStore implements WritableDataStore<KNNList<DoubleDistance>> {
+  /**
+   * Serial number, also used for generating a magic
+   */
+  private static final long serialVersionUID = 7239455367391045862L;
+
+  /**
+   * Size of a single neighbor: integer DBID and double distance.
+   */
+  private static final int PAIR_SIZE = ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_DOUBLE;
+
+  /**
+   * Directory to store the files in.
+   */
+  private final File directory;
+
+  /**
+   * Number of neighbors per record.
+   */
+  private final int k;
+
+  /**
+   * Size of a record: list size, and k neighbors.
+   */
+  private final int recordsize;
+
+  /**
+   * Maximum number of records per file.
+   */
+  private final int segmentsize;
+
+  /**
+   * Initial number of records of a new file.
+   */
+  private final int initialsize;
+
+  /**
+   * Files storing the records.
+   */
+  private final ArrayList<OnDiskArray> segments = new ArrayList<>();
+
+  /**
+   * Number of records used.
+   */
+  private long numrecs = 0;
+
+  /**
+   * First record of each object, -1 if not stored.
+   */
+  private final WritableIntegerDataStore first;
+
+  /**
+   * Constructor.
+   * 
+   * @param directory Directory for the data files, {@code null} for the
+   *        default temporary directory
+   * @param ids Object IDs to store lists for
+   * @param k Number of neighbors per record
+   */
+  public OnDiskKNNListStore(File directory, DBIDs ids, int k) {
+    super();
+    this.directory = directory;
+    this.k = k;
+    this.recordsize = ByteArrayUtil.SIZE_INT + k * PAIR_SIZE;
+    this.segmentsize = Integer.MAX_VALUE / recordsize;
+    this.initialsize = Math.max(1, Math.min(segmentsize, ids.size()));
+    this.first = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, -1);
+  }
+
+  @Override
+  public synchronized KNNList<DoubleDistance> get(DBIDRef id) {
+    final int start = first.intValue(id);
+    if(start < 0) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = getRecordBuffer(start);
+      final int size = buffer.getInt();
+      DoubleDistanceIntegerDBIDKNNList list = new DoubleDistanceIntegerDBIDKNNList(k, size);
+      for(int i = 0, r = 1; i < size; r++) {
+        for(int j = 0; j < k && i < size; j++, i++) {
+          final int nid = buffer.getInt();
+          list.add(buffer.getDouble(), DBIDUtil.importInteger(nid));
+        }
+        if(i < size) {
+          buffer = getRecordBuffer(start + r);
+          buffer.getInt();
+        }
+      }
+      return list;
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error reading kNN list: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public synchronized KNNList<DoubleDistance> put(DBIDRef id, KNNList<DoubleDistance> value) {
+    final KNNList<DoubleDistance> prev = get(id);
+    final int size = value.size();
+    final int nrec = Math.max(1, (size + k - 1) / k);
+    final long start = numrecs;
+    if(start + nrec > Integer.MAX_VALUE) {
+      throw new AbortException("Too many records in kNN list storage.");
+    }
+    try {
+      ensureCapacity(start + nrec);
+      numrecs += nrec;
+      DistanceDBIDListIter<DoubleDistance> iter = value.iter();
+      for(int r = 0; r < nrec; r++) {
+        ByteBuffer buffer = getRecordBuffer(start + r);
+        buffer.putInt(r == 0 ? size : -1);
+        for(int j = 0; j < k && iter.valid(); j++, iter.advance()) {
+          buffer.putInt(DBIDUtil.asInteger(iter));
+          buffer.putDouble((iter instanceof DoubleDistanceDBIDListIter) ? ((DoubleDistanceDBIDListIter) iter).doubleDistance() : iter.getDistance().doubleValue());
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error writing kNN list: " + e.getMessage(), e);
+    }
+    first.putInt(id, (int) start);
+    return prev;
+  }
+
+  @Override
+  public synchronized void delete(DBIDRef id) {
+    first.putInt(id, -1);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    for(OnDiskArray segment : segments) {
+      try {
+        segment.close();
+      }
+      catch(IOException e) {
+        // Ignore, we are deleting the file anyway.
+      }
+      segment.getFilename().delete();
+    }
+    segments.clear();
+    numrecs = 0;
+    first.destroy();
+  }
+
+  /**
+   * Get the buffer of a record.
+   * 
+   * @param rec Record number
+   * @return Buffer
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer getRecordBuffer(long rec) throws IOException {
+    return segments.get((int) (rec / segmentsize)).getRecordBuffer((int) (rec % segmentsize));
+  }
+
+  /**
+   * Make sure the files can hold the given number of records.
+   * 
+   * @param needed Number of records needed
+   * @throws IOException on IO errors
+   */
+  private void ensureCapacity(long needed) throws IOException {
+    while(true) {
+      final int nseg = segments.size();
+      if(nseg > 0) {
+        final OnDiskArray last = segments.get(nseg - 1);
+        final long base = (nseg - 1) * (long) segmentsize;
+        if(needed <= base + last.getNumRecords()) {
+          return;
+        }
+        if(last.getNumRecords() < segmentsize) {
+          last.resizeFile((int) Math.min(segmentsize, Math.max(needed - base, last.getNumRecords() * 2L)));
+          continue;
+        }
+      }
+      File file = File.createTempFile("knnlists", ".dat", directory);
+      file.deleteOnExit();
+      final long size = Math.min(segmentsize, Math.max(needed - nseg * (long) segmentsize, initialsize));
+      segments.add(new OnDiskArray(file, (int) serialVersionUID, 0, recordsize, (int) size));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "kNN lists (on disk)";
+  }
+
+  @Override
+  public String getShortName() {
+    return "knn-lists";
+  }
+}
@@ -53,6 +53,9 @@ public interface PageFile<P extends Page> {
   /**
    * Reads the page with the given id from this file.
    * 
+   * Implementations must allow concurrent calls of this method from multiple
+   * threads, as long as no thread is modifying the page file at the same time.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
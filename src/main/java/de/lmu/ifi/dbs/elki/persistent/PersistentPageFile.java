@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -116,10 +118,15 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     try {
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
-      return byteArrayToPage(buffer);
+      // Positional read, does not modify the shared file pointer.
+      ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+      FileChannel channel = file.getChannel();
+      while(buffer.hasRemaining()) {
+        if(channel.read(buffer, offset + buffer.position()) < 0) {
+          break;
+        }
+      }
+      return byteArrayToPage(buffer.array());
     }
     catch(IOException e) {
       throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
@@ -30,7 +30,6 @@ import java.util.List;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
@@ -67,7 +66,7 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
   /**
    * Cluster order storage
    */
-  private ArrayList<ClusterOrderEntry<D>> clusterOrder;
+  private List<ClusterOrderEntry<D>> clusterOrder;
 
   /**
    * Map of object IDs to their cluster order entry
@@ -92,8 +91,30 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
     map = DataStoreUtil.makeStorage(dbids, DataStoreFactory.HINT_DB, ClusterOrderEntry.class);
 
     addChildResult(new ClusterOrderAdapter(clusterOrder));
-    addChildResult(new ReachabilityDistanceAdapter(map, dbids));
-    addChildResult(new PredecessorAdapter(map, dbids));
+    addChildResult(new ReachabilityDistanceAdapter(dbids));
+    addChildResult(new PredecessorAdapter(dbids));
+  }
+
+  /**
+   * Constructor for subclasses that use a different storage.
+   * 
+   * Subclasses must override {@link #add(ClusterOrderEntry)} and
+   * {@link #getEntry}.
+   * 
+   * @param name The long name (for pretty printing)
+   * @param shortname the short name (for filenames etc.)
+   * @param clusterOrder Cluster order list
+   * @param dbids IDs contained in the cluster order
+   */
+  protected ClusterOrderResult(String name, String shortname, List<ClusterOrderEntry<D>> clusterOrder, ModifiableDBIDs dbids) {
+    super(name, shortname);
+    this.clusterOrder = clusterOrder;
+    this.dbids = dbids;
+    this.map = null;
+
+    addChildResult(new ClusterOrderAdapter(clusterOrder));
+    addChildResult(new ReachabilityDistanceAdapter(dbids));
+    addChildResult(new PredecessorAdapter(dbids));
   }
 
   /**
@@ -122,7 +143,6 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
    */
   public void add(DBID id, DBID predecessor, D reachability) {
     add(new GenericClusterOrderEntry<>(id, predecessor, reachability));
-    dbids.add(id);
   }
 
   /**
@@ -136,6 +156,16 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
     dbids.add(ce.getID());
   }
 
+  /**
+   * Get the cluster order entry of an object.
+   * 
+   * @param id Object ID
+   * @return Cluster order entry
+   */
+  protected ClusterOrderEntry<D> getEntry(DBIDRef id) {
+    return map.get(id);
+  }
+
   /**
    * Get the distance class
    * 
@@ -160,14 +190,14 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
     /**
      * Access reference.
      */
-    private ArrayList<ClusterOrderEntry<D>> clusterOrder;
+    private List<ClusterOrderEntry<D>> clusterOrder;
 
     /**
      * Constructor.
      * 
      * @param clusterOrder order to return
      */
-    public ClusterOrderAdapter(final ArrayList<ClusterOrderEntry<D>> clusterOrder) {
+    public ClusterOrderAdapter(final List<ClusterOrderEntry<D>> clusterOrder) {
       super();
       this.clusterOrder = clusterOrder;
     }
@@ -210,11 +240,6 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
    * @author Erich Schubert
    */
   class ReachabilityDistanceAdapter implements Relation<D>, ResultAdapter {
-    /**
-     * Access reference.
-     */
-    private DataStore<ClusterOrderEntry<D>> map;
-
     /**
      * DBIDs
      */
@@ -223,18 +248,16 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
     /**
      * Constructor.
      * 
-     * @param map Map that stores the results.
      * @param dbids DBIDs we are defined for.
      */
-    public ReachabilityDistanceAdapter(DataStore<ClusterOrderEntry<D>> map, DBIDs dbids) {
+    public ReachabilityDistanceAdapter(DBIDs dbids) {
       super();
-      this.map = map;
       this.dbids = dbids;
     }
 
     @Override
     public D get(DBIDRef objID) {
-      return map.get(objID).getReachability();
+      return getEntry(objID).getReachability();
     }
 
     @Override
@@ -299,11 +322,6 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
    * @author Erich Schubert
    */
   class PredecessorAdapter implements Relation<DBID>, ResultAdapter {
-    /**
-     * Access reference.
-     */
-    private DataStore<ClusterOrderEntry<D>> map;
-
     /**
      * Database IDs
      */
@@ -312,18 +330,16 @@ public class ClusterOrderResult<D extends Distance<D>> extends BasicResult imple
     /**
      * Constructor.
      * 
-     * @param map Map that stores the results.
      * @param dbids DBIDs we are defined for
      */
-    public PredecessorAdapter(DataStore<ClusterOrderEntry<D>> map, DBIDs dbids) {
+    public PredecessorAdapter(DBIDs dbids) {
       super();
-      this.map = map;
       this.dbids = dbids;
     }
 
     @Override
     public DBID get(DBIDRef objID) {
-      return map.get(objID).getPredecessorID();
+      return getEntry(objID).getPredecessorID();
     }
 
     @Override
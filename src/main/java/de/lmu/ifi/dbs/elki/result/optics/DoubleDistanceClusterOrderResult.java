@@ -0,0 +1,186 @@
+package de.lmu.ifi.dbs.elki.result.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.AbstractList;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+
+/**
+ * Compact cluster order for double distances.
+ * 
+ * Instead of one entry object per point, the cluster order is stored in
+ * primitive arrays: the object IDs, the position of the predecessor in the
+ * cluster order, and the reachability. Entries are only materialized on
+ * access, which reduces the memory use to about 16 bytes per object plus the
+ * position index.
+ * 
+ * @author Erich Schubert
+ * 
+ * @apiviz.has DoubleDistanceClusterOrderEntry oneway - - produces
+ */
+public class DoubleDistanceClusterOrderResult extends ClusterOrderResult<DoubleDistance> {
+  /**
+   * Object IDs, in cluster order.
+   */
+  private final ArrayModifiableDBIDs order;
+
+  /**
+   * Position of the predecessor in the cluster order, -1 for none.
+   */
+  private final TIntArrayList predecessor;
+
+  /**
+   * Reachability distances.
+   */
+  private final TDoubleArrayList reachability;
+
+  /**
+   * Position of each object in the cluster order.
+   */
+  private final WritableIntegerDataStore position;
+
+  /**
+   * Constructor.
+   * 
+   * @param name The long name (for pretty printing)
+   * @param shortname the short name (for filenames etc.)
+   * @param ids Objects to be ordered
+   */
+  public DoubleDistanceClusterOrderResult(String name, String shortname, DBIDs ids) {
+    this(name, shortname, ids, DBIDUtil.newArray(ids.size()));
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param name The long name (for pretty printing)
+   * @param shortname the short name (for filenames etc.)
+   * @param ids Objects to be ordered
+   * @param order Storage for the ordered IDs
+   */
+  private DoubleDistanceClusterOrderResult(String name, String shortname, DBIDs ids, ArrayModifiableDBIDs order) {
+    super(name, shortname, new ListView(), order);
+    this.order = order;
+    this.predecessor = new TIntArrayList(ids.size());
+    this.reachability = new TDoubleArrayList(ids.size());
+    this.position = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, -1);
+    ((ListView) getClusterOrder()).result = this;
+  }
+
+  /**
+   * Add an object to the cluster order.
+   * 
+   * @param id Object ID
+   * @param predecessor Predecessor ID, may be {@code null}
+   * @param reachability Reachability distance
+   */
+  public void add(DBIDRef id, DBIDRef predecessor, double reachability) {
+    position.putInt(id, order.size());
+    order.add(id);
+    this.predecessor.add(predecessor != null ? position.intValue(predecessor) : -1);
+    this.reachability.add(reachability);
+  }
+
+  @Override
+  public void add(DBID id, DBID predecessor, DoubleDistance reachability) {
+    add(id, predecessor, reachability.doubleValue());
+  }
+
+  @Override
+  public void add(ClusterOrderEntry<DoubleDistance> ce) {
+    add(ce.getID(), ce.getPredecessorID(), ce.getReachability().doubleValue());
+  }
+
+  /**
+   * Get the number of objects in the cluster order.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return order.size();
+  }
+
+  /**
+   * Get the reachability at the given position, without materializing an
+   * entry.
+   * 
+   * @param pos Position in the cluster order
+   * @return Reachability distance
+   */
+  public double getReachability(int pos) {
+    return reachability.get(pos);
+  }
+
+  /**
+   * Get the entry at the given position.
+   * 
+   * @param pos Position in the cluster order
+   * @return Entry
+   */
+  public DoubleDistanceClusterOrderEntry get(int pos) {
+    final int pred = predecessor.get(pos);
+    return new DoubleDistanceClusterOrderEntry(order.get(pos), pred >= 0 ? order.get(pred) : null, reachability.get(pos));
+  }
+
+  @Override
+  protected ClusterOrderEntry<DoubleDistance> getEntry(DBIDRef id) {
+    return get(position.intValue(id));
+  }
+
+  /**
+   * Read-only list view of the cluster order.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class ListView extends AbstractList<ClusterOrderEntry<DoubleDistance>> {
+    /**
+     * Result to view, set after construction.
+     */
+    DoubleDistanceClusterOrderResult result;
+
+    @Override
+    public ClusterOrderEntry<DoubleDistance> get(int index) {
+      return result.get(index);
+    }
+
+    @Override
+    public int size() {
+      return result.size();
+    }
+  }
+}
@@ -1210,6 +1210,126 @@ public final class FormatUtil {
     return BitsUtil.lpow10(isNegative ? -decimal : decimal, exp);
   }
 
+  /**
+   * Parse a double from a byte array, such as an input buffer.
+   * 
+   * This avoids both the creation of a String object, and the decoding of the
+   * input into characters. The input must use an ASCII compatible encoding.
+   * 
+   * The logic is that of {@link #parseDouble(CharSequence, int, int)}, but it
+   * is not shared via a {@link CharSequence} view of the bytes: that would add
+   * an object and a polymorphic call per character to the parsing loop.
+   * 
+   * @param str Byte array
+   * @param start Begin
+   * @param end End
+   * @return Double value
+   */
+  public static double parseDouble(final byte[] str, final int start, final int end) {
+    // Do not read beyond the token, the buffer may continue.
+    if(start >= end) {
+      throw NOT_A_NUMBER;
+    }
+    // Current position and character.
+    int pos = start;
+    byte cur = str[pos];
+
+    // Match for NaN spellings
+    if(matchNaN(str, cur, pos, end)) {
+      return Double.NaN;
+    }
+    // Match sign
+    boolean isNegative = (cur == '-');
+    // Carefully consume the - character, update c and i:
+    if((isNegative || (cur == '+')) && (++pos < end)) {
+      cur = str[pos];
+    }
+    if(matchInf(str, cur, pos, end)) {
+      return isNegative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+
+    // Begin parsing real numbers!
+    if(((cur < '0') || (cur > '9')) && (cur != '.')) {
+      throw NOT_A_NUMBER;
+    }
+
+    // Parse digits into a long, remember offset of decimal point.
+    long decimal = 0;
+    int decimalPoint = -1;
+    while(true) {
+      final int digit = cur - '0';
+      if((digit >= 0) && (digit <= 9)) {
+        final long tmp = (decimal << 3) + (decimal << 1) + digit;
+        if((decimal > MAX_LONG_OVERFLOW) || (tmp < decimal)) {
+          throw PRECISION_OVERFLOW;
+        }
+        decimal = tmp;
+      }
+      else if((cur == '.') && (decimalPoint < 0)) {
+        decimalPoint = pos;
+      }
+      else { // No more digits, or a second dot.
+        break;
+      }
+      if(++pos < end) {
+        cur = str[pos];
+      }
+      else {
+        break;
+      }
+    }
+    // We need the offset from the back for adjusting the exponent:
+    // Note that we need the current value of i!
+    decimalPoint = (decimalPoint >= 0) ? pos - decimalPoint - 1 : 0;
+
+    // Reads exponent.
+    int exp = 0;
+    if((pos < end) && ((cur == 'E') || (cur == 'e'))) {
+      if(++pos >= end) {
+        throw INVALID_EXPONENT;
+      }
+      cur = str[pos];
+      final boolean isNegativeExp = (cur == '-');
+      if((isNegativeExp || (cur == '+')) && (++pos < end)) {
+        cur = str[pos];
+      }
+      if((cur < '0') || (cur > '9')) { // At least one digit required.
+        throw INVALID_EXPONENT;
+      }
+      while(true) {
+        final int digit = cur - '0';
+        if((digit >= 0) && (digit < 10)) {
+          final int tmp = (exp << 3) + (exp << 1) + digit;
+          if((exp > MAX_INT_OVERFLOW) || (tmp < exp)) {
+            throw EXPONENT_OVERFLOW;
+          }
+          exp = tmp;
+        }
+        else {
+          break;
+        }
+        if(++pos < end) {
+          cur = str[pos];
+        }
+        else {
+          break;
+        }
+      }
+      if(isNegativeExp) {
+        exp = -exp;
+      }
+    }
+    // Adjust exponent by the offset of the dot in our long.
+    if(decimalPoint >= 0) {
+      exp = exp - decimalPoint;
+    }
+    if(pos != end) {
+      throw TRAILING_CHARACTERS;
+    }
+
+    return BitsUtil.lpow10(isNegative ? -decimal : decimal, exp);
+  }
+
   /**
    * Match "NaN" in a number of different capitalizations.
    * 
@@ -1242,6 +1362,38 @@ public final class FormatUtil {
     return true;
   }
 
+  /**
+   * Match "NaN" in a number of different capitalizations.
+   * 
+   * @param str Byte array to match
+   * @param firstchar First character
+   * @param start Interval begin
+   * @param end Interval end
+   * @return {@code true} when NaN was recognized.
+   */
+  private static boolean matchNaN(byte[] str, byte firstchar, int start, int end) {
+    final int len = end - start;
+    if(len < 2 || len > 3) {
+      return false;
+    }
+    if(firstchar != 'N' && firstchar != 'n') {
+      return false;
+    }
+    final byte c1 = str[start + 1];
+    if(c1 != 'a' && c1 != 'A') {
+      return false;
+    }
+    // Accept just "NA", too:
+    if(len == 2) {
+      return true;
+    }
+    final byte c2 = str[start + 2];
+    if(c2 != 'N' && c2 != 'n') {
+      return false;
+    }
+    return true;
+  }
+
   /**
    * Maximum long that we can process without overflowing.
    */
@@ -1296,6 +1448,40 @@ public final class FormatUtil {
     return true;
   }
 
+  /**
+   * Match "inf", "infinity" in a number of different capitalizations.
+   * 
+   * @param str Byte array to match
+   * @param firstchar First character
+   * @param start Interval begin
+   * @param end Interval end
+   * @return {@code true} when infinity was recognized.
+   */
+  private static boolean matchInf(byte[] str, byte firstchar, int start, int end) {
+    final int len = end - start;
+    // The infinity symbol in UTF-8 encoding
+    if(len == 3 && firstchar == (byte) 0xE2 && str[start + 1] == (byte) 0x88 && str[start + 2] == (byte) 0x9E) {
+      return true;
+    }
+    if(len != 3 && len != INFINITY_LENGTH) {
+      return false;
+    }
+    // Test beginning: "inf"
+    if(firstchar != 'I' && firstchar != 'i') {
+      return false;
+    }
+    for(int i = 1, j = INFINITY_LENGTH + 1; i < INFINITY_LENGTH; i++, j++) {
+      final byte c = str[start + i];
+      if(c != INFINITY_PATTERN[i] && c != INFINITY_PATTERN[j]) {
+        return false;
+      }
+      if(i == 2 && len == 3) {
+        return true;
+      }
+    }
+    return true;
+  }
+
   /**
    * Parse a long integer from a character sequence.
    * 
@@ -1348,4 +1534,61 @@ public final class FormatUtil {
 
     return isNegative ? -decimal : decimal;
   }
+
+  /**
+   * Parse a long integer from a byte array, such as an input buffer.
+   * 
+   * @param str Byte array
+   * @param start Begin
+   * @param end End
+   * @return Long value
+   */
+  public static long parseLongBase10(final byte[] str, final int start, final int end) {
+    // Do not read beyond the token, the buffer may continue.
+    if(start >= end) {
+      throw NOT_A_NUMBER;
+    }
+    // Current position and character.
+    int pos = start;
+    byte cur = str[pos];
+
+    // Match sign
+    boolean isNegative = (cur == '-');
+    // Carefully consume the - character, update c and i:
+    if((isNegative || (cur == '+')) && (++pos < end)) {
+      cur = str[pos];
+    }
+
+    // Begin parsing real numbers!
+    if((cur < '0') || (cur > '9')) {
+      throw NOT_A_NUMBER;
+    }
+
+    // Parse digits into a long.
+    long decimal = 0;
+    while(true) {
+      final int digit = cur - '0';
+      if((digit >= 0) && (digit <= 9)) {
+        final long tmp = (decimal << 3) + (decimal << 1) + digit;
+        if(tmp < decimal) {
+          throw PRECISION_OVERFLOW;
+        }
+        decimal = tmp;
+      }
+      else { // No more digits.
+        break;
+      }
+      if(++pos < end) {
+        cur = str[pos];
+      }
+      else {
+        break;
+      }
+    }
+    if(pos != end) {
+      throw TRAILING_CHARACTERS;
+    }
+
+    return isNegative ? -decimal : decimal;
+  }
 }
@@ -0,0 +1,228 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.heap;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of the integers 0 to n-1, keyed by an external double array,
+ * supporting key updates and removal of arbitrary entries.
+ * 
+ * The caller modifies the key array directly, and then calls
+ * {@link #update} to restore the heap order. Ties are broken by the integer
+ * value, smallest first, so that results are deterministic.
+ * 
+ * @author Erich Schubert
+ */
+public class IndexedDoubleMinHeap {
+  /**
+   * Keys, indexed by element.
+   */
+  private final double[] keys;
+
+  /**
+   * Heap array.
+   */
+  private final int[] heap;
+
+  /**
+   * Position of each element in the heap, -1 if not contained.
+   */
+  private final int[] pos;
+
+  /**
+   * Current heap size.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor.
+   * 
+   * @param keys Key array; the heap can hold the elements 0 to keys.length-1
+   */
+  public IndexedDoubleMinHeap(double[] keys) {
+    super();
+    this.keys = keys;
+    this.heap = new int[keys.length];
+    this.pos = new int[keys.length];
+    Arrays.fill(pos, -1);
+  }
+
+  /**
+   * Add an element, using its current key.
+   * 
+   * @param e Element
+   */
+  public void add(int e) {
+    assert (pos[e] < 0) : "Element already contained.";
+    heap[size] = e;
+    pos[e] = size;
+    up(size++);
+  }
+
+  /**
+   * Get the element with the smallest key.
+   * 
+   * @return Top element
+   */
+  public int peek() {
+    return heap[0];
+  }
+
+  /**
+   * Remove and return the element with the smallest key.
+   * 
+   * @return Top element
+   */
+  public int poll() {
+    final int e = heap[0];
+    remove(e);
+    return e;
+  }
+
+  /**
+   * Test whether the element is in the heap.
+   * 
+   * @param e Element
+   * @return {@code true} when contained
+   */
+  public boolean contains(int e) {
+    return pos[e] >= 0;
+  }
+
+  /**
+   * Restore the heap order after the key of an element was changed.
+   * 
+   * @param e Element
+   */
+  public void update(int e) {
+    up(pos[e]);
+    down(pos[e]);
+  }
+
+  /**
+   * Remove an element.
+   * 
+   * @param e Element
+   */
+  public void remove(int e) {
+    final int p = pos[e];
+    pos[e] = -1;
+    if (p == --size) {
+      return;
+    }
+    final int last = heap[size];
+    heap[p] = last;
+    pos[last] = p;
+    up(p);
+    down(pos[last]);
+  }
+
+  /**
+   * Get the heap size.
+   * 
+   * @return Number of elements in the heap
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Test whether the heap is empty.
+   * 
+   * @return {@code true} when empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove all elements.
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      pos[heap[i]] = -1;
+    }
+    size = 0;
+  }
+
+  /**
+   * Compare two elements.
+   * 
+   * @param a First element
+   * @param b Second element
+   * @return {@code true} when a goes before b
+   */
+  private boolean less(int a, int b) {
+    return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+  }
+
+  /**
+   * Move an element up.
+   * 
+   * @param p Heap position
+   */
+  private void up(int p) {
+    final int e = heap[p];
+    while (p > 0) {
+      final int parent = (p - 1) >>> 1;
+      final int pe = heap[parent];
+      if (!less(e, pe)) {
+        break;
+      }
+      heap[p] = pe;
+      pos[pe] = p;
+      p = parent;
+    }
+    heap[p] = e;
+    pos[e] = p;
+  }
+
+  /**
+   * Move an element down.
+   * 
+   * @param p Heap position
+   */
+  private void down(int p) {
+    final int e = heap[p];
+    while (true) {
+      int c = (p << 1) + 1;
+      if (c >= size) {
+        break;
+      }
+      if (c + 1 < size && less(heap[c + 1], heap[c])) {
+        c++;
+      }
+      final int ce = heap[c];
+      if (!less(ce, e)) {
+        break;
+      }
+      heap[p] = ce;
+      pos[ce] = p;
+      p = c;
+    }
+    heap[p] = e;
+    pos[e] = p;
+  }
+}
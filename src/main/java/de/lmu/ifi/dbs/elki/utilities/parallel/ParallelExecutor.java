@@ -0,0 +1,267 @@
+package de.lmu.ifi.dbs.elki.utilities.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Minimal helper for running a fixed list of independent tasks on a pool of
+ * worker threads.
+ * 
+ * The tasks are expected to only read shared data, and to write into disjoint
+ * regions of shared output arrays or stores (or into their own buffers, which
+ * are merged by the caller afterwards). Results are returned in the order of
+ * the task list, not in completion order, so that the caller can merge them
+ * deterministically.
+ * 
+ * For a single batch of tasks, use the static {@link #run} method. Iterative
+ * algorithms should instead create one instance, which keeps its worker
+ * threads alive across calls to {@link #execute}, and close it when done:
+ * 
+ * <pre>
+ * try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+ *   while(...) {
+ *     executor.execute(tasks);
+ *   }
+ * }
+ * </pre>
+ * 
+ * @author Erich Schubert
+ */
+public final class ParallelExecutor implements AutoCloseable {
+  /**
+   * Thread counter, for naming the worker threads.
+   */
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+  /**
+   * Thread factory producing daemon threads, so that an aborted computation
+   * does not keep the JVM alive.
+   */
+  private static final ThreadFactory FACTORY = new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "ELKI worker " + THREAD_COUNT.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  };
+
+  /**
+   * Number of threads to use.
+   */
+  private final int threads;
+
+  /**
+   * Thread pool, created on first use.
+   */
+  private ExecutorService pool = null;
+
+  /**
+   * Constructor.
+   * 
+   * @param threads Number of threads, 0 for automatic
+   */
+  public ParallelExecutor(int threads) {
+    super();
+    this.threads = getThreads(threads);
+  }
+
+  /**
+   * Get the number of threads used by this executor.
+   * 
+   * @return Number of threads, at least 1
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Run all tasks, reusing the worker threads of this executor.
+   * 
+   * When only one thread is used (or there is only one task), the tasks are
+   * run in the calling thread.
+   * 
+   * @param tasks Tasks to run
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  public <T> List<T> execute(List<? extends Callable<T>> tasks) {
+    if (threads <= 1 || tasks.size() <= 1) {
+      return runSerial(tasks);
+    }
+    if (pool == null) {
+      pool = Executors.newFixedThreadPool(threads, FACTORY);
+    }
+    return runPool(pool, tasks);
+  }
+
+  /**
+   * Shut down the worker threads.
+   */
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+  }
+
+  /**
+   * Resolve the number of threads to use.
+   * 
+   * @param threads Requested number of threads, 0 for automatic
+   * @return Number of threads to use, at least 1
+   */
+  public static int getThreads(int threads) {
+    return (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Reduce the number of threads, so that the estimated memory use of the
+   * concurrently running tasks fits into the heap memory currently available.
+   * 
+   * At least one thread is always used, even when the estimate exceeds the
+   * available memory.
+   * 
+   * @param threads Requested number of threads, 0 for automatic
+   * @param bytesPerTask Estimated memory use of a single task, in bytes
+   * @return Number of threads to use, at least 1
+   */
+  public static int limitByMemory(int threads, long bytesPerTask) {
+    threads = getThreads(threads);
+    if (bytesPerTask <= 0) {
+      return threads;
+    }
+    final Runtime rt = Runtime.getRuntime();
+    final long available = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    return (int) Math.max(1L, Math.min(threads, available / bytesPerTask));
+  }
+
+  /**
+   * Make a parameter for the number of threads.
+   * 
+   * Each component uses its own option ID, so that nested components (e.g. an
+   * index used by an algorithm, or the members of an ensemble) can be
+   * configured independently.
+   * 
+   * @param optionid Option ID of the component
+   * @param defaultValue Default number of threads, 0 for one per processor
+   * @return Parameter
+   */
+  public static IntParameter makeThreadsParameter(OptionID optionid, int defaultValue) {
+    IntParameter threadsP = new IntParameter(optionid, defaultValue);
+    threadsP.addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+    return threadsP;
+  }
+
+  /**
+   * Run all tasks, using at most the given number of threads.
+   * 
+   * When only one thread is requested (or there is only one task), the tasks
+   * are run in the calling thread without setting up a thread pool.
+   * 
+   * @param threads Number of threads, 0 for automatic
+   * @param tasks Tasks to run
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  public static <T> List<T> run(int threads, List<? extends Callable<T>> tasks) {
+    threads = Math.min(getThreads(threads), tasks.size());
+    if (threads <= 1) {
+      return runSerial(tasks);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads, FACTORY);
+    try {
+      return runPool(pool, tasks);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Run all tasks in the calling thread.
+   * 
+   * @param tasks Tasks to run
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  private static <T> List<T> runSerial(List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      try {
+        results.add(task.call());
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new AbortException("Task failed: " + e.getMessage(), e);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Run all tasks on a thread pool, and wait for their completion.
+   * 
+   * @param pool Thread pool
+   * @param tasks Tasks to run
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  private static <T> List<T> runPool(ExecutorService pool, List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      List<Future<T>> futures = pool.invokeAll(tasks);
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Interrupted while waiting for worker threads.", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new AbortException("Task failed: " + cause.getMessage(), cause);
+    }
+  }
+}
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.algorithm;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
@@ -36,7 +37,9 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -164,6 +167,59 @@ public class TestKNNJoin implements JUnit4Test {
     doKNNJoin(spatparams);
   }
 
+  /**
+   * Test the out-of-core join on an {@link RStarTree}, against the in-memory
+   * join.
+   */
+  @Test
+  public void testKNNJoinRtreeOutOfCore() {
+    ListParameterization inputparams = new ListParameterization();
+    inputparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    inputparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 200);
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    List<Class<?>> filters = Arrays.asList(new Class<?>[] { FixedDBIDsFilter.class });
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.FILTERS_ID, filters);
+    inputparams.addParameter(FixedDBIDsFilter.Parameterizer.IDSTART_ID, 1);
+
+    // get database
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, inputparams);
+    inputparams.failOnErrors();
+
+    db.initialize();
+    Relation<NumberVector<?>> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    KNNJoin<DoubleVector, DoubleDistance, ?, ?> knnjoin = new KNNJoin<DoubleVector, DoubleDistance, RStarTreeNode, SpatialEntry>(EuclideanDistanceFunction.STATIC, 2);
+    DataStore<KNNList<DoubleDistance>> expected = knnjoin.run(db);
+    KNNJoin<DoubleVector, DoubleDistance, ?, ?> diskjoin = new KNNJoin<DoubleVector, DoubleDistance, RStarTreeNode, SpatialEntry>(EuclideanDistanceFunction.STATIC, 2, new File(System.getProperty("java.io.tmpdir")), 2);
+    WritableDataStore<KNNList<DoubleDistance>> result = (WritableDataStore<KNNList<DoubleDistance>>) diskjoin.run(db);
+
+    MeanVariance meansize = new MeanVariance();
+    for(DBIDIter id = relation.getDBIDs().iter(); id.valid(); id.advance()) {
+      KNNList<DoubleDistance> knnlist = result.get(id), exp = expected.get(id);
+      meansize.put(knnlist.size());
+      org.junit.Assert.assertEquals("kNN list size", exp.size(), knnlist.size());
+      DistanceDBIDListIter<DoubleDistance> it = knnlist.iter(), eit = exp.iter();
+      for(; it.valid(); it.advance(), eit.advance()) {
+        org.junit.Assert.assertEquals("kNN distance", eit.getDistance().doubleValue(), it.getDistance().doubleValue(), 0.);
+      }
+    }
+    result.destroy();
+    org.junit.Assert.assertEquals("Euclidean mean 2NN set size", mean2nnEuclid, meansize.getMean(), 0.00001);
+    org.junit.Assert.assertEquals("Euclidean variance 2NN", var2nnEuclid, meansize.getSampleVariance(), 0.00001);
+  }
+
+  /**
+   * The spill location must be an existing directory.
+   */
+  @Test
+  public void testSpillNotADirectory() {
+    File missing = new File(System.getProperty("java.io.tmpdir"), "elki-knnjoin-missing-" + System.nanoTime());
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KNNJoin.SPILL_ID, missing);
+    new KNNJoin.Parameterizer<DoubleVector, DoubleDistance, RStarTreeNode, SpatialEntry>().configure(params);
+    org.junit.Assert.assertTrue("Missing spill directory was accepted.", params.hasErrors());
+  }
+
   /**
    * Actual test routine.
    * 
@@ -28,6 +28,7 @@ import org.junit.Test;
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.GeneralizedDBSCAN;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.ParallelGeneralizedDBSCAN;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.model.Model;
@@ -141,4 +142,53 @@ public class TestDBSCANResults extends AbstractSimpleAlgorithmTest implements JU
     testClusterSizes(result, new int[] { 11, 200, 203, 224 });
     testFMeasure(db, result, 0.954382);
   }
+
+  /**
+   * Run the parallel GDBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testParallelGDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    params.addParameter(ParallelGeneralizedDBSCAN.Parameterizer.THREADS_ID, 4);
+    ParallelGeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+    testFMeasure(db, result, 0.996413);
+  }
+
+  /**
+   * Run the parallel GDBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testParallelGDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addParameter(ParallelGeneralizedDBSCAN.Parameterizer.THREADS_ID, 4);
+    ParallelGeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+    testFMeasure(db, result, 0.954382);
+  }
 }
\ No newline at end of file
@@ -67,4 +67,49 @@ public class TestEMResults extends AbstractSimpleAlgorithmTest implements JUnit4
     testFMeasure(db, result, 0.7551098);
     testClusterSizes(result, new int[] { 50, 99, 102, 120, 141, 198 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Run the parallel EM with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testParallelEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    params.addParameter(ParallelEM.Parameterizer.THREADS_ID, 4);
+    ParallelEM<DoubleVector> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<EMModel<DoubleVector>> result = em.run(db);
+    testFMeasure(db, result, 0.96741);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run the parallel EM with diagonal covariance matrices and compare the
+   * result to a golden standard.
+   */
+  @Test
+  public void testParallelEMDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    params.addFlag(ParallelEM.Parameterizer.DIAGONAL_ID);
+    params.addParameter(ParallelEM.Parameterizer.THREADS_ID, 4);
+    ParallelEM<DoubleVector> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<EMModel<DoubleVector>> result = em.run(db);
+    testFMeasure(db, result, 0.93387);
+    testClusterSizes(result, new int[] { 7, 20, 93, 97, 200, 293 });
+  }
+}
@@ -29,7 +29,10 @@ import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -68,4 +71,32 @@ public class TestOPTICSResults extends AbstractSimpleAlgorithmTest implements JU
     testFMeasure(db, clustering, 0.874062);
     testClusterSizes(clustering, new int[] { 109, 121, 210, 270 });
   }
+
+  /**
+   * Run the primitive OPTICS variant with fixed parameters and compare the
+   * result to the same golden standard, using an R*-tree index.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testDoubleDistanceOPTICSResults() {
+    ListParameterization indexparams = new ListParameterization();
+    indexparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    indexparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710, indexparams, null);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICS.MINPTS_ID, 18);
+    params.addParameter(OPTICSXi.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.XIALG_ID, DoubleDistanceOPTICS.class);
+    OPTICSXi<DoubleDistance> opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    // run OPTICS on database
+    Clustering<?> clustering = opticsxi.run(db);
+
+    testFMeasure(db, clustering, 0.874062);
+    testClusterSizes(clustering, new int[] { 109, 121, 210, 270 });
+  }
 }
\ No newline at end of file
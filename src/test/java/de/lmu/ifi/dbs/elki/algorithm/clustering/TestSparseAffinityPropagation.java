@@ -0,0 +1,100 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation.AffinityPropagationInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation.KNNDistanceBasedInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.affinitypropagation.SparseAffinityPropagation;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full sparse Affinity Propagation run, and compares the result
+ * with a clustering derived from the data set labels. This test ensures that
+ * the performance doesn't unexpectedly drop on this data set (and also ensures
+ * that the algorithms work, as a side effect).
+ * 
+ * @author Erich Schubert
+ */
+public class TestSparseAffinityPropagation extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run sparse Affinity Propagation with fixed parameters and compare the
+   * result to a golden standard.
+   */
+  @Test
+  public void testSparseAffinityPropagation() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KNNDistanceBasedInitialization.Parameterizer.K_ID, 100);
+    params.addParameter(AffinityPropagationInitialization.QUANTILE_ID, 0.0);
+    params.addParameter(SparseAffinityPropagation.Parameterizer.THREADS_ID, 4);
+    SparseAffinityPropagation<?> ap = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    // run AP on database
+    Clustering<MedoidModel> result = ap.run(db);
+    testFMeasure(db, result, 0.942266495);
+    testClusterSizes(result, new int[] { 5, 7, 55, 108, 155 });
+  }
+
+  /**
+   * A data set with a single object has no similarities to choose the
+   * preference from, but must still produce one cluster.
+   */
+  @Test
+  public void testSingleObject() {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 1., 2. } }), null);
+    db.initialize();
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KNNDistanceBasedInitialization.Parameterizer.K_ID, 10);
+    SparseAffinityPropagation<?> ap = ClassGenericsUtil.parameterizeOrAbort(SparseAffinityPropagation.class, params);
+    testParameterizationOk(params);
+
+    Clustering<MedoidModel> result = ap.run(db);
+    testClusterSizes(result, new int[] { 1 });
+    Cluster<MedoidModel> cluster = result.getAllClusters().get(0);
+    assertFalse("Single object was marked as noise.", cluster.isNoise());
+    DBIDs ids = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD).getDBIDs();
+    assertTrue("Medoid is not the object.", DBIDUtil.equal(cluster.getModel().getMedoid(), ids.iter()));
+  }
+}
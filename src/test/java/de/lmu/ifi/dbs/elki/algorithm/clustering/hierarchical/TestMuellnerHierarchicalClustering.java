@@ -0,0 +1,283 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2012
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Perform agglomerative hierarchical clustering, using Müllner's generic algorithm.
+ * 
+ * @author Erich Schubert
+ */
+public class TestMuellnerHierarchicalClustering extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testSingleLink() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, MuellnerHierarchicalClustering.class);
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.LINKAGE_ID, SingleLinkageMethod.class);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.6829722);
+    testClusterSizes(clustering, new int[] { 9, 200, 429 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testWard() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, MuellnerHierarchicalClustering.class);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard, using a different matrix storage.
+   */
+  @Test
+  public void testWardOffHeap() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, MuellnerHierarchicalClustering.class);
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.STORAGE_ID, TriangularDistanceMatrix.Storage.OFFHEAP_DOUBLE);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testGroupAverage() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, MuellnerHierarchicalClustering.class);
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.LINKAGE_ID, GroupAverageLinkageMethod.class);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testCompleteLink() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, MuellnerHierarchicalClustering.class);
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.LINKAGE_ID, CompleteLinkageMethod.class);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.938167802);
+    testClusterSizes(clustering, new int[] { 200, 217, 221 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with centroid linkage, and
+   * compare the result to the naive algorithm.
+   */
+  @Test
+  public void testCentroidLinkage() {
+    testAgainstNaive(CentroidLinkageMethod.class);
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with median linkage, and compare
+   * the result to the naive algorithm.
+   */
+  @Test
+  public void testMedianLinkage() {
+    testAgainstNaive(MedianLinkageMethod.class);
+  }
+
+  /**
+   * NaN distances must be rejected instead of looping forever.
+   */
+  @Test(expected = AbortException.class)
+  public void testNaNDistance() {
+    double[][] data = { { 0., 0. }, { 1., 0. }, { Double.NaN, 1. }, { 5., 5. } };
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    runHierarchy(db, MuellnerHierarchicalClustering.class, GroupAverageLinkageMethod.class);
+  }
+
+  /**
+   * Compare the merge heights and the cluster sizes to the naive algorithm.
+   * Centroid and median linkage are not reducible and can produce inversions,
+   * so the merges are not found in order of their heights.
+   * 
+   * @param linkage Linkage method
+   */
+  private void testAgainstNaive(Class<? extends LinkageMethod> linkage) {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    double[] expected = mergeHeights(runHierarchy(db, NaiveAgglomerativeHierarchicalClustering.class, linkage));
+    double[] heights = mergeHeights(runHierarchy(db, MuellnerHierarchicalClustering.class, linkage));
+    assertEquals("Number of merges does not match.", expected.length, heights.length);
+    for(int i = 0; i < expected.length; i++) {
+      assertEquals("Merge height does not match.", expected[i], heights[i], 1e-10 * expected[i]);
+    }
+
+    List<? extends Cluster<?>> clusters = extractClusters(db, NaiveAgglomerativeHierarchicalClustering.class, linkage).getAllClusters();
+    int[] sizes = new int[clusters.size()];
+    for(int i = 0; i < sizes.length; i++) {
+      sizes[i] = clusters.get(i).size();
+    }
+    testClusterSizes(extractClusters(db, MuellnerHierarchicalClustering.class, linkage), sizes);
+  }
+
+  /**
+   * Run a hierarchical clustering algorithm.
+   * 
+   * @param db Database
+   * @param algorithm Algorithm class
+   * @param linkage Linkage method
+   * @return Pointer hierarchy
+   */
+  private PointerHierarchyRepresentationResult<DoubleDistance> runHierarchy(Database db, Class<?> algorithm, Class<? extends LinkageMethod> linkage) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.LINKAGE_ID, linkage);
+    HierarchicalClusteringAlgorithm<DoubleDistance> alg = ClassGenericsUtil.parameterizeOrAbort(algorithm, params);
+    testParameterizationOk(params);
+    return alg.run(db);
+  }
+
+  /**
+   * Extract three clusters from the hierarchy of an algorithm.
+   * 
+   * @param db Database
+   * @param algorithm Algorithm class
+   * @param linkage Linkage method
+   * @return Clustering
+   */
+  private Clustering<?> extractClusters(Database db, Class<?> algorithm, Class<? extends LinkageMethod> linkage) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, algorithm);
+    params.addParameter(MuellnerHierarchicalClustering.Parameterizer.LINKAGE_ID, linkage);
+    ExtractFlatClusteringFromHierarchy<DoubleDistance> c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+    return findSingleClustering(c.run(db));
+  }
+
+  /**
+   * Get the sorted merge heights of a pointer hierarchy.
+   * 
+   * @param pointer Pointer hierarchy
+   * @return Merge heights, without the root
+   */
+  private double[] mergeHeights(PointerHierarchyRepresentationResult<DoubleDistance> pointer) {
+    DataStore<DoubleDistance> lambda = pointer.getParentDistanceStore();
+    double[] heights = new double[pointer.getDBIDs().size() - 1];
+    int i = 0;
+    for(DBIDIter it = pointer.getDBIDs().iter(); it.valid(); it.advance()) {
+      final double h = lambda.get(it).doubleValue();
+      if(h < Double.POSITIVE_INFINITY) {
+        heights[i++] = h;
+      }
+    }
+    assertEquals("Not a single root.", heights.length, i);
+    Arrays.sort(heights);
+    return heights;
+  }
+}
\ No newline at end of file
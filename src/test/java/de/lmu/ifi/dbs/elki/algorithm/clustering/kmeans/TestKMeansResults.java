@@ -23,6 +23,15 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
@@ -33,8 +42,16 @@ import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.model.MeanModel;
 import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.StreamFromBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ShuffleObjectsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -71,6 +88,123 @@ public class TestKMeansResults extends AbstractSimpleAlgorithmTest implements JU
     testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
 
+  /**
+   * Run the parallel KMeans with fixed parameters and compare the result to a
+   * golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testKMeansParallelLloyd() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(KMeansParallelLloyd.Parameterizer.THREADS_ID, 4);
+    AbstractKMeans<DoubleVector, DoubleDistance, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansParallelLloyd.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<? extends MeanModel<DoubleVector>> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Set up the database and the parallel KMeans from one parameterization, as
+   * KDDTask does, and check that the thread count reaches the algorithm instead
+   * of being consumed by the input parser.
+   */
+  @Test
+  public void testKMeansParallelLloydThreads() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, UNITTEST + "different-densities-2d-no-noise.ascii");
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeansParallelLloyd.Parameterizer.THREADS_ID, 2);
+    ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    KMeansParallelLloyd<DoubleVector, DoubleDistance> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansParallelLloyd.class, params);
+    testParameterizationOk(params);
+    assertEquals("Thread count did not reach the algorithm.", 2, kmeans.threads);
+  }
+
+  /**
+   * Run KMeans with triangle inequality pruning (Elkan) with fixed parameters
+   * and compare the result to a golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testKMeansElkan() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    AbstractKMeans<DoubleVector, DoubleDistance, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansElkan.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<? extends MeanModel<DoubleVector>> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Run KMeans with triangle inequality pruning (Hamerly) with fixed parameters
+   * and compare the result to a golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testKMeansHamerly() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    AbstractKMeans<DoubleVector, DoubleDistance, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansHamerly.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<? extends MeanModel<DoubleVector>> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Run mini-batch KMeans on a stream with fixed parameters and compare the
+   * result to a golden standard.
+   * 
+   * @throws IOException
+   */
+  @Test
+  public void testKMeansMiniBatch() throws IOException {
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100);
+    KMeansMiniBatch<DoubleVector, DoubleDistance> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    NumberVectorLabelParser<DoubleVector> parser = ClassGenericsUtil.parameterizeOrAbort(NumberVectorLabelParser.class, params);
+    testParameterizationOk(params);
+
+    // The data file is sorted by cluster, so shuffle it for streaming.
+    InputStream in = new FileInputStream(UNITTEST + "different-densities-2d-no-noise.ascii");
+    MultipleObjectsBundle bundle = new ShuffleObjectsFilter(RandomFactory.get(0L)).filter(parser.parse(in));
+    in.close();
+
+    // run KMeans on the stream, then assign in a second pass
+    List<Vector> means = kmeans.run(new StreamFromBundle(bundle));
+    assertEquals("Number of means does not match.", 5, means.size());
+    int[] sizes = kmeans.assign(new StreamFromBundle(bundle), means, null);
+    Arrays.sort(sizes);
+    assertArrayEquals("Cluster sizes do not match.", new int[] { 199, 200, 200, 200, 201 }, sizes);
+  }
+
   /**
    * Run KMeans with fixed parameters and compare the result to a golden
    * standard.
@@ -0,0 +1,85 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Tests the FastVOA algorithm.
+ * 
+ * @author Erich Schubert
+ */
+public class TestFastVOA extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  @Test
+  public void testFastVOA() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+
+    // Parameterization
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FastVOA.Parameterizer.SEED_ID, 0L);
+    params.addParameter(FastVOA.Parameterizer.THREADS_ID, 4);
+
+    // setup Algorithm
+    FastVOA<DoubleVector> voa = ClassGenericsUtil.parameterizeOrAbort(FastVOA.class, params);
+    testParameterizationOk(params);
+
+    // run FastVOA on database
+    OutlierResult result = voa.run(db);
+
+    testAUC(db, "Noise", result, 0.823888888888);
+    testSingleScore(result, 945, 0.97703337496);
+  }
+
+  /**
+   * With fewer than three objects, there are no angles, and all scores are 0.
+   */
+  @Test
+  public void testTwoObjects() {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 0., 0. }, { 1., 1. } }), null);
+    db.initialize();
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FastVOA.Parameterizer.SEED_ID, 0L);
+    FastVOA<DoubleVector> voa = ClassGenericsUtil.parameterizeOrAbort(FastVOA.class, params);
+    testParameterizationOk(params);
+
+    OutlierResult result = voa.run(db);
+    for(DBIDIter it = result.getScores().iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Score of a tiny data set is not 0.", 0., result.getScores().get(it), 0.);
+    }
+  }
+}
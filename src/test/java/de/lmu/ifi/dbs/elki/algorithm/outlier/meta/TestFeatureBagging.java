@@ -23,12 +23,15 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static junit.framework.Assert.assertEquals;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -81,4 +84,34 @@ public class TestFeatureBagging extends AbstractSimpleAlgorithmTest implements J
     testSingleScore(result, 1293, 1.321709879);
     testAUC(db, "Noise", result, 0.884212);
   }
+
+  @Test
+  public void testFeatureBaggingThreads() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    OutlierResult result = runFeatureBagging(db, 1);
+    // Concurrent instances must give the same scores.
+    OutlierResult parallel = runFeatureBagging(db, 4);
+    for(DBIDIter iter = result.getScores().iterDBIDs(); iter.valid(); iter.advance()) {
+      assertEquals("Concurrent feature bagging differs.", result.getScores().get(iter), parallel.getScores().get(iter));
+    }
+  }
+
+  /**
+   * Run feature bagging with the given number of threads.
+   * 
+   * @param db Database
+   * @param threads Number of threads
+   * @return Result
+   */
+  private OutlierResult runFeatureBagging(Database db, int threads) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.NUM_ID, 10);
+    params.addParameter(FeatureBagging.Parameterizer.SEED_ID, 1);
+    params.addParameter(FeatureBagging.Parameterizer.THREADS_ID, threads);
+    FeatureBagging fb = ClassGenericsUtil.parameterizeOrAbort(FeatureBagging.class, params);
+    testParameterizationOk(params);
+    return fb.run(db);
+  }
 }
\ No newline at end of file
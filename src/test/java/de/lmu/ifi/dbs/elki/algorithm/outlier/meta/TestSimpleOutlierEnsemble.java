@@ -0,0 +1,83 @@
+package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.KNNOutlier;
+import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.ensemble.EnsembleVotingMean;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Tests the simple outlier ensemble, with sequential and concurrent members.
+ * 
+ * @author Erich Schubert
+ */
+public class TestSimpleOutlierEnsemble extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  @Test
+  public void testSimpleOutlierEnsemble() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    OutlierResult result = runEnsemble(db, 1);
+    testSingleScore(result, 1293, 6.377144200);
+    testAUC(db, "Noise", result, 0.948997199);
+
+    // Concurrent members must give the same scores.
+    OutlierResult parallel = runEnsemble(db, 4);
+    for(DBIDIter iter = result.getScores().iterDBIDs(); iter.valid(); iter.advance()) {
+      assertEquals("Concurrent ensemble differs.", result.getScores().get(iter), parallel.getScores().get(iter));
+    }
+  }
+
+  /**
+   * Run the ensemble of LOF and kNN outlier.
+   * 
+   * @param db Database
+   * @param threads Number of threads
+   * @return Result
+   */
+  private OutlierResult runEnsemble(Database db, int threads) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, Arrays.asList(LOF.class, KNNOutlier.class));
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(KNNOutlier.K_ID, 10);
+    params.addParameter(SimpleOutlierEnsemble.Parameterizer.VOTING_ID, EnsembleVotingMean.class);
+    params.addParameter(SimpleOutlierEnsemble.Parameterizer.THREADS_ID, threads);
+    SimpleOutlierEnsemble ensemble = ClassGenericsUtil.parameterizeOrAbort(SimpleOutlierEnsemble.class, params);
+    testParameterizationOk(params);
+    return ensemble.run(db);
+  }
+}
@@ -0,0 +1,119 @@
+package de.lmu.ifi.dbs.elki.database;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorBufferRelation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.VectorBufferDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test comparing a database stored in a vector buffer to the default
+ * storage.
+ * 
+ * @author Erich Schubert
+ */
+public class TestVectorBufferRelation implements JUnit4Test {
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testDoubleBuffer() {
+    testBuffer(false, 0., null);
+  }
+
+  @Test
+  public void testFloatBuffer() {
+    testBuffer(true, 1e-6, null);
+  }
+
+  @Test
+  public void testMappedBuffer() throws IOException {
+    File mapfile = File.createTempFile("elki-vectorbuffer", ".bin");
+    mapfile.deleteOnExit();
+    testBuffer(false, 0., mapfile);
+  }
+
+  private void testBuffer(boolean floats, double delta, File mapfile) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<NumberVector<?>> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, VectorBufferDatabaseConnection.class);
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    if(mapfile != null) {
+      params.addParameter(VectorBufferDatabaseConnection.Parameterizer.MAPFILE_ID, mapfile);
+    }
+    if(floats) {
+      params.addFlag(VectorBufferDatabaseConnection.Parameterizer.FLOAT_ID);
+    }
+    Database bdb = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    bdb.initialize();
+    Relation<NumberVector<?>> brel = bdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a vector buffer relation.", brel instanceof VectorBufferRelation);
+    assertEquals("Size does not match.", rel.size(), brel.size());
+
+    final int dim = rel.get(rel.iterDBIDs()).getDimensionality();
+    for(DBIDIter it = rel.iterDBIDs(), bit = brel.iterDBIDs(); it.valid(); it.advance(), bit.advance()) {
+      NumberVector<?> v = rel.get(it), bv = brel.get(bit);
+      assertEquals("Dimensionality does not match.", dim, bv.getDimensionality());
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Values do not match.", v.doubleValue(d), bv.doubleValue(d), delta);
+      }
+    }
+
+    // The linear scan uses the flyweight fast path.
+    KNNQuery<NumberVector<?>, DoubleDistance> knnq = db.getKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), 10);
+    KNNQuery<NumberVector<?>, DoubleDistance> bknnq = bdb.getKNNQuery(bdb.getDistanceQuery(brel, EuclideanDistanceFunction.STATIC), 10);
+    for(DBIDIter it = rel.iterDBIDs(), bit = brel.iterDBIDs(); it.valid(); it.advance(), bit.advance()) {
+      KNNList<DoubleDistance> knn = knnq.getKNNForDBID(it, 10), bknn = bknnq.getKNNForDBID(bit, 10);
+      assertEquals("kNN sizes do not match.", knn.size(), bknn.size());
+      DistanceDBIDListIter<DoubleDistance> ki = knn.iter(), bki = bknn.iter();
+      for(; ki.valid(); ki.advance(), bki.advance()) {
+        assertEquals("kNN distances do not match.", ki.getDistance().doubleValue(), bki.getDistance().doubleValue(), delta * 10);
+      }
+    }
+  }
+}
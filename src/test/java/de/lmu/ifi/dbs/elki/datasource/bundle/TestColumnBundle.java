@@ -0,0 +1,212 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.SimpleClassLabel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Test the column-wise bundle format.
+ * 
+ * @author Erich Schubert
+ */
+public class TestColumnBundle implements JUnit4Test {
+  /**
+   * Number of rows, not a multiple of the row group size.
+   */
+  private static final int ROWS = 1000;
+
+  /**
+   * Row group size.
+   */
+  private static final int ROWGROUP = 64;
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    MultipleObjectsBundle bundle = makeBundle();
+    for(boolean compress : new boolean[] { false, true }) {
+      File file = write(bundle, new ColumnBundleWriter(false, compress, ROWGROUP));
+      try (FileInputStream fis = new FileInputStream(file)) {
+        ColumnBundleReader reader = new ColumnBundleReader(fis.getChannel());
+        assertEquals("Number of rows differs.", ROWS, reader.size());
+        MultipleObjectsBundle copy = reader.load();
+        assertEquals("Number of columns differs.", bundle.metaLength(), copy.metaLength());
+        for(int c = 0; c < bundle.metaLength(); c++) {
+          assertEquals("Column type differs.", bundle.meta(c).toString(), copy.meta(c).toString());
+        }
+        compare(bundle, new int[] { 0, 1, 2, 3 }, 0, copy);
+
+        // Selected columns and rows, not aligned with the row groups.
+        compare(bundle, new int[] { 2, 0 }, 100, reader.load(new int[] { 2, 0 }, 100, 333));
+        compare(bundle, new int[] { 3, 1 }, 999, reader.load(new int[] { 3, 1 }, 999, 1000));
+        assertEquals("Empty range not empty.", 0, reader.load(new int[] { 1 }, 500, 500).dataLength());
+      }
+    }
+  }
+
+  @Test
+  public void testFloat() throws IOException {
+    MultipleObjectsBundle bundle = makeBundle();
+    MultipleObjectsBundle copy;
+    try (FileInputStream fis = new FileInputStream(write(bundle, new ColumnBundleWriter(true, true, ROWGROUP)))) {
+      copy = new ColumnBundleReader(fis.getChannel()).load(new int[] { 0 }, 10, 20);
+    }
+    assertEquals("Number of rows differs.", 10, copy.dataLength());
+    for(int i = 0; i < copy.dataLength(); i++) {
+      double[] orig = ((DoubleVector) bundle.data(10 + i, 0)).getValues();
+      double[] val = ((DoubleVector) copy.data(i, 0)).getValues();
+      for(int d = 0; d < orig.length; d++) {
+        assertEquals("Value differs.", (float) orig[d], val[d], 0.);
+      }
+    }
+  }
+
+  @Test
+  public void testCompression() {
+    Random rnd = new Random(0L);
+    byte[] random = new byte[100000], runs = new byte[100000], text = new byte[100000];
+    rnd.nextBytes(random);
+    for(int i = 0; i < runs.length; i++) {
+      runs[i] = (byte) (i / 1000);
+      text[i] = (byte) ('a' + rnd.nextInt(3) * (i % 7));
+    }
+    for(byte[] data : new byte[][] { random, runs, text, Arrays.copyOf(runs, 12), new byte[0] }) {
+      byte[] cbuf = new byte[LZ4BlockCompression.maxCompressedLength(data.length)];
+      final int clen = LZ4BlockCompression.compress(data, data.length, cbuf);
+      assertTrue("Compressed data too long.", clen <= cbuf.length);
+      byte[] out = new byte[data.length];
+      LZ4BlockCompression.decompress(cbuf, 0, clen, out, out.length);
+      assertArrayEquals("Decompressed data differs.", data, out);
+    }
+    byte[] cbuf = new byte[LZ4BlockCompression.maxCompressedLength(runs.length)];
+    assertTrue("Runs did not compress.", LZ4BlockCompression.compress(runs, runs.length, cbuf) < runs.length / 50);
+  }
+
+  @Test
+  public void testTruncatedCompression() {
+    byte[] runs = new byte[100000];
+    for(int i = 0; i < runs.length; i++) {
+      runs[i] = (byte) (i / 1000);
+    }
+    byte[] cbuf = new byte[LZ4BlockCompression.maxCompressedLength(runs.length)];
+    final int clen = LZ4BlockCompression.compress(runs, runs.length, cbuf);
+    byte[] out = new byte[runs.length];
+    // Every truncation must be reported as a corrupt block.
+    for(int len = 1; len < clen; len++) {
+      try {
+        LZ4BlockCompression.decompress(Arrays.copyOf(cbuf, len), 0, len, out, out.length);
+        fail("Truncated block was accepted.");
+      }
+      catch(AbortException e) {
+        // Expected
+      }
+    }
+  }
+
+  /**
+   * Build a bundle with one column for each encoding.
+   * 
+   * @return Bundle
+   */
+  private static MultipleObjectsBundle makeBundle() {
+    Random rnd = new Random(0L);
+    List<DoubleVector> vecs = new ArrayList<>(ROWS);
+    List<LabelList> labels = new ArrayList<>(ROWS);
+    List<String> strings = new ArrayList<>(ROWS);
+    List<SimpleClassLabel> classes = new ArrayList<>(ROWS);
+    for(int i = 0; i < ROWS; i++) {
+      vecs.add(new DoubleVector(new double[] { rnd.nextDouble(), rnd.nextGaussian(), i }));
+      List<String> ll = new ArrayList<>();
+      for(int j = i % 3; j > 0; j--) {
+        ll.add("label" + rnd.nextInt(20));
+      }
+      labels.add(LabelList.make(ll));
+      // Include null and empty strings, which must be distinguished.
+      strings.add((i % 10 == 0) ? null : (i % 10 == 5) ? "" : ("s" + (i % 17)));
+      classes.add(new SimpleClassLabel("class" + (i % 5)));
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, 3), vecs);
+    bundle.appendColumn(TypeUtil.LABELLIST, labels);
+    bundle.appendColumn(TypeUtil.STRING, strings);
+    bundle.appendColumn(TypeUtil.SIMPLE_CLASSLABEL, classes);
+    return bundle;
+  }
+
+  /**
+   * Compare a loaded bundle to the original data.
+   * 
+   * @param orig Original bundle
+   * @param columns Columns loaded
+   * @param start First row loaded
+   * @param copy Loaded bundle
+   */
+  private static void compare(MultipleObjectsBundle orig, int[] columns, int start, MultipleObjectsBundle copy) {
+    assertEquals("Number of columns differs.", columns.length, copy.metaLength());
+    for(int i = 0; i < copy.dataLength(); i++) {
+      for(int c = 0; c < columns.length; c++) {
+        assertEquals("Object " + (start + i) + " differs.", String.valueOf(orig.data(start + i, columns[c])), String.valueOf(copy.data(i, c)));
+      }
+    }
+  }
+
+  /**
+   * Write a bundle to a temporary file.
+   * 
+   * @param bundle Bundle
+   * @param writer Writer
+   * @return File
+   * @throws IOException on IO errors
+   */
+  private static File write(MultipleObjectsBundle bundle, ColumnBundleWriter writer) throws IOException {
+    File file = File.createTempFile("elki-columnbundle", ".bin");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file); FileChannel channel = fos.getChannel()) {
+      writer.writeBundle(bundle, channel);
+    }
+    return file;
+  }
+}
@@ -0,0 +1,148 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.ClassLabel;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Unit test for the ARFF parser: dense and sparse instances, quoted and
+ * escaped values, and missing values.
+ * 
+ * @author Erich Schubert
+ */
+public class TestArffParser implements JUnit4Test {
+  /**
+   * Dense data set, with quoted, escaped and missing values.
+   */
+  public static final String DENSE = "% Dense test data\n" //
+      + "@relation dense\n" //
+      + "@attribute x numeric\n" //
+      + "@attribute 'y' real\n" //
+      + "@attribute s1 string\n" //
+      + "@attribute s2 string\n" //
+      + "@attribute class {a,b}\n" //
+      + "\n" //
+      + "@data\n" //
+      + "1.5, -2, 'hello world', \"it's\", a\n" //
+      + "\n" //
+      + "?, 3e2, 'it\\'s', \"say \\\"hi\\\"\", 'b' % comment\n" //
+      + "-0.25,?,'tab\\tend','oct\\101\\60',\"a\"\n";
+
+  /**
+   * Sparse data set.
+   */
+  public static final String SPARSE = "@relation sparse\n" //
+      + "@attribute a numeric\n" //
+      + "@attribute b numeric\n" //
+      + "@attribute c numeric\n" //
+      + "@attribute class {x,'y z'}\n" //
+      + "@data\n" //
+      + "{0 1.5, 2 -3, 3 x}\n" //
+      + "{1 2e1,3 'y z'}\n";
+
+  @Test
+  public void testDense() throws UnsupportedEncodingException {
+    MultipleObjectsBundle bundle = parse(DENSE);
+    assertEquals("Number of columns", 3, bundle.metaLength());
+    assertEquals("Number of instances", 3, bundle.dataLength());
+
+    DoubleVector v0 = (DoubleVector) bundle.data(0, 0);
+    assertEquals("Dimensionality", 2, v0.getDimensionality());
+    assertEquals(1.5, v0.doubleValue(0), 0.);
+    assertEquals(-2., v0.doubleValue(1), 0.);
+    DoubleVector v1 = (DoubleVector) bundle.data(1, 0);
+    assertTrue("Missing value not NaN", Double.isNaN(v1.doubleValue(0)));
+    assertEquals(300., v1.doubleValue(1), 0.);
+    DoubleVector v2 = (DoubleVector) bundle.data(2, 0);
+    assertEquals(-.25, v2.doubleValue(0), 0.);
+    assertTrue("Missing value not NaN", Double.isNaN(v2.doubleValue(1)));
+
+    assertLabels((LabelList) bundle.data(0, 1), "hello world", "it's");
+    assertLabels((LabelList) bundle.data(1, 1), "it's", "say \"hi\"");
+    assertLabels((LabelList) bundle.data(2, 1), "tab\tend", "octA0");
+
+    assertEquals("a", ((ClassLabel) bundle.data(0, 2)).toString());
+    assertEquals("b", ((ClassLabel) bundle.data(1, 2)).toString());
+    assertEquals("a", ((ClassLabel) bundle.data(2, 2)).toString());
+  }
+
+  @Test
+  public void testSparse() throws UnsupportedEncodingException {
+    MultipleObjectsBundle bundle = parse(SPARSE);
+    assertEquals("Number of columns", 2, bundle.metaLength());
+    assertEquals("Number of instances", 2, bundle.dataLength());
+
+    SparseDoubleVector v0 = (SparseDoubleVector) bundle.data(0, 0);
+    assertEquals("Dimensionality", 3, v0.getDimensionality());
+    assertEquals(1.5, v0.doubleValue(0), 0.);
+    assertEquals(0., v0.doubleValue(1), 0.);
+    assertEquals(-3., v0.doubleValue(2), 0.);
+    SparseDoubleVector v1 = (SparseDoubleVector) bundle.data(1, 0);
+    assertEquals(0., v1.doubleValue(0), 0.);
+    assertEquals(20., v1.doubleValue(1), 0.);
+    assertEquals(0., v1.doubleValue(2), 0.);
+
+    assertEquals("x", ((ClassLabel) bundle.data(0, 1)).toString());
+    assertEquals("y z", ((ClassLabel) bundle.data(1, 1)).toString());
+  }
+
+  /**
+   * Parse a string with the default ARFF parser.
+   * 
+   * @param data ARFF data
+   * @return Parsed bundle
+   * @throws UnsupportedEncodingException
+   */
+  private MultipleObjectsBundle parse(String data) throws UnsupportedEncodingException {
+    InputStream in = new ByteArrayInputStream(data.getBytes("UTF-8"));
+    return new ArffParser(ArffParser.DEFAULT_ARFF_MAGIC_EID, ArffParser.DEFAULT_ARFF_MAGIC_CLASS).parse(in);
+  }
+
+  /**
+   * Check the labels of a label list.
+   * 
+   * @param labels Label list
+   * @param expected Expected labels
+   */
+  private void assertLabels(LabelList labels, String... expected) {
+    assertEquals("Number of labels", expected.length, labels.size());
+    for(int i = 0; i < expected.length; i++) {
+      assertEquals("Label " + i, expected[i], labels.get(i));
+    }
+  }
+}
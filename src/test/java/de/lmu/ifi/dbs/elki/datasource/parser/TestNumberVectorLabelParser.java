@@ -0,0 +1,95 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test that parallel parsing gives the same result as sequential parsing.
+ * 
+ * @author Erich Schubert
+ */
+public class TestNumberVectorLabelParser implements JUnit4Test {
+  @Test
+  public void testParallelParsing() {
+    // Build an input spanning several blocks, with a header, comments, empty
+    // lines, labels, varying dimensionality and mixed line terminators.
+    StringBuilder buf = new StringBuilder();
+    buf.append("a b c d label\n");
+    Random rnd = new Random(0L);
+    for(int i = 0; buf.length() < 3 * NumberVectorLabelParser.CHUNKSIZE; i++) {
+      if(i % 1000 == 0) {
+        buf.append("# comment ").append(i).append('\n');
+      }
+      if(i % 777 == 0) {
+        buf.append('\n');
+      }
+      buf.append(rnd.nextDouble()).append(' ').append(rnd.nextInt(100)).append(' ').append(-rnd.nextDouble());
+      if(i == 50000) {
+        buf.append(" 1.0");
+      }
+      else if(i > 10000) {
+        buf.append(" x");
+      }
+      buf.append(" lbl").append(i % 10);
+      buf.append((i % 3 == 0) ? "\r\n" : "\n");
+    }
+    buf.append("1 2 3 final");
+    byte[] data = buf.toString().getBytes();
+
+    MultipleObjectsBundle seq = parse(data, 1), par = parse(data, 4);
+    assertEquals("Number of columns differs.", seq.metaLength(), par.metaLength());
+    for(int c = 0; c < seq.metaLength(); c++) {
+      assertEquals("Column type differs.", seq.meta(c).toString(), par.meta(c).toString());
+    }
+    assertEquals("Number of objects differs.", seq.dataLength(), par.dataLength());
+    for(int i = 0; i < seq.dataLength(); i++) {
+      for(int c = 0; c < seq.metaLength(); c++) {
+        assertEquals("Object " + i + " differs.", seq.data(i, c).toString(), par.data(i, c).toString());
+      }
+    }
+  }
+
+  /**
+   * Parse the input.
+   * 
+   * @param data Input data
+   * @param threads Number of threads
+   * @return Bundle
+   */
+  private MultipleObjectsBundle parse(byte[] data, int threads) {
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(Pattern.compile(AbstractParser.DEFAULT_SEPARATOR), AbstractParser.QUOTE_CHARS, Pattern.compile(AbstractParser.COMMENT_PATTERN), null, DoubleVector.FACTORY, threads);
+    return parser.parse(new ByteArrayInputStream(data));
+  }
+}
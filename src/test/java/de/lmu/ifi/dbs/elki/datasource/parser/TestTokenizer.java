@@ -27,6 +27,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -91,6 +95,36 @@ public class TestTokenizer implements JUnit4Test {
     tokenizerTest(expect);
   }
 
+  @Test
+  public void testBytes() throws IOException {
+    final String input = "1 -234 3.1415 - banana 'this is' '123' nan -∞ 1e";
+    final Object[] expect = { 1L, -234L, 3.1415, "-", "banana", "this is", 123L, Double.NaN, Double.NEGATIVE_INFINITY, "1e" };
+    BufferedLineReader reader = new BufferedLineReader(input.getBytes(StandardCharsets.UTF_8), input.getBytes(StandardCharsets.UTF_8).length);
+    assertTrue("No line read.", reader.nextLine());
+    t.initialize(reader);
+    tokenizerTest(expect);
+  }
+
+  @Test
+  public void testLineReader() throws IOException {
+    // Small reads, to test the buffer handling.
+    final byte[] input = "a b\r\nc\rd\n\ne".getBytes(StandardCharsets.UTF_8);
+    InputStream in = new ByteArrayInputStream(input) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    };
+    BufferedLineReader reader = new BufferedLineReader(in);
+    final String[] expect = { "a b", "c", "d", "", "e" };
+    for(String e : expect) {
+      assertTrue("Reader stopped early.", reader.nextLine());
+      assertEquals("Line differs.", e, reader.toString());
+    }
+    assertTrue("Spurious line after expected end.", !reader.nextLine());
+    reader.close();
+  }
+
   private void tokenizerTest(Object[] expect) {
     for(int i = 0; i < expect.length; i++, t.advance()) {
       assertTrue("Tokenizer stopped early.", t.valid());
@@ -26,16 +26,25 @@ package de.lmu.ifi.dbs.elki.index;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.DoubleOptimizedDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -58,6 +67,10 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.insert.Ap
 import de.lmu.ifi.dbs.elki.index.vafile.PartialVAFile;
 import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.ClockCache;
+import de.lmu.ifi.dbs.elki.persistent.ClockCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -123,6 +136,26 @@ public class TestIndexStructures implements JUnit4Test {
     testFileBasedDatabaseConnection(spatparams, DoubleDistanceRStarTreeKNNQuery.class, DoubleDistanceRStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test {@link RStarTree} on a memory-mapped page file, with a small
+   * {@link ClockCache} to force evictions.
+   * 
+   * @throws IOException on temporary file errors
+   */
+  @Test
+  public void testRStarTreeMapped() throws IOException {
+    File tmp = File.createTempFile("elki-rstar", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ClockCachePageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 8);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testFileBasedDatabaseConnection(spatparams, DoubleDistanceRStarTreeKNNQuery.class, DoubleDistanceRStarTreeRangeQuery.class);
+  }
+
   /**
    * Test {@link VAFile} using a file based database connection.
    */
@@ -160,6 +193,49 @@ public class TestIndexStructures implements JUnit4Test {
     testFileBasedDatabaseConnection(spatparams, DoubleDistanceRStarTreeKNNQuery.class, DoubleDistanceRStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test the batch kNN queries of the {@link RStarTree} and {@link MTree}
+   * against a linear scan.
+   */
+  @Test
+  public void testBulkKNN() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testBulkKNN(spatparams);
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testBulkKNN(metparams);
+  }
+
+  /**
+   * Compare the bulk kNN query of an index to a linear scan.
+   * 
+   * @param inputparams Database parameters
+   */
+  void testBulkKNN(ListParameterization inputparams) {
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, inputparams);
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector, DoubleDistance> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector, DoubleDistance> knnq = db.getKNNQuery(dist, k, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    KNNQuery<DoubleVector, DoubleDistance> linq = QueryUtil.getLinearScanKNNQuery(dist);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rep.getDBIDs());
+    List<? extends KNNList<DoubleDistance>> bulk = knnq.getKNNForBulkDBIDs(ids, k);
+    assertEquals("Result size does not match expectation!", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      KNNList<DoubleDistance> exp = linq.getKNNForDBID(iter, k);
+      KNNList<DoubleDistance> got = bulk.get(i);
+      assertEquals("kNN list size does not match.", exp.size(), got.size());
+      for(DistanceDBIDListIter<DoubleDistance> e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+        assertEquals("Expected distance doesn't match.", e.getDistance().doubleValue(), g.getDistance().doubleValue(), 1e-15);
+      }
+    }
+  }
+
   /**
    * Test {@link XTree} using a file based database connection.
    */
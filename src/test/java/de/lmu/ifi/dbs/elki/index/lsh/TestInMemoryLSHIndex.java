@@ -0,0 +1,161 @@
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the LSH index, with and without multi-probe queries, against a linear
+ * scan.
+ * 
+ * @author Erich Schubert
+ */
+public class TestInMemoryLSHIndex implements JUnit4Test {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  /**
+   * Test the recall of multi-probe queries, and parallel building.
+   */
+  @Test
+  public void testMultiProbe() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector, DoubleDistance> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    assertEquals("Data set size doesn't match parameters.", shoulds, rep.size());
+    LinearScanDistanceKNNQuery<DoubleVector, DoubleDistance> linknn = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    // Many tables, single probe.
+    EuclideanHashFunctionFamily family = new EuclideanHashFunctionFamily(new RandomFactory(0L), .1, 3);
+    InMemoryLSHIndex<DoubleVector>.Instance single = new InMemoryLSHIndex<DoubleVector>(family, 10, 7919).instantiate(rep);
+    single.initialize();
+    KNNQuery<DoubleVector, DoubleDistance> singleq = single.getKNNQuery(distanceQuery, k);
+    assertTrue("LSH knn query class incorrect.", singleq != null && !(singleq instanceof LinearScanDistanceKNNQuery));
+    assertNull("Approximate index must not answer exact queries.", single.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_EXACT));
+    double singlerecall = recall(rep, linknn, singleq);
+
+    // Few tables, multiple probes.
+    family = new EuclideanHashFunctionFamily(new RandomFactory(0L), .1, 3);
+    InMemoryLSHIndex<DoubleVector>.Instance multi = new InMemoryLSHIndex<DoubleVector>(family, 3, 7919, 10, 1).instantiate(rep);
+    multi.initialize();
+    KNNQuery<DoubleVector, DoubleDistance> multiq = multi.getKNNQuery(distanceQuery, k);
+    double multirecall = recall(rep, linknn, multiq);
+    assertTrue("Multi-probe recall too low: " + multirecall, multirecall >= 0.97);
+    assertTrue("Multi-probe recall " + multirecall + " worse than single-probe recall " + singlerecall, multirecall > singlerecall);
+
+    // Parallel building must give the same result.
+    family = new EuclideanHashFunctionFamily(new RandomFactory(0L), .1, 3);
+    InMemoryLSHIndex<DoubleVector>.Instance parallel = new InMemoryLSHIndex<DoubleVector>(family, 3, 7919, 10, 4).instantiate(rep);
+    parallel.initialize();
+    KNNQuery<DoubleVector, DoubleDistance> parallelq = parallel.getKNNQuery(distanceQuery, k);
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      DistanceDBIDListIter<DoubleDistance> a = multiq.getKNNForDBID(iter, k).iter(), b = parallelq.getKNNForDBID(iter, k).iter();
+      for(; a.valid() && b.valid(); a.advance(), b.advance()) {
+        assertTrue("Parallel result differs.", DBIDUtil.equal(a, b));
+      }
+      assertEquals("Parallel result differs.", a.valid(), b.valid());
+    }
+  }
+
+  /**
+   * Test the index through the database, and check the recall of the queries
+   * it answers.
+   */
+  @Test
+  public void testDatabase() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .1);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 3);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.PROBES_ID, 10);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertEquals("Data set size doesn't match parameters.", shoulds, rep.size());
+
+    DistanceQuery<DoubleVector, DoubleDistance> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector, DoubleDistance> knnq = db.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    assertTrue("LSH index not used by the database.", knnq != null && !(knnq instanceof LinearScanQuery));
+    double recall = recall(rep, new LinearScanDistanceKNNQuery<>(distanceQuery), knnq);
+    assertTrue("Multi-probe recall too low: " + recall, recall >= 0.97);
+  }
+
+  /**
+   * Compute the recall of an approximate kNN query.
+   * 
+   * @param rep Relation
+   * @param exactq Exact kNN query
+   * @param knnq Approximate kNN query
+   * @return Recall
+   */
+  private double recall(Relation<DoubleVector> rep, KNNQuery<DoubleVector, DoubleDistance> exactq, KNNQuery<DoubleVector, DoubleDistance> knnq) {
+    int hits = 0, total = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList<DoubleDistance> exact = exactq.getKNNForDBID(iter, k);
+      hits += DBIDUtil.intersectionSize(exact, knnq.getKNNForDBID(iter, k));
+      total += exact.size();
+    }
+    return hits / (double) total;
+  }
+}
@@ -46,6 +46,7 @@ import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.DoubleDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
@@ -157,6 +158,34 @@ public class TestMaterializedKNNAndRKNNPreprocessor implements JUnit4Test {
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
   }
 
+  /**
+   * Test the multi-threaded materialization against a linear scan.
+   * 
+   * @throws ParameterException
+   * @throws UnableToComplyException
+   */
+  @Test
+  public void testParallelPreprocessor() throws ParameterException, UnableToComplyException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector, DoubleDistance> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    assertEquals("Data set size doesn't match parameters.", shoulds, rep.size());
+
+    LinearScanDistanceKNNQuery<DoubleVector, DoubleDistance> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    MaterializeKNNPreprocessor<DoubleVector, DoubleDistance> preproc = new MaterializeKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k, 4);
+    preproc.initialize();
+    KNNQuery<DoubleVector, DoubleDistance> preproc_knn_query = preproc.getKNNQuery(distanceQuery, k);
+    assertTrue("Preprocessor knn query class incorrect.", !(preproc_knn_query instanceof LinearScanDistanceKNNQuery));
+    assertTrue("Preprocessor knn query is not double-specialized.", preproc_knn_query instanceof DoubleDistanceKNNQuery);
+
+    testKNNQueries(rep, lin_knn_query, preproc_knn_query, k);
+    testKNNQueries(rep, lin_knn_query, preproc_knn_query, k / 2);
+  }
+
   private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector, DoubleDistance> lin_knn_query, KNNQuery<DoubleVector, DoubleDistance> preproc_knn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     List<? extends KNNList<DoubleDistance>> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
@@ -0,0 +1,125 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.NNDescent;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the NN-Descent approximate kNN preprocessor against a linear scan.
+ * 
+ * @author Erich Schubert
+ */
+public class TestNNDescent implements JUnit4Test {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  /**
+   * Test the recall and the reverse kNN consistency.
+   */
+  @Test
+  public void testNNDescent() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector, DoubleDistance> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    assertEquals("Data set size doesn't match parameters.", shoulds, rep.size());
+
+    LinearScanDistanceKNNQuery<DoubleVector, DoubleDistance> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+    NNDescent<DoubleVector> preproc = new NNDescent<>(rep, EuclideanDistanceFunction.STATIC, k, 1., 0.001, 20, new RandomFactory(0L), 1);
+    preproc.initialize();
+    KNNQuery<DoubleVector, DoubleDistance> knnq = preproc.getKNNQuery(distanceQuery, k);
+    assertTrue("Preprocessor knn query class incorrect.", knnq != null && !(knnq instanceof LinearScanDistanceKNNQuery));
+    assertNull("Approximate index must not answer exact queries.", preproc.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_EXACT));
+
+    int hits = 0, total = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList<DoubleDistance> exact = lin_knn_query.getKNNForDBID(iter, k);
+      KNNList<DoubleDistance> approx = knnq.getKNNForDBID(iter, k);
+      assertEquals("kNN list size incorrect.", k, approx.size());
+      hits += DBIDUtil.intersectionSize(exact, approx);
+      total += exact.size();
+    }
+    double recall = hits / (double) total;
+    assertTrue("Recall too low: " + recall, recall >= 0.95);
+
+    // Parallel execution must give the same result.
+    NNDescent<DoubleVector> parallel = new NNDescent<>(rep, EuclideanDistanceFunction.STATIC, k, 1., 0.001, 20, new RandomFactory(0L), 4);
+    parallel.initialize();
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      DistanceDBIDListIter<DoubleDistance> a = preproc.get(iter).iter(), b = parallel.get(iter).iter();
+      for(; a.valid() && b.valid(); a.advance(), b.advance()) {
+        assertTrue("Parallel result differs.", DBIDUtil.equal(a, b));
+      }
+      assertEquals("Parallel result differs.", a.valid(), b.valid());
+    }
+
+    // Reverse kNN must be consistent with the kNN lists.
+    RKNNQuery<DoubleVector, DoubleDistance> rknnq = preproc.getRKNNQuery(distanceQuery);
+    int count = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      DistanceDBIDList<DoubleDistance> rknn = rknnq.getRKNNForDBID(iter, k);
+      for(DistanceDBIDListIter<DoubleDistance> it = rknn.iter(); it.valid(); it.advance()) {
+        assertTrue("Reverse neighbor not in kNN list.", DBIDUtil.intersectionSize(preproc.get(it), DBIDUtil.deref(iter)) == 1);
+      }
+      count += rknn.size();
+    }
+    assertEquals("Reverse kNN lists incomplete.", shoulds * k, count);
+  }
+}
@@ -0,0 +1,217 @@
+package de.lmu.ifi.dbs.elki.index.tree;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.distance.DistanceDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.distance.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancevalue.DoubleDistance;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.ClockCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.parallel.ParallelExecutor;
+
+/**
+ * Stress test for concurrent read-only queries on tree indexes: a single kNN
+ * and range query object is shared by many threads, and all results are
+ * compared to a linear scan.
+ * 
+ * @author Erich Schubert
+ */
+public class TestConcurrentTreeQueries implements JUnit4Test {
+  /**
+   * Data set to use.
+   */
+  String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Number of threads.
+   */
+  int threads = 8;
+
+  /**
+   * Number of passes over the data set, per thread.
+   */
+  int rounds = 2;
+
+  /**
+   * Query size.
+   */
+  int k = 10;
+
+  /**
+   * Range query radius.
+   */
+  DoubleDistance eps = new DoubleDistance(0.1);
+
+  /**
+   * Test the R*-tree.
+   */
+  @Test
+  public void testRStarTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentQueries(params);
+  }
+
+  /**
+   * Test the M-tree.
+   */
+  @Test
+  public void testMTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentQueries(params);
+  }
+
+  /**
+   * Test the R*-tree on a memory-mapped file, with a cache too small for the
+   * tree, so that pages are evicted and reloaded concurrently.
+   * 
+   * @throws IOException on temporary file errors
+   */
+  @Test
+  public void testRStarTreeClockCache() throws IOException {
+    File tmp = File.createTempFile("elki-rstar", ".idx");
+    tmp.delete();
+    tmp.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ClockCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 32);
+    params.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentQueries(params);
+  }
+
+  /**
+   * Actual test routine.
+   * 
+   * @param params Database parameters
+   */
+  void testConcurrentQueries(ListParameterization params) {
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector, DoubleDistance> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<DoubleVector, DoubleDistance> knnq = db.getKNNQuery(dist, k, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    final RangeQuery<DoubleVector, DoubleDistance> rangeq = db.getRangeQuery(dist, eps, DatabaseQuery.HINT_OPTIMIZED_ONLY);
+    assertTrue("Index was not used for kNN queries.", knnq != null);
+    assertTrue("Index was not used for range queries.", rangeq != null);
+
+    // Reference results
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    KNNQuery<DoubleVector, DoubleDistance> linknn = QueryUtil.getLinearScanKNNQuery(dist);
+    RangeQuery<DoubleVector, DoubleDistance> linrange = QueryUtil.getLinearScanRangeQuery(dist);
+    final double[][] knndists = new double[ids.size()][];
+    final int[] rangesizes = new int[ids.size()];
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      knndists[iter.getOffset()] = distances(linknn.getKNNForDBID(iter, k));
+      rangesizes[iter.getOffset()] = linrange.getRangeForDBID(iter, eps).size();
+    }
+
+    List<Callable<Integer>> tasks = new ArrayList<>(threads);
+    for(int t = 0; t < threads; t++) {
+      final int start = t * ids.size() / threads;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int errors = 0;
+          DBIDArrayIter iter = ids.iter();
+          for(int r = 0; r < rounds; r++) {
+            // Each thread starts at a different offset.
+            for(int i = 0; i < ids.size(); i++) {
+              final int off = (start + i) % ids.size();
+              iter.seek(off);
+              double[] d = distances(knnq.getKNNForDBID(iter, k));
+              if(!Arrays.equals(knndists[off], d)) {
+                errors++;
+              }
+              if(rangeq.getRangeForDBID(iter, eps).size() != rangesizes[off]) {
+                errors++;
+              }
+            }
+          }
+          return errors;
+        }
+      });
+    }
+    int errors = 0;
+    for(Integer e : ParallelExecutor.run(threads, tasks)) {
+      errors += e;
+    }
+    assertEquals("Concurrent queries returned wrong results.", 0, errors);
+  }
+
+  /**
+   * Extract the distances of a kNN list.
+   * 
+   * @param knn kNN list
+   * @return Distances
+   */
+  static double[] distances(KNNList<DoubleDistance> knn) {
+    double[] d = new double[knn.size()];
+    int i = 0;
+    for(DistanceDBIDListIter<DoubleDistance> iter = knn.iter(); iter.valid(); iter.advance(), i++) {
+      d[i] = iter.getDistance().doubleValue();
+    }
+    return d;
+  }
+}
@@ -0,0 +1,94 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2013
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Test to validate proper MappedPageFile operation.
+ * 
+ * @author Erich Schubert
+ */
+public class TestMappedPageFile implements JUnit4Test {
+  File file = new File("MappedPageFileTestFile.test.dat");
+
+  /**
+   * Check that we don't overwrite any file.
+   * 
+   * @throws Exception on errors.
+   */
+  @Before
+  public void safetyCheck() throws Exception {
+    if(file.exists()) {
+      Assert.fail("Could not run test - test file already exists.");
+    }
+  }
+
+  /**
+   * Clean up afterwards
+   * 
+   * @throws Exception on errors.
+   */
+  @After
+  public void cleanup() throws Exception {
+    if(file != null && file.exists()) {
+      if(!file.delete()) {
+        Assert.fail("Error cleaning up: can't remove test file.");
+      }
+    }
+  }
+
+  /**
+   * Test that clearing the page file discards the stored pages.
+   */
+  @Test
+  public void testClear() {
+    final int pagesize = 1024;
+    MappedPageFile<RStarTreeNode> pf = new MappedPageFile<>(pagesize, file.getPath(), RStarTreeNode.class);
+    pf.initialize(new DefaultPageHeader(pagesize));
+    for(int i = 0; i < 3; i++) {
+      Assert.assertEquals("Unexpected page id.", i, pf.writePage(new RStarTreeNode(10, true)));
+    }
+    pf.deletePage(1);
+    Assert.assertNotNull("Page was not stored.", pf.readPage(2));
+
+    pf.clear();
+    Assert.assertEquals("Page ids were not reset.", 0, pf.getNextPageID());
+    for(int i = 0; i < 3; i++) {
+      Assert.assertNull("Page survived clearing.", pf.readPage(i));
+    }
+    // Page 1 must not be reused from the old list of empty pages.
+    Assert.assertEquals("Unexpected page id.", 0, pf.writePage(new RStarTreeNode(10, true)));
+    Assert.assertEquals("Unexpected page id.", 1, pf.writePage(new RStarTreeNode(10, true)));
+    pf.close();
+  }
+}